@@ -1,23 +1,28 @@
 package com.gentics.cr;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.Vector;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.apache.log4j.Logger;
 
 import com.gentics.api.lib.datasource.Datasource;
 import com.gentics.api.lib.datasource.Datasource.Sorting;
 import com.gentics.cr.exceptions.CRException;
+import com.gentics.cr.sql.ParameterizedSQL;
+import com.gentics.cr.sql.ResultSetBeanIterator;
 import com.gentics.cr.util.generics.Lists;
 
 /**
@@ -46,11 +51,39 @@ public abstract class AbstractSQLRequestProcessor extends RequestProcessor {
 	 * @see #mergeOnIdColumn
 	 */
 	private static final String MERGE_ON_IDCOLUMN_KEY = "merge_on_idcolumn";
+	/**
+	 * Configuration key for the number of rows the driver fetches at once,
+	 * 0 (the default) uses the default of the driver.
+	 */
+	private static final String FETCHSIZE_KEY = "fetchsize";
+	/**
+	 * Configuration key to add start and count of the request as
+	 * <code>LIMIT ? OFFSET ?</code> to the statement. Disabled by default
+	 * because not every database supports this syntax.
+	 */
+	private static final String LIMITOFFSET_KEY = "limitoffset";
+	/**
+	 * Configuration key for the number of translated request filters to
+	 * cache.
+	 */
+	private static final String FILTERCACHESIZE_KEY = "filtercachesize";
 
 	private String table = "";
 	private String[] columns = new String[] {};
+	private Set<String> columnSet = Collections.emptySet();
 	private String idcolumn = "";
 
+	private int fetchSize = 0;
+
+	private boolean limitOffset = false;
+
+	/**
+	 * Translated SQL conditions by the structure of the request filter (string
+	 * literals replaced with placeholders), the least recently used conditions
+	 * are removed.
+	 */
+	private Map<String, String> filterCache;
+
 	/**
 	 * defines whetever multiple rows with the same id should be merged into one
 	 * resolvable. if <code>false</code> the last row overrides all previous
@@ -72,31 +105,43 @@ public abstract class AbstractSQLRequestProcessor extends RequestProcessor {
 		String colatt = dsprops.getProperty(COLUMNATTRIBUTE_KEY);
 		if (colatt != null) {
 			columns = colatt.split(",");
+			columnSet = new HashSet<String>(Arrays.asList(columns));
 		}
 
 		idcolumn = dsprops.getProperty(IDCOLUMN_KEY);
 
 		mergeOnIdColumn = config.getBoolean(MERGE_ON_IDCOLUMN_KEY, mergeOnIdColumn);
+		fetchSize = config.getInteger(FETCHSIZE_KEY, fetchSize);
+		limitOffset = config.getBoolean(LIMITOFFSET_KEY, limitOffset);
+		final int filterCacheSize = config.getInteger(FILTERCACHESIZE_KEY, 100);
+		filterCache = Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, String> eldest) {
+				return size() > filterCacheSize;
+			}
+		});
 	}
 
-	private static final Pattern CONTAINSONEOFPATTERN = Pattern.compile("object\\.([a-zA-Z0-9_]*)[ ]*CONTAINSONEOF[ ]*\\[(.*)\\]");
-	
 	protected abstract Connection getConnection() throws CRException;
 
-	private String translate(String requestFilter) {
-		//TANSLATE CONTAINSONEOF
-		Matcher matcher = CONTAINSONEOFPATTERN.matcher(requestFilter);
-
-		StringBuffer buf = new StringBuffer();
-		while (matcher.find()) {
-			String attrib = matcher.group(1);
-			String group = matcher.group(2);
-			matcher.appendReplacement(buf, attrib + " IN (" + group + ")");
+	/**
+	 * Translate a request filter, the translations are cached per structure
+	 * of the filter, so filters only differing in their string literals share
+	 * one translation.
+	 * @param requestFilter request filter
+	 * @return SQL condition with placeholders for the literal values
+	 */
+	private ParameterizedSQL translate(String requestFilter) {
+		ParameterizedSQL parameterized = ParameterizedSQL.parameterize(requestFilter);
+		String structure = parameterized.getSql();
+		String condition = filterCache.get(structure);
+		if (condition == null) {
+			condition = ParameterizedSQL.translateCondition(structure);
+			filterCache.put(structure, condition);
 		}
-		matcher.appendTail(buf);
-		requestFilter = buf.toString();
-
-		return requestFilter.replaceAll("==", "=").replaceAll("\"", "'");
+		return new ParameterizedSQL(condition, parameterized.getParameters());
 	}
 	
 	private String translateSorting(Sorting[] sorting) {
@@ -124,7 +169,8 @@ public abstract class AbstractSQLRequestProcessor extends RequestProcessor {
 		}
 	}
 
-	private String getStatement(String requestFilter, String[] attributes, Sorting[] sorting) {
+	private ParameterizedSQL getStatement(CRRequest request, boolean pushDownLimit) {
+		String[] attributes = request.getAttributeArray(idcolumn);
 		StringBuilder statement = new StringBuilder();
 		if (attributes == null || attributes.length == 0 || columns.length == 0) {
 			statement.append("*");
@@ -133,7 +179,7 @@ public abstract class AbstractSQLRequestProcessor extends RequestProcessor {
 				statement.append(idcolumn);
 			}
 			for (String att : attributes) {
-				if (Arrays.asList(columns).contains(att)) {
+				if (columnSet.contains(att)) {
 					if (statement.length() > 0) {
 						statement.append(",");
 					}
@@ -142,32 +188,63 @@ public abstract class AbstractSQLRequestProcessor extends RequestProcessor {
 			}
 
 		}
-		return ("SELECT " + statement.toString() + " FROM " + this.table + " WHERE " + translate(requestFilter) + translateSorting(sorting));
+		ParameterizedSQL condition = translate(request.getRequestFilter());
+		List<Object> parameters = new ArrayList<Object>(condition.getParameters());
+		StringBuilder sql = new StringBuilder("SELECT ").append(statement).append(" FROM ").append(this.table)
+				.append(" WHERE ").append(condition.getSql()).append(translateSorting(request.getSorting()));
+		int count = request.getCount();
+		if (pushDownLimit && limitOffset && count >= 0) {
+			sql.append(" LIMIT ? OFFSET ?");
+			parameters.add(count);
+			parameters.add(Math.max(request.getStart(), 0));
+		}
+		return new ParameterizedSQL(sql.toString(), parameters);
 	}
 
 	/**
-	*
-	* getObjects 
-	* @param request CRRequest
-	* @param doNavigation boolean
-	* @return resulting objects
-	* @throws CRException
-	*/
+	 * Prepare a statement and bind its values.
+	 * @param conn connection
+	 * @param statement SQL with placeholders and their values
+	 * @return statement ready to be executed
+	 * @throws SQLException if the statement cannot be prepared
+	 */
+	private PreparedStatement prepareStatement(Connection conn, ParameterizedSQL statement) throws SQLException {
+		PreparedStatement stmt = conn.prepareStatement(statement.getSql());
+		try {
+			if (fetchSize > 0) {
+				stmt.setFetchSize(fetchSize);
+			}
+			statement.bind(stmt);
+		} catch (SQLException e) {
+			stmt.close();
+			throw e;
+		}
+		return stmt;
+	}
+
+	/**
+	 *
+	 * getObjects 
+	 * @param request CRRequest
+	 * @param doNavigation boolean
+	 * @return resulting objects
+	 * @throws CRException
+	 */
 	@Override
 	public Collection<CRResolvableBean> getObjects(CRRequest request, boolean doNavigation) throws CRException {
 		ArrayList<CRResolvableBean> result = new ArrayList<CRResolvableBean>();
 
-		Statement stmt = null;
+		PreparedStatement stmt = null;
 		ResultSet rset = null;
 		Connection conn = null;
-		String statementString = getStatement(request.getRequestFilter(), request.getAttributeArray(idcolumn), request.getSorting());
+		ParameterizedSQL statement = getStatement(request, !mergeOnIdColumn);
 		try {
 			
 			conn = getConnection();
 
-			stmt = conn.createStatement();
-			logger.debug("Using statement: " + statementString);
-			rset = stmt.executeQuery(statementString);
+			logger.debug("Using statement: " + statement);
+			stmt = prepareStatement(conn, statement);
+			rset = stmt.executeQuery();
 
 			if (mergeOnIdColumn) {
 				result = getMergedObjectsFromResultSet(rset);
@@ -176,7 +253,7 @@ public abstract class AbstractSQLRequestProcessor extends RequestProcessor {
 			}
 
 		} catch (SQLException e) {
-			logger.error("Error executing query: " + statementString, e);
+			logger.error("Error executing query: " + statement, e);
 		} finally {
 			try {
 				if (rset != null) {
@@ -200,6 +277,41 @@ public abstract class AbstractSQLRequestProcessor extends RequestProcessor {
 		return result;
 	}
 
+	/**
+	 * Get the matching objects as an iterator that maps the rows while
+	 * iterating, so large results are not held in memory. Rows with the same
+	 * id are not merged. The iterator holds a connection until it was read to
+	 * the end or closed.
+	 * @param request request
+	 * @return iterator over the objects
+	 * @throws CRException if the query cannot be executed
+	 */
+	public ResultSetBeanIterator getObjectIterator(CRRequest request) throws CRException {
+		PreparedStatement stmt = null;
+		ResultSet rset = null;
+		Connection conn = getConnection();
+		ParameterizedSQL statement = getStatement(request, true);
+		try {
+			logger.debug("Using statement: " + statement);
+			stmt = prepareStatement(conn, statement);
+			rset = stmt.executeQuery();
+			return new ResultSetBeanIterator(conn, stmt, rset, idcolumn);
+		} catch (SQLException e) {
+			try {
+				if (rset != null) {
+					rset.close();
+				}
+				if (stmt != null) {
+					stmt.close();
+				}
+				conn.close();
+			} catch (SQLException closeException) {
+				logger.debug("Cannot close the connection.", closeException);
+			}
+			throw new CRException("Error executing query: " + statement, e);
+		}
+	}
+
 	/**
 	 * Get the names of all columns in the result set.
 	 * @param rset {@link ResultSet} to get the columns for.
@@ -207,19 +319,12 @@ public abstract class AbstractSQLRequestProcessor extends RequestProcessor {
 	 * case of an error.
 	 */
 	private String[] getColumnNamesFromResultSet(final ResultSet rset) {
-		int numcols;
-		String[] colnames;
 		try {
-			numcols = rset.getMetaData().getColumnCount();
-			colnames = new String[numcols];
-			for (int i = 1; i <= numcols; i++) {
-				colnames[i - 1] = rset.getMetaData().getColumnLabel(i);
-			}
+			return ResultSetBeanIterator.getColumnNames(rset);
 		} catch (SQLException e) {
 			logger.error("Error getting metadata from result.", e);
 			return new String[] {};
 		}
-		return colnames;
 	}
 
 	/**
@@ -232,24 +337,26 @@ public abstract class AbstractSQLRequestProcessor extends RequestProcessor {
 	private ArrayList<CRResolvableBean> getMergedObjectsFromResultSet(final ResultSet rset) {
 		ArrayList<CRResolvableBean> objects = new ArrayList<CRResolvableBean>();
 		String[] colnames = getColumnNamesFromResultSet(rset);
+		int idcolumnId = Arrays.asList(colnames).indexOf(idcolumn);
+		Map<String, CRResolvableBean> objectsById = new LinkedHashMap<String, CRResolvableBean>();
 		try {
 			while (rset.next()) {
 				CRResolvableBean bean = new ComparableBean();
-				int idcolumnId = Arrays.asList(colnames).indexOf(idcolumn);
 				if (idcolumnId != -1) {
 					String id = rset.getObject(idcolumnId + 1).toString();
 					bean.setContentid(id);
-					int indexOfBeanInObjects = objects.indexOf(bean);
-					if (indexOfBeanInObjects != -1) {
-						bean = objects.get(indexOfBeanInObjects);
+					CRResolvableBean existingBean = objectsById.get(id);
+					if (existingBean != null) {
+						bean = existingBean;
 					} else {
+						objectsById.put(id, bean);
 						objects.add(bean);
 					}
 				}
 				for (int i = 1; i <= colnames.length; i++) {
 					String attributeName = colnames[i - 1];
-					if (rset.getObject(i) != null) {
-						Object attributeValue = rset.getObject(i);
+					Object attributeValue = rset.getObject(i);
+					if (attributeValue != null) {
 						Object oldattributeValue = bean.get(attributeName);
 						if (oldattributeValue != null && !oldattributeValue.equals(attributeValue)) {
 							List<Object> values;
@@ -286,18 +393,7 @@ public abstract class AbstractSQLRequestProcessor extends RequestProcessor {
 
 		try {
 			while (rset.next()) {
-				CRResolvableBean bean = new CRResolvableBean();
-				for (int i = 1; i <= colnames.length; i++) {
-					String colname = colnames[i - 1];
-					if (colname != null && colname.equalsIgnoreCase(idcolumn)) {
-						Object o = rset.getObject(i);
-						bean.setContentid(o.toString());
-					}
-					if (rset.getObject(i) != null) {
-						bean.set(colname, rset.getObject(i));
-					}
-				}
-				objects.add(bean);
+				objects.add(ResultSetBeanIterator.createBean(rset, colnames, idcolumn));
 			}
 		} catch (SQLException e) {
 			logger.error("Error getting result items.", e);
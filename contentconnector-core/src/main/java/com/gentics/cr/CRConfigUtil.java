@@ -280,7 +280,7 @@ public class CRConfigUtil extends CRConfig {
 	 * @return pooled jdbc connection.
 	 * @throws Exception
 	 */
-	public synchronized Connection getPooledJDBCConnection() throws Exception {
+	public Connection getPooledJDBCConnection() throws Exception {
 		return ConnectionProvider.getPooledJDBCConnection(this);
 	}
 
@@ -376,6 +376,30 @@ public class CRRequest implements Cloneable, Serializable {
 		return (String) this.get("childFilter");
 	}
 
+	/**
+	 * Sets the number of child levels getNavigation fetches below the
+	 * requested objects.
+	 * 
+	 * @param navigationDepth number of levels, -1 for all levels
+	 */
+	public void setNavigationDepth(int navigationDepth) {
+		this.set("navigationDepth", navigationDepth);
+	}
+
+	/**
+	 * Gets the number of child levels getNavigation fetches below the
+	 * requested objects.
+	 * 
+	 * @return number of levels, defaults to -1 for all levels
+	 */
+	public int getNavigationDepth() {
+		Integer navigationDepth = (Integer) this.get("navigationDepth");
+		if (navigationDepth == null) {
+			return -1;
+		}
+		return navigationDepth;
+	}
+
 	/**
 	 * Set a HashMap of objects to deploy to the filter. See
 	 * <addObjectForFilterDeployment> for detailed description.
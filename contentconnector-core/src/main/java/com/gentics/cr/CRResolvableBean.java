@@ -496,7 +496,7 @@ public class CRResolvableBean extends AccessibleBean implements Serializable, Re
 		byte[] buf = getBinaryContent();
 		InputStream os = null;
 		if (buf != null) {
-			os = new ByteArrayInputStream(getBinaryContent());
+			os = new ByteArrayInputStream(buf);
 		}
 		return os;
 	}
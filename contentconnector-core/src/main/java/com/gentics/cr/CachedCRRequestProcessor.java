@@ -1,8 +1,13 @@
 package com.gentics.cr;
 
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Vector;
 
 import org.apache.jcs.JCS;
@@ -17,8 +22,8 @@ import com.gentics.api.lib.expressionparser.ExpressionParserException;
 import com.gentics.api.lib.expressionparser.filtergenerator.DatasourceFilter;
 import com.gentics.api.lib.resolving.Resolvable;
 import com.gentics.cr.exceptions.CRException;
-import com.gentics.cr.monitoring.MonitorFactory;
-import com.gentics.cr.monitoring.UseCase;
+import com.gentics.cr.monitoring.MetricRegistry;
+import com.gentics.cr.monitoring.Timer;
 
 /**
  * CachedCRRequestProcessor fixes a bug in Gentics PortalConnector which
@@ -51,6 +56,53 @@ public class CachedCRRequestProcessor extends RequestProcessor {
 	 */
 	private static final String UPDATEATTRIBUTE = "updatetimestamp";
 
+	/**
+	 * Configuration key for the interval in seconds the version of the content
+	 * repository is checked in. If set, cached results are validated against
+	 * the version instead of querying the datasource for each request.
+	 */
+	private static final String VERSION_CHECK_INTERVAL_KEY = "versioncheckinterval";
+
+	/**
+	 * Attribute containing the folder of an object.
+	 */
+	private static final String FOLDER_ID_ATTRIBUTE = "folder_id";
+
+	/**
+	 * Maximum number of folders whose children are fetched with one query.
+	 */
+	private static final int NAVIGATION_BATCH_SIZE = 500;
+
+	/**
+	 * Version of the content repository, <code>null</code> if each request
+	 * validates the cached result against the datasource.
+	 */
+	private ContentRepositoryVersion repositoryVersion = null;
+
+	/**
+	 * Timer of {@link #compare(Collection, Collection)}.
+	 */
+	private static final Timer VERIFY_TIMER = MetricRegistry.timer("CRRequestProcessor.compare()#verify");
+
+	/**
+	 * Timers of the requests, created once for the name of the config.
+	 */
+	private final Timer getObjectsTimer;
+
+	private final Timer navigationTimer;
+
+	private final Timer getResultTimer;
+
+	private final Timer fastResultTimer;
+
+	private final Timer cacheTimer;
+
+	private final Timer uncachedTimer;
+
+	private final Timer versionedResultTimer;
+
+	private final Timer versionedUncachedTimer;
+
 	/**
 	 * Create a new instance of CRRequestProcessor.
 	 * @param config TODO javadoc
@@ -58,6 +110,19 @@ public class CachedCRRequestProcessor extends RequestProcessor {
 	 */
 	public CachedCRRequestProcessor(final CRConfig config) throws CRException {
 		super(config);
+		int versionCheckInterval = config.getInteger(VERSION_CHECK_INTERVAL_KEY, 0);
+		if (versionCheckInterval > 0) {
+			repositoryVersion = ContentRepositoryVersion.getInstance(config.getName(), versionCheckInterval * 1000L);
+		}
+		String name = "(" + config.getName() + ")";
+		getObjectsTimer = MetricRegistry.timer("CRRequestProcessor.getObjects" + name);
+		navigationTimer = MetricRegistry.timer("CRRequestProcessor.fillChildrenByLevel" + name);
+		getResultTimer = MetricRegistry.timer("CRRequestProcessor.getResult" + name);
+		fastResultTimer = MetricRegistry.timer("CRRequestProcessor.getResult" + name + "#fastResult");
+		cacheTimer = MetricRegistry.timer("CRRequestProcessor.getResult" + name + "#cache");
+		uncachedTimer = MetricRegistry.timer("CRRequestProcessor.getResult" + name + "#uncached");
+		versionedResultTimer = MetricRegistry.timer("CRRequestProcessor.getVersionedResult" + name);
+		versionedUncachedTimer = MetricRegistry.timer("CRRequestProcessor.getVersionedResult" + name + "#uncached");
 	}
 
 	/**
@@ -69,7 +134,7 @@ public class CachedCRRequestProcessor extends RequestProcessor {
 	 */
 	public final Collection<CRResolvableBean> getObjects(final CRRequest request, final boolean doNavigation)
 			throws CRException {
-		UseCase getObjectCase = MonitorFactory.startUseCase("CRRequestProcessor.getObjects(" + config.getName() + ")");
+		long getObjectsStart = getObjectsTimer.start();
 		Datasource ds = null;
 		DatasourceFilter dsFilter;
 		Vector<CRResolvableBean> collection = new Vector<CRResolvableBean>();
@@ -95,25 +160,17 @@ public class CachedCRRequestProcessor extends RequestProcessor {
 				int last = request.getCount().intValue();
 				Sorting[] sorting = request.getSorting();
 				// do the query
-				Collection<Resolvable> col = getResult(ds, dsFilter, prefillAttributes, first, last, sorting);
+				Collection<Resolvable> col = fetchResult(ds, dsFilter, prefillAttributes, first, last, sorting);
 
 				// convert all objects to serializeable beans
 				if (col != null) {
 					for (Iterator<Resolvable> it = col.iterator(); it.hasNext();) {
 						CRResolvableBean crBean = new CRResolvableBean(it.next(), request.getAttributeArray());
-						if (this.config.getFolderType().equals(crBean.getObj_type()) && doNavigation) {
-							// Process child elements
-							String fltr = "object.folder_id=='" + crBean.getContentid() + "'";
-							if (request.getChildFilter() != null) {
-								fltr += "AND (" + request.getChildFilter() + ")";
-							}
-							// If object is a folder => retrieve the childs of the object
-							CRRequest childReq = request.Clone();
-							childReq.setRequestFilter(fltr);
-							crBean.fillChildRepository(this.getNavigation(childReq));
-						}
 						collection.add(this.replacePlinks(crBean, request));
 					}
+					if (doNavigation) {
+						fillChildrenByLevel(ds, collection, request);
+					}
 				}
 
 			} catch (ParserException e) {
@@ -127,12 +184,139 @@ public class CachedCRRequestProcessor extends RequestProcessor {
 				throw new CRException("DatasourceException", e.getMessage());
 			} finally {
 				CRDatabaseFactory.releaseDatasource(ds);
-				getObjectCase.stop();
+				getObjectsTimer.stop(getObjectsStart);
 			}
 		}
 		return collection;
 	}
 
+	/**
+	 * Fill the child repositories of the folders in the given beans and of all
+	 * their sub folders. The children of all folders of one tree level are
+	 * fetched with one query (per {@link #NAVIGATION_BATCH_SIZE} folders) and
+	 * their attributes are prefilled with it, so the number of queries depends
+	 * on the depth of the tree instead of the number of folders. The start
+	 * and count of the request are applied to the children of each folder.
+	 * @param ds {@link Datasource} to get the children from
+	 * @param beans beans of the top level
+	 * @param request request defining the attributes, sorting and child filter
+	 * @throws ParserException if the child filter cannot be parsed
+	 * @throws ExpressionParserException if the child filter is invalid
+	 * @throws DatasourceException if the children cannot be fetched
+	 */
+	private void fillChildrenByLevel(final Datasource ds, final Collection<CRResolvableBean> beans,
+			final CRRequest request) throws ParserException, ExpressionParserException, DatasourceException {
+		long navigationStart = navigationTimer.start();
+		try {
+			String[] prefillAttributes = request.getAttributeArray();
+			if (prefillAttributes == null) {
+				prefillAttributes = new String[] { FOLDER_ID_ATTRIBUTE };
+			} else if (!Arrays.asList(prefillAttributes).contains(FOLDER_ID_ATTRIBUTE)) {
+				prefillAttributes = Arrays.copyOf(prefillAttributes, prefillAttributes.length + 1);
+				prefillAttributes[prefillAttributes.length - 1] = FOLDER_ID_ATTRIBUTE;
+			}
+			int first = request.getStart().intValue();
+			int count = request.getCount().intValue();
+			List<CRResolvableBean> level = getFolders(beans);
+			while (!level.isEmpty()) {
+				List<CRResolvableBean> nextLevel = new ArrayList<CRResolvableBean>();
+				for (int start = 0; start < level.size(); start += NAVIGATION_BATCH_SIZE) {
+					List<CRResolvableBean> folders = level.subList(start,
+						Math.min(level.size(), start + NAVIGATION_BATCH_SIZE));
+					StringBuilder fltr = new StringBuilder("object.").append(FOLDER_ID_ATTRIBUTE).append(" CONTAINSONEOF [");
+					for (int i = 0; i < folders.size(); i++) {
+						fltr.append(i == 0 ? "'" : ", '").append(folders.get(i).getContentid()).append("'");
+					}
+					fltr.append("]");
+					if (request.getChildFilter() != null) {
+						fltr.append(" AND (").append(request.getChildFilter()).append(")");
+					}
+					CRRequest childReq = request.Clone();
+					childReq.setRequestFilter(fltr.toString());
+					DatasourceFilter dsFilter = childReq.getPreparedFilter(config, ds);
+					if (this.resolvables != null) {
+						for (Map.Entry<String, Resolvable> entry : this.resolvables.entrySet()) {
+							dsFilter.addBaseResolvable(entry.getKey(), entry.getValue());
+						}
+					}
+					Collection<Resolvable> col = fetchResult(ds, dsFilter, prefillAttributes, 0, -1,
+						request.getSorting());
+
+					// group the children by their folder, keeping the sort order
+					Map<String, List<CRResolvableBean>> childrenByFolder = new HashMap<String, List<CRResolvableBean>>();
+					if (col != null) {
+						for (Resolvable resolvable : col) {
+							CRResolvableBean crBean = new CRResolvableBean(resolvable, request.getAttributeArray());
+							String folderId = crBean.getString(FOLDER_ID_ATTRIBUTE);
+							List<CRResolvableBean> children = childrenByFolder.get(folderId);
+							if (children == null) {
+								children = new ArrayList<CRResolvableBean>();
+								childrenByFolder.put(folderId, children);
+							}
+							children.add(crBean);
+						}
+					}
+					for (CRResolvableBean folder : folders) {
+						List<CRResolvableBean> children = childrenByFolder.get(folder.getContentid());
+						if (children == null || first >= children.size()) {
+							continue;
+						}
+						int end = children.size();
+						if (count >= 0) {
+							end = Math.min(end, first + count);
+						}
+						Vector<CRResolvableBean> childRepository = new Vector<CRResolvableBean>();
+						for (CRResolvableBean child : children.subList(first, end)) {
+							childRepository.add(this.replacePlinks(child, request));
+						}
+						folder.fillChildRepository(childRepository);
+						nextLevel.addAll(getFolders(childRepository));
+					}
+				}
+				level = nextLevel;
+			}
+		} finally {
+			navigationTimer.stop(navigationStart);
+		}
+	}
+
+	/**
+	 * Get the folders of the given beans.
+	 * @param beans beans
+	 * @return beans that are folders
+	 */
+	private List<CRResolvableBean> getFolders(final Collection<CRResolvableBean> beans) {
+		List<CRResolvableBean> folders = new ArrayList<CRResolvableBean>();
+		for (CRResolvableBean bean : beans) {
+			if (this.config.getFolderType().equals(bean.getObj_type())) {
+				folders.add(bean);
+			}
+		}
+		return folders;
+	}
+
+	/**
+	 * Get the result from the cache, validated against the version of the
+	 * content repository if a version check interval is configured.
+	 * @param ds {@link Datasource} to get the objects from
+	 * @param dsFilter filter describing the objects to fetch from the
+	 * {@link Datasource}
+	 * @param prefillAttributes attributes that should be prefilled with the
+	 * result.
+	 * @param first index of the first item to fetch
+	 * @param last index of the last item to fetch. Use <code>-1</code> to get all
+	 * objects
+	 * @param sorting {@link Sorting} that should be used.
+	 * @return {@link Collection} of {@link Resolvable}s described by the filter.
+	 */
+	private Collection<Resolvable> fetchResult(final Datasource ds, final DatasourceFilter dsFilter,
+			final String[] prefillAttributes, final int first, final int last, final Sorting[] sorting) {
+		if (repositoryVersion != null) {
+			return getVersionedResult(ds, dsFilter, prefillAttributes, first, last, sorting);
+		}
+		return getResult(ds, dsFilter, prefillAttributes, first, last, sorting);
+	}
+
 	/**
 	 * This Method implements a caching due to a lack of performance in the
 	 * CNDatasource when getting a large result with prefilled Attributes.
@@ -151,7 +335,7 @@ public class CachedCRRequestProcessor extends RequestProcessor {
 	 */
 	private Collection<Resolvable> getResult(final Datasource ds, final DatasourceFilter dsFilter,
 			final String[] prefillAttributes, final int first, final int last, final Sorting[] sorting) {
-		UseCase getResultCase = MonitorFactory.startUseCase("CRRequestProcessor.getResult(" + config.getName() + ")");
+		long getResultStart = getResultTimer.start();
 		Collection<?> result;
 		Collection<Resolvable> checkCacheResult;
 		Collection<Resolvable> collection = null;
@@ -159,32 +343,82 @@ public class CachedCRRequestProcessor extends RequestProcessor {
 		String cacheKey = config.getName() + "-" + dsFilter.getExpressionString();
 
 		try {
-			UseCase getResultFastCase = MonitorFactory.startUseCase("CRRequestProcessor.getResult(" + config.getName()
-					+ ")#fastResult");
+			long fastResultStart = fastResultTimer.start();
 			checkCacheResult = toResolvableCollection(ds.getResult(dsFilter, new String[] {}, first, last, sorting));
-			getResultFastCase.stop();
+			fastResultTimer.stop(fastResultStart);
 
-			UseCase getResultCacheCase = MonitorFactory.startUseCase("CRRequestProcessor.getResult(" + config.getName()
-					+ ")#cache");
+			long cacheStart = cacheTimer.start();
 			cachedResult = getCachedResult(cacheKey);
-			getResultCacheCase.stop();
+			cacheTimer.stop(cacheStart);
 
 			boolean up2date = compare(cachedResult, checkCacheResult);
 
 			if (up2date) {
 				collection = cachedResult;
 			} else {
-				UseCase getResultUncachedCase = MonitorFactory.startUseCase("CRRequestProcessor.getResult("
-						+ config.getName() + ")#uncached");
+				long uncachedStart = uncachedTimer.start();
 				result = ds.getResult(dsFilter, prefillAttributes, first, last, sorting);
 				collection = toResolvableCollection(result);
 				saveResult(cacheKey, collection);
-				getResultUncachedCase.stop();
+				uncachedTimer.stop(uncachedStart);
 			}
 		} catch (DatasourceException e) {
 			logger.error("Cannot get the result from the Datasource.", e);
 		}
-		getResultCase.stop();
+		getResultTimer.stop(getResultStart);
+		return collection;
+	}
+
+	/**
+	 * Get the result from the cache if it was cached for the current version
+	 * of the content repository. Cache hits do not query the datasource, the
+	 * version is read at most once per configured interval. Results cached for
+	 * an older version are validated against the datasource once and then
+	 * cached for the current version, so only results that contain changed
+	 * objects are fetched again.
+	 * @param ds {@link Datasource} to get the objects from
+	 * @param dsFilter filter describing the objects to fetch from the
+	 * {@link Datasource}
+	 * @param prefillAttributes attributes that should be prefilled with the
+	 * result.
+	 * @param first index of the first item to fetch
+	 * @param last index of the last item to fetch. Use <code>-1</code> to get all
+	 * objects
+	 * @param sorting {@link Sorting} that should be used.
+	 * @return {@link Collection} of {@link Resolvable}s described by the filter.
+	 */
+	private Collection<Resolvable> getVersionedResult(final Datasource ds, final DatasourceFilter dsFilter,
+			final String[] prefillAttributes, final int first, final int last, final Sorting[] sorting) {
+		long versionedResultStart = versionedResultTimer.start();
+		Collection<Resolvable> collection = null;
+		StringBuilder cacheKey = new StringBuilder(config.getName()).append("-").append(dsFilter.getExpressionString())
+				.append("-").append(first).append("-").append(last);
+		if (sorting != null) {
+			for (Sorting sort : sorting) {
+				cacheKey.append("-").append(sort.getColumnName()).append(":").append(sort.getSortOrder());
+			}
+		}
+		try {
+			// read the version before the result, so the cached result is at least as new as the version
+			String version = repositoryVersion.getVersion(ds);
+			VersionedResult cachedResult = getCachedVersionedResult(cacheKey.toString());
+			if (cachedResult != null && version.equals(cachedResult.version)) {
+				collection = cachedResult.result;
+			} else if (cachedResult != null
+					&& compare(cachedResult.result, toResolvableCollection(ds.getResult(dsFilter, new String[] {}, first,
+						last, sorting)))) {
+				collection = cachedResult.result;
+				saveResult(cacheKey.toString(), new VersionedResult(version, collection));
+			} else {
+				long uncachedStart = versionedUncachedTimer.start();
+				collection = toResolvableCollection(ds.getResult(dsFilter, prefillAttributes, first, last, sorting));
+				saveResult(cacheKey.toString(), new VersionedResult(version, collection));
+				versionedUncachedTimer.stop(uncachedStart);
+			}
+		} catch (DatasourceException e) {
+			logger.error("Cannot get the result from the Datasource.", e);
+		}
+		versionedResultTimer.stop(versionedResultStart);
 		return collection;
 	}
 
@@ -195,7 +429,7 @@ public class CachedCRRequestProcessor extends RequestProcessor {
 	 * @return returns false if they are not equal
 	 */
 	public static boolean compare(final Collection<Resolvable> left, final Collection<Resolvable> right) {
-		UseCase getResultVerifyCase = MonitorFactory.startUseCase("CRRequestProcessor.compare()#verify");
+		long verifyStart = VERIFY_TIMER.start();
 		if (left.size() != right.size()) {
 			return false;
 		} else {
@@ -207,7 +441,7 @@ public class CachedCRRequestProcessor extends RequestProcessor {
 			for (Resolvable rightResolvable : right) {
 				rightUpdatetime = checkUpdatetime(rightResolvable, rightUpdatetime);
 			}
-			getResultVerifyCase.stop();
+			VERIFY_TIMER.stop(verifyStart);
 			if (rightUpdatetime != leftUpdatetime) {
 				return false;
 			}
@@ -248,12 +482,26 @@ public class CachedCRRequestProcessor extends RequestProcessor {
 		}
 	}
 
+	/**
+	 * get the result cached with the version of the content repository.
+	 * @param cacheKey key to get the result for
+	 * @return cached result or <code>null</code> if nothing was cached
+	 */
+	private VersionedResult getCachedVersionedResult(final String cacheKey) {
+		initCache();
+		Object cacheResultObject = resultCache.get(cacheKey);
+		if (cacheResultObject instanceof VersionedResult) {
+			return (VersionedResult) cacheResultObject;
+		}
+		return null;
+	}
+
 	/**
 	 * save the result to the cache.
 	 * @param cacheKey key to store the result under
 	 * @param result result to cache
 	 */
-	private void saveResult(final String cacheKey, final Collection<Resolvable> result) {
+	private void saveResult(final String cacheKey, final Object result) {
 		initCache();
 		try {
 			resultCache.put(cacheKey, result);
@@ -275,6 +523,38 @@ public class CachedCRRequestProcessor extends RequestProcessor {
 		}
 	}
 
+	/**
+	 * Cached result together with the version of the content repository it
+	 * was fetched or validated for.
+	 */
+	private static final class VersionedResult implements Serializable {
+
+		/**
+		 * Serial version uid.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Version of the content repository.
+		 */
+		private final String version;
+
+		/**
+		 * Cached objects.
+		 */
+		private final Collection<Resolvable> result;
+
+		/**
+		 * Create a new cached result.
+		 * @param version version of the content repository
+		 * @param result cached objects
+		 */
+		private VersionedResult(final String version, final Collection<Resolvable> result) {
+			this.version = version;
+			this.result = result;
+		}
+	}
+
 	@Override
 	public void finalize() {
 		// TODO Auto-generated method stub
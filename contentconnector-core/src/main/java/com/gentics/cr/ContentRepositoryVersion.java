@@ -0,0 +1,186 @@
+package com.gentics.cr;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+
+import com.gentics.api.lib.datasource.Datasource;
+import com.gentics.api.lib.datasource.Datasource.Sorting;
+import com.gentics.api.lib.datasource.DatasourceException;
+import com.gentics.api.lib.exception.ParserException;
+import com.gentics.api.lib.expressionparser.ExpressionParserException;
+import com.gentics.api.lib.expressionparser.filtergenerator.DatasourceFilter;
+import com.gentics.api.lib.resolving.Resolvable;
+import com.gentics.api.portalnode.connector.PortalConnectorFactory;
+import com.gentics.cr.events.Event;
+import com.gentics.cr.events.EventManager;
+import com.gentics.cr.events.IEventReceiver;
+import com.gentics.cr.monitoring.MonitorFactory;
+import com.gentics.cr.monitoring.UseCase;
+
+/**
+ * Cheap version token of the objects in a content repository. The token
+ * consists of the newest update timestamp, the number of objects and the
+ * objects updated within the newest second, so it changes whenever an object
+ * is added, changed or removed. It is read from the
+ * datasource at most once per interval and again after an event was fired
+ * (e.g. when an index job finished).
+ */
+public final class ContentRepositoryVersion implements IEventReceiver {
+
+	/**
+	 * Log4j logger for error and debug messages.
+	 */
+	private static final Logger LOGGER = Logger.getLogger(ContentRepositoryVersion.class);
+
+	/**
+	 * Attribute that changes whenever an object is changed.
+	 */
+	private static final String UPDATEATTRIBUTE = "updatetimestamp";
+
+	/**
+	 * Number of objects read at once when reading the objects updated within
+	 * the newest second.
+	 */
+	private static final int PAGESIZE = 100;
+
+	/**
+	 * Versions of the content repositories by the name of their configuration.
+	 */
+	private static final ConcurrentHashMap<String, ContentRepositoryVersion> VERSIONS =
+			new ConcurrentHashMap<String, ContentRepositoryVersion>();
+
+	/**
+	 * Minimum time in milliseconds between two reads of the version.
+	 */
+	private final long interval;
+
+	/**
+	 * Last version read from the datasource, <code>null</code> if it has to be
+	 * read on the next call.
+	 */
+	private volatile String version = null;
+
+	/**
+	 * Time the version was read.
+	 */
+	private volatile long readTime = 0;
+
+	/**
+	 * Create a new version and register it for events.
+	 * @param interval minimum time in milliseconds between two reads of the
+	 * version
+	 */
+	private ContentRepositoryVersion(final long interval) {
+		this.interval = interval;
+	}
+
+	/**
+	 * Get the version of a content repository.
+	 * @param name name of the configuration of the content repository
+	 * @param interval minimum time in milliseconds between two reads of the
+	 * version, only used when the version is created
+	 * @return version of the content repository
+	 */
+	public static ContentRepositoryVersion getInstance(final String name, final long interval) {
+		ContentRepositoryVersion repositoryVersion = VERSIONS.get(name);
+		if (repositoryVersion == null) {
+			ContentRepositoryVersion created = new ContentRepositoryVersion(interval);
+			repositoryVersion = VERSIONS.putIfAbsent(name, created);
+			if (repositoryVersion == null) {
+				repositoryVersion = created;
+				EventManager.getInstance().register(created);
+			}
+		}
+		return repositoryVersion;
+	}
+
+	/**
+	 * Get the current version, read it from the datasource if the interval
+	 * elapsed since the last read.
+	 * @param ds datasource of the content repository
+	 * @return version token
+	 * @throws DatasourceException if the version cannot be read
+	 */
+	public String getVersion(final Datasource ds) throws DatasourceException {
+		String current = version;
+		if (current != null && System.currentTimeMillis() - readTime < interval) {
+			return current;
+		}
+		synchronized (this) {
+			if (version == null || System.currentTimeMillis() - readTime >= interval) {
+				long now = System.currentTimeMillis();
+				version = readVersion(ds);
+				readTime = now;
+				LOGGER.debug("Read content repository version " + version);
+			}
+			return version;
+		}
+	}
+
+	/**
+	 * Read the newest update timestamp, the number of objects and the objects
+	 * updated within the newest second. The update timestamps only have a
+	 * precision of seconds, the objects of the newest second make sure an
+	 * object updated in the same second as the previously newest object still
+	 * changes the version.
+	 * @param ds datasource of the content repository
+	 * @return version token
+	 * @throws DatasourceException if the datasource cannot be queried
+	 */
+	private String readVersion(final Datasource ds) throws DatasourceException {
+		UseCase uc = MonitorFactory.startUseCase("ContentRepositoryVersion.readVersion()");
+		try {
+			DatasourceFilter filter = ds.createDatasourceFilter(PortalConnectorFactory.createExpression("true"));
+			int count = ds.getCount(filter);
+			Sorting[] sorting = new Sorting[] { new Sorting(UPDATEATTRIBUTE, Datasource.SORTORDER_DESC) };
+			Object updatetimestamp = null;
+			int newestCount = 0;
+			int newestHash = 0;
+			boolean more = true;
+			for (int start = 0; more; start += PAGESIZE) {
+				Collection<Resolvable> newest = ds.getResult(filter, new String[] { UPDATEATTRIBUTE }, start, PAGESIZE,
+					sorting);
+				more = newest != null && newest.size() == PAGESIZE;
+				if (newest != null) {
+					for (Resolvable object : newest) {
+						Object objectTimestamp = object.get(UPDATEATTRIBUTE);
+						if (updatetimestamp == null && newestCount == 0) {
+							updatetimestamp = objectTimestamp;
+						} else if (!String.valueOf(updatetimestamp).equals(String.valueOf(objectTimestamp))) {
+							more = false;
+							break;
+						}
+						newestCount++;
+						newestHash += String.valueOf(object.get("contentid")).hashCode();
+					}
+				}
+			}
+			return updatetimestamp + "-" + count + "-" + newestCount + "-" + Integer.toHexString(newestHash);
+		} catch (ParserException e) {
+			throw new DatasourceException("Cannot create the filter for the content repository version.", e);
+		} catch (ExpressionParserException e) {
+			throw new DatasourceException("Cannot create the filter for the content repository version.", e);
+		} finally {
+			uc.stop();
+		}
+	}
+
+	/**
+	 * Make the next call to {@link #getVersion(Datasource)} read the version
+	 * from the datasource. Called when the content repository was changed.
+	 */
+	public void invalidate() {
+		version = null;
+	}
+
+	/**
+	 * Read the version again on the next request after an event, e.g. when an
+	 * index job finished.
+	 * @param event fired event
+	 */
+	public void processEvent(final Event event) {
+		invalidate();
+	}
+}
@@ -2,12 +2,17 @@ package com.gentics.cr;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang.ArrayUtils;
@@ -25,6 +30,9 @@ import com.gentics.api.lib.expressionparser.filtergenerator.DatasourceFilter;
 import com.gentics.api.lib.resolving.Resolvable;
 import com.gentics.api.portalnode.connector.PortalConnectorFactory;
 import com.gentics.cr.exceptions.CRException;
+import com.gentics.cr.monitoring.MetricRegistry;
+import com.gentics.cr.monitoring.Timer;
+import com.gentics.cr.nav.NavigationSnapshot;
 import com.gentics.cr.util.ArrayHelper;
 import com.gentics.cr.util.CRUtil;
 
@@ -59,6 +67,25 @@ import com.gentics.cr.util.CRUtil;
  * rp.1.rpClass=com.gentics.cr.OptimisticNavigationRequestProcessor
  * rp.1.usenodeidinchildrule=true
  * </pre>
+ * <p>
+ * With <code>navigationsnapshot</code> the objects matching a child filter are
+ * kept in a {@link NavigationSnapshot} and navigation requests are answered
+ * from memory. The snapshot is updated when the version of the content
+ * repository changes, which is checked every <code>versioncheckinterval</code>
+ * seconds (default 60). At most <code>navigationsnapshotsize</code> snapshots
+ * (default 20) are kept, each caching the root objects of at most
+ * <code>navigationrootssize</code> requests (default 100), the least recently
+ * used ones are dropped. With <code>usenodeidinchildrule</code> only the
+ * children in the nodes of the root objects are returned, like without the
+ * snapshot.
+ * </p>
+ * 
+ * <pre>
+ * rp.1.navigationsnapshot=true
+ * rp.1.versioncheckinterval=60
+ * rp.1.navigationsnapshotsize=20
+ * rp.1.navigationrootssize=100
+ * </pre>
  * 
  * @author l.osang@gentics.com, c.supnig@gentics.com, s.vogel@gentics.com
  * 
@@ -77,6 +104,39 @@ public class OptimisticNavigationRequestProcessor extends RequestProcessor {
 
 	private static final String NODE_ID_CHILDREN_FEATURE_KEY = "usenodeidinchildrule";
 
+	/**
+	 * Key to answer navigation requests from a {@link NavigationSnapshot}.
+	 */
+	private static final String NAVIGATION_SNAPSHOT_KEY = "navigationsnapshot";
+
+	/**
+	 * Key for the interval in seconds the version of the content repository is
+	 * checked in when the navigation snapshot is used.
+	 */
+	private static final String VERSION_CHECK_INTERVAL_KEY = "versioncheckinterval";
+
+	/**
+	 * Default interval in seconds the version of the content repository is
+	 * checked in.
+	 */
+	private static final int DEFAULT_VERSION_CHECK_INTERVAL = 60;
+
+	/**
+	 * Key for the maximum number of navigation snapshots.
+	 */
+	private static final String SNAPSHOT_SIZE_KEY = "navigationsnapshotsize";
+
+	/**
+	 * Key for the maximum number of requests the root objects are cached for
+	 * in each navigation snapshot.
+	 */
+	private static final String ROOTS_SIZE_KEY = "navigationrootssize";
+
+	/**
+	 * Attribute that changes whenever an object is changed.
+	 */
+	private static final String UPDATEATTRIBUTE = "updatetimestamp";
+
 	/** String of content map folder id column, default: "folder_id". */
 	private String folderIdContentmapName = "folder_id";
 	/** String of content map node id column, default: "node_id". */
@@ -84,6 +144,42 @@ public class OptimisticNavigationRequestProcessor extends RequestProcessor {
 	/** Boolean, if node id should be recognized for childfilter */
 	private boolean usenodeidsinchildrule = false;
 
+	/**
+	 * Version of the content repository, <code>null</code> if the navigation
+	 * snapshot is not used.
+	 */
+	private ContentRepositoryVersion repositoryVersion = null;
+
+	/**
+	 * Navigation snapshots by child filter, attributes and sorting, in access
+	 * order. <code>null</code> if the navigation snapshot is not used.
+	 */
+	private Map<String, SnapshotHolder> snapshots = null;
+
+	/** Maximum number of requests the root objects are cached for. */
+	private int maxRoots = 100;
+
+	/** Timer of the navigation requests answered from a snapshot. */
+	private Timer snapshotNavigationTimer = null;
+
+	/** Timer of the snapshot builds. */
+	private Timer buildSnapshotTimer = null;
+
+	/** Timer of the snapshot updates. */
+	private Timer updateSnapshotTimer = null;
+
+	/**
+	 * Current snapshot of a child filter, attributes and sorting.
+	 */
+	private static final class SnapshotHolder {
+
+		/** Lock held while the snapshot is built. */
+		private final ReentrantLock lock = new ReentrantLock();
+
+		/** Current snapshot, <code>null</code> until it is built. */
+		private volatile NavigationSnapshot snapshot = null;
+	}
+
 	/**
 	 * Create a new instance of CRRequestProcessor.
 	 * 
@@ -103,6 +199,29 @@ public class OptimisticNavigationRequestProcessor extends RequestProcessor {
 
 		usenodeidsinchildrule = ObjectTransformer.getBoolean(config.getString(NODE_ID_CHILDREN_FEATURE_KEY), false);
 		logger.debug("Using node id in child rule: " + usenodeidsinchildrule);
+
+		if (ObjectTransformer.getBoolean(config.getString(NAVIGATION_SNAPSHOT_KEY), false)) {
+			int versionCheckInterval = config.getInteger(VERSION_CHECK_INTERVAL_KEY, DEFAULT_VERSION_CHECK_INTERVAL);
+			repositoryVersion = ContentRepositoryVersion.getInstance(config.getName(),
+				Math.max(1, versionCheckInterval) * 1000L);
+			final int maxSnapshots = config.getInteger(SNAPSHOT_SIZE_KEY, 20);
+			snapshots = Collections.synchronizedMap(new LinkedHashMap<String, SnapshotHolder>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(final Map.Entry<String, SnapshotHolder> eldest) {
+					return size() > maxSnapshots;
+				}
+			});
+			maxRoots = config.getInteger(ROOTS_SIZE_KEY, maxRoots);
+			snapshotNavigationTimer = MetricRegistry.timer("OptimisticNavigationRequestProcessor.getSnapshotNavigation("
+					+ config.getName() + ")");
+			buildSnapshotTimer = MetricRegistry.timer("OptimisticNavigationRequestProcessor.buildSnapshot("
+					+ config.getName() + ")");
+			updateSnapshotTimer = MetricRegistry.timer("OptimisticNavigationRequestProcessor.updateSnapshot("
+					+ config.getName() + ")");
+			logger.debug("Using navigation snapshots, checking the version every " + versionCheckInterval + "s");
+		}
 	}
 
 	/**
@@ -119,6 +238,10 @@ public class OptimisticNavigationRequestProcessor extends RequestProcessor {
 	 */
 	public Collection<CRResolvableBean> getObjects(final CRRequest request, final boolean doNavigation)
 			throws CRException {
+		if (doNavigation && repositoryVersion != null && request != null
+				&& (request.getObjectsToDeploy() == null || request.getObjectsToDeploy().isEmpty())) {
+			return getSnapshotNavigation(request);
+		}
 		Datasource ds = null;
 		DatasourceFilter dsFilter;
 		Vector<CRResolvableBean> collection = new Vector<CRResolvableBean>();
@@ -205,7 +328,8 @@ public class OptimisticNavigationRequestProcessor extends RequestProcessor {
 
 						for (CRResolvableBean item : collection) {
 							// build the tree
-							recursiveTreeBuild(item, prepareFolderMap, sorting, itemsToPrefetch);
+							recursiveTreeBuild(item, prepareFolderMap, sorting, itemsToPrefetch,
+								request.getNavigationDepth());
 						}
 
 						if (logger.isDebugEnabled()) {
@@ -348,9 +472,11 @@ public class OptimisticNavigationRequestProcessor extends RequestProcessor {
 	 *            the sorting
 	 * @param itemsToPrefetch
 	 *            the items to prefetch
+	 * @param depth
+	 *            number of child levels to build, -1 for all levels
 	 */
 	private void recursiveTreeBuild(CRResolvableBean root, HashMap<String, Vector<CRResolvableBean>> folderMap,
-			Sorting[] sorting, Map<Resolvable, CRResolvableBean> itemsToPrefetch) {
+			Sorting[] sorting, Map<Resolvable, CRResolvableBean> itemsToPrefetch, int depth) {
 
 		// fill to items that should be filled with attributes
 		itemsToPrefetch.put(root.getResolvable(), root);
@@ -359,7 +485,7 @@ public class OptimisticNavigationRequestProcessor extends RequestProcessor {
 		Vector<CRResolvableBean> children = folderMap.get(root.getContentid());
 
 		// brake condition, there are no children for this tree node
-		if (CollectionUtils.isEmpty(children)) {
+		if (CollectionUtils.isEmpty(children) || depth == 0) {
 			return;
 		}
 
@@ -374,8 +500,291 @@ public class OptimisticNavigationRequestProcessor extends RequestProcessor {
 		for (CRResolvableBean crResolvableBean : children) {
 
 			// recursive call to build children map
-			recursiveTreeBuild(crResolvableBean, folderMap, sorting, itemsToPrefetch);
+			recursiveTreeBuild(crResolvableBean, folderMap, sorting, itemsToPrefetch, depth < 0 ? depth : depth - 1);
+		}
+	}
+
+	/**
+	 * Answer a navigation request from the snapshot of its child filter. The
+	 * datasource is only accessed when the snapshot is built or updated and
+	 * the first time the root objects of a request filter are requested for a
+	 * snapshot.
+	 * 
+	 * @param request
+	 *            navigation request
+	 * @return root objects with their children
+	 * @throws CRException
+	 *             if the snapshot or the root objects cannot be fetched
+	 */
+	private Collection<CRResolvableBean> getSnapshotNavigation(final CRRequest request) throws CRException {
+		long start = snapshotNavigationTimer.start();
+		Datasource ds = null;
+		try {
+			ds = this.config.getDatasource();
+			if (ds == null) {
+				throw (new DatasourceException("No Datasource available."));
+			}
+			NavigationSnapshot snapshot = getSnapshot(request, repositoryVersion.getVersion(ds));
+
+			StringBuilder rootKey = new StringBuilder(String.valueOf(request.getRequestFilter()));
+			rootKey.append('|').append(request.getStart()).append('|').append(request.getCount());
+			rootKey.append('|').append(getSortingKey(request.getSorting()));
+			rootKey.append('|').append(StringUtils.join(request.getAttributeArray(), ','));
+			List<CRResolvableBean> roots = snapshot.getRoots(rootKey.toString());
+			if (roots == null) {
+				Collection<CRResolvableBean> rootBeans = getObjects(request, false);
+				if (usenodeidsinchildrule) {
+					// keep the node ids of the roots, the cached copies have no
+					// resolvable to fetch them later
+					for (CRResolvableBean rootBean : rootBeans) {
+						rootBean.set(nodeIdContentMapName, rootBean.getString(nodeIdContentMapName, null));
+					}
+				}
+				snapshot.putRoots(rootKey.toString(), rootBeans);
+				roots = snapshot.getRoots(rootKey.toString());
+			}
+
+			Set<String> nodeIds = new HashSet<String>();
+			if (usenodeidsinchildrule) {
+				boolean nodeIdRequested = request.getAttributeArray() != null
+						&& Arrays.asList(request.getAttributeArray()).contains(nodeIdContentMapName);
+				for (CRResolvableBean root : roots) {
+					// get all node ids of root elements
+					String nodeId = root.getString(nodeIdContentMapName, null);
+					if (!StringUtils.isEmpty(nodeId)) {
+						nodeIds.add(nodeId);
+					}
+					if (!nodeIdRequested) {
+						root.getAttrMap().remove(nodeIdContentMapName);
+					}
+				}
+			}
+
+			Vector<CRResolvableBean> collection = new Vector<CRResolvableBean>(roots.size());
+			for (CRResolvableBean root : roots) {
+				root.setChildRepository(snapshot.getChildren(root.getContentid(), request.getNavigationDepth(),
+					nodeIdContentMapName, nodeIds));
+				collection.add(root);
+			}
+			return collection;
+		} catch (DatasourceException e) {
+			logger.error("Error getting result from Datasource.", e);
+			throw new CRException(e);
+		} finally {
+			CRDatabaseFactory.releaseDatasource(ds);
+			snapshotNavigationTimer.stop(start);
+		}
+	}
+
+	/**
+	 * Get the snapshot for the child filter, attributes and sorting of the
+	 * request. A missing snapshot is built, an outdated one is updated by one
+	 * request while the other requests keep using it.
+	 * 
+	 * @param request
+	 *            navigation request
+	 * @param version
+	 *            current version of the content repository
+	 * @return snapshot
+	 * @throws CRException
+	 *             if the snapshot cannot be built
+	 */
+	private NavigationSnapshot getSnapshot(final CRRequest request, final String version) throws CRException {
+		String[] attributes = getSnapshotAttributes(request);
+		String key = request.getChildFilter() + "|" + StringUtils.join(attributes, ',') + "|"
+				+ getSortingKey(request.getSorting());
+		SnapshotHolder holder;
+		synchronized (snapshots) {
+			holder = snapshots.get(key);
+			if (holder == null) {
+				holder = new SnapshotHolder();
+				snapshots.put(key, holder);
+			}
+		}
+
+		NavigationSnapshot snapshot = holder.snapshot;
+		if (snapshot != null && version.equals(snapshot.getVersion())) {
+			return snapshot;
+		}
+		if (snapshot == null) {
+			holder.lock.lock();
+		} else if (!holder.lock.tryLock()) {
+			// another request is updating the snapshot
+			return snapshot;
+		}
+		try {
+			snapshot = holder.snapshot;
+			if (snapshot == null) {
+				holder.snapshot = buildSnapshot(request, attributes, version);
+			} else if (!version.equals(snapshot.getVersion())) {
+				holder.snapshot = updateSnapshot(request, snapshot, version);
+			}
+			return holder.snapshot;
+		} finally {
+			holder.lock.unlock();
+		}
+	}
+
+	/**
+	 * Build a new snapshot of all objects matching the child filter.
+	 * 
+	 * @param request
+	 *            navigation request
+	 * @param attributes
+	 *            attributes to store
+	 * @param version
+	 *            current version of the content repository
+	 * @return new snapshot
+	 * @throws CRException
+	 *             if the objects cannot be fetched
+	 */
+	private NavigationSnapshot buildSnapshot(final CRRequest request, final String[] attributes, final String version)
+			throws CRException {
+		long start = buildSnapshotTimer.start();
+		try {
+			Collection<CRResolvableBean> beans = getSnapshotObjects(getSnapshotFilter(request), attributes);
+			logger.debug("Built navigation snapshot of " + beans.size() + " objects for version " + version);
+			return new NavigationSnapshot(version, getMaxUpdatetimestamp(beans, 0), beans, attributes,
+					folderIdContentmapName, request.getSorting(), maxRoots);
+		} finally {
+			buildSnapshotTimer.stop(start);
+		}
+	}
+
+	/**
+	 * Update a snapshot with the objects changed since it was built. Objects
+	 * that no longer match the child filter are removed. If objects joined the
+	 * child filter without being changed, the snapshot is built again.
+	 * 
+	 * @param request
+	 *            navigation request
+	 * @param snapshot
+	 *            outdated snapshot
+	 * @param version
+	 *            current version of the content repository
+	 * @return updated snapshot
+	 * @throws CRException
+	 *             if the objects cannot be fetched
+	 */
+	private NavigationSnapshot updateSnapshot(final CRRequest request, final NavigationSnapshot snapshot,
+			final String version) throws CRException {
+		long start = updateSnapshotTimer.start();
+		try {
+			String[] attributes = getSnapshotAttributes(request);
+			String snapshotFilter = getSnapshotFilter(request);
+			// only the content ids of all objects matching the child filter
+			CRRequest matchingRequest = new CRRequest();
+			matchingRequest.setRequestFilter(snapshotFilter);
+			Set<String> matching = new HashSet<String>();
+			for (CRResolvableBean bean : getObjects(matchingRequest, false)) {
+				matching.add(bean.getContentid());
+			}
+
+			// objects changed in the same second as the newest object may be missing in the snapshot
+			Collection<CRResolvableBean> changed = getSnapshotObjects("(" + snapshotFilter + ") AND object."
+					+ UPDATEATTRIBUTE + " >= " + snapshot.getMaxUpdatetimestamp(), attributes);
+			Set<String> known = new HashSet<String>(matching.size());
+			for (CRResolvableBean bean : changed) {
+				known.add(bean.getContentid());
+			}
+			for (String contentid : matching) {
+				if (!known.contains(contentid) && !snapshot.contains(contentid)) {
+					logger.debug("Objects joined the navigation without being changed, building a new snapshot");
+					return buildSnapshot(request, attributes, version);
+				}
+			}
+			logger.debug("Updating navigation snapshot with " + changed.size() + " changed objects for version "
+					+ version);
+			return snapshot.update(version, getMaxUpdatetimestamp(changed, snapshot.getMaxUpdatetimestamp()), changed,
+				matching, request.getSorting());
+		} finally {
+			updateSnapshotTimer.stop(start);
+		}
+	}
+
+	/**
+	 * Fetch the objects for a snapshot.
+	 * 
+	 * @param filter
+	 *            filter of the objects
+	 * @param attributes
+	 *            attributes to store in the snapshot
+	 * @return objects with the attributes and their update timestamp
+	 * @throws CRException
+	 *             if the objects cannot be fetched
+	 */
+	private Collection<CRResolvableBean> getSnapshotObjects(final String filter, final String[] attributes)
+			throws CRException {
+		CRRequest objectsRequest = new CRRequest();
+		objectsRequest.setRequestFilter(filter);
+		objectsRequest.setAttributeArray((String[]) ArrayUtils.add(attributes, UPDATEATTRIBUTE));
+		return getObjects(objectsRequest, false);
+	}
+
+	/**
+	 * @param request
+	 *            navigation request
+	 * @return filter of the objects in the snapshot of the request
+	 */
+	private String getSnapshotFilter(final CRRequest request) {
+		if (StringUtils.isEmpty(request.getChildFilter())) {
+			return "true";
+		}
+		return request.getChildFilter();
+	}
+
+	/**
+	 * Get the attributes stored in the snapshot, the same attributes the
+	 * children get without snapshot.
+	 * 
+	 * @param request
+	 *            navigation request
+	 * @return requested attributes, folder and node id and sorted attributes
+	 */
+	private String[] getSnapshotAttributes(final CRRequest request) {
+		Set<String> attributes = new LinkedHashSet<String>();
+		if (request.getAttributeArray() != null) {
+			attributes.addAll(Arrays.asList(request.getAttributeArray()));
+		}
+		attributes.add(folderIdContentmapName);
+		attributes.add(nodeIdContentMapName);
+		Sorting[] sorting = request.getSorting();
+		if (sorting != null) {
+			for (Sorting sortingElement : sorting) {
+				attributes.add(sortingElement.getColumnName());
+			}
+		}
+		return attributes.toArray(new String[attributes.size()]);
+	}
+
+	/**
+	 * @param sorting
+	 *            sorting, may be <code>null</code>
+	 * @return key of the sorting
+	 */
+	private static String getSortingKey(final Sorting[] sorting) {
+		StringBuilder key = new StringBuilder();
+		if (sorting != null) {
+			for (Sorting sortingElement : sorting) {
+				key.append(sortingElement.getColumnName()).append(':').append(sortingElement.getSortOrder()).append(',');
+			}
+		}
+		return key.toString();
+	}
+
+	/**
+	 * @param beans
+	 *            objects
+	 * @param updatetimestamp
+	 *            update timestamp to start with
+	 * @return newest update timestamp of the objects
+	 */
+	private static int getMaxUpdatetimestamp(final Collection<CRResolvableBean> beans, final int updatetimestamp) {
+		int max = updatetimestamp;
+		for (CRResolvableBean bean : beans) {
+			max = Math.max(max, bean.getInteger(UPDATEATTRIBUTE, 0));
 		}
+		return max;
 	}
 
 	/*
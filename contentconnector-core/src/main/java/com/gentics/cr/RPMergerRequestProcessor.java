@@ -2,6 +2,10 @@ package com.gentics.cr;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.gentics.cr.exceptions.CRException;
 
@@ -44,6 +48,31 @@ public class RPMergerRequestProcessor extends RequestProcessor {
 	 */
 	private static final String MERGE_ATTRIBUTE_DEFAULT = "contentid";
 
+	/**
+	 * Configuration key for the maximum number of ids in one request to the
+	 * second {@link RequestProcessor}.
+	 */
+	private static final String MERGE_BATCH_SIZE_KEY = "mergebatchsize";
+
+	/**
+	 * Configuration key for the number of threads requesting the batches from
+	 * the second {@link RequestProcessor}. With 1 thread (the default) the
+	 * batches are requested one after the other in the calling thread.
+	 */
+	private static final String MERGE_THREADS_KEY = "mergethreads";
+
+	/**
+	 * Maximum number of ids in one request to the second
+	 * {@link RequestProcessor}.
+	 */
+	private int mergeBatchSize;
+
+	/**
+	 * Executor for the requests to the second {@link RequestProcessor},
+	 * <code>null</code> if they are made in the calling thread.
+	 */
+	private ExecutorService mergeExecutor = null;
+
 	/**
 	 * Initialize the RequestProcessorMergerRequestProcessor.
 	 * @param config Configuration for the RequestProcessor
@@ -55,13 +84,28 @@ public class RPMergerRequestProcessor extends RequestProcessor {
 		rp1 = config.getNewRequestProcessorInstance(1);
 		rp2 = config.getNewRequestProcessorInstance(2);
 		mergeattribute = config.getString(MERGE_ATTRIBUTE_KEY, MERGE_ATTRIBUTE_DEFAULT);
+		mergeBatchSize = config.getInteger(MERGE_BATCH_SIZE_KEY, RequestProcessorMerger.DEFAULT_BATCH_SIZE);
+		int mergeThreads = config.getInteger(MERGE_THREADS_KEY, 1);
+		if (mergeThreads > 1) {
+			final String threadName = "RPMerger-" + config.getName() + "-";
+			mergeExecutor = Executors.newFixedThreadPool(mergeThreads, new ThreadFactory() {
+				private final AtomicInteger number = new AtomicInteger();
+
+				public Thread newThread(final Runnable runnable) {
+					Thread thread = new Thread(runnable, threadName + number.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
 	}
 
 	@Override
 	public final Collection<CRResolvableBean> getObjects(final CRRequest request, final boolean doNavigation)
 			throws CRException {
 		ArrayList<CRResolvableBean> coll = null;
-		coll = (ArrayList<CRResolvableBean>) RequestProcessorMerger.merge(mergeattribute, rp1, rp2, request);
+		coll = (ArrayList<CRResolvableBean>) RequestProcessorMerger.merge(mergeattribute, rp1, rp2, request,
+			mergeBatchSize, mergeExecutor);
 		return coll;
 	}
 
@@ -70,6 +114,9 @@ public class RPMergerRequestProcessor extends RequestProcessor {
 	 */
 	@Override
 	public final void finalize() {
+		if (mergeExecutor != null) {
+			mergeExecutor.shutdownNow();
+		}
 		rp1.finalize();
 		rp2.finalize();
 	}
@@ -15,11 +15,9 @@ import org.apache.log4j.Logger;
 
 import com.gentics.api.lib.etc.ObjectTransformer;
 import com.gentics.api.lib.resolving.Resolvable;
-import com.gentics.api.portalnode.connector.PortalConnectorHelper;
 import com.gentics.cr.exceptions.CRException;
 import com.gentics.cr.plink.PathResolver;
 import com.gentics.cr.plink.PlinkProcessor;
-import com.gentics.cr.plink.PlinkReplacer;
 import com.gentics.cr.template.ITemplateManager;
 
 /**
@@ -131,7 +129,7 @@ public abstract class RequestProcessor {
 				if (attr instanceof String) {
 					crBean.set(
 						plinkAttrArray[i],
-						PortalConnectorHelper.replacePLinks((String) attr, new PlinkReplacer(this.plinkProc, request)));
+						this.plinkProc.replacePlinks((String) attr, request));
 				}
 			}
 		}
@@ -309,7 +307,7 @@ public abstract class RequestProcessor {
 						long start = new Date().getTime();
 
 						// replace plinks
-						s = PortalConnectorHelper.replacePLinks(s, new PlinkReplacer(this.plinkProc, request));
+						s = this.plinkProc.replacePlinks(s, request);
 
 						// endtime
 						long end = new Date().getTime();
@@ -2,9 +2,16 @@ package com.gentics.cr;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import com.gentics.cr.exceptions.CRException;
 
@@ -17,6 +24,11 @@ import com.gentics.cr.exceptions.CRException;
  */
 public class RequestProcessorMerger {
 
+	/**
+	 * Default maximum number of ids in one request to the secondary request processor.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
 	/**
 	 * Set this property of the request to true in order to use the beans of the secondary request processor.
 	 */
@@ -99,41 +111,74 @@ public class RequestProcessorMerger {
 	 */
 	public static Collection<CRResolvableBean> merge(String uniquemergeattribute, RequestProcessor primaryRP, RequestProcessor secondaryRP,
 			CRRequest request) throws CRException {
+		return merge(uniquemergeattribute, primaryRP, secondaryRP, request, DEFAULT_BATCH_SIZE, null);
+	}
 
-		Collection<CRResolvableBean> rp1res = primaryRP.getObjects(request);
-
-		ArrayList<CRResolvableBean> result = new ArrayList<CRResolvableBean>();
+	/**
+	 * Merge the results of two request processor. The primary RequestProcessor overrules the secondary RP.
+	 * The ids of the primary results are split into batches, each batch is requested from the secondary RP
+	 * on the executor. The merged result keeps the order of the primary RP.
+	 * @param uniquemergeattribute attribute to join the objects of both request processors
+	 * @param primaryRP request processor that gets the objects
+	 * @param secondaryRP request processor that enriches the objects
+	 * @param request request for the primary RP
+	 * @param batchSize maximum number of ids in one request to the secondary RP, 0 or less for one request
+	 * @param executor executor for the requests to the secondary RP, <code>null</code> to run them in the
+	 * calling thread
+	 * @return merged objects
+	 * @throws CRException if one of the request processors fails
+	 */
+	public static Collection<CRResolvableBean> merge(final String uniquemergeattribute, final RequestProcessor primaryRP,
+			final RequestProcessor secondaryRP, final CRRequest request, final int batchSize, final ExecutorService executor)
+			throws CRException {
 
-		LinkedHashMap<Object, CRResolvableBean> resultMap = new LinkedHashMap<Object, CRResolvableBean>();
-		LinkedHashMap<Object, CRResolvableBean> resultMap2 = new LinkedHashMap<Object, CRResolvableBean>();
+		Collection<CRResolvableBean> rp1res = primaryRP.getObjects(request);
 
-		String mergefilter = "";
+		ArrayList<CRResolvableBean> result = new ArrayList<CRResolvableBean>(rp1res.size());
 
-		boolean first = true;
+		LinkedHashMap<Object, CRResolvableBean> resultMap = new LinkedHashMap<Object, CRResolvableBean>(rp1res.size() * 2);
 
 		for (CRResolvableBean crBean : rp1res) {
-			Object id = crBean.get(uniquemergeattribute);
-			if (first) {
-				first = false;
-				mergefilter += "\"" + id + "\"";
-			} else {
-				mergefilter += "," + "\"" + id + "\"";
-			}
-			resultMap.put(id, crBean);
+			resultMap.put(crBean.get(uniquemergeattribute), crBean);
 		}
 		rp1res = null;
-		CRRequest request2 = new CRRequest();
-		request2.setAttributeArray(request.getAttributeArray());
-		request2.setDoReplacePlinks(request.getDoReplacePlinks());
-		request2.setDoVelocity(request.getDoVelocity());
-		request2.setRequestFilter("object." + uniquemergeattribute + " CONTAINSONEOF [" + mergefilter + "]");
-		Collection<CRResolvableBean> rp2res = secondaryRP.getObjects(request2);
-		String[] attributes = request.getAttributeArray();
 
-		for (CRResolvableBean crBean : rp2res) {
-			Object id = crBean.get(uniquemergeattribute);
-			resultMap2.put(id, crBean);
+		List<String> filters = createBatchFilters(uniquemergeattribute, resultMap.keySet(), batchSize);
+		HashMap<Object, CRResolvableBean> resultMap2 = new HashMap<Object, CRResolvableBean>(resultMap.size() * 2);
+		if (executor == null || filters.size() < 2) {
+			for (String filter : filters) {
+				addBeans(resultMap2, secondaryRP.getObjects(createSecondaryRequest(request, filter)), uniquemergeattribute);
+			}
+		} else {
+			List<Future<Collection<CRResolvableBean>>> futures = new ArrayList<Future<Collection<CRResolvableBean>>>(
+					filters.size());
+			try {
+				for (String filter : filters) {
+					final CRRequest request2 = createSecondaryRequest(request, filter);
+					futures.add(executor.submit(new Callable<Collection<CRResolvableBean>>() {
+						public Collection<CRResolvableBean> call() throws CRException {
+							return secondaryRP.getObjects(request2);
+						}
+					}));
+				}
+				for (Future<Collection<CRResolvableBean>> future : futures) {
+					addBeans(resultMap2, future.get(), uniquemergeattribute);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CRException("Merging was interrupted.", e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof CRException) {
+					throw (CRException) e.getCause();
+				}
+				throw new CRException("Cannot get the objects of the secondary request processor.", e);
+			} finally {
+				for (Future<Collection<CRResolvableBean>> future : futures) {
+					future.cancel(true);
+				}
+			}
 		}
+		String[] attributes = request.getAttributeArray();
 
 		String secMerge = (String) request.get("secondary");
 		if (Boolean.parseBoolean(secMerge)) {
@@ -146,6 +191,68 @@ public class RequestProcessorMerger {
 		return result;
 	}
 
+	/**
+	 * Create the filters for the requests to the secondary RP.
+	 * @param uniquemergeattribute attribute to join the objects
+	 * @param ids ids of the objects of the primary RP
+	 * @param batchSize maximum number of ids in one filter, 0 or less for one filter
+	 * @return filters, empty if there are no ids
+	 */
+	static List<String> createBatchFilters(final String uniquemergeattribute, final Collection<Object> ids, final int batchSize) {
+		List<String> filters = new ArrayList<String>();
+		String prefix = "object." + uniquemergeattribute + " CONTAINSONEOF [";
+		StringBuilder mergefilter = null;
+		int count = 0;
+		for (Object id : ids) {
+			if (mergefilter == null) {
+				mergefilter = new StringBuilder(prefix);
+			} else {
+				mergefilter.append(",");
+			}
+			mergefilter.append("\"").append(id).append("\"");
+			count++;
+			if (batchSize > 0 && count == batchSize) {
+				filters.add(mergefilter.append("]").toString());
+				mergefilter = null;
+				count = 0;
+			}
+		}
+		if (mergefilter != null) {
+			filters.add(mergefilter.append("]").toString());
+		}
+		return filters;
+	}
+
+	/**
+	 * Create the request for a batch of the secondary RP.
+	 * @param request request for the primary RP
+	 * @param filter filter of the batch
+	 * @return new request
+	 */
+	private static CRRequest createSecondaryRequest(final CRRequest request, final String filter) {
+		CRRequest request2 = new CRRequest();
+		request2.setAttributeArray(request.getAttributeArray());
+		request2.setDoReplacePlinks(request.getDoReplacePlinks());
+		request2.setDoVelocity(request.getDoVelocity());
+		request2.setRequestFilter(filter);
+		return request2;
+	}
+
+	/**
+	 * Index the objects of the secondary RP by their merge attribute.
+	 * @param resultMap2 index of the objects
+	 * @param beans objects of a batch
+	 * @param uniquemergeattribute attribute to join the objects
+	 */
+	private static void addBeans(final Map<Object, CRResolvableBean> resultMap2, final Collection<CRResolvableBean> beans,
+			final String uniquemergeattribute) {
+		if (beans != null) {
+			for (CRResolvableBean crBean : beans) {
+				resultMap2.put(crBean.get(uniquemergeattribute), crBean);
+			}
+		}
+	}
+
 	/**
 	 * Use beans of first RP and put attributes of secondary RP int beans of first RP.
 	 * @param result
@@ -154,7 +261,7 @@ public class RequestProcessorMerger {
 	 * @param attributes
 	 */
 	private static void useFirstMerge(ArrayList<CRResolvableBean> result, LinkedHashMap<Object, CRResolvableBean> resultMap,
-			LinkedHashMap<Object, CRResolvableBean> resultMap2, String[] attributes) {
+			Map<Object, CRResolvableBean> resultMap2, String[] attributes) {
 
 		for (Entry<Object, CRResolvableBean> e : resultMap.entrySet()) {
 
@@ -184,7 +291,7 @@ public class RequestProcessorMerger {
 	 * @param attributes
 	 */
 	private static void useSecondaryMerge(ArrayList<CRResolvableBean> result, LinkedHashMap<Object, CRResolvableBean> resultMap,
-			LinkedHashMap<Object, CRResolvableBean> resultMap2, String[] attributes) {
+			Map<Object, CRResolvableBean> resultMap2, String[] attributes) {
 
 		for (Entry<Object, CRResolvableBean> e : resultMap.entrySet()) {
 
@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Vector;
@@ -276,6 +277,21 @@ public class ResolvableFileBean extends CRResolvableBean {
 		return null;
 	}
 
+	@Override
+	/**
+	 * get the binary data as stream reading the file.
+	 */
+	public InputStream getBinaryContentAsStream() {
+		if (FILEOBJTYPE.equals(getObjType()) && file != null && file.length() > 0) {
+			try {
+				return new FileInputStream(file);
+			} catch (FileNotFoundException e) {
+				logger.error("File not found: " + file, e);
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * @return underlying file contained within this bean.
 	 */
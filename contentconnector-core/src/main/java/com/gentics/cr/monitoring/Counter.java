@@ -0,0 +1,44 @@
+package com.gentics.cr.monitoring;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counter registered in the {@link MetricRegistry}. Counting does nothing
+ * while monitoring is disabled.
+ */
+public class Counter {
+
+	private final AtomicLong value = new AtomicLong();
+
+	/**
+	 * Create a new counter, use {@link MetricRegistry#counter(String)}.
+	 */
+	Counter() {
+	}
+
+	/**
+	 * Increment the counter by 1.
+	 */
+	public void inc() {
+		if (MonitorFactory.isEnabled()) {
+			value.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Add a value to the counter.
+	 * @param delta value to add
+	 */
+	public void add(final long delta) {
+		if (MonitorFactory.isEnabled()) {
+			value.addAndGet(delta);
+		}
+	}
+
+	/**
+	 * @return current value
+	 */
+	public long get() {
+		return value.get();
+	}
+}
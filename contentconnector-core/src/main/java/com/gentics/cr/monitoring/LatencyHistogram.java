@@ -0,0 +1,144 @@
+package com.gentics.cr.monitoring;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative values (e.g. latencies in
+ * microseconds). Like an HDR histogram the values are counted in buckets of
+ * logarithmic size, every power of two is divided into 16 linear buckets.
+ * Percentiles are therefore accurate to about 6 percent of the value while
+ * recording a value only increments a counter.
+ */
+public class LatencyHistogram {
+
+	/**
+	 * Values below this limit have a bucket of their own.
+	 */
+	private static final int LINEAR_BUCKETS = 32;
+
+	/**
+	 * Number of buckets per power of two above {@link #LINEAR_BUCKETS}.
+	 */
+	private static final int SUB_BUCKETS = 16;
+
+	/**
+	 * log2 of {@link #SUB_BUCKETS}.
+	 */
+	private static final int SUB_BUCKET_BITS = 4;
+
+	/**
+	 * Number of buckets needed for all positive long values.
+	 */
+	private static final int BUCKETS = LINEAR_BUCKETS + (Long.SIZE - 1 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong sum = new AtomicLong();
+
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Record a value, negative values are recorded as 0.
+	 * @param value value to record
+	 */
+	public void record(final long value) {
+		long v = Math.max(0, value);
+		counts.incrementAndGet(getBucket(v));
+		count.incrementAndGet();
+		sum.addAndGet(v);
+		long currentMax = max.get();
+		while (v > currentMax && !max.compareAndSet(currentMax, v)) {
+			currentMax = max.get();
+		}
+	}
+
+	/**
+	 * @return number of recorded values
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return sum of the recorded values
+	 */
+	public long getSum() {
+		return sum.get();
+	}
+
+	/**
+	 * @return largest recorded value
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @return mean of the recorded values or 0 if no value was recorded
+	 */
+	public double getMean() {
+		long c = count.get();
+		if (c == 0) {
+			return 0;
+		}
+		return (double) sum.get() / c;
+	}
+
+	/**
+	 * Get the value below which the given percentage of the recorded values
+	 * fall. The result is the upper bound of the bucket containing the
+	 * percentile.
+	 * @param percentile percentile between 0 and 100
+	 * @return value at the percentile or 0 if no value was recorded
+	 */
+	public long getValueAtPercentile(final double percentile) {
+		long total = 0;
+		long[] snapshot = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total);
+		rank = Math.max(1, rank);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return Math.min(getUpperBound(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * @param value non-negative value
+	 * @return index of the bucket counting the value
+	 */
+	static int getBucket(final long value) {
+		if (value < LINEAR_BUCKETS) {
+			return (int) value;
+		}
+		int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		int sub = (int) (value >>> shift) - SUB_BUCKETS;
+		return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * @param bucket index of a bucket
+	 * @return largest value counted in the bucket
+	 */
+	static long getUpperBound(final int bucket) {
+		if (bucket < LINEAR_BUCKETS) {
+			return bucket;
+		}
+		int shift = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+		long sub = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+		return ((sub + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,155 @@
+package com.gentics.cr.monitoring;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of the metrics of the application. Metrics are created once (e.g.
+ * in the constructor of a request processor) and kept as fields so that no
+ * names have to be built while measuring.
+ */
+public final class MetricRegistry {
+
+	private static final ConcurrentMap<String, Object> METRICS = new ConcurrentHashMap<String, Object>();
+
+	/**
+	 * Utility class.
+	 */
+	private MetricRegistry() {
+	}
+
+	/**
+	 * Get the timer with the given name, the timer is created if it does not
+	 * exist.
+	 * @param name name of the timer
+	 * @return timer
+	 */
+	public static Timer timer(final String name) {
+		Object metric = METRICS.get(name);
+		if (metric == null) {
+			metric = register(name, new Timer(name));
+		}
+		return cast(name, metric, Timer.class);
+	}
+
+	/**
+	 * Get the counter with the given name, the counter is created if it does
+	 * not exist.
+	 * @param name name of the counter
+	 * @return counter
+	 */
+	public static Counter counter(final String name) {
+		Object metric = METRICS.get(name);
+		if (metric == null) {
+			metric = register(name, new Counter());
+		}
+		return cast(name, metric, Counter.class);
+	}
+
+	/**
+	 * Get the histogram with the given name, the histogram is created if it
+	 * does not exist.
+	 * @param name name of the histogram
+	 * @return histogram
+	 */
+	public static LatencyHistogram histogram(final String name) {
+		Object metric = METRICS.get(name);
+		if (metric == null) {
+			metric = register(name, new LatencyHistogram());
+		}
+		return cast(name, metric, LatencyHistogram.class);
+	}
+
+	/**
+	 * @return all registered metrics ({@link Timer}, {@link Counter} or
+	 * {@link LatencyHistogram}) sorted by name
+	 */
+	public static SortedMap<String, Object> getMetrics() {
+		return new TreeMap<String, Object>(METRICS);
+	}
+
+	/**
+	 * Write the metrics as text, one value per line. Timers and histograms
+	 * are written as count, mean, percentiles and maximum (timers in
+	 * microseconds), e.g.
+	 * <pre>
+	 * LuceneRequestProcessor.getObjects(search).count 20
+	 * LuceneRequestProcessor.getObjects(search).p99 1983
+	 * </pre>
+	 * @param out target of the text
+	 * @param prefix only metrics whose name starts with the prefix are
+	 * written, <code>null</code> writes all metrics
+	 * @throws IOException in case of error writing to the target
+	 */
+	public static void writeText(final Appendable out, final String prefix) throws IOException {
+		for (Map.Entry<String, Object> entry : getMetrics().entrySet()) {
+			String name = entry.getKey();
+			if (prefix != null && !name.startsWith(prefix)) {
+				continue;
+			}
+			Object metric = entry.getValue();
+			if (metric instanceof Counter) {
+				writeLine(out, name, "", ((Counter) metric).get());
+			} else {
+				LatencyHistogram histogram;
+				if (metric instanceof Timer) {
+					histogram = ((Timer) metric).getHistogram();
+				} else {
+					histogram = (LatencyHistogram) metric;
+				}
+				writeLine(out, name, ".count", histogram.getCount());
+				writeLine(out, name, ".mean", Math.round(histogram.getMean()));
+				writeLine(out, name, ".p50", histogram.getValueAtPercentile(50));
+				writeLine(out, name, ".p90", histogram.getValueAtPercentile(90));
+				writeLine(out, name, ".p99", histogram.getValueAtPercentile(99));
+				writeLine(out, name, ".p999", histogram.getValueAtPercentile(99.9));
+				writeLine(out, name, ".max", histogram.getMax());
+			}
+		}
+	}
+
+	/**
+	 * @param out target of the line
+	 * @param name name of the metric
+	 * @param suffix name of the value
+	 * @param value value
+	 * @throws IOException in case of error writing to the target
+	 */
+	private static void writeLine(final Appendable out, final String name, final String suffix, final long value)
+			throws IOException {
+		out.append(name).append(suffix).append(' ').append(Long.toString(value)).append('\n');
+	}
+
+	/**
+	 * @param name name of the metric
+	 * @param metric new metric
+	 * @return the registered metric
+	 */
+	private static Object register(final String name, final Object metric) {
+		Object existing = METRICS.putIfAbsent(name, metric);
+		if (existing != null) {
+			return existing;
+		}
+		return metric;
+	}
+
+	/**
+	 * @param name name of the metric
+	 * @param metric registered metric
+	 * @param type requested type of the metric
+	 * @return metric
+	 * @throws IllegalArgumentException if a metric of another type is
+	 * registered with the name
+	 */
+	private static <T> T cast(final String name, final Object metric, final Class<T> type) {
+		if (!type.isInstance(metric)) {
+			throw new IllegalArgumentException("The metric " + name + " is a " + metric.getClass().getSimpleName()
+					+ ", not a " + type.getSimpleName());
+		}
+		return type.cast(metric);
+	}
+}
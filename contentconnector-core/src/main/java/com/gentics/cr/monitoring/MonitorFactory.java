@@ -6,22 +6,68 @@ import com.gentics.cr.configuration.GenericConfiguration;
 
 public class MonitorFactory {
 
-	private static boolean monitoringEnabled = false;
+	private static volatile boolean monitoringEnabled = false;
+
+	/**
+	 * Use case returned while monitoring is disabled.
+	 */
+	private static final UseCase DISABLED_USE_CASE = new UseCase(null, false);
 	private static final String MONITOR_ENABLE_KEY = "monitoring";
 
+	/**
+	 * Key to also add the measurements of the timers to the JAMon statistics.
+	 */
+	private static final String JAMON_TIMERS_KEY = "jamontimers";
+
+	/**
+	 * Add the measurements of the {@link Timer}s to the JAMon statistics.
+	 */
+	private static volatile boolean jamonTimers = false;
+
 	public static synchronized void init(GenericConfiguration config) {
 		String enabled = config.getString(MONITOR_ENABLE_KEY);
 		if (enabled != null) {
 			monitoringEnabled = Boolean.parseBoolean(enabled);
 		}
+		String timers = config.getString(JAMON_TIMERS_KEY);
+		if (timers != null) {
+			jamonTimers = Boolean.parseBoolean(timers);
+		}
 	}
 
 	public static UseCase startUseCase(String identifyer) {
 		if (monitoringEnabled) {
 			return new UseCase(com.jamonapi.MonitorFactory.start(identifyer), monitoringEnabled);
 		}
-		return new UseCase(null, monitoringEnabled);
+		return DISABLED_USE_CASE;
+	}
 
+	/**
+	 * @return true if monitoring is enabled
+	 */
+	public static boolean isEnabled() {
+		return monitoringEnabled;
+	}
+
+	/**
+	 * @return true if the timers also add their measurements to the JAMon
+	 * statistics
+	 */
+	public static boolean isJamonTimers() {
+		return jamonTimers;
+	}
+
+	/**
+	 * Add a measured value (e.g. the number of active connections) to the
+	 * statistics of a counter.
+	 * @param identifyer name of the counter
+	 * @param units units of the value
+	 * @param value measured value
+	 */
+	public static void add(String identifyer, String units, double value) {
+		if (monitoringEnabled) {
+			com.jamonapi.MonitorFactory.add(identifyer, units, value);
+		}
 	}
 
 	public static String getSimpleReport() {
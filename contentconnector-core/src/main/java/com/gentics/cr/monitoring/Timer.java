@@ -0,0 +1,67 @@
+package com.gentics.cr.monitoring;
+
+/**
+ * Timer registered in the {@link MetricRegistry}. The durations are recorded
+ * in microseconds in a {@link LatencyHistogram}. Only with
+ * <code>jamontimers=true</code> they are also added to the JAMon statistics
+ * of the same name. While monitoring is disabled a timer only reads one flag.
+ * <pre>
+ * long start = timer.start();
+ * try {
+ *   ...
+ * } finally {
+ *   timer.stop(start);
+ * }
+ * </pre>
+ */
+public class Timer {
+
+	/**
+	 * Start value returned while monitoring is disabled.
+	 */
+	private static final long NOT_STARTED = Long.MIN_VALUE;
+
+	private final String name;
+
+	private final LatencyHistogram histogram = new LatencyHistogram();
+
+	/**
+	 * Create a new timer, use {@link MetricRegistry#timer(String)}.
+	 * @param name name of the timer
+	 */
+	Timer(final String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Start a measurement.
+	 * @return start of the measurement, has to be passed to {@link #stop(long)}
+	 */
+	public long start() {
+		if (MonitorFactory.isEnabled()) {
+			return System.nanoTime();
+		}
+		return NOT_STARTED;
+	}
+
+	/**
+	 * Stop a measurement.
+	 * @param start value returned by {@link #start()}
+	 */
+	public void stop(final long start) {
+		if (start != NOT_STARTED) {
+			long micros = (System.nanoTime() - start) / 1000;
+			histogram.record(micros);
+			if (MonitorFactory.isJamonTimers()) {
+				MonitorFactory.add(name, "ms.", micros / 1000d);
+			}
+		}
+	}
+
+	/**
+	 * @return recorded durations in microseconds
+	 */
+	public LatencyHistogram getHistogram() {
+		return histogram;
+	}
+}
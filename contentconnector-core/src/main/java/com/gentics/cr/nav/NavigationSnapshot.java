@@ -0,0 +1,384 @@
+package com.gentics.cr.nav;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.gentics.api.lib.datasource.Datasource.Sorting;
+import com.gentics.cr.CRResolvableBean;
+import com.gentics.cr.util.CRUtil;
+
+/**
+ * Immutable in-memory navigation tree of all objects matching a child filter.
+ * The objects are stored in compact arrays: each object is a node number,
+ * the children of a folder are an array of node numbers in sort order and the
+ * attribute values are interned. Navigation requests with different start
+ * folders and depths are answered from the snapshot without accessing the
+ * datasource, each request gets its own copies of the beans.
+ * The root objects of the requests are cached per snapshot, so a new snapshot
+ * also fetches them again. The least recently used root objects are dropped
+ * when more than the configured number of requests is cached.
+ */
+public final class NavigationSnapshot {
+
+	/**
+	 * Version of the content repository the snapshot was built for.
+	 */
+	private final String version;
+
+	/**
+	 * Newest update timestamp of the objects in the snapshot.
+	 */
+	private final int maxUpdatetimestamp;
+
+	/**
+	 * Attribute containing the folder of an object.
+	 */
+	private final String folderIdAttribute;
+
+	/**
+	 * Names of the stored attributes.
+	 */
+	private final String[] attributeNames;
+
+	/**
+	 * Content ids by node number.
+	 */
+	private final String[] contentids;
+
+	/**
+	 * Object types by node number.
+	 */
+	private final String[] objTypes;
+
+	/**
+	 * Attribute values by node number and attribute number.
+	 */
+	private final Object[][] values;
+
+	/**
+	 * Node numbers by content id.
+	 */
+	private final Map<String, Integer> nodes;
+
+	/**
+	 * Node numbers of the children by the content id of their folder, in sort
+	 * order.
+	 */
+	private final Map<String, int[]> children;
+
+	/**
+	 * Maximum number of requests the root objects are cached for.
+	 */
+	private final int maxRoots;
+
+	/**
+	 * Root objects of the requests by request key, in access order.
+	 */
+	private final Map<String, List<CRResolvableBean>> roots;
+
+	/**
+	 * Create a new snapshot.
+	 * @param version version of the content repository the objects were read
+	 * for
+	 * @param maxUpdatetimestamp newest update timestamp of the objects
+	 * @param beans objects of the tree, the stored attributes have to be
+	 * loaded
+	 * @param attributeNames names of the attributes to store, has to contain
+	 * the folder id attribute
+	 * @param folderIdAttribute attribute containing the folder of an object
+	 * @param sorting sorting of the children, may be <code>null</code>
+	 * @param maxRoots maximum number of requests the root objects are cached
+	 * for
+	 */
+	public NavigationSnapshot(final String version, final int maxUpdatetimestamp,
+			final Collection<CRResolvableBean> beans, final String[] attributeNames, final String folderIdAttribute,
+			final Sorting[] sorting, final int maxRoots) {
+		this.version = version;
+		this.maxUpdatetimestamp = maxUpdatetimestamp;
+		this.folderIdAttribute = folderIdAttribute;
+		this.attributeNames = attributeNames.clone();
+		this.maxRoots = maxRoots;
+		roots = Collections.synchronizedMap(new LinkedHashMap<String, List<CRResolvableBean>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, List<CRResolvableBean>> eldest) {
+				return size() > NavigationSnapshot.this.maxRoots;
+			}
+		});
+
+		List<CRResolvableBean> sorted = new ArrayList<CRResolvableBean>(beans);
+		CRUtil.sortCollection(sorted, sorting);
+
+		Map<Object, Object> interned = new HashMap<Object, Object>();
+		Map<String, List<Integer>> childLists = new HashMap<String, List<Integer>>();
+		int size = sorted.size();
+		contentids = new String[size];
+		objTypes = new String[size];
+		values = new Object[size][];
+		nodes = new HashMap<String, Integer>(size * 2);
+		int node = 0;
+		for (CRResolvableBean bean : sorted) {
+			String contentid = bean.getContentid();
+			if (contentid == null || nodes.containsKey(contentid)) {
+				continue;
+			}
+			contentids[node] = contentid;
+			objTypes[node] = (String) intern(interned, bean.getObj_type());
+			Object[] nodeValues = new Object[this.attributeNames.length];
+			for (int i = 0; i < nodeValues.length; i++) {
+				nodeValues[i] = intern(interned, bean.get(this.attributeNames[i]));
+			}
+			values[node] = nodeValues;
+			nodes.put(contentid, node);
+
+			String folderId = bean.getString(folderIdAttribute);
+			if (folderId != null) {
+				List<Integer> childList = childLists.get(folderId);
+				if (childList == null) {
+					childList = new ArrayList<Integer>();
+					childLists.put(folderId, childList);
+				}
+				childList.add(node);
+			}
+			node++;
+		}
+
+		children = new HashMap<String, int[]>(childLists.size() * 2);
+		for (Map.Entry<String, List<Integer>> entry : childLists.entrySet()) {
+			List<Integer> childList = entry.getValue();
+			int[] childNodes = new int[childList.size()];
+			for (int i = 0; i < childNodes.length; i++) {
+				childNodes[i] = childList.get(i);
+			}
+			children.put(entry.getKey(), childNodes);
+		}
+	}
+
+	/**
+	 * Get the shared instance of an attribute value.
+	 * @param interned values already stored
+	 * @param value value
+	 * @return equal value that is already stored or the given value
+	 */
+	private static Object intern(final Map<Object, Object> interned, final Object value) {
+		if (!(value instanceof String)) {
+			return value;
+		}
+		Object shared = interned.get(value);
+		if (shared == null) {
+			interned.put(value, value);
+			return value;
+		}
+		return shared;
+	}
+
+	/**
+	 * Create a new snapshot containing the changed objects instead of the
+	 * stored ones. Objects that were not changed and still match the child
+	 * filter are taken from this snapshot.
+	 * @param newVersion version of the content repository the changed objects
+	 * were read for
+	 * @param newMaxUpdatetimestamp newest update timestamp of all objects
+	 * @param changed changed and added objects
+	 * @param matching content ids of all objects matching the child filter,
+	 * stored objects missing in it are removed
+	 * @param sorting sorting of the children, may be <code>null</code>
+	 * @return new snapshot
+	 */
+	public NavigationSnapshot update(final String newVersion, final int newMaxUpdatetimestamp,
+			final Collection<CRResolvableBean> changed, final Set<String> matching, final Sorting[] sorting) {
+		Set<String> changedIds = new HashSet<String>();
+		for (CRResolvableBean bean : changed) {
+			changedIds.add(bean.getContentid());
+		}
+		List<CRResolvableBean> beans = new ArrayList<CRResolvableBean>(size() + changed.size());
+		for (int node = 0; node < size(); node++) {
+			if (!changedIds.contains(contentids[node]) && matching.contains(contentids[node])) {
+				beans.add(createBean(node));
+			}
+		}
+		beans.addAll(changed);
+		return new NavigationSnapshot(newVersion, newMaxUpdatetimestamp, beans, attributeNames, folderIdAttribute,
+				sorting, maxRoots);
+	}
+
+	/**
+	 * @return version of the content repository the snapshot was built for
+	 */
+	public String getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return newest update timestamp of the objects in the snapshot
+	 */
+	public int getMaxUpdatetimestamp() {
+		return maxUpdatetimestamp;
+	}
+
+	/**
+	 * @return number of objects in the snapshot
+	 */
+	public int size() {
+		return nodes.size();
+	}
+
+	/**
+	 * @param contentid content id of an object
+	 * @return <code>true</code> if the object is in the snapshot
+	 */
+	public boolean contains(final String contentid) {
+		return nodes.containsKey(contentid);
+	}
+
+	/**
+	 * Get the children of a folder with their sub folders.
+	 * @param folderId content id of the folder, does not have to be in the
+	 * snapshot
+	 * @param depth number of levels to return, -1 for all levels
+	 * @return new beans of the children in sort order
+	 */
+	public Collection<CRResolvableBean> getChildren(final String folderId, final int depth) {
+		return getChildren(folderId, depth, null, null);
+	}
+
+	/**
+	 * Get the children of a folder with their sub folders that have one of
+	 * the given values in an attribute. Objects with other values are left out
+	 * together with their children.
+	 * @param folderId content id of the folder, does not have to be in the
+	 * snapshot
+	 * @param depth number of levels to return, -1 for all levels
+	 * @param filterAttribute stored attribute to check
+	 * @param filterValues allowed values of the attribute, all objects are
+	 * returned if this is <code>null</code> or empty
+	 * @return new beans of the children in sort order
+	 */
+	public Collection<CRResolvableBean> getChildren(final String folderId, final int depth,
+			final String filterAttribute, final Set<String> filterValues) {
+		int filterIndex = -1;
+		if (filterValues != null && !filterValues.isEmpty()) {
+			filterIndex = Arrays.asList(attributeNames).indexOf(filterAttribute);
+			if (filterIndex < 0) {
+				throw new IllegalArgumentException("Attribute " + filterAttribute + " is not stored in the snapshot.");
+			}
+		}
+		return getChildren(folderId, depth < 0 ? Integer.MAX_VALUE : depth, filterIndex, filterValues,
+			new HashSet<String>());
+	}
+
+	/**
+	 * Get the children of a folder with their sub folders.
+	 * @param folderId content id of the folder
+	 * @param depth number of levels to return
+	 * @param filterIndex number of the attribute to check, -1 to return all
+	 * objects
+	 * @param filterValues allowed values of the attribute
+	 * @param path content ids of the folders above, to stop at folders that
+	 * contain each other
+	 * @return new beans of the children in sort order
+	 */
+	private Collection<CRResolvableBean> getChildren(final String folderId, final int depth, final int filterIndex,
+			final Set<String> filterValues, final Set<String> path) {
+		Vector<CRResolvableBean> childBeans = new Vector<CRResolvableBean>();
+		int[] childNodes = children.get(folderId);
+		if (childNodes == null || depth <= 0 || !path.add(folderId)) {
+			return childBeans;
+		}
+		for (int node : childNodes) {
+			if (filterIndex >= 0) {
+				Object value = values[node][filterIndex];
+				if (value == null || !filterValues.contains(value.toString())) {
+					continue;
+				}
+			}
+			CRResolvableBean bean = createBean(node);
+			bean.setChildRepository(getChildren(contentids[node], depth - 1, filterIndex, filterValues, path));
+			childBeans.add(bean);
+		}
+		path.remove(folderId);
+		return childBeans;
+	}
+
+	/**
+	 * Get the cached root objects of a request.
+	 * @param key key of the request
+	 * @return new copies of the root objects or <code>null</code> if they
+	 * were not cached
+	 */
+	public List<CRResolvableBean> getRoots(final String key) {
+		List<CRResolvableBean> cached = roots.get(key);
+		if (cached == null) {
+			return null;
+		}
+		List<CRResolvableBean> copies = new ArrayList<CRResolvableBean>(cached.size());
+		for (CRResolvableBean root : cached) {
+			copies.add(copy(root));
+		}
+		return copies;
+	}
+
+	/**
+	 * Cache the root objects of a request.
+	 * @param key key of the request
+	 * @param rootBeans root objects, the beans are copied
+	 */
+	public void putRoots(final String key, final Collection<CRResolvableBean> rootBeans) {
+		List<CRResolvableBean> copies = new ArrayList<CRResolvableBean>(rootBeans.size());
+		for (CRResolvableBean root : rootBeans) {
+			copies.add(copy(root));
+		}
+		roots.put(key, copies);
+	}
+
+	/**
+	 * Create a bean from the stored data of a node.
+	 * @param node node number
+	 * @return new bean without children
+	 */
+	private CRResolvableBean createBean(final int node) {
+		CRResolvableBean bean = new CRResolvableBean(contentids[node]);
+		bean.setObj_type(objTypes[node]);
+		ConcurrentHashMap<String, Object> attributes = new ConcurrentHashMap<String, Object>();
+		Object[] nodeValues = values[node];
+		for (int i = 0; i < nodeValues.length; i++) {
+			if (nodeValues[i] != null) {
+				attributes.put(attributeNames[i], nodeValues[i]);
+			}
+		}
+		bean.setAttrMap(attributes);
+		bean.setChildRepository(new Vector<CRResolvableBean>());
+		return bean;
+	}
+
+	/**
+	 * Copy the loaded data of a bean, without its resolvable and children.
+	 * @param bean bean
+	 * @return copy
+	 */
+	private static CRResolvableBean copy(final CRResolvableBean bean) {
+		CRResolvableBean copy = new CRResolvableBean(bean.getContentid());
+		copy.setObj_type(bean.getObj_type());
+		copy.setObj_id(bean.getObj_id());
+		copy.setMother_id(bean.getMother_id());
+		copy.setMother_type(bean.getMother_type());
+		if (bean.getAttrMap() != null) {
+			copy.setAttrMap(new ConcurrentHashMap<String, Object>(bean.getAttrMap()));
+		} else {
+			copy.setAttrMap(new ConcurrentHashMap<String, Object>());
+		}
+		copy.setChildRepository(new Vector<CRResolvableBean>());
+		return copy;
+	}
+}
@@ -2,97 +2,191 @@ package com.gentics.cr.plink;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Queue;
+import java.nio.charset.Charset;
 
-import com.gentics.api.portalnode.connector.CCPLinkInformation;
 import com.gentics.api.portalnode.connector.PLinkReplacer;
 
+/**
+ * Input stream replacing the plink tags of the read content. The content is
+ * read and scanned in blocks, runs of bytes without plinks are copied to the
+ * caller at once.
+ */
 public class PLinkInputStream extends InputStream {
 
 	private InputStream is;
 
 	private PLinkReplacer pr;
 
-	private static final byte[] plinkTemplate = new byte[] { '<', 'p', 'l', 'i', 'n', 'k' };
+	/**
+	 * Charset of the replaced links.
+	 */
+	private Charset charset;
 
-	private byte plinkClose = '>';
+	/**
+	 * Bytes read from the underlying stream.
+	 */
+	private final byte[] inBuf = new byte[8192];
 
-	private final Queue<Byte> backBuf = new LinkedList<Byte>();
+	private int inPos = 0;
 
+	private int inEnd = 0;
+
+	private boolean eof = false;
+
+	/**
+	 * Bytes to return before the next bytes of the underlying stream (a
+	 * replaced link or the start of a tag that was no plink).
+	 */
+	private byte[] pending = null;
+
+	private int pendingPos = 0;
+
+	private int pendingEnd = 0;
+
+	/**
+	 * Number of bytes of the plink template that were matched, the attributes
+	 * of the tag are scanned if the whole template was matched.
+	 */
+	private int matched = 0;
+
+	private final PLinkTagBuffer tag = new PLinkTagBuffer();
+
+	private final byte[] single = new byte[1];
+
+	/**
+	 * Create a new stream returning the replaced links in the default
+	 * charset.
+	 * @param inputStream stream to read the content from
+	 * @param plinkReplacer replacer of the plinks
+	 */
 	public PLinkInputStream(InputStream inputStream, PLinkReplacer plinkReplacer) {
+		this(inputStream, plinkReplacer, Charset.defaultCharset());
+	}
+
+	/**
+	 * Create a new stream.
+	 * @param inputStream stream to read the content from
+	 * @param plinkReplacer replacer of the plinks
+	 * @param charset charset of the content, used for the replaced links
+	 */
+	public PLinkInputStream(InputStream inputStream, PLinkReplacer plinkReplacer, Charset charset) {
 		is = inputStream;
 		pr = plinkReplacer;
+		this.charset = charset;
 	}
 
 	@Override
 	public int read() throws IOException {
-		if (!backBuf.isEmpty()) {
-			return backBuf.poll();
+		int read = read(single, 0, 1);
+		if (read == -1) {
+			return -1;
 		}
-		int b = is.read();
-		if (b == plinkTemplate[0]) {
-			b = peekAndReplace();
-		}
-		return b;
+		return single[0] & 0xFF;
 	}
 
-	private byte peekAndReplace() throws IOException {
-		List<Byte> peekFailBuffer = new ArrayList<Byte>();
-		int templatePos = 1;
-		int c = -1;
-		peekFailBuffer.add((byte) plinkTemplate[0]);
-
-		while (templatePos < plinkTemplate.length && (c = is.read()) == plinkTemplate[templatePos]) {
-			templatePos++;
-			peekFailBuffer.add((byte) c);
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
 		}
-
-		if (templatePos == plinkTemplate.length) {
-			//fount PLINK
-			StringBuffer plinkBuffer = new StringBuffer();
-			c = is.read();
-			while (c != plinkClose && c != -1) {
-				plinkBuffer.append((char) c);
-				c = is.read();
-			}
-			String currentPLink = plinkBuffer.toString();
-			int posID = currentPLink.indexOf("id=");
-			if (posID >= 0) {
-				posID = posID + "id=\"".length();
-				int posIDEnd = currentPLink.indexOf('"', posID + 1);
-				if (posIDEnd == -1) {
-					posIDEnd = currentPLink.indexOf('\'', posID + 1);
+		int n = 0;
+		while (n < len) {
+			if (pendingPos < pendingEnd) {
+				int count = Math.min(len - n, pendingEnd - pendingPos);
+				System.arraycopy(pending, pendingPos, b, off + n, count);
+				pendingPos += count;
+				n += count;
+			} else if (inPos == inEnd) {
+				if (eof || (n > 0 && is.available() <= 0)) {
+					// do not block if there are bytes to return
+					break;
 				}
-				// found valid plink
-				if (posIDEnd >= 0) {
-					String linkID = currentPLink.substring(posID, posIDEnd);
-					String out = pr.replacePLink(new CCPLinkInformation(linkID));
-					byte[] bytes = out.getBytes();
-					for (byte b : bytes) {
-						backBuf.offer(b);
-					}
+				int read = is.read(inBuf, 0, inBuf.length);
+				if (read == -1) {
+					eof = true;
+					finish();
+				} else {
+					inPos = 0;
+					inEnd = read;
 				}
-			}
-		} else {
-			if (c != -1) {
-				peekFailBuffer.add((byte) c);
-			}
-			for (Byte b : peekFailBuffer) {
-				backBuf.offer(b);
+			} else if (matched == PLinkTagBuffer.TEMPLATE.length) {
+				int close = PLinkTagBuffer.indexOf(inBuf, PLinkTagBuffer.CLOSE, inPos, inEnd);
+				if (close == -1) {
+					tag.append(inBuf, inPos, inEnd - inPos);
+					inPos = inEnd;
+				} else {
+					tag.append(inBuf, inPos, close - inPos);
+					inPos = close + 1;
+					setReplacement();
+				}
+			} else if (matched == 0) {
+				int limit = Math.min(inEnd, inPos + len - n);
+				int start = PLinkTagBuffer.indexOf(inBuf, PLinkTagBuffer.TEMPLATE[0], inPos, limit);
+				int stop = start == -1 ? limit : start;
+				System.arraycopy(inBuf, inPos, b, off + n, stop - inPos);
+				n += stop - inPos;
+				inPos = stop;
+				if (start != -1) {
+					matched = 1;
+					inPos++;
+				}
+			} else if (inBuf[inPos] == PLinkTagBuffer.TEMPLATE[matched]) {
+				matched++;
+				inPos++;
+			} else {
+				// no plink, the current byte may start the next one
+				setPending(PLinkTagBuffer.TEMPLATE, matched);
+				matched = 0;
 			}
 		}
+		if (n == 0 && eof) {
+			return -1;
+		}
+		return n;
+	}
 
-		Byte ret = null;
-		if (backBuf.isEmpty()) {
-			ret = (byte) is.read();
-		} else {
-			ret = backBuf.poll();
+	/**
+	 * Return the bytes of a started plink at the end of the content, a plink
+	 * without end is replaced as if it was closed.
+	 */
+	private void finish() {
+		if (matched == PLinkTagBuffer.TEMPLATE.length) {
+			setReplacement();
+		} else if (matched > 0) {
+			setPending(PLinkTagBuffer.TEMPLATE, matched);
+			matched = 0;
 		}
+	}
 
-		return ret;
+	/**
+	 * Return the replacement of the scanned tag next.
+	 */
+	private void setReplacement() {
+		byte[] out = tag.replace(pr, charset);
+		if (out != null) {
+			setPending(out, out.length);
+		}
+		matched = 0;
 	}
 
+	/**
+	 * Return bytes before the next bytes of the underlying stream.
+	 * @param bytes bytes to return, not copied
+	 * @param length number of bytes to return
+	 */
+	private void setPending(final byte[] bytes, final int length) {
+		pending = bytes;
+		pendingPos = 0;
+		pendingEnd = length;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return pendingEnd - pendingPos;
+	}
+
+	@Override
+	public void close() throws IOException {
+		is.close();
+	}
 }
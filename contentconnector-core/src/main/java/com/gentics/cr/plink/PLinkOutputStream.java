@@ -2,86 +2,139 @@ package com.gentics.cr.plink;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.charset.Charset;
 
-import com.gentics.api.portalnode.connector.CCPLinkInformation;
 import com.gentics.api.portalnode.connector.PLinkReplacer;
 
+/**
+ * Output stream replacing the plink tags of the written content. The content
+ * is scanned array by array, runs of bytes without plinks are written to the
+ * underlying stream at once. Closing the stream writes the scanned bytes but
+ * does not close the underlying stream.
+ */
 public class PLinkOutputStream extends OutputStream {
 
 	private OutputStream os;
 	private PLinkReplacer pr;
 
-	private static final byte[] plinkTemplate = new byte[] { '<', 'p', 'l', 'i', 'n', 'k' };
+	/**
+	 * Charset of the replaced links.
+	 */
+	private Charset charset;
 
-	private int nextPlinkPos = 0;
+	/**
+	 * Number of bytes of the plink template that were matched, the attributes
+	 * of the tag are scanned if the whole template was matched.
+	 */
+	private int matched = 0;
 
-	private byte plinkClose = '>';
+	private final PLinkTagBuffer tag = new PLinkTagBuffer();
 
-	private List<Byte> backBuffer;
-
-	private StringBuffer plinkBuffer = null;
-
-	private boolean plinkOpen = false;
+	private final byte[] single = new byte[1];
 
+	/**
+	 * Create a new stream writing the replaced links in the default charset.
+	 * @param outputStream stream to write the content to
+	 * @param pLinkReplacer replacer of the plinks
+	 */
 	public PLinkOutputStream(OutputStream outputStream, PLinkReplacer pLinkReplacer) {
+		this(outputStream, pLinkReplacer, Charset.defaultCharset());
+	}
+
+	/**
+	 * Create a new stream.
+	 * @param outputStream stream to write the content to
+	 * @param pLinkReplacer replacer of the plinks
+	 * @param charset charset of the content, used to write the replaced links
+	 */
+	public PLinkOutputStream(OutputStream outputStream, PLinkReplacer pLinkReplacer, Charset charset) {
 		os = outputStream;
 		pr = pLinkReplacer;
+		this.charset = charset;
 	}
 
 	@Override
 	public void write(int b) throws IOException {
+		single[0] = (byte) b;
+		write(single, 0, 1);
+	}
 
-		if (plinkOpen) {
-			if (b == plinkClose) {
-				String currentPLink = plinkBuffer.toString();
-				int posID = currentPLink.indexOf("id=");
-				if (posID >= 0) {
-					posID = posID + "id=\"".length();
-					int posIDEnd = currentPLink.indexOf('"', posID + 1);
-					if (posIDEnd == -1) {
-						posIDEnd = currentPLink.indexOf('\'', posID + 1);
-					}
-					// found valid plink
-					if (posIDEnd >= 0) {
-						String linkID = currentPLink.substring(posID, posIDEnd);
-						String out = pr.replacePLink(new CCPLinkInformation(linkID));
-						os.write(out.getBytes());
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		int end = off + len;
+		// start of the bytes that are written unchanged
+		int runStart = off;
+		int i = off;
+		while (i < end) {
+			if (matched == PLinkTagBuffer.TEMPLATE.length) {
+				int close = PLinkTagBuffer.indexOf(b, PLinkTagBuffer.CLOSE, i, end);
+				if (close == -1) {
+					tag.append(b, i, end - i);
+					i = end;
+				} else {
+					tag.append(b, i, close - i);
+					writeReplacement();
+					i = close + 1;
+				}
+				runStart = i;
+			} else if (matched == 0) {
+				int start = PLinkTagBuffer.indexOf(b, PLinkTagBuffer.TEMPLATE[0], i, end);
+				if (start == -1) {
+					i = end;
+				} else {
+					if (start > runStart) {
+						os.write(b, runStart, start - runStart);
 					}
+					matched = 1;
+					i = start + 1;
+					runStart = i;
 				}
-
-				nextPlinkPos = 0;
-				plinkOpen = false;
-				plinkBuffer = null;
+			} else if (b[i] == PLinkTagBuffer.TEMPLATE[matched]) {
+				matched++;
+				i++;
+				runStart = i;
 			} else {
-				plinkBuffer.append((char) b);
-			}
-
-		} else {
-			if (nextPlinkPos == 0 && b == plinkTemplate[nextPlinkPos]) {
-				backBuffer = new ArrayList<Byte>();
+				// no plink, the current byte may start the next one
+				os.write(PLinkTagBuffer.TEMPLATE, 0, matched);
+				matched = 0;
+				runStart = i;
 			}
+		}
+		if (matched == 0 && end > runStart) {
+			os.write(b, runStart, end - runStart);
+		}
+	}
 
-			if (b == plinkTemplate[nextPlinkPos]) {
-				backBuffer.add((byte) b);
-				if (nextPlinkPos == plinkTemplate.length - 1) {
-					plinkOpen = true;
-					plinkBuffer = new StringBuffer();
-				}
-				nextPlinkPos++;
-			} else if (nextPlinkPos != 0 && b != plinkTemplate[nextPlinkPos]
-					&& nextPlinkPos != (plinkTemplate.length - 1)) {
-				for (byte bb : backBuffer) {
-					os.write(bb);
-				}
-				os.write(b);
-				backBuffer = null;
-				nextPlinkPos = 0;
-			} else {
-				os.write(b);
-			}
+	/**
+	 * Write the replacement of the scanned tag.
+	 * @throws IOException in case of error writing to the underlying stream
+	 */
+	private void writeReplacement() throws IOException {
+		byte[] out = tag.replace(pr, charset);
+		if (out != null) {
+			os.write(out);
 		}
+		matched = 0;
 	}
 
+	@Override
+	public void flush() throws IOException {
+		os.flush();
+	}
+
+	/**
+	 * Write the bytes of a started plink, a plink without end is replaced as
+	 * if it was closed. The underlying stream is flushed but not closed.
+	 * @throws IOException in case of error writing to the underlying stream
+	 */
+	@Override
+	public void close() throws IOException {
+		if (matched == PLinkTagBuffer.TEMPLATE.length) {
+			writeReplacement();
+		} else if (matched > 0) {
+			os.write(PLinkTagBuffer.TEMPLATE, 0, matched);
+			matched = 0;
+		}
+		os.flush();
+	}
 }
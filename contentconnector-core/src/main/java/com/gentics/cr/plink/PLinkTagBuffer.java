@@ -0,0 +1,140 @@
+package com.gentics.cr.plink;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import com.gentics.api.portalnode.connector.CCPLinkInformation;
+import com.gentics.api.portalnode.connector.PLinkReplacer;
+
+/**
+ * Reusable buffer for the attributes of a plink tag that is currently scanned
+ * by {@link PLinkOutputStream} or {@link PLinkInputStream}.
+ */
+final class PLinkTagBuffer {
+
+	/**
+	 * Start of a plink tag.
+	 */
+	static final byte[] TEMPLATE = new byte[] { '<', 'p', 'l', 'i', 'n', 'k' };
+
+	/**
+	 * End of a plink tag.
+	 */
+	static final byte CLOSE = '>';
+
+	/**
+	 * Charset of the link ids, every byte is one character.
+	 */
+	private static final Charset ID_CHARSET = Charset.forName("ISO-8859-1");
+
+	/**
+	 * Bytes between the template and the end of the tag.
+	 */
+	private byte[] buffer = new byte[64];
+
+	private int length = 0;
+
+	/**
+	 * Append bytes of the tag.
+	 * @param bytes array containing the bytes
+	 * @param off offset of the bytes
+	 * @param len number of bytes
+	 */
+	void append(final byte[] bytes, final int off, final int len) {
+		if (length + len > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + len));
+		}
+		System.arraycopy(bytes, off, buffer, length, len);
+		length += len;
+	}
+
+	/**
+	 * Replace the scanned tag and clear the buffer for the next tag.
+	 * @param replacer replacer of the plinks
+	 * @param charset charset of the replacement
+	 * @return bytes of the replacement or <code>null</code> if the tag has no
+	 * valid id.
+	 */
+	byte[] replace(final PLinkReplacer replacer, final Charset charset) {
+		String linkID = getLinkId();
+		length = 0;
+		if (linkID == null) {
+			return null;
+		}
+		String out = replacer.replacePLink(new CCPLinkInformation(linkID));
+		if (out == null) {
+			return null;
+		}
+		return out.getBytes(charset);
+	}
+
+	/**
+	 * @return value of the id attribute or <code>null</code> if the tag has no
+	 * valid id.
+	 */
+	private String getLinkId() {
+		int posID = indexOf(new byte[] { 'i', 'd', '=' }, 0);
+		if (posID < 0) {
+			return null;
+		}
+		// skip the quote
+		posID = posID + "id=\"".length();
+		int posIDEnd = indexOf('"', posID + 1);
+		if (posIDEnd == -1) {
+			posIDEnd = indexOf('\'', posID + 1);
+		}
+		if (posIDEnd < 0) {
+			return null;
+		}
+		return new String(buffer, posID, posIDEnd - posID, ID_CHARSET);
+	}
+
+	/**
+	 * @param b byte to find
+	 * @param from first position to check
+	 * @return position of the byte in the buffer or -1
+	 */
+	private int indexOf(final int b, final int from) {
+		for (int i = from; i < length; i++) {
+			if (buffer[i] == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param sequence bytes to find
+	 * @param from first position to check
+	 * @return position of the sequence in the buffer or -1
+	 */
+	private int indexOf(final byte[] sequence, final int from) {
+		for (int i = from; i <= length - sequence.length; i++) {
+			int j = 0;
+			while (j < sequence.length && buffer[i + j] == sequence[j]) {
+				j++;
+			}
+			if (j == sequence.length) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Find a byte in an array.
+	 * @param bytes array
+	 * @param b byte to find
+	 * @param from first position to check
+	 * @param to position after the last position to check
+	 * @return position of the byte or -1
+	 */
+	static int indexOf(final byte[] bytes, final byte b, final int from, final int to) {
+		for (int i = from; i < to; i++) {
+			if (bytes[i] == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
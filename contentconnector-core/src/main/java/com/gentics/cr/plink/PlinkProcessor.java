@@ -1,9 +1,15 @@
 package com.gentics.cr.plink;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -12,14 +18,21 @@ import org.apache.jcs.access.exception.CacheException;
 import org.apache.log4j.Logger;
 
 import com.gentics.api.lib.datasource.Datasource;
+import com.gentics.api.lib.datasource.DatasourceException;
 import com.gentics.api.lib.datasource.DatasourceNotAvailableException;
+import com.gentics.api.lib.exception.ParserException;
+import com.gentics.api.lib.expressionparser.ExpressionParserException;
 import com.gentics.api.lib.resolving.Resolvable;
 import com.gentics.api.portalnode.connector.PLinkInformation;
+import com.gentics.api.portalnode.connector.PLinkReplacer;
 import com.gentics.api.portalnode.connector.PortalConnectorFactory;
+import com.gentics.api.portalnode.connector.PortalConnectorHelper;
 import com.gentics.cr.CRConfig;
 import com.gentics.cr.CRDatabaseFactory;
 import com.gentics.cr.CRRequest;
 import com.gentics.cr.exceptions.CRException;
+import com.gentics.cr.monitoring.MetricRegistry;
+import com.gentics.cr.monitoring.Timer;
 import com.gentics.cr.template.ITemplateManager;
 
 /**
@@ -48,6 +61,39 @@ public class PlinkProcessor {
 
 	private boolean plinkcache = true;
 
+	/**
+	 * Configuration key to resolve all plinks of a content with one query
+	 * before they are replaced (disabled by default).
+	 */
+	public static final String PLINK_BATCH_KEY = "plinkbatch";
+
+	/**
+	 * Configuration key for the attributes (comma separated) that are loaded
+	 * with the objects of the plinks of a content, e.g. the attributes used by
+	 * the plink template.
+	 */
+	public static final String PLINK_PREFILL_KEY = "plinkprefill";
+
+	/**
+	 * Maximum number of contentids in one query of the plinks of a content.
+	 */
+	private static final int BATCH_SIZE = 500;
+
+	/**
+	 * Contentids that are resolved in a batch, all other ids are resolved one
+	 * by one.
+	 */
+	private static final String CONTENTID_PATTERN = "[0-9]+\\.[0-9]+";
+
+	private boolean plinkBatch = false;
+
+	private String[] plinkPrefill = null;
+
+	/**
+	 * Timer of the batches of {@link #getLinks(Collection, CRRequest)}.
+	 */
+	private static final Timer GET_LINKS_TIMER = MetricRegistry.timer("PlinkProcessor.getLinks()");
+
 	/**
 	 * Create new instance of plink processor.
 	 * @param config
@@ -88,6 +134,13 @@ public class PlinkProcessor {
 		} else {
 			plinkCache = null;
 		}
+		if (config != null) {
+			plinkBatch = config.getBoolean(PLINK_BATCH_KEY, plinkBatch);
+			String prefill = config.getString(PLINK_PREFILL_KEY);
+			if (prefill != null && !"".equals(prefill)) {
+				plinkPrefill = prefill.split(",");
+			}
+		}
 	}
 
 	/**
@@ -102,6 +155,129 @@ public class PlinkProcessor {
 		}
 	}
 
+	/**
+	 * Replace the plinks in a content. If {@link #PLINK_BATCH_KEY} is enabled
+	 * the plinks are collected first, the links that are not cached are
+	 * resolved with one query and then the plinks are replaced.
+	 * @param content content containing plinks
+	 * @param request request to build the links for
+	 * @return content with replaced plinks
+	 */
+	public String replacePlinks(final String content, final CRRequest request) {
+		PlinkReplacer replacer;
+		if (request != null) {
+			replacer = new PlinkReplacer(this, request);
+		} else {
+			replacer = new PlinkReplacer(this);
+		}
+		if (!plinkBatch) {
+			return PortalConnectorHelper.replacePLinks(content, replacer);
+		}
+		final Set<String> contentids = new LinkedHashSet<String>();
+		PortalConnectorHelper.replacePLinks(content, new PLinkReplacer() {
+			public String replacePLink(final PLinkInformation plink) {
+				contentids.add(plink.getContentId());
+				return "";
+			}
+		});
+		if (contentids.isEmpty()) {
+			return content;
+		}
+		final Map<String, String> links = getLinks(contentids, request);
+		return PortalConnectorHelper.replacePLinks(content, new PLinkReplacer() {
+			public String replacePLink(final PLinkInformation plink) {
+				String link = links.get(plink.getContentId());
+				if (link == null) {
+					link = getLink(plink, request);
+				}
+				return link;
+			}
+		});
+	}
+
+	/**
+	 * Get the links of several objects. The links that are not cached are
+	 * resolved with one query per {@value #BATCH_SIZE} objects and added to
+	 * the cache. A link that cannot be rendered does not stop the other links
+	 * of the batch.
+	 * @param contentids contentids of the objects
+	 * @param request request to build the links for
+	 * @return links by contentid, contains no link for contentids that cannot
+	 * be resolved in a batch. These are not cached, so they can be resolved
+	 * with {@link #getLink(PLinkInformation, CRRequest)}.
+	 */
+	public Map<String, String> getLinks(final Collection<String> contentids, final CRRequest request) {
+		Map<String, String> links = new HashMap<String, String>();
+		// cache keys of the links that are not cached
+		Map<String, String> missing = new LinkedHashMap<String, String>();
+		for (String contentid : contentids) {
+			if (contentid == null || !contentid.matches(CONTENTID_PATTERN) || links.containsKey(contentid)
+					|| missing.containsKey(contentid)) {
+				continue;
+			}
+			String cacheKey = getCacheKey(contentid, request);
+			String link = getCachedLink(cacheKey);
+			if ("".equals(link) || link == null) {
+				missing.put(contentid, cacheKey);
+			} else {
+				links.put(contentid, link);
+			}
+		}
+		if (missing.isEmpty()) {
+			return links;
+		}
+
+		if (!config.getPortalNodeCompMode()) {
+			long timerStart = GET_LINKS_TIMER.start();
+			long start = new Date().getTime();
+			Datasource ds = null;
+			try {
+				ds = this.config.getDatasource();
+				List<String> ids = new ArrayList<String>(missing.keySet());
+				for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+					List<String> batch = ids.subList(from, Math.min(ids.size(), from + BATCH_SIZE));
+					StringBuilder filter = new StringBuilder("object.contentid CONTAINSONEOF [");
+					for (int i = 0; i < batch.size(); i++) {
+						if (i > 0) {
+							filter.append(",");
+						}
+						filter.append("\"").append(batch.get(i)).append("\"");
+					}
+					filter.append("]");
+					Collection<Resolvable> objects = ds.getResult(
+						ds.createDatasourceFilter(PortalConnectorFactory.createExpression(filter.toString())),
+						plinkPrefill);
+					for (Resolvable plinkObject : objects) {
+						String contentid = (String) plinkObject.get("contentid");
+						String cacheKey = missing.get(contentid);
+						if (cacheKey != null && !links.containsKey(contentid)) {
+							try {
+								String link = renderLink(plinkObject);
+								if (link != null && !"".equals(link)) {
+									links.put(contentid, completeLink(link, contentid, cacheKey, request));
+								}
+							} catch (CRException ex) {
+								log.error("Could not render the link to " + contentid + ": " + ex.getMessage()
+										+ ex.getStringStackTrace());
+							}
+						}
+					}
+				}
+			} catch (ParserException e) {
+				log.error("Could not create the filter for the plinks.", e);
+			} catch (ExpressionParserException e) {
+				log.error("Could not create the filter for the plinks.", e);
+			} catch (DatasourceException e) {
+				log.error("Could not load the objects of the plinks.", e);
+			} finally {
+				CRDatabaseFactory.releaseDatasource(ds);
+				GET_LINKS_TIMER.stop(timerStart);
+			}
+			log.debug("plink generationtime for " + missing.size() + " links: " + (new Date().getTime() - start));
+		}
+		return links;
+	}
+
 	/**
 	 * get a generated link according to the information in plinkinformation.
 	 * @param plink
@@ -112,33 +288,11 @@ public class PlinkProcessor {
 		// starttime
 		long start = new Date().getTime();
 
-		String link = "";
 		String contentid = plink.getContentId();
-		String cacheKey = contentid;
-
-		String type = "";
-		if (request.getRequest() != null && request.getRequest() instanceof HttpServletRequest) {
-			type = ((HttpServletRequest) request.getRequest()).getParameter("format");
-			String typeArg = ((HttpServletRequest) request.getRequest()).getParameter("type");
-			if (typeArg != null && !typeArg.equals("")) {
-				type = typeArg;
-			}
-			// reset to an empty string if php or null
-			// otherwise just use the given type for the cache-key
-			if (type == null || type.equals("php")) {
-				type = "";
-			}
-			// if the link refers to a binary-file, always use an empty type (this falls back to "php")
-			if (contentid.startsWith(config.getBinaryType() + ".")) {
-				type = "";
-			}
-			cacheKey += "-" + type;
-		}
+		String cacheKey = getCacheKey(contentid, request);
 
 		// load link from cache
-		if (plinkCache != null) {
-			link = (String) plinkCache.get(cacheKey);
-		}
+		String link = getCachedLink(cacheKey);
 
 		// no cache object so try to prepare a link
 		if (("".equals(link) || link == null) && !config.getPortalNodeCompMode()) {
@@ -149,26 +303,8 @@ public class PlinkProcessor {
 			try {
 				ds = this.config.getDatasource();
 				plinkObject = PortalConnectorFactory.getContentObject(contentid, ds);
-				
-
-				ITemplateManager myTemplateEngine = this.config.getTemplateManager();
-				// Put objects in the plink template
-				myTemplateEngine.put("plink", plinkObject);
-				//Deploy predefined Objects to the context
-				Iterator<String> it = this.contextObjects.keySet().iterator();
-				while (it.hasNext()) {
-					String key = it.next();
-					myTemplateEngine.put(key, this.contextObjects.get(key));
-				}
-				// as url is a special object put it also in the templates
-				if (this.config.getPathResolver() != null) {
-					String url = this.config.getPathResolver().getPath(plinkObject);
-					if (url != null) {
-						myTemplateEngine.put("url", url);
-					}
-				}
 
-				link = myTemplateEngine.render("link", this.config.getPlinkTemplate());
+				link = renderLink(plinkObject);
 
 			} catch (DatasourceNotAvailableException e) {
 				CRException ex = new CRException(e);
@@ -185,6 +321,89 @@ public class PlinkProcessor {
 
 		}
 
+		return completeLink(link, contentid, cacheKey, request);
+	}
+
+	/**
+	 * Get the key of a link in the cache.
+	 * @param contentid contentid of the linked object
+	 * @param request request to build the link for
+	 * @return cache key
+	 */
+	private String getCacheKey(final String contentid, final CRRequest request) {
+		String cacheKey = contentid;
+
+		String type = "";
+		if (request != null && request.getRequest() != null && request.getRequest() instanceof HttpServletRequest) {
+			type = ((HttpServletRequest) request.getRequest()).getParameter("format");
+			String typeArg = ((HttpServletRequest) request.getRequest()).getParameter("type");
+			if (typeArg != null && !typeArg.equals("")) {
+				type = typeArg;
+			}
+			// reset to an empty string if php or null
+			// otherwise just use the given type for the cache-key
+			if (type == null || type.equals("php")) {
+				type = "";
+			}
+			// if the link refers to a binary-file, always use an empty type (this falls back to "php")
+			if (contentid.startsWith(config.getBinaryType() + ".")) {
+				type = "";
+			}
+			cacheKey += "-" + type;
+		}
+		return cacheKey;
+	}
+
+	/**
+	 * @param cacheKey key of the link in the cache
+	 * @return cached link or <code>null</code>
+	 */
+	private String getCachedLink(final String cacheKey) {
+		if (plinkCache != null) {
+			return (String) plinkCache.get(cacheKey);
+		}
+		return null;
+	}
+
+	/**
+	 * Render the link to an object with the plink template.
+	 * @param plinkObject linked object
+	 * @return link
+	 * @throws CRException if the template cannot be rendered
+	 */
+	private String renderLink(final Resolvable plinkObject) throws CRException {
+		ITemplateManager myTemplateEngine = this.config.getTemplateManager();
+		// Put objects in the plink template
+		myTemplateEngine.put("plink", plinkObject);
+		//Deploy predefined Objects to the context
+		Iterator<String> it = this.contextObjects.keySet().iterator();
+		while (it.hasNext()) {
+			String key = it.next();
+			myTemplateEngine.put(key, this.contextObjects.get(key));
+		}
+		// as url is a special object put it also in the templates
+		if (this.config.getPathResolver() != null) {
+			String url = this.config.getPathResolver().getPath(plinkObject);
+			if (url != null) {
+				myTemplateEngine.put("url", url);
+			}
+		}
+
+		return myTemplateEngine.render("link", this.config.getPlinkTemplate());
+	}
+
+	/**
+	 * Use a dynamic link if no link could be rendered and add the link to the
+	 * cache.
+	 * @param renderedLink rendered link, may be <code>null</code>
+	 * @param contentid contentid of the linked object
+	 * @param cacheKey key of the link in the cache
+	 * @param request request to build the link for
+	 * @return link
+	 */
+	private String completeLink(final String renderedLink, final String contentid, final String cacheKey,
+			final CRRequest request) {
+		String link = renderedLink;
 		// If velocity template parsing and caching does not work for any
 		// reason use a dynamic link
 		if ("".equals(link) || link == null) {
@@ -38,6 +38,16 @@ public class PlinkReplacer implements PLinkReplacer {
 		this.plinkProc = proc;
 	}
 
+	/**
+	 * Replace all plinks of a content, the links are resolved in a batch if the
+	 * {@link PlinkProcessor} is configured to do so.
+	 * @param content content containing plinks
+	 * @return content with replaced plinks
+	 */
+	public String replacePlinks(final String content) {
+		return this.plinkProc.replacePlinks(content, request);
+	}
+
 	/**
 	 * Replace plinks.
 	 * @param plink 
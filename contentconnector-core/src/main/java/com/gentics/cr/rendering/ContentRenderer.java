@@ -14,6 +14,7 @@ import com.gentics.api.portalnode.connector.PortalConnectorHelper;
 import com.gentics.cr.CRConfig;
 import com.gentics.cr.CRResolvableBean;
 import com.gentics.cr.exceptions.CRException;
+import com.gentics.cr.plink.PlinkReplacer;
 import com.gentics.cr.template.ITemplateManager;
 
 /**
@@ -90,7 +91,9 @@ public class ContentRenderer implements IContentRenderer {
 			String content = (String) contentValue;
 
 			// replace plinks (if configured to do so)
-			if (doReplacePLinks && plinkReplacer != null) {
+			if (doReplacePLinks && plinkReplacer instanceof PlinkReplacer) {
+				content = ((PlinkReplacer) plinkReplacer).replacePlinks(content);
+			} else if (doReplacePLinks && plinkReplacer != null) {
 				content = PortalConnectorHelper.replacePLinks(content, plinkReplacer);
 			}
 
@@ -0,0 +1,201 @@
+package com.gentics.cr.rest;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.gentics.cr.CRResolvableBean;
+
+/**
+ * Directory containing the binaries delivered by the
+ * {@link RESTBinaryStreamingContainer}. A binary is written to a file named
+ * after its contentid and updatetimestamp on the first request, later
+ * requests stream the file without loading the binary from the datasource.
+ * Files of older versions of a binary are removed when the new version is
+ * written, the least recently used files are removed when the files exceed
+ * the maximum size of the cache.
+ */
+public class BinarySpillCache {
+
+	/**
+	 * Logger.
+	 */
+	private static final Logger LOGGER = Logger.getLogger(BinarySpillCache.class);
+
+	/**
+	 * Suffix of the files that are being written.
+	 */
+	private static final String TMP_SUFFIX = ".tmp";
+
+	/**
+	 * Maximum number of bytes copied at once.
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Directory of the files.
+	 */
+	private final File directory;
+
+	/**
+	 * Maximum size of the files in bytes.
+	 */
+	private final long maxSize;
+
+	/**
+	 * Sizes of the files by name in access order, guarded by this cache.
+	 */
+	private final LinkedHashMap<String, Long> files = new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+	/**
+	 * Current size of the files in bytes, guarded by this cache.
+	 */
+	private long size;
+
+	/**
+	 * Create a new cache. Files left in the directory by a previous instance
+	 * are reused, the most recently modified ones are kept if they exceed the
+	 * maximum size.
+	 * @param directory directory of the files, is created if it does not exist
+	 * @param maxSize maximum size of the files in bytes
+	 */
+	public BinarySpillCache(final File directory, final long maxSize) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			LOGGER.error("Cannot create the binary cache directory " + directory);
+		}
+		File[] existing = directory.listFiles();
+		if (existing != null) {
+			Arrays.sort(existing, new Comparator<File>() {
+				public int compare(final File file1, final File file2) {
+					long modified1 = file1.lastModified();
+					long modified2 = file2.lastModified();
+					return modified1 < modified2 ? -1 : (modified1 == modified2 ? 0 : 1);
+				}
+			});
+			synchronized (this) {
+				for (File file : existing) {
+					if (file.getName().endsWith(TMP_SUFFIX)) {
+						delete(file);
+					} else if (file.isFile()) {
+						files.put(file.getName(), file.length());
+						size += file.length();
+					}
+				}
+				evict();
+			}
+		}
+	}
+
+	/**
+	 * Get the file containing the binary of a bean, the file is written if it
+	 * does not exist.
+	 * @param bean bean containing the binary
+	 * @param updatetimestamp version of the binary
+	 * @return file containing the binary
+	 * @throws IOException in case the file cannot be written
+	 */
+	public File getFile(final CRResolvableBean bean, final Object updatetimestamp) throws IOException {
+		final String prefix = getFilePrefix(bean.getContentid());
+		File file = new File(directory, prefix + updatetimestamp);
+		synchronized (this) {
+			Long length = files.get(file.getName());
+			if (length != null) {
+				if (file.isFile()) {
+					return file;
+				}
+				files.remove(file.getName());
+				size -= length;
+			}
+		}
+		InputStream in = bean.getBinaryContentAsStream();
+		if (in == null) {
+			throw new IOException("The object " + bean.getContentid() + " has no binary content.");
+		}
+		File tmp = File.createTempFile(prefix, TMP_SUFFIX, directory);
+		try {
+			OutputStream out = new FileOutputStream(tmp);
+			try {
+				byte[] buffer = new byte[BUFFER_SIZE];
+				for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+					out.write(buffer, 0, read);
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+		synchronized (this) {
+			// remove older versions before the new one is visible
+			for (Iterator<Map.Entry<String, Long>> i = files.entrySet().iterator(); i.hasNext();) {
+				Map.Entry<String, Long> entry = i.next();
+				if (entry.getKey().startsWith(prefix) && !entry.getKey().equals(file.getName())) {
+					delete(new File(directory, entry.getKey()));
+					size -= entry.getValue();
+					i.remove();
+				}
+			}
+			if (!tmp.renameTo(file) && !file.isFile()) {
+				delete(tmp);
+				throw new IOException("Cannot move the binary of " + bean.getContentid() + " to " + file);
+			}
+			delete(tmp);
+			Long previous = files.put(file.getName(), file.length());
+			if (previous != null) {
+				size -= previous;
+			}
+			size += file.length();
+			evict();
+		}
+		return file;
+	}
+
+	/**
+	 * @return current size of the files in bytes
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	/**
+	 * Remove the least recently used files until the files fit into the
+	 * maximum size. The most recently used file is always kept, so a binary
+	 * larger than the cache can still be delivered.
+	 */
+	private void evict() {
+		for (Iterator<Map.Entry<String, Long>> i = files.entrySet().iterator(); size > maxSize && files.size() > 1;) {
+			Map.Entry<String, Long> eldest = i.next();
+			delete(new File(directory, eldest.getKey()));
+			size -= eldest.getValue();
+			i.remove();
+		}
+	}
+
+	/**
+	 * @param file file to delete if it exists
+	 */
+	private static void delete(final File file) {
+		if (file.exists() && !file.delete()) {
+			LOGGER.debug("Cannot delete the cached binary " + file);
+		}
+	}
+
+	/**
+	 * @param contentid contentid of the binary
+	 * @return prefix of the files of the binary
+	 */
+	private static String getFilePrefix(final String contentid) {
+		return contentid.replaceAll("[^A-Za-z0-9.]", "_") + "-";
+	}
+}
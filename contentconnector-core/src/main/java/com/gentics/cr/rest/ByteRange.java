@@ -0,0 +1,112 @@
+package com.gentics.cr.rest;
+
+/**
+ * Byte range of a binary requested with a HTTP <code>Range</code> header.
+ * Only single ranges are supported, requests for several ranges are answered
+ * with the whole binary.
+ */
+public final class ByteRange {
+
+	/**
+	 * Range that cannot be satisfied (starts after the end of the binary).
+	 */
+	public static final ByteRange UNSATISFIABLE = new ByteRange(-1, -1);
+
+	/**
+	 * Unit of the supported ranges.
+	 */
+	private static final String BYTES_UNIT = "bytes=";
+
+	private final long first;
+
+	private final long last;
+
+	/**
+	 * @param first position of the first byte
+	 * @param last position of the last byte
+	 */
+	private ByteRange(final long first, final long last) {
+		this.first = first;
+		this.last = last;
+	}
+
+	/**
+	 * Parse a <code>Range</code> header.
+	 * @param header value of the header, may be <code>null</code>
+	 * @param length length of the binary
+	 * @return requested range, {@link #UNSATISFIABLE} or <code>null</code> if
+	 * the whole binary has to be returned (no, invalid or several ranges).
+	 */
+	public static ByteRange parse(final String header, final long length) {
+		if (header == null || !header.startsWith(BYTES_UNIT) || header.indexOf(',') != -1) {
+			return null;
+		}
+		String spec = header.substring(BYTES_UNIT.length()).trim();
+		int dash = spec.indexOf('-');
+		if (dash == -1) {
+			return null;
+		}
+		try {
+			String start = spec.substring(0, dash).trim();
+			String end = spec.substring(dash + 1).trim();
+			if (start.length() == 0) {
+				// suffix range: the last n bytes
+				if (end.length() == 0) {
+					return null;
+				}
+				long suffix = Long.parseLong(end);
+				if (suffix <= 0 || length == 0) {
+					return UNSATISFIABLE;
+				}
+				return new ByteRange(Math.max(0, length - suffix), length - 1);
+			}
+			long first = Long.parseLong(start);
+			long last = Long.MAX_VALUE;
+			if (end.length() != 0) {
+				last = Long.parseLong(end);
+				if (last < first) {
+					// invalid range, ignored
+					return null;
+				}
+			}
+			if (first >= length) {
+				return UNSATISFIABLE;
+			}
+			return new ByteRange(first, Math.min(last, length - 1));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return position of the first byte
+	 */
+	public long getFirst() {
+		return first;
+	}
+
+	/**
+	 * @return position of the last byte
+	 */
+	public long getLast() {
+		return last;
+	}
+
+	/**
+	 * @return number of bytes in the range
+	 */
+	public long getLength() {
+		return last - first + 1;
+	}
+
+	/**
+	 * @param length length of the binary
+	 * @return value of the <code>Content-Range</code> header
+	 */
+	public String toContentRange(final long length) {
+		if (this == UNSATISFIABLE) {
+			return "bytes */" + length;
+		}
+		return "bytes " + first + "-" + last + "/" + length;
+	}
+}
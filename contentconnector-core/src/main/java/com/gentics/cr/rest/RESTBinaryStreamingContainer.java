@@ -1,16 +1,27 @@
 package com.gentics.cr.rest;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.Iterator;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.TimeZone;
 
 import javax.servlet.http.HttpServletRequest;
 
+import org.apache.commons.httpclient.HttpStatus;
 import org.apache.log4j.Logger;
 
 import com.gentics.api.lib.resolving.Resolvable;
@@ -26,6 +37,7 @@ import com.gentics.cr.plink.PlinkReplacer;
 import com.gentics.cr.rendering.ContentRendererFactory;
 import com.gentics.cr.rendering.IContentRenderer;
 import com.gentics.cr.util.CRBinaryRequestBuilder;
+import com.gentics.cr.util.RequestWrapper;
 import com.gentics.cr.util.response.IResponseTypeSetter;
 
 /**
@@ -78,6 +90,46 @@ public class RESTBinaryStreamingContainer {
 	 */
 	private static final String LIVEEDITORXHTML_KEY = "container.liveeditorXHTML";
 
+	/**
+	 * Configuration key for the directory the binaries are cached in. If set,
+	 * binaries are written to this directory on the first request and
+	 * streamed from there afterwards.
+	 */
+	public static final String BINARY_CACHE_DIR_KEY = "binarycachedir";
+
+	/**
+	 * Configuration key for the maximum size of the binary cache in
+	 * megabytes. The least recently delivered binaries are removed from the
+	 * cache if it grows larger.
+	 */
+	public static final String BINARY_CACHE_SIZE_KEY = "binarycachesize";
+
+	/**
+	 * Default maximum size of the binary cache in megabytes.
+	 */
+	private static final int DEFAULT_BINARY_CACHE_SIZE = 1024;
+
+	/**
+	 * Attribute containing the version of an object.
+	 */
+	private static final String UPDATETIMESTAMP_ATTRIBUTE = "updatetimestamp";
+
+	/**
+	 * Maximum number of bytes written at once.
+	 */
+	private static final int CHUNK_SIZE = 8192;
+
+	/**
+	 * Format of HTTP dates.
+	 */
+	private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+	/**
+	 * Cache of the delivered binaries, <code>null</code> if binaries are
+	 * written from the datasource.
+	 */
+	private BinarySpillCache binaryCache;
+
 	/**
 	 * get conten type as string.
 	 * 
@@ -111,6 +163,11 @@ public class RESTBinaryStreamingContainer {
 		}
 		contentRenderer = ContentRendererFactory.getRendererInstance(crConf.getRequestProcessorConfig(1));
 		plinkProcessor = new PlinkProcessor(crConf.getRequestProcessorConfig(1));
+		String binaryCacheDir = config.getString(BINARY_CACHE_DIR_KEY);
+		if (binaryCacheDir != null && !"".equals(binaryCacheDir)) {
+			long binaryCacheSize = config.getInteger(BINARY_CACHE_SIZE_KEY, DEFAULT_BINARY_CACHE_SIZE) * 1024L * 1024L;
+			binaryCache = new BinarySpillCache(new File(binaryCacheDir), binaryCacheSize);
+		}
 	}
 
 	/**
@@ -160,7 +217,7 @@ public class RESTBinaryStreamingContainer {
 			}
 			if (this.crConf.usesContentidUrl()) {
 				if (req.getContentid() == null) {
-					Object obj = reqBuilder.getRequest();
+					Object obj = getServletRequest(reqBuilder);
 					if (obj instanceof HttpServletRequest) {
 						String[] reqURI = ((HttpServletRequest) obj).getRequestURI().split("/");
 						ArrayList<String> reqList = new ArrayList<String>(Arrays.asList(reqURI));
@@ -171,7 +228,7 @@ public class RESTBinaryStreamingContainer {
 					}
 				}
 			}
-			req.setAttributeArray(new String[] { "mimetype" });
+			req.setAttributeArray(new String[] { "mimetype", UPDATETIMESTAMP_ATTRIBUTE });
 			// load by url if no contentid
 			if (req.isUrlRequest()) {
 				crBean = rp.getBeanByURL(req);
@@ -200,11 +257,12 @@ public class RESTBinaryStreamingContainer {
 				responsetypesetter.setContentType(this.getContentType());
 				// output data.
 				if (crBean.isBinary()) {
-					stream.write(crBean.getBinaryContent());
+					writeBinary(crBean, getServletRequest(reqBuilder), stream, responsetypesetter);
 
 				} else {
 
-					PLinkOutputStream plos = new PLinkOutputStream(stream, new PlinkReplacer(plinkProcessor, req));
+					PLinkOutputStream plos = new PLinkOutputStream(stream, new PlinkReplacer(plinkProcessor, req),
+							Charset.forName(this.responseEncoding));
 
 					OutputStreamWriter wr = new OutputStreamWriter(plos, this.responseEncoding);
 					String content = crBean.getContent(this.responseEncoding);
@@ -229,4 +287,220 @@ public class RESTBinaryStreamingContainer {
 		}
 
 	}
+
+	/**
+	 * @param reqBuilder request builder
+	 * @return request passed to the request builder
+	 */
+	private static Object getServletRequest(final CRBinaryRequestBuilder reqBuilder) {
+		Object request = reqBuilder.getRequest();
+		if (request instanceof RequestWrapper) {
+			return ((RequestWrapper) request).getRequest();
+		}
+		return request;
+	}
+
+	/**
+	 * Write the binary of a bean. Requests with a matching
+	 * <code>If-None-Match</code> or <code>If-Modified-Since</code> header are
+	 * answered with 304 without loading the binary, requests with a single
+	 * <code>Range</code> get the requested bytes only. The binary is written
+	 * in chunks from the binary cache if configured.
+	 * @param crBean bean of the binary
+	 * @param request servlet request or <code>null</code>
+	 * @param stream output stream
+	 * @param responsetypesetter responsetypesetter
+	 * @throws IOException in case of error writing the binary
+	 */
+	private void writeBinary(final CRResolvableBean crBean, final Object request, final OutputStream stream,
+			final IResponseTypeSetter responsetypesetter) throws IOException {
+		HttpServletRequest httpRequest = null;
+		if (request instanceof HttpServletRequest) {
+			httpRequest = (HttpServletRequest) request;
+		}
+		Object updatetimestamp = crBean.get(UPDATETIMESTAMP_ATTRIBUTE);
+		long lastModified = -1;
+		String etag = null;
+		if (updatetimestamp != null) {
+			try {
+				lastModified = Long.parseLong(updatetimestamp.toString()) * 1000L;
+			} catch (NumberFormatException e) {
+				log.debug("Invalid updatetimestamp " + updatetimestamp + " of " + crBean.getContentid());
+			}
+			etag = "\"" + crBean.getContentid() + "-" + updatetimestamp + "\"";
+			responsetypesetter.setHeader("ETag", etag);
+			if (lastModified >= 0) {
+				responsetypesetter.setHeader("Last-Modified", formatHttpDate(lastModified));
+			}
+			if (httpRequest != null && isNotModified(httpRequest, etag, lastModified)) {
+				responsetypesetter.setResponseCode(HttpStatus.SC_NOT_MODIFIED);
+				return;
+			}
+		}
+
+		FileInputStream in = null;
+		if (binaryCache != null && updatetimestamp != null) {
+			try {
+				// falls back to the bean if the file was evicted before it is opened
+				in = new FileInputStream(binaryCache.getFile(crBean, updatetimestamp));
+			} catch (IOException e) {
+				log.error("Cannot cache the binary of " + crBean.getContentid(), e);
+			}
+		}
+		try {
+			writeBinary(crBean, in, httpRequest, etag, lastModified, stream, responsetypesetter);
+		} finally {
+			if (in != null) {
+				in.close();
+			}
+		}
+	}
+
+	/**
+	 * Write the binary of a bean from the cached file or the bean itself.
+	 * @param crBean bean of the binary
+	 * @param in stream of the cached file or <code>null</code> if the binary
+	 * is not cached
+	 * @param httpRequest servlet request or <code>null</code>
+	 * @param etag entity tag of the binary or <code>null</code>
+	 * @param lastModified last modification of the binary in milliseconds or
+	 * -1 if unknown
+	 * @param stream output stream
+	 * @param responsetypesetter responsetypesetter
+	 * @throws IOException in case of error writing the binary
+	 */
+	private void writeBinary(final CRResolvableBean crBean, final FileInputStream in,
+			final HttpServletRequest httpRequest, final String etag, final long lastModified, final OutputStream stream,
+			final IResponseTypeSetter responsetypesetter) throws IOException {
+		byte[] binary = null;
+		long length;
+		if (in != null) {
+			length = in.getChannel().size();
+		} else {
+			binary = crBean.getBinaryContent();
+			if (binary == null) {
+				binary = new byte[0];
+			}
+			length = binary.length;
+		}
+
+		responsetypesetter.setHeader("Accept-Ranges", "bytes");
+		ByteRange range = null;
+		if (httpRequest != null && isRangeValid(httpRequest, etag, lastModified)) {
+			range = ByteRange.parse(httpRequest.getHeader("Range"), length);
+		}
+		if (range == ByteRange.UNSATISFIABLE) {
+			responsetypesetter.setResponseCode(HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+			responsetypesetter.setHeader("Content-Range", range.toContentRange(length));
+			return;
+		}
+		long first = 0;
+		long count = length;
+		if (range != null) {
+			responsetypesetter.setResponseCode(HttpStatus.SC_PARTIAL_CONTENT);
+			responsetypesetter.setHeader("Content-Range", range.toContentRange(length));
+			first = range.getFirst();
+			count = range.getLength();
+		}
+		responsetypesetter.setHeader("Content-Length", Long.toString(count));
+
+		if (in != null) {
+			FileChannel channel = in.getChannel();
+			WritableByteChannel out = Channels.newChannel(stream);
+			while (count > 0) {
+				long written = channel.transferTo(first, count, out);
+				if (written <= 0) {
+					break;
+				}
+				first += written;
+				count -= written;
+			}
+		} else {
+			for (int pos = (int) first; count > 0;) {
+				int chunk = (int) Math.min(CHUNK_SIZE, count);
+				stream.write(binary, pos, chunk);
+				pos += chunk;
+				count -= chunk;
+			}
+		}
+	}
+
+	/**
+	 * Check the conditional headers of a request. <code>If-None-Match</code>
+	 * takes precedence over <code>If-Modified-Since</code>.
+	 * @param request request
+	 * @param etag current entity tag of the binary
+	 * @param lastModified last modification of the binary in milliseconds or
+	 * -1 if unknown
+	 * @return true if the client has the current version of the binary
+	 */
+	private static boolean isNotModified(final HttpServletRequest request, final String etag, final long lastModified) {
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if (ifNoneMatch != null) {
+			if ("*".equals(ifNoneMatch.trim())) {
+				return true;
+			}
+			for (String tag : ifNoneMatch.split(",")) {
+				tag = tag.trim();
+				if (tag.startsWith("W/")) {
+					tag = tag.substring(2);
+				}
+				if (tag.equals(etag)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		if (lastModified >= 0) {
+			long ifModifiedSince = getDateHeader(request, "If-Modified-Since");
+			// HTTP dates have a precision of seconds
+			return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+		}
+		return false;
+	}
+
+	/**
+	 * Check the <code>If-Range</code> header of a request.
+	 * @param request request
+	 * @param etag current entity tag of the binary, may be <code>null</code>
+	 * @param lastModified last modification of the binary in milliseconds or
+	 * -1 if unknown
+	 * @return true if a requested range can be returned
+	 */
+	private static boolean isRangeValid(final HttpServletRequest request, final String etag, final long lastModified) {
+		String ifRange = request.getHeader("If-Range");
+		if (ifRange == null) {
+			return true;
+		}
+		ifRange = ifRange.trim();
+		if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+			return ifRange.equals(etag);
+		}
+		long date = getDateHeader(request, "If-Range");
+		return lastModified >= 0 && date >= 0 && lastModified / 1000 <= date / 1000;
+	}
+
+	/**
+	 * @param request request
+	 * @param name name of a date header
+	 * @return value of the header in milliseconds or -1 if the header is not
+	 * set or invalid
+	 */
+	private static long getDateHeader(final HttpServletRequest request, final String name) {
+		try {
+			return request.getDateHeader(name);
+		} catch (IllegalArgumentException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @param time time in milliseconds
+	 * @return time formatted as HTTP date
+	 */
+	private static String formatHttpDate(final long time) {
+		SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		return format.format(new Date(time));
+	}
 }
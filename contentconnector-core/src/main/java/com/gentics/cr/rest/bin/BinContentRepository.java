@@ -0,0 +1,121 @@
+package com.gentics.cr.rest.bin;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.gentics.cr.CRError;
+import com.gentics.cr.CRResolvableBean;
+import com.gentics.cr.exceptions.CRException;
+import com.gentics.cr.rest.ContentRepository;
+
+/**
+ * Contentrepository writing the beans in a compact binary format that can be
+ * read with {@link BinaryResponseReader}. Unlike JavaBIN no java serialization
+ * is used, the attribute names are written once per response and the values
+ * are written with their type.
+ */
+public class BinContentRepository extends ContentRepository {
+
+	/**
+	 * Content type of the binary responses.
+	 */
+	public static final String CONTENT_TYPE = "application/x-contentconnector-bin";
+
+	private static final long serialVersionUID = -3618204373935260527L;
+
+	/**
+	 * Create instance.
+	 * @param attr attributes to write
+	 */
+	public BinContentRepository(final String[] attr) {
+		super(attr);
+	}
+
+	/**
+	 * Create instance. The encoding is ignored, strings are always written as
+	 * UTF-8.
+	 * @param attr attributes to write
+	 * @param encoding encoding
+	 */
+	public BinContentRepository(final String[] attr, final String encoding) {
+		super(attr, encoding);
+	}
+
+	/**
+	 * Create instance.
+	 * @param attr attributes to write
+	 * @param encoding encoding
+	 * @param options options
+	 */
+	public BinContentRepository(final String[] attr, final String encoding, final String[] options) {
+		super(attr, encoding, options);
+	}
+
+	/**
+	 * @return <code>true</code> to compress the body of the responses
+	 */
+	protected boolean isDeflate() {
+		return false;
+	}
+
+	/**
+	 * Returns contenttype "application/x-contentconnector-bin".
+	 */
+	@Override
+	public String getContentType() {
+		return CONTENT_TYPE;
+	}
+
+	/**
+	 * Respond with an error record.
+	 * @param stream stream to write the error to
+	 * @param ex error
+	 * @param isDebug write the stacktrace if <code>true</code>
+	 */
+	@Override
+	public void respondWithError(final OutputStream stream, final CRException ex, final boolean isDebug) {
+		CRError e = new CRError(ex);
+		if (!isDebug) {
+			e.setStringStackTrace(null);
+		}
+		BinaryResponseWriter writer = null;
+		try {
+			writer = new BinaryResponseWriter(stream, isDeflate(), getAttrArray());
+			writer.writeError(e);
+			writer.finish();
+		} catch (IOException ioe) {
+			log.error("Unable to write the error", ioe);
+		} finally {
+			if (writer != null) {
+				writer.release();
+			}
+		}
+	}
+
+	/**
+	 * Write the objects to the stream.
+	 * @param stream stream to write the objects to
+	 * @throws CRException if there are no objects
+	 */
+	@Override
+	public void toStream(final OutputStream stream) throws CRException {
+		if (this.resolvableColl.isEmpty()) {
+			//No Data Found
+			throw new CRException("NoDataFound", "Data could not be found.", CRException.ERRORTYPE.NO_DATA_FOUND);
+		}
+		BinaryResponseWriter writer = null;
+		try {
+			writer = new BinaryResponseWriter(stream, isDeflate(), getAttrArray());
+			for (CRResolvableBean bean : this.resolvableColl) {
+				writer.writeBean(bean);
+			}
+			writer.finish();
+		} catch (IOException e) {
+			log.error("Unable to write the objects", e);
+		} finally {
+			if (writer != null) {
+				writer.release();
+			}
+		}
+	}
+}
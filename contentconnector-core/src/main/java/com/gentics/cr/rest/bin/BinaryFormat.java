@@ -0,0 +1,89 @@
+package com.gentics.cr.rest.bin;
+
+import java.nio.charset.Charset;
+
+/**
+ * Constants of the compact binary format written by
+ * {@link BinaryResponseWriter} and read by {@link BinaryResponseReader}.
+ * <p>
+ * A response starts with the magic bytes <code>CRBN</code>, the format version
+ * and a flags byte. If {@link #FLAG_DEFLATE} is set the rest of the response
+ * is deflate compressed. The body is a sequence of records, each starting with
+ * a record tag:
+ * <ul>
+ * <li>{@link #RECORD_OBJECT}: contentid, obj_id, obj_type, mother_id and
+ * mother_type as nullable strings, the number of attributes followed by name
+ * and value of each attribute, the number of children + 1 (0 if the bean has
+ * no child collection) followed by the children.</li>
+ * <li>{@link #RECORD_ERROR}: type, message, stacktrace and error type as
+ * nullable strings.</li>
+ * <li>{@link #RECORD_END}: end of the response.</li>
+ * </ul>
+ * Numbers and lengths are written as variable length integers, strings as
+ * length and UTF-8 bytes. A nullable string is written with length + 1 and 0
+ * for <code>null</code>. Attribute names are written once per response: a name
+ * is referenced by its index + 1, 0 is followed by a name that was not used
+ * before and gets the next index.
+ */
+final class BinaryFormat {
+
+	/**
+	 * Magic bytes at the start of every response.
+	 */
+	static final byte[] MAGIC = new byte[] { 'C', 'R', 'B', 'N' };
+
+	/**
+	 * Version of the format, readers refuse responses with a newer version.
+	 */
+	static final int VERSION = 1;
+
+	/**
+	 * Flag for responses with a deflate compressed body.
+	 */
+	static final int FLAG_DEFLATE = 1;
+
+	static final int RECORD_END = 0;
+
+	static final int RECORD_OBJECT = 1;
+
+	static final int RECORD_ERROR = 2;
+
+	static final int TYPE_NULL = 0;
+
+	static final int TYPE_STRING = 1;
+
+	static final int TYPE_INTEGER = 2;
+
+	static final int TYPE_LONG = 3;
+
+	static final int TYPE_DOUBLE = 4;
+
+	static final int TYPE_FLOAT = 5;
+
+	static final int TYPE_TRUE = 6;
+
+	static final int TYPE_FALSE = 7;
+
+	static final int TYPE_BYTES = 8;
+
+	static final int TYPE_DATE = 9;
+
+	static final int TYPE_STRING_ARRAY = 10;
+
+	static final int TYPE_ARRAY = 11;
+
+	static final int TYPE_LIST = 12;
+
+	static final int TYPE_MAP = 13;
+
+	/**
+	 * Charset of all strings.
+	 */
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Utility class.
+	 */
+	private BinaryFormat() {
+	}
+}
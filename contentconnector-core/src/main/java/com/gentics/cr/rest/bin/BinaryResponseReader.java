@@ -0,0 +1,373 @@
+package com.gentics.cr.rest.bin;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import com.gentics.cr.CRError;
+import com.gentics.cr.CRResolvableBean;
+import com.gentics.cr.exceptions.CRException;
+
+/**
+ * Reads beans written by {@link BinaryResponseWriter}. The beans are decoded
+ * one by one while the response is read, no classes are instantiated by name.
+ * The lengths in the response are not trusted: strings and byte arrays longer
+ * than the maximum value length are rejected, and large values are read in
+ * chunks, so memory is only allocated for bytes that actually arrive.
+ */
+public class BinaryResponseReader {
+
+	/**
+	 * Size of the read buffer.
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Maximum initial capacity of the decoded collections, the size of a
+	 * collection is only trusted as far as its elements can be read.
+	 */
+	private static final int MAX_INITIAL_CAPACITY = 256;
+
+	/**
+	 * Default maximum length of a string or byte array value in bytes.
+	 */
+	public static final int DEFAULT_MAX_VALUE_LENGTH = 128 * 1024 * 1024;
+
+	/**
+	 * Values longer than this are read in chunks of this size.
+	 */
+	private static final int CHUNK_SIZE = 65536;
+
+	/**
+	 * Maximum length of a string or byte array value in bytes.
+	 */
+	private final int maxValueLength;
+
+	private final DataInputStream in;
+
+	/**
+	 * Inflater of a compressed body, <code>null</code> if the body is not
+	 * compressed.
+	 */
+	private final Inflater inflater;
+
+	/**
+	 * Attribute names read so far, in the order of their indexes.
+	 */
+	private final List<String> names = new ArrayList<String>();
+
+	private boolean end = false;
+
+	/**
+	 * Create a new reader and read the header of the response, values may be
+	 * up to {@link #DEFAULT_MAX_VALUE_LENGTH} bytes long.
+	 * @param stream stream to read the response from
+	 * @throws IOException if the stream does not contain a response of a
+	 * supported version or in case of error reading from the stream
+	 */
+	public BinaryResponseReader(final InputStream stream) throws IOException {
+		this(stream, DEFAULT_MAX_VALUE_LENGTH);
+	}
+
+	/**
+	 * Create a new reader and read the header of the response.
+	 * @param stream stream to read the response from
+	 * @param maxValueLength maximum length of a string or byte array value in
+	 * bytes
+	 * @throws IOException if the stream does not contain a response of a
+	 * supported version or in case of error reading from the stream
+	 */
+	public BinaryResponseReader(final InputStream stream, final int maxValueLength) throws IOException {
+		this.maxValueLength = maxValueLength;
+		byte[] magic = new byte[BinaryFormat.MAGIC.length];
+		DataInputStream header = new DataInputStream(stream);
+		header.readFully(magic);
+		if (!Arrays.equals(magic, BinaryFormat.MAGIC)) {
+			throw new IOException("The response is not in the binary format.");
+		}
+		int version = header.readUnsignedByte();
+		if (version > BinaryFormat.VERSION) {
+			throw new IOException("Unsupported version " + version + " of the binary format.");
+		}
+		int flags = header.readUnsignedByte();
+		InputStream body = stream;
+		if ((flags & BinaryFormat.FLAG_DEFLATE) != 0) {
+			inflater = new Inflater();
+			body = new InflaterInputStream(stream, inflater, BUFFER_SIZE);
+		} else {
+			inflater = null;
+		}
+		in = new DataInputStream(new BufferedInputStream(body, BUFFER_SIZE));
+	}
+
+	/**
+	 * Read the next bean including its children.
+	 * @return the next bean or <code>null</code> at the end of the response
+	 * @throws CRException if the response contains an error
+	 * @throws IOException in case of error reading from the stream or if the
+	 * response is malformed
+	 */
+	public CRResolvableBean readBean() throws CRException, IOException {
+		if (end) {
+			return null;
+		}
+		int record = in.readUnsignedByte();
+		switch (record) {
+		case BinaryFormat.RECORD_OBJECT:
+			return readBeanFields();
+		case BinaryFormat.RECORD_ERROR:
+			end = true;
+			throw new CRException(readError());
+		case BinaryFormat.RECORD_END:
+			end = true;
+			return null;
+		default:
+			throw new IOException("Unknown record " + record + " in the binary response.");
+		}
+	}
+
+	/**
+	 * Read all remaining beans.
+	 * @return beans of the response
+	 * @throws CRException if the response contains an error
+	 * @throws IOException in case of error reading from the stream or if the
+	 * response is malformed
+	 */
+	public Collection<CRResolvableBean> readObjects() throws CRException, IOException {
+		Collection<CRResolvableBean> result = new Vector<CRResolvableBean>();
+		CRResolvableBean bean = readBean();
+		while (bean != null) {
+			result.add(bean);
+			bean = readBean();
+		}
+		return result;
+	}
+
+	/**
+	 * Close the reader and the underlying stream.
+	 * @throws IOException in case of error closing the stream
+	 */
+	public void close() throws IOException {
+		try {
+			in.close();
+		} finally {
+			if (inflater != null) {
+				inflater.end();
+			}
+		}
+	}
+
+	private CRResolvableBean readBeanFields() throws IOException {
+		CRResolvableBean bean = new CRResolvableBean();
+		bean.setContentid(readNullableString());
+		bean.setObj_id(readNullableString());
+		bean.setObj_type(readNullableString());
+		bean.setMother_id(readNullableString());
+		bean.setMother_type(readNullableString());
+
+		int count = readLength();
+		Map<String, Object> attributes = new ConcurrentHashMap<String, Object>(capacity(count));
+		for (int i = 0; i < count; i++) {
+			String name = readName();
+			Object value = readValue();
+			if (value != null) {
+				attributes.put(name, value);
+			}
+		}
+		bean.setAttrMap(attributes);
+
+		int children = readLength();
+		if (children > 0) {
+			Collection<CRResolvableBean> childRepository = new Vector<CRResolvableBean>(capacity(children - 1));
+			for (int i = 1; i < children; i++) {
+				childRepository.add(readBeanFields());
+			}
+			bean.setChildRepository(childRepository);
+		}
+		return bean;
+	}
+
+	private CRError readError() throws IOException {
+		CRError error = new CRError(readNullableString(), readNullableString(), readNullableString());
+		String errorType = readNullableString();
+		if (errorType != null) {
+			try {
+				error.setErrorType(CRException.ERRORTYPE.valueOf(errorType));
+			} catch (IllegalArgumentException e) {
+				// unknown error types are reported as general errors
+			}
+		}
+		return error;
+	}
+
+	private String readName() throws IOException {
+		int index = readLength();
+		if (index == 0) {
+			String name = readString(readLength());
+			names.add(name);
+			return name;
+		}
+		if (index > names.size()) {
+			throw new IOException("Unknown attribute name " + index + " in the binary response.");
+		}
+		return names.get(index - 1);
+	}
+
+	private Object readValue() throws IOException {
+		int type = in.readUnsignedByte();
+		switch (type) {
+		case BinaryFormat.TYPE_NULL:
+			return null;
+		case BinaryFormat.TYPE_STRING:
+			return readString(readLength());
+		case BinaryFormat.TYPE_INTEGER:
+			int i = readVarInt();
+			return (i >>> 1) ^ -(i & 1);
+		case BinaryFormat.TYPE_LONG:
+			return readZigZagLong();
+		case BinaryFormat.TYPE_DOUBLE:
+			return in.readDouble();
+		case BinaryFormat.TYPE_FLOAT:
+			return in.readFloat();
+		case BinaryFormat.TYPE_TRUE:
+			return Boolean.TRUE;
+		case BinaryFormat.TYPE_FALSE:
+			return Boolean.FALSE;
+		case BinaryFormat.TYPE_BYTES:
+			return readBytes(readLength());
+		case BinaryFormat.TYPE_DATE:
+			return new Date(readZigZagLong());
+		case BinaryFormat.TYPE_STRING_ARRAY:
+			int length = readLength();
+			List<String> strings = new ArrayList<String>(capacity(length));
+			for (int j = 0; j < length; j++) {
+				strings.add(readNullableString());
+			}
+			return strings.toArray(new String[strings.size()]);
+		case BinaryFormat.TYPE_ARRAY:
+			return readList().toArray();
+		case BinaryFormat.TYPE_LIST:
+			return readList();
+		case BinaryFormat.TYPE_MAP:
+			int entries = readLength();
+			Map<Object, Object> map = new LinkedHashMap<Object, Object>(capacity(entries));
+			for (int j = 0; j < entries; j++) {
+				map.put(readValue(), readValue());
+			}
+			return map;
+		default:
+			throw new IOException("Unknown value type " + type + " in the binary response.");
+		}
+	}
+
+	private List<Object> readList() throws IOException {
+		int size = readLength();
+		List<Object> list = new ArrayList<Object>(capacity(size));
+		for (int j = 0; j < size; j++) {
+			list.add(readValue());
+		}
+		return list;
+	}
+
+	private String readString(final int length) throws IOException {
+		return new String(readBytes(length), BinaryFormat.UTF8);
+	}
+
+	/**
+	 * Read a value of the given length.
+	 * @param length length read from the response
+	 * @return bytes of the value
+	 * @throws IOException in case of error reading from the stream, if the
+	 * value is longer than the maximum or the response ends before the value
+	 */
+	private byte[] readBytes(final int length) throws IOException {
+		if (length > maxValueLength) {
+			throw new IOException("Value of " + length + " bytes exceeds the maximum of " + maxValueLength
+					+ " bytes in the binary response.");
+		}
+		if (length <= CHUNK_SIZE) {
+			byte[] bytes = new byte[length];
+			in.readFully(bytes);
+			return bytes;
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(CHUNK_SIZE);
+		byte[] chunk = new byte[CHUNK_SIZE];
+		int remaining = length;
+		while (remaining > 0) {
+			int read = in.read(chunk, 0, Math.min(remaining, CHUNK_SIZE));
+			if (read < 0) {
+				throw new EOFException("The binary response ended within a value of " + length + " bytes.");
+			}
+			bytes.write(chunk, 0, read);
+			remaining -= read;
+		}
+		return bytes.toByteArray();
+	}
+
+	private String readNullableString() throws IOException {
+		int length = readLength();
+		if (length == 0) {
+			return null;
+		}
+		return readString(length - 1);
+	}
+
+	/**
+	 * @return a length or count, which may not be negative
+	 * @throws IOException in case of error reading from the stream or if the
+	 * value is negative
+	 */
+	private int readLength() throws IOException {
+		int length = readVarInt();
+		if (length < 0) {
+			throw new IOException("Invalid length " + length + " in the binary response.");
+		}
+		return length;
+	}
+
+	private int readVarInt() throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed variable length integer in the binary response.");
+	}
+
+	private long readZigZagLong() throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return (value >>> 1) ^ -(value & 1);
+			}
+		}
+		throw new IOException("Malformed variable length integer in the binary response.");
+	}
+
+	/**
+	 * @param size size of a collection read from the response
+	 * @return initial capacity for the collection
+	 */
+	private static int capacity(final int size) {
+		return Math.min(Math.max(size, 1), MAX_INITIAL_CAPACITY);
+	}
+}
@@ -0,0 +1,310 @@
+package com.gentics.cr.rest.bin;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import com.gentics.cr.CRError;
+import com.gentics.cr.CRResolvableBean;
+
+/**
+ * Writes beans in the compact binary format described in {@link BinaryFormat}.
+ * Every bean is encoded as soon as it is written, only the attribute names
+ * used so far are kept.
+ * <p>
+ * Values are written with their type for {@link String}, {@link Integer},
+ * {@link Long}, {@link Double}, {@link Float}, {@link Boolean}, byte arrays,
+ * {@link Date}, arrays, collections and maps. {@link Short} and {@link Byte}
+ * values are written as integers, any other value as its string
+ * representation.
+ * <p>
+ * The deflater of a compressed response is released by {@link #finish()}, a
+ * response that is not finished because of an error has to be released with
+ * {@link #release()}.
+ */
+public class BinaryResponseWriter {
+
+	/**
+	 * Size of the write buffer.
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	private final DataOutputStream out;
+
+	/**
+	 * Compressing stream, <code>null</code> if the body is not compressed.
+	 */
+	private final DeflaterOutputStream deflaterStream;
+
+	private final Deflater deflater;
+
+	/**
+	 * Indexes of the attribute names that were written.
+	 */
+	private final Map<String, Integer> names = new HashMap<String, Integer>();
+
+	/**
+	 * Attributes to read from the resolvables wrapped in the beans.
+	 */
+	private final String[] attributeNames;
+
+	/**
+	 * Create a new writer and write the header of the response.
+	 * @param stream stream to write the response to
+	 * @param deflate <code>true</code> to compress the body of the response
+	 * @param attributeNames attributes to read from the resolvables wrapped in
+	 * the beans, may be <code>null</code>
+	 * @throws IOException in case of error writing to the stream
+	 */
+	public BinaryResponseWriter(final OutputStream stream, final boolean deflate, final String[] attributeNames)
+			throws IOException {
+		this.attributeNames = attributeNames;
+		stream.write(BinaryFormat.MAGIC);
+		stream.write(BinaryFormat.VERSION);
+		OutputStream body = stream;
+		if (deflate) {
+			stream.write(BinaryFormat.FLAG_DEFLATE);
+			deflater = new Deflater(Deflater.BEST_SPEED);
+			deflaterStream = new DeflaterOutputStream(stream, deflater, BUFFER_SIZE);
+			body = deflaterStream;
+		} else {
+			stream.write(0);
+			deflater = null;
+			deflaterStream = null;
+		}
+		out = new DataOutputStream(new BufferedOutputStream(body, BUFFER_SIZE));
+	}
+
+	/**
+	 * Write a bean including its children.
+	 * @param bean bean to write
+	 * @throws IOException in case of error writing to the stream
+	 */
+	public void writeBean(final CRResolvableBean bean) throws IOException {
+		out.writeByte(BinaryFormat.RECORD_OBJECT);
+		writeBeanFields(bean);
+	}
+
+	/**
+	 * Write an error.
+	 * @param error error to write
+	 * @throws IOException in case of error writing to the stream
+	 */
+	public void writeError(final CRError error) throws IOException {
+		out.writeByte(BinaryFormat.RECORD_ERROR);
+		writeNullableString(error.getType());
+		writeNullableString(error.getMessage());
+		writeNullableString(error.getStringStackTrace());
+		writeNullableString(error.getErrorType() == null ? null : error.getErrorType().name());
+	}
+
+	/**
+	 * Write the end of the response and flush it to the stream. The stream is
+	 * not closed, the deflater is released even if writing fails.
+	 * @throws IOException in case of error writing to the stream
+	 */
+	public void finish() throws IOException {
+		try {
+			out.writeByte(BinaryFormat.RECORD_END);
+			out.flush();
+			if (deflaterStream != null) {
+				deflaterStream.finish();
+			}
+		} finally {
+			release();
+		}
+	}
+
+	/**
+	 * Release the deflater of a compressed response without finishing it,
+	 * nothing is written afterwards. Does nothing if the response was already
+	 * released or is not compressed.
+	 */
+	public void release() {
+		if (deflater != null) {
+			deflater.end();
+		}
+	}
+
+	private void writeBeanFields(final CRResolvableBean bean) throws IOException {
+		writeNullableString(bean.getContentid());
+		writeNullableString(bean.getObj_id());
+		writeNullableString(bean.getObj_type());
+		writeNullableString(bean.getMother_id());
+		writeNullableString(bean.getMother_type());
+
+		Map<String, Object> attributes = getAttributes(bean);
+		writeVarInt(attributes.size());
+		for (Entry<String, Object> attribute : attributes.entrySet()) {
+			writeName(attribute.getKey());
+			writeValue(attribute.getValue());
+		}
+
+		Collection<CRResolvableBean> children = bean.getChildRepository();
+		if (children == null) {
+			writeVarInt(0);
+		} else {
+			writeVarInt(children.size() + 1);
+			for (CRResolvableBean child : children) {
+				writeBeanFields(child);
+			}
+		}
+	}
+
+	/**
+	 * @param bean bean
+	 * @return attributes of the bean, including the requested attributes of a
+	 * wrapped resolvable
+	 */
+	private Map<String, Object> getAttributes(final CRResolvableBean bean) {
+		Map<String, Object> attributes = bean.getAttrMap();
+		if (bean.getResolvable() == null || attributeNames == null) {
+			if (attributes == null) {
+				return new HashMap<String, Object>(0);
+			}
+			return attributes;
+		}
+		Map<String, Object> all = new LinkedHashMap<String, Object>();
+		if (attributes != null) {
+			all.putAll(attributes);
+		}
+		for (String name : attributeNames) {
+			if (name != null && !"contentid".equals(name) && !all.containsKey(name)) {
+				Object value = bean.get(name);
+				if (value != null) {
+					all.put(name, value);
+				}
+			}
+		}
+		return all;
+	}
+
+	private void writeName(final String name) throws IOException {
+		Integer index = names.get(name);
+		if (index == null) {
+			names.put(name, names.size());
+			writeVarInt(0);
+			writeString(name);
+		} else {
+			writeVarInt(index + 1);
+		}
+	}
+
+	private void writeValue(final Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(BinaryFormat.TYPE_NULL);
+		} else if (value instanceof String) {
+			out.writeByte(BinaryFormat.TYPE_STRING);
+			writeString((String) value);
+		} else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			out.writeByte(BinaryFormat.TYPE_INTEGER);
+			int i = ((Number) value).intValue();
+			writeVarInt((i << 1) ^ (i >> 31));
+		} else if (value instanceof Long) {
+			out.writeByte(BinaryFormat.TYPE_LONG);
+			writeZigZagLong((Long) value);
+		} else if (value instanceof Double) {
+			out.writeByte(BinaryFormat.TYPE_DOUBLE);
+			out.writeDouble((Double) value);
+		} else if (value instanceof Float) {
+			out.writeByte(BinaryFormat.TYPE_FLOAT);
+			out.writeFloat((Float) value);
+		} else if (value instanceof Boolean) {
+			out.writeByte((Boolean) value ? BinaryFormat.TYPE_TRUE : BinaryFormat.TYPE_FALSE);
+		} else if (value instanceof byte[]) {
+			byte[] bytes = (byte[]) value;
+			out.writeByte(BinaryFormat.TYPE_BYTES);
+			writeVarInt(bytes.length);
+			out.write(bytes);
+		} else if (value instanceof Date) {
+			out.writeByte(BinaryFormat.TYPE_DATE);
+			writeZigZagLong(((Date) value).getTime());
+		} else if (value instanceof String[]) {
+			String[] strings = (String[]) value;
+			out.writeByte(BinaryFormat.TYPE_STRING_ARRAY);
+			writeVarInt(strings.length);
+			for (String s : strings) {
+				writeNullableString(s);
+			}
+		} else if (value instanceof Object[]) {
+			Object[] objects = (Object[]) value;
+			out.writeByte(BinaryFormat.TYPE_ARRAY);
+			writeVarInt(objects.length);
+			for (Object o : objects) {
+				writeValue(o);
+			}
+		} else if (value instanceof Collection<?>) {
+			Collection<?> collection = (Collection<?>) value;
+			out.writeByte(BinaryFormat.TYPE_LIST);
+			writeVarInt(collection.size());
+			for (Object o : collection) {
+				writeValue(o);
+			}
+		} else if (value instanceof Map<?, ?>) {
+			Map<?, ?> map = (Map<?, ?>) value;
+			out.writeByte(BinaryFormat.TYPE_MAP);
+			writeVarInt(map.size());
+			for (Entry<?, ?> e : map.entrySet()) {
+				writeValue(e.getKey());
+				writeValue(e.getValue());
+			}
+		} else {
+			out.writeByte(BinaryFormat.TYPE_STRING);
+			writeString(value.toString());
+		}
+	}
+
+	private void writeString(final String s) throws IOException {
+		byte[] bytes = s.getBytes(BinaryFormat.UTF8);
+		writeVarInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private void writeNullableString(final String s) throws IOException {
+		if (s == null) {
+			writeVarInt(0);
+		} else {
+			byte[] bytes = s.getBytes(BinaryFormat.UTF8);
+			writeVarInt(bytes.length + 1);
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Write an unsigned variable length integer, 7 bits per byte.
+	 * @param value value to write
+	 * @throws IOException in case of error writing to the stream
+	 */
+	private void writeVarInt(final int value) throws IOException {
+		int v = value;
+		while ((v & ~0x7F) != 0) {
+			out.writeByte((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		out.writeByte(v);
+	}
+
+	/**
+	 * Write a signed long, small negative values are written as short as small
+	 * positive values.
+	 * @param value value to write
+	 * @throws IOException in case of error writing to the stream
+	 */
+	private void writeZigZagLong(final long value) throws IOException {
+		long v = (value << 1) ^ (value >> 63);
+		while ((v & ~0x7FL) != 0) {
+			out.writeByte((int) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		out.writeByte((int) v);
+	}
+}
@@ -0,0 +1,43 @@
+package com.gentics.cr.rest.bin;
+
+/**
+ * {@link BinContentRepository} compressing the body of the responses with
+ * deflate. This pays off for large text attributes on slow links, on fast
+ * links the uncompressed format is usually faster.
+ */
+public class DeflateBinContentRepository extends BinContentRepository {
+
+	private static final long serialVersionUID = 2954082311873016648L;
+
+	/**
+	 * Create instance.
+	 * @param attr attributes to write
+	 */
+	public DeflateBinContentRepository(final String[] attr) {
+		super(attr);
+	}
+
+	/**
+	 * Create instance.
+	 * @param attr attributes to write
+	 * @param encoding encoding
+	 */
+	public DeflateBinContentRepository(final String[] attr, final String encoding) {
+		super(attr, encoding);
+	}
+
+	/**
+	 * Create instance.
+	 * @param attr attributes to write
+	 * @param encoding encoding
+	 * @param options options
+	 */
+	public DeflateBinContentRepository(final String[] attr, final String encoding, final String[] options) {
+		super(attr, encoding, options);
+	}
+
+	@Override
+	protected boolean isDeflate() {
+		return true;
+	}
+}
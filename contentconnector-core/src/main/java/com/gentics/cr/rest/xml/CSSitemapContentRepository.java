@@ -2,26 +2,14 @@ package com.gentics.cr.rest.xml;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.text.SimpleDateFormat;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Map;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.TransformerFactoryConfigurationError;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-
-import org.w3c.dom.Element;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 
 import com.gentics.cr.CRResolvableBean;
 import com.gentics.cr.exceptions.CRException;
@@ -69,21 +57,6 @@ public class CSSitemapContentRepository extends XmlContentRepository {
 	 */
 	public CSSitemapContentRepository(final String[] attr, final String encoding, final String[] options) {
 		super(attr, encoding, options);
-
-		// Create XML Document
-		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-		DocumentBuilder builder;
-		//this.setResponseEncoding(encoding);
-		try {
-
-			builder = factory.newDocumentBuilder();
-			this.doc = builder.newDocument();
-
-		} catch (ParserConfigurationException e) {
-			e.printStackTrace();
-		}
-
-		this.src = new DOMSource(doc);
 	}
 
 	/**
@@ -95,7 +68,9 @@ public class CSSitemapContentRepository extends XmlContentRepository {
 	}
 
 	/**
-	 * Write XML Elements to the specified stream.
+	 * Write XML Elements to the specified stream. The folders are written
+	 * while the beans are processed, so the size of the sitemap does not
+	 * affect the memory used.
 	 * @param stream Stream to write the xml code into
 	 * @throws CRException if there was no data to write into the stream
 	 */
@@ -103,44 +78,34 @@ public class CSSitemapContentRepository extends XmlContentRepository {
 	public final void toStream(final OutputStream stream) throws CRException {
 		if (this.resolvableColl.isEmpty()) {
 			throw new CRException("NoDataFound", "Data could not be found.", ERRORTYPE.NO_DATA_FOUND);
-		} else {
-			rootElement = processElement(resolvableColl.get(0));
-			doc.appendChild(rootElement);
 		}
 
 		try {
-			OutputStreamWriter wr = new OutputStreamWriter(stream, this.getResponseEncoding());
-
-			StreamResult strRes = new StreamResult(wr);
-			Transformer xmlTransformer = TransformerFactory.newInstance().newTransformer();
-			xmlTransformer.setOutputProperty(OutputKeys.INDENT, "yes");
-			xmlTransformer.transform(this.src, strRes);
-			wr.flush();
-			wr.close();
-		} catch (TransformerConfigurationException e) {
-			e.printStackTrace();
-		} catch (TransformerException e) {
-			e.printStackTrace();
-		} catch (TransformerFactoryConfigurationError e) {
-			e.printStackTrace();
+			XMLStreamWriter writer = startDocument(stream);
+			writeFolder(writer, resolvableColl.get(0));
+			endDocument(writer);
+			stream.close();
 		} catch (UnsupportedEncodingException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			log.error("Cannot write the sitemap in encoding " + getResponseEncoding(), e);
+		} catch (XMLStreamException e) {
+			log.error("Error writing the sitemap to the stream", e);
 		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			log.error("Error closing the stream", e);
 		}
 	}
 
 	/**
-	 * Process a single bean and its children to a XML node.
-	 * @param crBean bean to process into a xml node
-	 * @return xml node for the bean including its children.
+	 * Write a single bean and its children as folder element. Every element
+	 * starts on a new line.
+	 * @param writer writer of the document
+	 * @param crBean bean to write as folder element
+	 * @throws XMLStreamException in case of error writing to the stream
 	 */
-	private Element processElement(final CRResolvableBean crBean) {
-		Element objElement = doc.createElement("folder");
+	private void writeFolder(final XMLStreamWriter writer, final CRResolvableBean crBean) throws XMLStreamException {
+		writer.writeCharacters("\n");
+		writer.writeStartElement("folder");
 
-		objElement.setAttribute("id", "" + crBean.getObj_id());
+		writer.writeAttribute("id", "" + crBean.getObj_id());
 		Map<String, Object> attributes = crBean.getAttrMap();
 		if (attributes != null && !attributes.isEmpty()) {
 			for (String attributeName : attributes.keySet()) {
@@ -194,22 +159,24 @@ public class CSSitemapContentRepository extends XmlContentRepository {
 						} else {
 							value = bValue.toString();
 						}
-						objElement.setAttribute(attributeName, value);
+						writer.writeAttribute(attributeName, value);
 					} else {
-						objElement.setAttribute(attributeName, value);
+						writer.writeAttribute(attributeName, value);
 					}
 				}
 			}
 		}
 		Collection<CRResolvableBean> children = crBean.getChildRepository();
 		if (children != null && children.size() > 0) {
-			Element childContainer = doc.createElement("subfolders");
+			writer.writeCharacters("\n");
+			writer.writeStartElement("subfolders");
 			for (CRResolvableBean chBean : children) {
-				Element chElement = processElement(chBean);
-				childContainer.appendChild(chElement);
+				writeFolder(writer, chBean);
 			}
-			objElement.appendChild(childContainer);
+			writer.writeCharacters("\n");
+			writer.writeEndElement();
+			writer.writeCharacters("\n");
 		}
-		return objElement;
+		writer.writeEndElement();
 	}
 }
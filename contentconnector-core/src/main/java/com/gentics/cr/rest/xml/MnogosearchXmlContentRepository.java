@@ -2,24 +2,12 @@ package com.gentics.cr.rest.xml;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Iterator;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.TransformerFactoryConfigurationError;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Text;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 
 import com.gentics.cr.CRResolvableBean;
 import com.gentics.cr.exceptions.CRException;
@@ -46,25 +34,7 @@ public class MnogosearchXmlContentRepository extends XmlContentRepository {
 	public MnogosearchXmlContentRepository(String[] attr) {
 
 		super(attr);
-
-		// Create XML Document
-		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-		DocumentBuilder builder;
 		this.setResponseEncoding("utf-8");
-		try {
-
-			builder = factory.newDocumentBuilder();
-			this.doc = builder.newDocument();
-
-		} catch (ParserConfigurationException e) {
-			e.printStackTrace();
-		}
-
-		this.src = new DOMSource(doc);
-
-		// Create Root Element
-		this.rootElement = doc.createElement("Contentrepository");
-		doc.appendChild(rootElement);
 
 	}
 
@@ -76,25 +46,7 @@ public class MnogosearchXmlContentRepository extends XmlContentRepository {
 	public MnogosearchXmlContentRepository(String[] attr, String encoding) {
 
 		super(attr);
-
-		// Create XML Document
-		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-		DocumentBuilder builder;
 		this.setResponseEncoding(encoding);
-		try {
-
-			builder = factory.newDocumentBuilder();
-			this.doc = builder.newDocument();
-
-		} catch (ParserConfigurationException e) {
-			e.printStackTrace();
-		}
-
-		this.src = new DOMSource(doc);
-
-		// Create Root Element
-		this.rootElement = doc.createElement("Contentrepository");
-		doc.appendChild(rootElement);
 
 	}
 
@@ -121,101 +73,66 @@ public class MnogosearchXmlContentRepository extends XmlContentRepository {
 	 */
 	public void toStream(OutputStream stream) throws CRException {
 
-		if (this.resolvableColl.isEmpty()) {
-			Element statusElement = doc.createElement("status");
-			statusElement.appendChild(doc.createTextNode("notfound"));
-			this.rootElement.appendChild(statusElement);
-		} else {
-			//Elements found/status ok
-			//this.rootElement.setAttribute("status","ok");
-			Element statusElement = doc.createElement("status");
-			statusElement.appendChild(doc.createTextNode("found"));
-			this.rootElement.appendChild(statusElement);
+		try {
+			XMLStreamWriter writer = startDocument(stream);
+			writer.writeStartElement(rootElementName);
+			writer.writeStartElement("status");
+			if (this.resolvableColl.isEmpty()) {
+				writer.writeCharacters("notfound");
+				writer.writeEndElement();
+			} else {
+				//Elements found/status ok
+				writer.writeCharacters("found");
+				writer.writeEndElement();
 
-			rootElement.appendChild(createMetaDataNode(doc));
+				writeMetaData(writer);
 
-			for (Iterator<CRResolvableBean> it = this.resolvableColl.iterator(); it.hasNext();) {
+				for (Iterator<CRResolvableBean> it = this.resolvableColl.iterator(); it.hasNext();) {
 
-				CRResolvableBean crBean = it.next();
+					CRResolvableBean crBean = it.next();
 
-				Element objElement = processElement(crBean);
-				this.rootElement.appendChild(objElement);
+					writeElement(writer, crBean);
+				}
 			}
-		}
-
-		// output xml
-
-		try {
-			OutputStreamWriter wr = new OutputStreamWriter(stream, this.getResponseEncoding());
-
-			StreamResult strRes = new StreamResult(wr);
-			TransformerFactory.newInstance().newTransformer().transform(this.src, strRes);
-			wr.flush();
-			wr.close();
-		} catch (TransformerConfigurationException e) {
-			e.printStackTrace();
-		} catch (TransformerException e) {
-			e.printStackTrace();
-		} catch (TransformerFactoryConfigurationError e) {
-			e.printStackTrace();
+			writer.writeEndElement();
+			endDocument(writer);
+			stream.close();
 		} catch (UnsupportedEncodingException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			log.error("Cannot write the xml in encoding " + getResponseEncoding(), e);
+		} catch (XMLStreamException e) {
+			log.error("Error writing the xml to the stream", e);
 		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			log.error("Error closing the stream", e);
 		}
 	}
 
-	private Element createMetaDataNode(Document doc) {
-		Element metaElement = doc.createElement("meta");
+	private void writeMetaData(XMLStreamWriter writer) throws XMLStreamException {
+		writer.writeStartElement("meta");
 
-		Element first = doc.createElement("first");
-		first.appendChild(doc.createCDATASection("1"));
-		metaElement.appendChild(first);
+		writeCDataElement(writer, "first", "1");
 
-		Element last = doc.createElement("last");
-		last.appendChild(doc.createCDATASection(this.resolvableColl.size() + ""));
-		metaElement.appendChild(last);
+		writeCDataElement(writer, "last", this.resolvableColl.size() + "");
 
-		//		//TODO: calculate searchtime
-		//		Element searchtime = doc.createElement("searchtime");
-		//		searchtime.appendChild(doc.createCDATASection("1"));
-		//		metaElement.appendChild(searchtime);
+		//TODO: calculate searchtime
 
-		//		//TODO: get wrdstat
-		//		Element wrdstat = doc.createElement("wrdstat");
-		//		wrdstat.appendChild(doc.createCDATASection("1"));
-		//		metaElement.appendChild(wrdstat);
+		//TODO: get wrdstat
 
 		//TODO: calculate total - removed sites
-		Element total = doc.createElement("total");
-		total.appendChild(doc.createCDATASection(this.resolvableColl.size() + ""));
-		metaElement.appendChild(total);
-
-		//		//TODO: calculate total pages
-		//		Element pages = doc.createElement("pages");
-		//		pages.appendChild(doc.createCDATASection("1"));
-		//		metaElement.appendChild(pages);
-
-		//		//TODO: get searchquery
-		//		Element query = doc.createElement("query");
-		//		searchtime.appendChild(doc.createCDATASection(""));
-		//		metaElement.appendChild(query);
-
-		//		//TODO: calculate real pagesize
-		//		Element pagesize = doc.createElement("pagesize");
-		//		pagesize.appendChild(doc.createCDATASection(this.resolvableColl.size()+""));
-		//		metaElement.appendChild(pagesize);
-
-		return metaElement;
+		writeCDataElement(writer, "total", this.resolvableColl.size() + "");
+
+		//TODO: calculate total pages
+
+		//TODO: get searchquery
+
+		//TODO: calculate real pagesize
+
+		writer.writeEndElement();
 	}
 
 	@SuppressWarnings("unchecked")
-	private Element processElement(CRResolvableBean crBean) {
-		Element objElement = doc.createElement("res");
+	private void writeElement(XMLStreamWriter writer, CRResolvableBean crBean) throws XMLStreamException {
+		writer.writeStartElement("res");
 		if (crBean.getAttrMap() != null && !crBean.getAttrMap().isEmpty()) {
-			//Element attrContainer = doc.createElement("attributes");
 			Iterator<String> bit = crBean.getAttrMap().keySet().iterator();
 			while (bit.hasNext()) {
 
@@ -235,9 +152,6 @@ public class MnogosearchXmlContentRepository extends XmlContentRepository {
 								arr = (Object[]) bValue;
 							}
 							for (int i = 0; i < arr.length; i++) {
-								Element attrElement = doc.createElement(entry);
-								objElement.appendChild(attrElement);
-								//								
 								if (arr[i].getClass() == String.class) {
 									value = (String) arr[i];
 								} else {
@@ -248,14 +162,10 @@ public class MnogosearchXmlContentRepository extends XmlContentRepository {
 										e.printStackTrace();
 									}
 								}
-								Text text = doc.createCDATASection(value);
-								attrElement.appendChild(text);
+								writeCDataElement(writer, entry, value);
 							}
 
 						} else {
-							Element attrElement = doc.createElement(entry);
-							objElement.appendChild(attrElement);
-
 							if (entry.equals("binarycontent")) {
 
 								try {
@@ -269,63 +179,35 @@ public class MnogosearchXmlContentRepository extends XmlContentRepository {
 									}
 								}
 								//TODO return proper binary content
-								//value=(String) bValue.toString();
 							} else {
 								if (bValue.getClass() == String.class) {
 									value = (String) bValue;
 								} else {
 									value = bValue.toString();
-									//									try {
-									//										value = new String(getBytes(bValue));
-									//									} catch (IOException e) {
-									//										// TODO Auto-generated catch block
-									//										e.printStackTrace();
-									//									}
 								}
-								//							if(bValue.getClass()==String.class)
-								//							{
-								//								value=(String) bValue;
-								//							}
-								//							else
-								//							{
-								//								value=(String) bValue.toString();
-								//							}
-
 							}
-							Text text = doc.createCDATASection(value);
-							attrElement.appendChild(text);
+							writeCDataElement(writer, entry, value);
 						}
 
 					} else {
-						Element attrElement = doc.createElement(entry);
-						objElement.appendChild(attrElement);
-
-						Text text = doc.createCDATASection(value);
-						attrElement.appendChild(text);
+						writeCDataElement(writer, entry, value);
 					}
-					/*
-					 * if (value == null) { value = ""; }
-					 */
-
 				}
 			}
 		}
 
 		if (crBean.getChildRepository() != null && crBean.getChildRepository().size() > 0) {
-			Element childContainer = doc.createElement("children");
+			writer.writeStartElement("children");
 
 			for (Iterator<CRResolvableBean> it = crBean.getChildRepository().iterator(); it.hasNext();) {
 
 				CRResolvableBean chBean = it.next();
 
-				Element chElement = processElement(chBean);
-				childContainer.appendChild(chElement);
+				writeElement(writer, chBean);
 			}
-			//Text t = doc.createCDATASection("Count: "+crBean.getChildRepository().size());
-			//childContainer.appendChild(t);
 
-			objElement.appendChild(childContainer);
+			writer.writeEndElement();
 		}
-		return objElement;
+		writer.writeEndElement();
 	}
 }
@@ -1,5 +1,6 @@
 package com.gentics.cr.rest.xml;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
@@ -9,20 +10,9 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.TransformerFactoryConfigurationError;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.Text;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 
 import com.gentics.cr.CRResolvableBean;
 import com.gentics.cr.exceptions.CRException;
@@ -30,7 +20,8 @@ import com.gentics.cr.exceptions.CRException.ERRORTYPE;
 import com.gentics.cr.rest.ContentRepository;
 
 /**
- * Contentrepository suited for XML.
+ * Contentrepository suited for XML. The elements are written to the stream
+ * while the beans are processed, no document is kept in memory.
  * Last changed: $Date: 2010-04-01 15:25:54 +0200 (Do, 01 Apr 2010) $
  * @version $Revision: 545 $
  * @author $Author: supnig@constantinopel.at $
@@ -43,19 +34,20 @@ public class XmlContentRepository extends ContentRepository {
 	private static final long serialVersionUID = -6929053170765114770L;
 
 	/**
-	 * the root element in the xml code.
+	 * Name of the root element if no other name is given.
 	 */
-	protected Element rootElement;
+	protected static final String DEFAULT_ROOT_ELEMENT = "Contentrepository";
 
 	/**
-	 * the xml document to write to the stream.
+	 * Factory for the xml writers, the factory is configured once and shared
+	 * by all repositories.
 	 */
-	protected Document doc;
+	private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
 
 	/**
-	 * The {@link DOMSource} to write the elements into.
+	 * name of the root element in the xml code.
 	 */
-	protected DOMSource src;
+	protected String rootElementName;
 
 	/**
 	 * Create new instance of the {@link XmlContentRepository} with UTF-8 as
@@ -86,38 +78,19 @@ public class XmlContentRepository extends ContentRepository {
 	}
 
 	/**
-	 * 
+	 *
 	 * @param attr
 	 * @param encoding
 	 * @param options
+	 * @param name name of the root element, Contentrepository if empty
 	 */
 	public XmlContentRepository(final String[] attr, final String encoding, final String[] options, final String name) {
 		super(attr, encoding, options);
 		if (name == null || name.equals("")) {
-			initializeContentRepository("Contentrepository");
-		}
-	}
-
-	/**
-	 * Initialize content repository (create root element with name provided).
-	 * @param name Name for the contentrepository.
-	 */
-	private void initializeContentRepository(final String name) {
-		// Create XML Document
-		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-		DocumentBuilder builder;
-		try {
-			builder = factory.newDocumentBuilder();
-			this.doc = builder.newDocument();
-		} catch (ParserConfigurationException e) {
-			e.printStackTrace();
+			rootElementName = DEFAULT_ROOT_ELEMENT;
+		} else {
+			rootElementName = name;
 		}
-
-		this.src = new DOMSource(doc);
-
-		// Create Root Element
-		this.rootElement = doc.createElement(name);
-		doc.appendChild(rootElement);
 	}
 
 	/**
@@ -136,97 +109,139 @@ public class XmlContentRepository extends ContentRepository {
 	 */
 	@Override
 	public final void respondWithError(final OutputStream stream, final CRException ex, final boolean isDebug) {
-		if (this.rootElement == null) {
-			// Create Root Element
-			this.rootElement = doc.createElement("Contentrepository");
-			doc.appendChild(rootElement);
-		}
-		clearElement(this.rootElement);
-		Element errElement = doc.createElement("Error");
-		errElement.setAttribute("type", ex.getType());
-		errElement.setAttribute("message", ex.getMessage());
-		if (isDebug) {
-			Element stackTrace = doc.createElement("StackTrace");
-			Text text = doc.createCDATASection(ex.getStringStackTrace());
-			stackTrace.appendChild(text);
-			errElement.appendChild(stackTrace);
-		}
-
-		this.rootElement.setAttribute("status", "error");
-		this.rootElement.appendChild(errElement);
-
-		StreamResult strRes = new StreamResult(stream);
 		try {
-			TransformerFactory.newInstance().newTransformer().transform(this.src, strRes);
-		} catch (TransformerConfigurationException e) {
-			e.printStackTrace();
-		} catch (TransformerException e) {
-			e.printStackTrace();
-		} catch (TransformerFactoryConfigurationError e) {
-			e.printStackTrace();
+			XMLStreamWriter writer = startDocument(stream);
+			writer.writeStartElement(rootElementName);
+			writer.writeAttribute("status", "error");
+			writer.writeStartElement("Error");
+			writer.writeAttribute("type", ex.getType() == null ? "" : ex.getType());
+			writer.writeAttribute("message", ex.getMessage() == null ? "" : ex.getMessage());
+			if (isDebug) {
+				writeCDataElement(writer, "StackTrace", ex.getStringStackTrace());
+			}
+			writer.writeEndElement();
+			writer.writeEndElement();
+			endDocument(writer);
+		} catch (UnsupportedEncodingException e) {
+			log.error("Cannot write the error in encoding " + getResponseEncoding(), e);
+		} catch (XMLStreamException e) {
+			log.error("Error writing the error to the stream", e);
 		}
-
 	}
 
 	/**
 	 * Write XML Elements to the specified stream.
-	 * @param stream 
-	 * @throws CRException 
+	 * @param stream
+	 * @throws CRException
 	 */
 	public void toStream(final OutputStream stream) throws CRException {
 
 		if (this.resolvableColl.isEmpty()) {
 			//No Data Found
 			throw new CRException("NoDataFound", "Data could not be found.", ERRORTYPE.NO_DATA_FOUND);
-		} else {
+		}
+
+		try {
+			XMLStreamWriter writer = startDocument(stream);
+			writer.writeStartElement(rootElementName);
 			//Elements found/status ok
-			this.rootElement.setAttribute("status", "ok");
+			writer.writeAttribute("status", "ok");
 
 			for (Iterator<CRResolvableBean> it = this.resolvableColl.iterator(); it.hasNext();) {
 				CRResolvableBean crBean = it.next();
 
-				Element objElement = processElement(crBean);
-				this.rootElement.appendChild(objElement);
+				writeElement(writer, crBean);
 			}
-		}
-
-		// output xml
-		try {
-			OutputStreamWriter wr = new OutputStreamWriter(stream, this.getResponseEncoding());
-
-			StreamResult strRes = new StreamResult(wr);
-			TransformerFactory.newInstance().newTransformer().transform(this.src, strRes);
-			wr.flush();
-			wr.close();
-		} catch (TransformerConfigurationException e) {
-			e.printStackTrace();
-		} catch (TransformerException e) {
-			e.printStackTrace();
-		} catch (TransformerFactoryConfigurationError e) {
-			e.printStackTrace();
+			writer.writeEndElement();
+			endDocument(writer);
+			stream.close();
 		} catch (UnsupportedEncodingException e) {
-			e.printStackTrace();
+			log.error("Cannot write the xml in encoding " + getResponseEncoding(), e);
+		} catch (XMLStreamException e) {
+			log.error("Error writing the xml to the stream", e);
 		} catch (IOException e) {
-			e.printStackTrace();
+			log.error("Error closing the stream", e);
 		}
 	}
 
 	/**
-	 * Create an element from the provided bean.
+	 * Start a new xml document in the response encoding.
+	 * @param stream stream to write the document into
+	 * @return writer for the elements of the document
+	 * @throws UnsupportedEncodingException if the response encoding is not
+	 * supported
+	 * @throws XMLStreamException in case of error writing to the stream
+	 */
+	protected final XMLStreamWriter startDocument(final OutputStream stream) throws UnsupportedEncodingException,
+			XMLStreamException {
+		String encoding = getResponseEncoding();
+		BufferedWriter wr = new BufferedWriter(new OutputStreamWriter(stream, encoding));
+		XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter(wr);
+		writer.writeStartDocument(encoding, "1.0");
+		return writer;
+	}
+
+	/**
+	 * End the document and flush the written elements to the stream. The
+	 * stream is not closed.
+	 * @param writer writer of the document
+	 * @throws XMLStreamException in case of error writing to the stream
+	 */
+	protected final void endDocument(final XMLStreamWriter writer) throws XMLStreamException {
+		writer.writeEndDocument();
+		writer.flush();
+		writer.close();
+	}
+
+	/**
+	 * Write an element containing the text as CDATA.
+	 * @param writer writer of the document
+	 * @param name name of the element
+	 * @param text text of the element
+	 * @throws XMLStreamException in case of error writing to the stream
+	 */
+	protected static void writeCDataElement(final XMLStreamWriter writer, final String name, final String text)
+			throws XMLStreamException {
+		writer.writeStartElement(name);
+		writeCData(writer, text);
+		writer.writeEndElement();
+	}
+
+	/**
+	 * Write the text as CDATA, the sequence ]]&gt; is split into two sections
+	 * as a CDATA section cannot contain it.
+	 * @param writer writer of the document
+	 * @param text text to write
+	 * @throws XMLStreamException in case of error writing to the stream
+	 */
+	protected static void writeCData(final XMLStreamWriter writer, final String text) throws XMLStreamException {
+		int start = 0;
+		int end = text.indexOf("]]>");
+		while (end != -1) {
+			writer.writeCData(text.substring(start, end + 2));
+			start = end + 2;
+			end = text.indexOf("]]>", start);
+		}
+		writer.writeCData(text.substring(start));
+	}
+
+	/**
+	 * Write an element for the provided bean.
+	 * @param writer writer of the document
 	 * @param crBean bean to transform into an xml element.
-	 * @return transformed element.
+	 * @throws XMLStreamException in case of error writing to the stream
 	 */
-	private Element processElement(final CRResolvableBean crBean) {
-		Element objElement = doc.createElement("Object");
+	private void writeElement(final XMLStreamWriter writer, final CRResolvableBean crBean) throws XMLStreamException {
+		writer.writeStartElement("Object");
 
-		objElement.setAttribute("contentid", "" + crBean.getContentid());
-		objElement.setAttribute("obj_id", "" + crBean.getObj_id());
-		objElement.setAttribute("obj_type", "" + crBean.getObj_type());
-		objElement.setAttribute("mother_id", crBean.getMother_id() == null ? "" : "" + crBean.getMother_id());
-		objElement.setAttribute("mother_type", crBean.getMother_type() == null ? "" : "" + crBean.getMother_type());
+		writer.writeAttribute("contentid", "" + crBean.getContentid());
+		writer.writeAttribute("obj_id", "" + crBean.getObj_id());
+		writer.writeAttribute("obj_type", "" + crBean.getObj_type());
+		writer.writeAttribute("mother_id", crBean.getMother_id() == null ? "" : "" + crBean.getMother_id());
+		writer.writeAttribute("mother_type", crBean.getMother_type() == null ? "" : "" + crBean.getMother_type());
 
 		if (crBean.getAttrMap() != null && !crBean.getAttrMap().isEmpty()) {
-			Element attrContainer = doc.createElement("attributes");
+			writer.writeStartElement("attributes");
 			Iterator<String> bit = crBean.getAttrMap().keySet().iterator();
 			while (bit.hasNext()) {
 				String entry = bit.next();
@@ -242,8 +257,6 @@ public class XmlContentRepository extends ContentRepository {
 								arr = (Object[]) bValue;
 							}
 							for (int i = 0; i < arr.length; i++) {
-								Element attrElement = doc.createElement(entry);
-								attrContainer.appendChild(attrElement);
 								if (arr[i].getClass() == String.class) {
 									value = (String) arr[i];
 								} else {
@@ -253,53 +266,46 @@ public class XmlContentRepository extends ContentRepository {
 										e.printStackTrace();
 									}
 								}
-								Text text = doc.createCDATASection(value);
-								attrElement.appendChild(text);
+								writeCDataElement(writer, entry, value);
 							}
 						} else {
-							Element attrElement = doc.createElement(entry);
-							attrContainer.appendChild(attrElement);
-
-							valueToNode(doc, attrElement, entry, bValue);
-							
+							writer.writeStartElement(entry);
+							writeValue(writer, entry, bValue);
+							writer.writeEndElement();
 						}
 
 					} else {
-						Element attrElement = doc.createElement(entry);
-						attrContainer.appendChild(attrElement);
-
-						Text text = doc.createCDATASection(value);
-						attrElement.appendChild(text);
+						writeCDataElement(writer, entry, value);
 					}
 				}
 			}
-			objElement.appendChild(attrContainer);
+			writer.writeEndElement();
 		}
 
 		if (crBean.getChildRepository() != null && crBean.getChildRepository().size() > 0) {
-			Element childContainer = doc.createElement("children");
+			writer.writeStartElement("children");
 
 			for (Iterator<CRResolvableBean> it = crBean.getChildRepository().iterator(); it.hasNext();) {
 
 				CRResolvableBean chBean = it.next();
 
-				Element chElement = processElement(chBean);
-				childContainer.appendChild(chElement);
+				writeElement(writer, chBean);
 			}
 
-			objElement.appendChild(childContainer);
+			writer.writeEndElement();
 		}
-		return objElement;
+		writer.writeEndElement();
 	}
 
 	/**
-	 * Convert the value to a XML Node.
-	 * @param d the current xml document.
-	 * @param attrElement attribute.
+	 * Write the value into the current attribute element.
+	 * @param writer writer of the document
 	 * @param entry attribute name
 	 * @param bValue value.
+	 * @throws XMLStreamException in case of error writing to the stream
 	 */
-	private void valueToNode(final Document d, final Element attrElement, final String entry, final Object bValue) {
+	private void writeValue(final XMLStreamWriter writer, final String entry, final Object bValue)
+			throws XMLStreamException {
 		String value = "";
 		if (entry.equals("binarycontent")) {
 			try {
@@ -323,17 +329,11 @@ public class XmlContentRepository extends ContentRepository {
 					if (mValue instanceof String[]) {
 						String[] arr = (String[]) mValue;
 						for (String s : arr) {
-							Element elem = doc.createElement(key);
-							Text text = doc.createCDATASection(s);
-							elem.appendChild(text);
-							attrElement.appendChild(elem);
+							writeCDataElement(writer, key, s);
 						}
 						return;
 					} else {
-						Element elem = doc.createElement(key);
-						Text text = doc.createCDATASection(mValue.toString());
-						elem.appendChild(text);
-						attrElement.appendChild(elem);
+						writeCDataElement(writer, key, mValue.toString());
 						return;
 					}
 				}
@@ -341,7 +341,6 @@ public class XmlContentRepository extends ContentRepository {
 				value = bValue.toString();
 			}
 		}
-		Text text = doc.createCDATASection(value);
-		attrElement.appendChild(text);
+		writeCData(writer, value);
 	}
 }
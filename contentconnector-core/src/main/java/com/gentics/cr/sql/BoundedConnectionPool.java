@@ -0,0 +1,635 @@
+package com.gentics.cr.sql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.gentics.api.lib.etc.ObjectTransformer;
+import com.gentics.cr.monitoring.Counter;
+import com.gentics.cr.monitoring.LatencyHistogram;
+import com.gentics.cr.monitoring.MetricRegistry;
+import com.gentics.cr.monitoring.MonitorFactory;
+import com.gentics.cr.monitoring.Timer;
+
+/**
+ * Bounded pool of JDBC connections. At most {@link #MAX_KEY} connections are
+ * handed out at once, further requests wait up to {@link #ACQUIRE_TIMEOUT_KEY}
+ * milliseconds for a connection to be returned. Connections that were idle
+ * longer than {@link #IDLE_TIMEOUT_KEY} milliseconds are closed, as long as the
+ * pool keeps {@link #MIN_KEY} connections. Every connection caches its last
+ * {@link #STATEMENT_CACHE_KEY} prepared statements.
+ * The time waited for a connection is recorded in the {@link MetricRegistry}
+ * timer <code>ConnectionPool(name).wait</code>, the number of active and idle
+ * connections in the histograms <code>.active</code> and <code>.idle</code>
+ * and the requests that timed out in the counter <code>.timeouts</code>.
+ */
+public class BoundedConnectionPool {
+
+	/**
+	 * Log4j logger for error and debug messages.
+	 */
+	private static final Logger LOGGER = Logger.getLogger(BoundedConnectionPool.class);
+
+	/**
+	 * Property for the minimum number of connections kept open.
+	 */
+	public static final String MIN_KEY = "pool.min";
+
+	/**
+	 * Property for the maximum number of connections.
+	 */
+	public static final String MAX_KEY = "pool.max";
+
+	/**
+	 * Property for the maximum time in milliseconds to wait for a connection.
+	 */
+	public static final String ACQUIRE_TIMEOUT_KEY = "pool.acquiretimeout";
+
+	/**
+	 * Property for the time in milliseconds after which idle connections are
+	 * closed, 0 or less keeps them open.
+	 */
+	public static final String IDLE_TIMEOUT_KEY = "pool.idletimeout";
+
+	/**
+	 * Property for the number of prepared statements cached per connection, 0
+	 * disables the cache.
+	 */
+	public static final String STATEMENT_CACHE_KEY = "pool.statementcache";
+
+	/**
+	 * Property to check idle connections with {@link Connection#isValid(int)}
+	 * before they are handed out.
+	 */
+	public static final String VALIDATE_KEY = "pool.validate";
+
+	/**
+	 * Seconds to wait for the validation of a connection.
+	 */
+	private static final int VALIDATION_TIMEOUT = 1;
+
+	/**
+	 * Name of the pool in log messages and counters.
+	 */
+	private final String name;
+
+	/**
+	 * JDBC url of the database.
+	 */
+	private final String url;
+
+	private final int minConnections;
+
+	private final int maxConnections;
+
+	private final long acquireTimeout;
+
+	private final long idleTimeout;
+
+	private final int statementCacheSize;
+
+	private final boolean validate;
+
+	/**
+	 * Permits for the connections that can still be handed out.
+	 */
+	private final Semaphore permits;
+
+	/**
+	 * Idle connections, the most recently returned first.
+	 */
+	private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<PooledConnection>();
+
+	/**
+	 * Number of connections handed out.
+	 */
+	private final AtomicInteger active = new AtomicInteger();
+
+	/**
+	 * Number of physical connections created.
+	 */
+	private final AtomicLong created = new AtomicLong();
+
+	/**
+	 * Number of requests that timed out waiting for a connection.
+	 */
+	private final AtomicLong timeouts = new AtomicLong();
+
+	/**
+	 * Total time in milliseconds waited for connections.
+	 */
+	private final AtomicLong waitTime = new AtomicLong();
+
+	/**
+	 * Closes idle connections, <code>null</code> without idle timeout.
+	 */
+	private final ScheduledExecutorService evictor;
+
+	private volatile boolean closed = false;
+
+	/**
+	 * Timer of the time waited for a connection.
+	 */
+	private final Timer waitTimer;
+
+	/**
+	 * Counter of the requests that timed out waiting for a connection.
+	 */
+	private final Counter timeoutCounter;
+
+	/**
+	 * Number of active connections whenever a connection is handed out or
+	 * returned.
+	 */
+	private final LatencyHistogram activeHistogram;
+
+	/**
+	 * Number of idle connections whenever a connection is handed out or
+	 * returned.
+	 */
+	private final LatencyHistogram idleHistogram;
+
+	/**
+	 * Create a new pool.
+	 * @param name name of the pool in log messages and counters
+	 * @param url JDBC url of the database
+	 * @param props properties of the pool, see the keys of this class
+	 */
+	public BoundedConnectionPool(final String name, final String url, final Properties props) {
+		this.name = name;
+		this.url = url;
+		maxConnections = Math.max(1, ObjectTransformer.getInt(props.getProperty(MAX_KEY), 8));
+		minConnections = Math.min(maxConnections, Math.max(0, ObjectTransformer.getInt(props.getProperty(MIN_KEY), 0)));
+		acquireTimeout = ObjectTransformer.getLong(props.getProperty(ACQUIRE_TIMEOUT_KEY), 10000);
+		idleTimeout = ObjectTransformer.getLong(props.getProperty(IDLE_TIMEOUT_KEY), 600000);
+		statementCacheSize = ObjectTransformer.getInt(props.getProperty(STATEMENT_CACHE_KEY), 20);
+		validate = ObjectTransformer.getBoolean(props.getProperty(VALIDATE_KEY), true);
+		permits = new Semaphore(maxConnections, true);
+		waitTimer = MetricRegistry.timer("ConnectionPool(" + name + ").wait");
+		timeoutCounter = MetricRegistry.counter("ConnectionPool(" + name + ").timeouts");
+		activeHistogram = MetricRegistry.histogram("ConnectionPool(" + name + ").active");
+		idleHistogram = MetricRegistry.histogram("ConnectionPool(" + name + ").idle");
+
+		for (int i = 0; i < minConnections; i++) {
+			try {
+				idle.offerLast(createConnection());
+			} catch (SQLException e) {
+				LOGGER.error("Cannot open the connections of pool " + name, e);
+				break;
+			}
+		}
+		if (idleTimeout > 0) {
+			evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(final Runnable runnable) {
+					Thread thread = new Thread(runnable, "ConnectionPool-" + name + "-evictor");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			long period = Math.max(1, idleTimeout / 2);
+			evictor.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					evictIdleConnections();
+				}
+			}, period, period, TimeUnit.MILLISECONDS);
+		} else {
+			evictor = null;
+		}
+		LOGGER.debug("Connection pool " + name + " with " + minConnections + " to " + maxConnections
+				+ " connections has been set up.");
+	}
+
+	/**
+	 * Get a connection of the pool, waits until a connection was returned if
+	 * all connections are in use. Closing the connection returns it to the
+	 * pool.
+	 * @return connection
+	 * @throws SQLException if no connection was returned in time or the
+	 * connection cannot be opened
+	 */
+	public Connection getConnection() throws SQLException {
+		if (closed) {
+			throw new SQLException("Connection pool " + name + " is closed.");
+		}
+		long start = System.currentTimeMillis();
+		long timerStart = waitTimer.start();
+		boolean acquired;
+		try {
+			acquired = permits.tryAcquire(acquireTimeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a connection of pool " + name, e);
+		} finally {
+			waitTimer.stop(timerStart);
+		}
+		waitTime.addAndGet(System.currentTimeMillis() - start);
+		if (!acquired) {
+			timeouts.incrementAndGet();
+			timeoutCounter.inc();
+			throw new SQLException("No connection of pool " + name + " was available within " + acquireTimeout
+					+ "ms, all " + maxConnections + " connections are in use.");
+		}
+		try {
+			PooledConnection connection = idle.pollFirst();
+			while (connection != null && !connection.isUsable()) {
+				connection.closePhysical();
+				connection = idle.pollFirst();
+			}
+			if (connection == null) {
+				connection = createConnection();
+			}
+			active.incrementAndGet();
+			recordUsage();
+			return connection.createHandle();
+		} catch (SQLException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Open a new physical connection.
+	 * @return pooled connection
+	 * @throws SQLException if the connection cannot be opened
+	 */
+	private PooledConnection createConnection() throws SQLException {
+		PooledConnection connection = new PooledConnection(DriverManager.getConnection(url));
+		created.incrementAndGet();
+		return connection;
+	}
+
+	/**
+	 * Return a connection to the pool.
+	 * @param connection connection
+	 */
+	private void release(final PooledConnection connection) {
+		try {
+			if (closed || !connection.reset()) {
+				connection.closePhysical();
+			} else {
+				connection.lastUsed = System.currentTimeMillis();
+				idle.offerFirst(connection);
+			}
+		} finally {
+			active.decrementAndGet();
+			permits.release();
+			recordUsage();
+		}
+	}
+
+	/**
+	 * Record the number of active and idle connections in the histograms.
+	 */
+	private void recordUsage() {
+		if (MonitorFactory.isEnabled()) {
+			activeHistogram.record(active.get());
+			idleHistogram.record(idle.size());
+		}
+	}
+
+	/**
+	 * Close the connections that were idle longer than the idle timeout, but
+	 * keep the minimum number of connections.
+	 */
+	void evictIdleConnections() {
+		long oldest = System.currentTimeMillis() - idleTimeout;
+		// the least recently used connections are at the end of the deque
+		Iterator<PooledConnection> iterator = idle.descendingIterator();
+		while (iterator.hasNext() && active.get() + idle.size() > minConnections) {
+			PooledConnection connection = iterator.next();
+			if (connection.lastUsed < oldest && idle.remove(connection)) {
+				connection.closePhysical();
+			}
+		}
+	}
+
+	/**
+	 * Close the idle connections and the connections when they are returned.
+	 */
+	public void close() {
+		closed = true;
+		if (evictor != null) {
+			evictor.shutdownNow();
+		}
+		PooledConnection connection;
+		while ((connection = idle.pollFirst()) != null) {
+			connection.closePhysical();
+		}
+		LOGGER.debug("Connection pool " + name + " has been closed.");
+	}
+
+	/**
+	 * @return number of connections handed out
+	 */
+	public int getActiveCount() {
+		return active.get();
+	}
+
+	/**
+	 * @return number of idle connections
+	 */
+	public int getIdleCount() {
+		return idle.size();
+	}
+
+	/**
+	 * @return number of physical connections opened since the pool was
+	 * created
+	 */
+	public long getCreatedCount() {
+		return created.get();
+	}
+
+	/**
+	 * @return number of requests that timed out waiting for a connection
+	 */
+	public long getTimeoutCount() {
+		return timeouts.get();
+	}
+
+	/**
+	 * @return total time in milliseconds waited for connections
+	 */
+	public long getWaitTime() {
+		return waitTime.get();
+	}
+
+	/**
+	 * Physical connection of the pool with its statement cache.
+	 */
+	private final class PooledConnection {
+
+		private final Connection physical;
+
+		/**
+		 * Cached statements by SQL, the least recently used first.
+		 */
+		private final LinkedHashMap<String, CachedStatement> statements =
+				new LinkedHashMap<String, CachedStatement>(16, 0.75f, true);
+
+		private volatile long lastUsed = System.currentTimeMillis();
+
+		private PooledConnection(final Connection physical) {
+			this.physical = physical;
+		}
+
+		/**
+		 * @return <code>true</code> if the connection can be handed out
+		 */
+		private boolean isUsable() {
+			if (!validate) {
+				return true;
+			}
+			try {
+				return physical.isValid(VALIDATION_TIMEOUT);
+			} catch (SQLException e) {
+				LOGGER.debug("Cannot validate a connection of pool " + name, e);
+				return false;
+			}
+		}
+
+		/**
+		 * @return new handle of the connection, closing the handle returns the
+		 * connection to the pool
+		 */
+		private Connection createHandle() {
+			return (Connection) Proxy.newProxyInstance(BoundedConnectionPool.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new ConnectionHandler(this));
+		}
+
+		/**
+		 * Get a cached statement or prepare a new one.
+		 * @param handle handle of the connection the statement is requested
+		 * from
+		 * @param sql SQL of the statement
+		 * @return statement, closing it returns it to the cache
+		 * @throws SQLException if the statement cannot be prepared
+		 */
+		private PreparedStatement prepareStatement(final Connection handle, final String sql) throws SQLException {
+			CachedStatement cached = statements.get(sql);
+			if (cached == null) {
+				cached = new CachedStatement(physical.prepareStatement(sql));
+				statements.put(sql, cached);
+				removeEldestStatements();
+			} else if (cached.inUse) {
+				// the cached statement is still open, use an uncached one
+				cached = new CachedStatement(physical.prepareStatement(sql));
+				cached.evicted = true;
+			}
+			cached.inUse = true;
+			return (PreparedStatement) Proxy.newProxyInstance(BoundedConnectionPool.class.getClassLoader(),
+				new Class<?>[] { PreparedStatement.class }, new StatementHandler(cached, handle));
+		}
+
+		/**
+		 * Close the least recently used statements that exceed the cache size.
+		 */
+		private void removeEldestStatements() {
+			Iterator<CachedStatement> iterator = statements.values().iterator();
+			while (statements.size() > statementCacheSize && iterator.hasNext()) {
+				CachedStatement eldest = iterator.next();
+				iterator.remove();
+				eldest.evicted = true;
+				if (!eldest.inUse) {
+					eldest.closePhysical();
+				}
+			}
+		}
+
+		/**
+		 * Prepare the connection for the next use, statements that were not
+		 * closed are removed from the cache.
+		 * @return <code>false</code> if the connection cannot be reused
+		 */
+		private boolean reset() {
+			List<String> open = new ArrayList<String>();
+			for (Map.Entry<String, CachedStatement> entry : statements.entrySet()) {
+				if (entry.getValue().inUse) {
+					open.add(entry.getKey());
+				}
+			}
+			for (String sql : open) {
+				statements.remove(sql).closePhysical();
+			}
+			try {
+				if (physical.isClosed()) {
+					return false;
+				}
+				if (!physical.getAutoCommit()) {
+					physical.rollback();
+					physical.setAutoCommit(true);
+				}
+				return true;
+			} catch (SQLException e) {
+				LOGGER.debug("Cannot reset a connection of pool " + name, e);
+				return false;
+			}
+		}
+
+		/**
+		 * Close the statements and the physical connection.
+		 */
+		private void closePhysical() {
+			for (CachedStatement statement : statements.values()) {
+				statement.closePhysical();
+			}
+			statements.clear();
+			try {
+				physical.close();
+			} catch (SQLException e) {
+				LOGGER.debug("Cannot close a connection of pool " + name, e);
+			}
+		}
+	}
+
+	/**
+	 * Prepared statement in the cache of a connection.
+	 */
+	private static final class CachedStatement {
+
+		private final PreparedStatement physical;
+
+		/**
+		 * <code>true</code> while a handle of the statement is open.
+		 */
+		private boolean inUse = false;
+
+		/**
+		 * <code>true</code> if the statement was removed from the cache.
+		 */
+		private boolean evicted = false;
+
+		private CachedStatement(final PreparedStatement physical) {
+			this.physical = physical;
+		}
+
+		private void closePhysical() {
+			try {
+				physical.close();
+			} catch (SQLException e) {
+				LOGGER.debug("Cannot close a cached statement.", e);
+			}
+		}
+	}
+
+	/**
+	 * Handle of a pooled connection.
+	 */
+	private final class ConnectionHandler implements InvocationHandler {
+
+		private final PooledConnection connection;
+
+		private boolean handleClosed = false;
+
+		private ConnectionHandler(final PooledConnection connection) {
+			this.connection = connection;
+		}
+
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+			String methodName = method.getName();
+			if ("close".equals(methodName)) {
+				if (!handleClosed) {
+					handleClosed = true;
+					release(connection);
+				}
+				return null;
+			} else if ("isClosed".equals(methodName)) {
+				return handleClosed || connection.physical.isClosed();
+			} else if ("equals".equals(methodName)) {
+				return proxy == args[0];
+			} else if ("hashCode".equals(methodName)) {
+				return System.identityHashCode(proxy);
+			} else if ("toString".equals(methodName)) {
+				return "Connection of pool " + name;
+			}
+			if (handleClosed) {
+				throw new SQLException("Connection was returned to pool " + name);
+			}
+			if ("prepareStatement".equals(methodName) && args.length == 1 && statementCacheSize > 0) {
+				return connection.prepareStatement((Connection) proxy, (String) args[0]);
+			}
+			try {
+				return method.invoke(connection.physical, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+
+	/**
+	 * Handle of a cached statement, closing it returns the statement to the
+	 * cache of its connection.
+	 */
+	private static final class StatementHandler implements InvocationHandler {
+
+		private final CachedStatement statement;
+
+		private final Connection connectionHandle;
+
+		private boolean handleClosed = false;
+
+		private StatementHandler(final CachedStatement statement, final Connection connectionHandle) {
+			this.statement = statement;
+			this.connectionHandle = connectionHandle;
+		}
+
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+			String methodName = method.getName();
+			if ("close".equals(methodName)) {
+				if (!handleClosed) {
+					handleClosed = true;
+					if (statement.evicted) {
+						statement.closePhysical();
+					} else {
+						try {
+							statement.physical.clearParameters();
+						} catch (SQLException e) {
+							LOGGER.debug("Cannot clear the parameters of a cached statement.", e);
+						}
+					}
+					statement.inUse = false;
+				}
+				return null;
+			} else if ("isClosed".equals(methodName)) {
+				return handleClosed || statement.physical.isClosed();
+			} else if ("getConnection".equals(methodName)) {
+				return connectionHandle;
+			} else if ("equals".equals(methodName)) {
+				return proxy == args[0];
+			} else if ("hashCode".equals(methodName)) {
+				return System.identityHashCode(proxy);
+			} else if ("toString".equals(methodName)) {
+				return statement.physical.toString();
+			}
+			if (handleClosed) {
+				throw new SQLException("Statement is closed.");
+			}
+			try {
+				return method.invoke(statement.physical, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+}
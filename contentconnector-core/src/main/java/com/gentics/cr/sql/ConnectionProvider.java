@@ -27,6 +27,23 @@ public class ConnectionProvider {
 	private static Logger log = Logger.getLogger(ConnectionProvider.class);
 	private static HashMap<String, Boolean> connectionpools;
 
+	/**
+	 * Built-in pools by name.
+	 */
+	private static HashMap<String, BoundedConnectionPool> boundedpools = new HashMap<String, BoundedConnectionPool>();
+
+	/**
+	 * Datasource handle property selecting the pool implementation.
+	 * <code>bounded</code> uses the {@link BoundedConnectionPool}, all other
+	 * values the commons dbcp pool.
+	 */
+	public static final String POOL_KEY = "pool.type";
+
+	/**
+	 * Value of {@link #POOL_KEY} for the {@link BoundedConnectionPool}.
+	 */
+	public static final String BOUNDED_POOL = "bounded";
+
 	/**
 	  * Get a pooled JDBCConnection and create a new pool if none exists.
 	  * Such a direct connection can be used for custom request processors that require a pooled connection
@@ -35,24 +52,67 @@ public class ConnectionProvider {
 	  * 
 	  * @throws Exception
 	  */
-	public static synchronized Connection getPooledJDBCConnection(CRConfigUtil config) throws Exception {
-		//CREATE CONNECTION POOL
+	public static Connection getPooledJDBCConnection(CRConfigUtil config) throws Exception {
 		String name = getName(config);
+		BoundedConnectionPool boundedPool = getBoundedPool(config, name);
+		if (boundedPool != null) {
+			// waiting for a connection must not block the other pools
+			return boundedPool.getConnection();
+		}
+		createPoolingDriverPool(config, name);
+		return DriverManager.getConnection("jdbc:apache:commons:dbcp:" + name);
+	}
+
+	/**
+	 * Get the built-in pool of a configuration, create it on the first call.
+	 * @param config configuration
+	 * @param name name of the pool
+	 * @return pool or <code>null</code> if the configuration uses the dbcp
+	 * pool
+	 */
+	private static synchronized BoundedConnectionPool getBoundedPool(CRConfigUtil config, String name) {
+		BoundedConnectionPool pool = boundedpools.get(name);
+		if (pool == null) {
+			Properties props = config.getDatasourceHandleProperties();
+			if (!BOUNDED_POOL.equals(props.getProperty(POOL_KEY))) {
+				return null;
+			}
+			loadDriver(props);
+			pool = new BoundedConnectionPool(name, props.getProperty("url"), props);
+			boundedpools.put(name, pool);
+		}
+		return pool;
+	}
+
+	/**
+	 * Create the dbcp pool of a configuration if it does not exist.
+	 * @param config configuration
+	 * @param name name of the pool
+	 * @throws Exception if the pool cannot be created
+	 */
+	private static synchronized void createPoolingDriverPool(CRConfigUtil config, String name) throws Exception {
+		//CREATE CONNECTION POOL
 		if (!isPoolCreated(name)) {
 			Properties props = config.getDatasourceHandleProperties();
 
 			String connectionuri = props.getProperty("url");
-			String driverclass = props.getProperty("driverClass");
-			try {
-				Class.forName(driverclass);
-			} catch (ClassNotFoundException e) {
-				log.error("Could not load driver class.", e);
-			}
+			loadDriver(props);
 			setupPoolingDriver(connectionuri, name);
 			setPoolCreated(name);
 		}
-		return DriverManager.getConnection("jdbc:apache:commons:dbcp:" + name);
-		
+	}
+
+	/**
+	 * Load the JDBC driver class of a datasource handle.
+	 * @param props properties of the datasource handle
+	 */
+	private static void loadDriver(Properties props) {
+		String driverclass = props.getProperty("driverClass");
+		try {
+			Class.forName(driverclass);
+		} catch (ClassNotFoundException e) {
+			log.error("Could not load driver class.", e);
+		}
 	}
 	
 	/**
@@ -74,7 +134,10 @@ public class ConnectionProvider {
 	   */
 	public static synchronized void releaseJDBCPool(CRConfigUtil config) throws Exception {
 		String name = getName(config);
-		if (isPoolCreated(name)) {
+		BoundedConnectionPool boundedPool = boundedpools.remove(name);
+		if (boundedPool != null) {
+			boundedPool.close();
+		} else if (isPoolCreated(name)) {
 			try {
 				PoolingDriver driver = (PoolingDriver) DriverManager.getDriver("jdbc:apache:commons:dbcp:");
 				driver.closePool(name);
@@ -0,0 +1,150 @@
+package com.gentics.cr.sql;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * SQL with placeholders for the literal values and the values to bind to the
+ * placeholders. The string literals of a request filter are replaced with
+ * placeholders ({@link #parameterize(String)}), so the statement text only
+ * depends on the structure of the filter and the translation of the structure
+ * ({@link #translateCondition(String)}) can be cached for all values. The
+ * values are never inserted into the SQL.
+ */
+public final class ParameterizedSQL {
+
+	/**
+	 * Pattern of a CONTAINSONEOF condition after the literals were replaced.
+	 */
+	private static final Pattern CONTAINSONEOFPATTERN = Pattern
+			.compile("object\\.([a-zA-Z0-9_]*)[ ]*CONTAINSONEOF[ ]*\\[([^\\]]*)\\]");
+
+	/**
+	 * SQL with placeholders.
+	 */
+	private final String sql;
+
+	/**
+	 * Values of the placeholders in the order of their occurrence.
+	 */
+	private final List<Object> parameters;
+
+	/**
+	 * Create a new parameterized SQL.
+	 * @param sql SQL with placeholders
+	 * @param parameters values of the placeholders in the order of their
+	 * occurrence
+	 */
+	public ParameterizedSQL(final String sql, final List<Object> parameters) {
+		this.sql = sql;
+		this.parameters = Collections.unmodifiableList(new ArrayList<Object>(parameters));
+	}
+
+	/**
+	 * Translate a request filter into a SQL condition. String literals are
+	 * replaced with placeholders, <code>==</code> with <code>=</code> and
+	 * <code>object.attribute CONTAINSONEOF [...]</code> with
+	 * <code>attribute IN (...)</code>. Numbers are kept in the SQL.
+	 * @param requestFilter request filter
+	 * @return SQL condition
+	 */
+	public static ParameterizedSQL translateFilter(final String requestFilter) {
+		ParameterizedSQL parameterized = parameterize(requestFilter);
+		return new ParameterizedSQL(translateCondition(parameterized.getSql()), parameterized.getParameters());
+	}
+
+	/**
+	 * Replace the string literals of a request filter with placeholders. The
+	 * filter is not translated otherwise, so the result is the structure of
+	 * the filter that is the same for all values. As the filters used to be
+	 * inserted into the SQL, a quote is escaped by doubling it and backslashes
+	 * are kept.
+	 * @param requestFilter request filter
+	 * @return request filter with placeholders and the literal values
+	 */
+	public static ParameterizedSQL parameterize(final String requestFilter) {
+		StringBuilder condition = new StringBuilder(requestFilter.length());
+		List<Object> values = new ArrayList<Object>();
+		int length = requestFilter.length();
+		int i = 0;
+		while (i < length) {
+			char c = requestFilter.charAt(i);
+			if (c == '\'' || c == '"') {
+				StringBuilder literal = new StringBuilder();
+				i++;
+				while (i < length) {
+					if (requestFilter.charAt(i) == c) {
+						// like in SQL a doubled quote is a quote in the literal
+						if (i + 1 < length && requestFilter.charAt(i + 1) == c) {
+							i++;
+						} else {
+							break;
+						}
+					}
+					literal.append(requestFilter.charAt(i));
+					i++;
+				}
+				i++;
+				condition.append('?');
+				values.add(literal.toString());
+			} else {
+				condition.append(c);
+				i++;
+			}
+		}
+		return new ParameterizedSQL(condition.toString(), values);
+	}
+
+	/**
+	 * Translate a request filter whose string literals were replaced with
+	 * placeholders into a SQL condition.
+	 * @param parameterizedFilter request filter returned by
+	 * {@link #parameterize(String)}
+	 * @return SQL condition with the same placeholders
+	 */
+	public static String translateCondition(final String parameterizedFilter) {
+		Matcher matcher = CONTAINSONEOFPATTERN.matcher(parameterizedFilter.replace("==", "="));
+		StringBuffer buf = new StringBuffer();
+		while (matcher.find()) {
+			matcher.appendReplacement(buf, matcher.group(1) + " IN (" + matcher.group(2) + ")");
+		}
+		matcher.appendTail(buf);
+		return buf.toString();
+	}
+
+	/**
+	 * @return SQL with placeholders
+	 */
+	public String getSql() {
+		return sql;
+	}
+
+	/**
+	 * @return values of the placeholders in the order of their occurrence
+	 */
+	public List<Object> getParameters() {
+		return parameters;
+	}
+
+	/**
+	 * Bind the values to the placeholders of a statement.
+	 * @param statement statement prepared with the SQL of this object
+	 * @throws SQLException if a value cannot be set
+	 */
+	public void bind(final PreparedStatement statement) throws SQLException {
+		int index = 1;
+		for (Object parameter : parameters) {
+			statement.setObject(index++, parameter);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return sql + " " + parameters;
+	}
+}
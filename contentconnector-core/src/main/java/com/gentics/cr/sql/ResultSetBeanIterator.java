@@ -0,0 +1,187 @@
+package com.gentics.cr.sql;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.log4j.Logger;
+
+import com.gentics.cr.CRResolvableBean;
+
+/**
+ * Iterator mapping the rows of a {@link ResultSet} to {@link CRResolvableBean}s
+ * while iterating, so only the current row is held in memory. The result set,
+ * its statement and its connection are closed when the last row was read or
+ * when {@link #close()} is called. Iterators that are not read to the end have
+ * to be closed.
+ */
+public class ResultSetBeanIterator implements Iterator<CRResolvableBean>, Closeable {
+
+	/**
+	 * Log4j logger for error and debug messages.
+	 */
+	private static final Logger LOGGER = Logger.getLogger(ResultSetBeanIterator.class);
+
+	/**
+	 * Connection of the statement.
+	 */
+	private final Connection connection;
+
+	/**
+	 * Statement of the result set.
+	 */
+	private final Statement statement;
+
+	/**
+	 * Result set to read the rows from.
+	 */
+	private final ResultSet resultSet;
+
+	/**
+	 * Column containing the content id.
+	 */
+	private final String idcolumn;
+
+	/**
+	 * Names of the columns in the result set.
+	 */
+	private final String[] colnames;
+
+	/**
+	 * <code>true</code> if the result set is positioned on a row that was not
+	 * returned yet.
+	 */
+	private boolean hasRow = false;
+
+	/**
+	 * <code>true</code> if the result set was read to the end or closed.
+	 */
+	private boolean closed = false;
+
+	/**
+	 * Create a new iterator.
+	 * @param connection connection of the statement
+	 * @param statement statement of the result set
+	 * @param resultSet result set to read the rows from
+	 * @param idcolumn column containing the content id
+	 * @throws SQLException if the columns of the result set cannot be read
+	 */
+	public ResultSetBeanIterator(final Connection connection, final Statement statement, final ResultSet resultSet,
+			final String idcolumn) throws SQLException {
+		this.connection = connection;
+		this.statement = statement;
+		this.resultSet = resultSet;
+		this.idcolumn = idcolumn;
+		this.colnames = getColumnNames(resultSet);
+	}
+
+	/**
+	 * Get the names of all columns in the result set.
+	 * @param rset result set
+	 * @return column labels
+	 * @throws SQLException if the meta data cannot be read
+	 */
+	public static String[] getColumnNames(final ResultSet rset) throws SQLException {
+		int numcols = rset.getMetaData().getColumnCount();
+		String[] colnames = new String[numcols];
+		for (int i = 1; i <= numcols; i++) {
+			colnames[i - 1] = rset.getMetaData().getColumnLabel(i);
+		}
+		return colnames;
+	}
+
+	/**
+	 * Create a bean from the current row of a result set.
+	 * @param rset result set positioned on a row
+	 * @param colnames names of the columns in the result set
+	 * @param idcolumn column containing the content id
+	 * @return bean with all columns that are not null
+	 * @throws SQLException if a column cannot be read
+	 */
+	public static CRResolvableBean createBean(final ResultSet rset, final String[] colnames, final String idcolumn)
+			throws SQLException {
+		CRResolvableBean bean = new CRResolvableBean();
+		for (int i = 1; i <= colnames.length; i++) {
+			String colname = colnames[i - 1];
+			Object value = rset.getObject(i);
+			if (colname != null && colname.equalsIgnoreCase(idcolumn)) {
+				bean.setContentid(value.toString());
+			}
+			if (value != null) {
+				bean.set(colname, value);
+			}
+		}
+		return bean;
+	}
+
+	/**
+	 * @return <code>true</code> if there is another row, errors while reading
+	 * are logged and end the iteration.
+	 */
+	public boolean hasNext() {
+		if (!hasRow && !closed) {
+			try {
+				hasRow = resultSet.next();
+			} catch (SQLException e) {
+				LOGGER.error("Error getting result items.", e);
+				hasRow = false;
+			}
+			if (!hasRow) {
+				close();
+			}
+		}
+		return hasRow;
+	}
+
+	/**
+	 * @return bean of the next row
+	 */
+	public CRResolvableBean next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		hasRow = false;
+		try {
+			return createBean(resultSet, colnames, idcolumn);
+		} catch (SQLException e) {
+			close();
+			throw new IllegalStateException("Cannot read the row of the result set.", e);
+		}
+	}
+
+	/**
+	 * Rows cannot be removed.
+	 */
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Close the result set, the statement and the connection.
+	 */
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			resultSet.close();
+		} catch (SQLException e) {
+			LOGGER.debug("Cannot close the result set.", e);
+		}
+		try {
+			statement.close();
+		} catch (SQLException e) {
+			LOGGER.debug("Cannot close the statement.", e);
+		}
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			LOGGER.debug("Cannot close the connection.", e);
+		}
+	}
+}
@@ -20,6 +20,11 @@ public class CRNavigationRequestBuilder extends CRRequestBuilder {
 	 */
 	private String childfilter;
 
+	/**
+	 * Number of child levels to fetch, -1 for all levels.
+	 */
+	private int depth = -1;
+
 	/**
 	 * Create new Instance of the CRRequestBuilder.
 	 * @param request TODO javadoc.
@@ -41,6 +46,15 @@ public class CRNavigationRequestBuilder extends CRRequestBuilder {
 		if (rootfilter != null && !rootfilter.equals("")) {
 			this.filter = this.createPermissionsRule(rootfilter, this.permissions);
 		}
+		String depthParameter = request.getParameter("depth");
+		if (depthParameter != null && !depthParameter.equals("")) {
+			try {
+				depth = Integer.parseInt(depthParameter);
+			} catch (NumberFormatException e) {
+				// fetch all levels
+				depth = -1;
+			}
+		}
 	}
 
 	/**
@@ -50,6 +64,7 @@ public class CRNavigationRequestBuilder extends CRRequestBuilder {
 	public final CRRequest getNavigationRequest() {
 		CRRequest req = this.getCRRequest();
 		req.setChildFilter(childfilter);
+		req.setNavigationDepth(depth);
 		return req;
 	}
 
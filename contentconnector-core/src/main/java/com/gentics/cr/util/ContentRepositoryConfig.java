@@ -109,6 +109,7 @@ public class ContentRepositoryConfig {
 		// TODO this should be moved to the packages adding additional
 		// ContentRepositories
 		classmap.put("JSON", "com.gentics.cr.rest.json.JSONContentRepository");
+		classmap.put("JSONSTREAM", "com.gentics.cr.rest.json.StreamingJSONContentRepository");
 
 		Properties confs = getConfiguredContentRepositories();
 		if (confs != null) {
@@ -66,7 +66,17 @@ public class RepositoryFactory {
 		 * RepositoryType for
 		 * {@link com.gentics.cr.rest.xml.CSSitemapContentRepository}.
 		 */
-		CSSITEMAP
+		CSSITEMAP,
+		/**
+		 * RepositoryType for
+		 * {@link com.gentics.cr.rest.bin.BinContentRepository}.
+		 */
+		BIN,
+		/**
+		 * RepositoryType for
+		 * {@link com.gentics.cr.rest.bin.DeflateBinContentRepository}.
+		 */
+		BINDEFLATE
 	}
 
 	/**
@@ -131,6 +141,8 @@ public class RepositoryFactory {
 			classmap.put(RepositoryType.PHP, com.gentics.cr.rest.php.PHPContentRepository.class);
 			classmap.put(RepositoryType.JAVAXML, com.gentics.cr.rest.javaxml.JavaXmlContentRepository.class);
 			classmap.put(RepositoryType.JAVABIN, com.gentics.cr.rest.javabin.JavaBinContentRepository.class);
+			classmap.put(RepositoryType.BIN, com.gentics.cr.rest.bin.BinContentRepository.class);
+			classmap.put(RepositoryType.BINDEFLATE, com.gentics.cr.rest.bin.DeflateBinContentRepository.class);
 			classmap.put(RepositoryType.VELOCITY, com.gentics.cr.rest.velocity.VelocityContentRepository.class);
 			classmap.put(RepositoryType.XML, com.gentics.cr.rest.xml.XmlContentRepository.class);
 			classmap.put(RepositoryType.CSSITEMAP, com.gentics.cr.rest.xml.CSSitemapContentRepository.class);
@@ -15,7 +15,7 @@ public class IndexerStatus {
 
 	private int objectCount = 0;
 
-	private int objectsDone = 0;
+	private volatile int objectsDone = 0;
 
 	private Date startTime = null;
 
@@ -133,6 +133,14 @@ public class IndexerStatus {
 		this.objectsDone = objectsDone;
 	}
 
+	/**
+	 * increments the already indexed objects in this run by one. Can be
+	 * called by several indexing threads concurrently.
+	 */
+	public synchronized void incrementObjectsDone() {
+		this.objectsDone++;
+	}
+
 	/**
 	 * gets the time of start of the last run.
 	 */
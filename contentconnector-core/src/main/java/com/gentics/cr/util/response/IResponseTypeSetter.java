@@ -20,4 +20,11 @@ public interface IResponseTypeSetter {
 	 * @param responsteCode response code
 	 */
 	public void setResponseCode(int responsteCode);
+
+	/**
+	 * Sets a header of the response (e.g. ETag or Content-Range).
+	 * @param name name of the header
+	 * @param value value of the header
+	 */
+	public void setHeader(String name, String value);
 }
@@ -5,6 +5,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
@@ -15,17 +16,20 @@ import org.junit.Test;
 
 import com.gentics.api.lib.resolving.Resolvable;
 import com.gentics.cr.exceptions.CRException;
+import com.gentics.cr.sql.ResultSetBeanIterator;
 
 public abstract class AbsrtactSQLRequestProcessorTest extends RequestProcessorTest {
 
 	private static HSQLTestHandler testHandler;
 	
 	private static String configname;
+
+	private static CRConfigUtil config;
 	
 
 	protected static CRConfigUtil initConfigurationAndTest(Class<? extends AbsrtactSQLRequestProcessorTest> clazz) throws CRException, URISyntaxException {
 		configname = clazz.getSimpleName() + ".RP.1";
-		CRConfigUtil config = HSQLTestConfigFactory.getDefaultHSQLConfiguration(clazz.getSimpleName(), true);
+		config = HSQLTestConfigFactory.getDefaultHSQLConfiguration(clazz.getSimpleName(), true);
 
 		testHandler = new HSQLTestHandler(config.getRequestProcessorConfig(1), clazz.getSimpleName(), new String[]{"contentid:VARCHAR(256)", "filename:VARCHAR(256)", "category:VARCHAR(256)", "obj_type:VARCHAR(256)"});
 		
@@ -102,6 +106,48 @@ public abstract class AbsrtactSQLRequestProcessorTest extends RequestProcessorTe
 		assertTrue("Collection is not properly sorted.", isSorted(beans, new String[]{"10001.5", "10001.3", "10001.1", "10001.2", "10001.6", "10001.8", "10001.7", "10001.4"}));
 	}
 			
+	@Test
+	public void testObjectIterator() throws CRException {
+		CRRequest req = new CRRequest();
+		req.setRequestFilter("obj_type == '10001'");
+		req.setSortArray(new String[]{"category:asc", "filename:asc"});
+		AbstractSQLRequestProcessor processor = (AbstractSQLRequestProcessor) getRequestProcessor();
+		ResultSetBeanIterator iterator = processor.getObjectIterator(req);
+		Collection<CRResolvableBean> beans = new ArrayList<CRResolvableBean>();
+		while (iterator.hasNext()) {
+			beans.add(iterator.next());
+		}
+		assertTrue("Iterator did not return the sorted objects.", isSorted(beans, new String[]{"10001.5", "10001.3", "10001.1", "10001.2", "10001.6", "10001.8", "10001.7", "10001.4"}));
+	}
+			
+	@Test
+	public void testLimitOffset() throws CRException {
+		CRConfigUtil rpConfig = config.getRequestProcessorConfig(1);
+		rpConfig.set("limitoffset", "true");
+		AbstractSQLRequestProcessor processor = new SQLRequestProcessor(rpConfig);
+		try {
+			CRRequest req = new CRRequest();
+			req.setRequestFilter("obj_type == '10001'");
+			req.setSortArray(new String[]{"filename:asc"});
+			req.setStartString("2");
+			req.setCountString("3");
+			Collection<CRResolvableBean> beans = processor.getObjects(req);
+			assertEquals("Count was not applied.", 3, beans.size());
+			assertTrue("Start was not applied.", isSorted(beans, new String[]{"10001.1", "10001.7", "10001.2"}));
+
+			ResultSetBeanIterator iterator = processor.getObjectIterator(req);
+			beans = new ArrayList<CRResolvableBean>();
+			while (iterator.hasNext()) {
+				beans.add(iterator.next());
+			}
+			assertEquals(3, beans.size());
+			assertTrue("Iterator did not apply start and count.", isSorted(beans, new String[]{"10001.1", "10001.7", "10001.2"}));
+		} finally {
+			processor.finalize();
+			rpConfig.set("limitoffset", "false");
+		}
+	}
+			
 	@AfterClass
 	public static void tearDown() throws CRException {
 		testHandler.cleanUp();
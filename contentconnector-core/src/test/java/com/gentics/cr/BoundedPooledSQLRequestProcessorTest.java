@@ -0,0 +1,34 @@
+package com.gentics.cr;
+
+import java.net.URISyntaxException;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+
+import com.gentics.cr.exceptions.CRException;
+import com.gentics.cr.sql.ConnectionProvider;
+
+public class BoundedPooledSQLRequestProcessorTest extends AbsrtactSQLRequestProcessorTest {
+
+	private static RequestProcessor rp;
+	
+	@BeforeClass
+	public static void setUp() throws CRException, URISyntaxException {
+		CRConfigUtil config = initConfigurationAndTest(BoundedPooledSQLRequestProcessorTest.class);
+		CRConfigUtil rpConfig = config.getRequestProcessorConfig(1);
+		rpConfig.set("ds-handle." + ConnectionProvider.POOL_KEY, ConnectionProvider.BOUNDED_POOL);
+		rpConfig.set("ds-handle.pool.max", "2");
+		rp = new PooledSQLRequestProcessor(rpConfig);
+	}
+	
+	@AfterClass
+	public static void releasePool() {
+		rp.finalize();
+	}
+	
+	@Override
+	protected RequestProcessor getRequestProcessor() {
+		return rp;
+	}
+
+}
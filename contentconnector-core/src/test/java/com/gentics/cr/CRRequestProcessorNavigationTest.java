@@ -46,6 +46,12 @@ public class CRRequestProcessorNavigationTest extends RequestProcessorTest {
 	/** The navigation request processor. */
 	private static OptimisticNavigationRequestProcessor navigationRequestProcessor;
 
+	/** The navigation request processor using snapshots. */
+	private static OptimisticNavigationRequestProcessor snapshotRequestProcessor;
+
+	/** The cached request processor. */
+	private static CachedCRRequestProcessor cachedRequestProcessor;
+
 	/** The expected collection size. */
 	private static Integer expectedCollectionSize = 0;
 
@@ -73,6 +79,12 @@ public class CRRequestProcessorNavigationTest extends RequestProcessorTest {
 
 		requestProcessor = new CRRequestProcessor(config.getRequestProcessorConfig(1));
 		navigationRequestProcessor = new OptimisticNavigationRequestProcessor(config.getRequestProcessorConfig(1));
+		cachedRequestProcessor = new CachedCRRequestProcessor(config.getRequestProcessorConfig(1));
+
+		CRConfigUtil snapshotConfig = HSQLTestConfigFactory
+				.getDefaultHSQLConfiguration(CRRequestProcessorNavigationTest.class.getName());
+		snapshotConfig.set("RP.1.navigationsnapshot", "true");
+		snapshotRequestProcessor = new OptimisticNavigationRequestProcessor(snapshotConfig.getRequestProcessorConfig(1));
 
 		testHandler = new HSQLCRTestHandler(config.getRequestProcessorConfig(1));
 
@@ -100,6 +112,8 @@ public class CRRequestProcessorNavigationTest extends RequestProcessorTest {
 	public static void tearDown() throws CRException {
 		requestProcessor.finalize();
 		navigationRequestProcessor.finalize();
+		cachedRequestProcessor.finalize();
+		snapshotRequestProcessor.finalize();
 		testHandler.cleanUp();
 	}
 
@@ -207,6 +221,53 @@ public class CRRequestProcessorNavigationTest extends RequestProcessorTest {
 		Assert.assertTrue(compareResolvableChildren(originalNavigationObject, result));
 	}
 
+	/**
+	 * Test level batched navigation building of the cached request processor.
+	 * 
+	 * @throws CRException
+	 *             the cR exception
+	 */
+	@Test
+	public void testCachedNavigationBuilding() throws CRException {
+
+		// check that the original navigation object is not empty
+		Assert.assertFalse(CollectionUtils.isEmpty(originalNavigationObject));
+
+		Collection<CRResolvableBean> result = cachedRequestProcessor.getNavigation(getNavigationRequest());
+		Assert.assertTrue(compareResolvableChildren(originalNavigationObject, result));
+
+		result = cachedRequestProcessor.getNavigation(getNavigationRequestWithoutChildfilter());
+		Assert.assertTrue(compareResolvableChildren(originalNavigationObject, result));
+	}
+
+	/**
+	 * Test navigation building from a navigation snapshot.
+	 * 
+	 * @throws CRException
+	 *             the cR exception
+	 */
+	@Test
+	public void testSnapshotNavigationBuilding() throws CRException {
+
+		// check that the original navigation object is not empty
+		Assert.assertFalse(CollectionUtils.isEmpty(originalNavigationObject));
+
+		Collection<CRResolvableBean> result = snapshotRequestProcessor.getNavigation(getNavigationRequest());
+		Assert.assertTrue(compareResolvableChildren(originalNavigationObject, result));
+
+		// answered from the snapshot
+		result = snapshotRequestProcessor.getNavigation(getNavigationRequest());
+		Assert.assertTrue(compareResolvableChildren(originalNavigationObject, result));
+
+		CRRequest request = getNavigationRequest();
+		request.setNavigationDepth(0);
+		result = snapshotRequestProcessor.getNavigation(request);
+		Assert.assertEquals(originalNavigationObject.size(), result.size());
+		for (CRResolvableBean root : result) {
+			Assert.assertTrue("Children below the depth were returned.", root.getChildRepository().isEmpty());
+		}
+	}
+
 	/**
 	 * Gets the prepared Request for a Navigation Object building for any
 	 * request processor.
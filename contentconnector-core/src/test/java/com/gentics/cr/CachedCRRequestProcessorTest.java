@@ -15,12 +15,15 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import com.gentics.api.lib.resolving.Resolvable;
+import com.gentics.cr.events.Event;
+import com.gentics.cr.events.EventManager;
 import com.gentics.cr.exceptions.CRException;
 
 public class CachedCRRequestProcessorTest extends RequestProcessorTest {
 
 	private static RequestProcessor requestProcessor;
 	private static RequestProcessor requestProcessor2;
+	private static RequestProcessor versionedRequestProcessor;
 	private static HSQLCRTestHandler testHandler;
 	
 	private static String configname;
@@ -38,6 +41,12 @@ public class CachedCRRequestProcessorTest extends RequestProcessorTest {
 		CRConfigUtil config2 = HSQLTestConfigFactory.getDefaultHSQLConfiguration(CachedCRRequestProcessorTest.class.getName(), true);
 		config2.setName("dummy");
 		requestProcessor2 = new CachedCRRequestProcessor(config2.getRequestProcessorConfig(1));
+
+		CRConfigUtil config3 = HSQLTestConfigFactory.getDefaultHSQLConfiguration(CachedCRRequestProcessorTest.class.getName(), true);
+		config3.setName("versioned");
+		CRConfigUtil versionedConfig = config3.getRequestProcessorConfig(1);
+		versionedConfig.set("versioncheckinterval", "3600");
+		versionedRequestProcessor = new CachedCRRequestProcessor(versionedConfig);
 		
 		CRResolvableBean testBean = new CRResolvableBean();
 		testBean.setObj_type("10008");
@@ -111,6 +120,29 @@ public class CachedCRRequestProcessorTest extends RequestProcessorTest {
 		assertTrue("Collection is not properly sorted.", isSorted(beans, new String[]{"10001.5", "10001.3", "10001.1", "10001.2", "10001.6", "10001.8", "10001.7", "10001.4"}));
 	}
 
+	@Test
+	public void testVersionedCache() throws CRException {
+		CRRequest req = new CRRequest();
+		req.setRequestFilter("object.obj_type == 10002");
+		assertEquals(0, versionedRequestProcessor.getObjects(req).size());
+
+		testHandler.createBean(createBean("10002.1", "news.html", "news"), attributes2);
+		assertEquals("Cached result was not used within the version check interval.", 0,
+			versionedRequestProcessor.getObjects(req).size());
+
+		EventManager.getInstance().fireEvent(new Event() {
+			public String getType() {
+				return "TESTEVENT";
+			}
+
+			public Object getData() {
+				return null;
+			}
+		});
+		assertEquals("Result was not fetched after the version changed.", 1, versionedRequestProcessor.getObjects(req)
+				.size());
+	}
+
 	@Override
 	protected RequestProcessor getRequestProcessor() {
 		return requestProcessor;
@@ -0,0 +1,116 @@
+package com.gentics.cr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gentics.api.lib.datasource.Datasource;
+import com.gentics.api.lib.datasource.Datasource.Sorting;
+import com.gentics.api.lib.datasource.DatasourceException;
+import com.gentics.api.lib.expressionparser.filtergenerator.DatasourceFilter;
+import com.gentics.api.lib.resolving.Resolvable;
+
+public class ContentRepositoryVersionTest {
+
+	private List<CRResolvableBean> objects;
+
+	private Datasource ds;
+
+	private ContentRepositoryVersion version;
+
+	@Before
+	public void setUp() throws Exception {
+		objects = new ArrayList<CRResolvableBean>();
+		add(objects, "10008.1", 1300000000);
+		add(objects, "10008.2", 1300000100);
+		ds = createDatasource(objects);
+		version = ContentRepositoryVersion.getInstance(ContentRepositoryVersionTest.class.getName() + System.nanoTime(), 0);
+	}
+
+	@Test
+	public void testUnchanged() throws DatasourceException {
+		assertEquals(version.getVersion(ds), version.getVersion(ds));
+	}
+
+	@Test
+	public void testNewerUpdate() throws DatasourceException {
+		String before = version.getVersion(ds);
+		update(objects, "10008.1", 1300000200);
+		assertFalse(before.equals(version.getVersion(ds)));
+	}
+
+	@Test
+	public void testSameSecondUpdate() throws DatasourceException {
+		String before = version.getVersion(ds);
+		update(objects, "10008.1", 1300000100);
+		assertFalse("Update within the newest second did not change the version.",
+			before.equals(version.getVersion(ds)));
+	}
+
+	@Test
+	public void testManyObjectsInNewestSecond() throws DatasourceException {
+		for (int i = 0; i < 250; i++) {
+			add(objects, "10007." + i, 1300000100);
+		}
+		String before = version.getVersion(ds);
+		update(objects, "10008.1", 1300000100);
+		assertFalse(before.equals(version.getVersion(ds)));
+	}
+
+	private static void add(final List<CRResolvableBean> objects, final String contentid, final int updatetimestamp) {
+		CRResolvableBean bean = new CRResolvableBean(contentid);
+		bean.set("updatetimestamp", updatetimestamp);
+		objects.add(bean);
+	}
+
+	private static void update(final List<CRResolvableBean> objects, final String contentid,
+			final int updatetimestamp) {
+		for (CRResolvableBean bean : objects) {
+			if (contentid.equals(bean.getContentid())) {
+				bean.set("updatetimestamp", updatetimestamp);
+			}
+		}
+	}
+
+	/**
+	 * Create a datasource containing a list of objects, results are always
+	 * sorted by the updatetimestamp descending.
+	 */
+	private static Datasource createDatasource(final List<CRResolvableBean> objects) throws Exception {
+		Datasource ds = EasyMock.createNiceMock(Datasource.class);
+		EasyMock.expect(ds.getCount(EasyMock.<DatasourceFilter> anyObject())).andAnswer(new IAnswer<Integer>() {
+			public Integer answer() {
+				return objects.size();
+			}
+		}).anyTimes();
+		EasyMock.expect(
+			ds.getResult(EasyMock.<DatasourceFilter> anyObject(), EasyMock.<String[]> anyObject(), EasyMock.anyInt(),
+				EasyMock.anyInt(), EasyMock.<Sorting[]> anyObject())).andAnswer(new IAnswer<Collection<Resolvable>>() {
+			public Collection<Resolvable> answer() {
+				Object[] arguments = EasyMock.getCurrentArguments();
+				int start = (Integer) arguments[2];
+				int count = (Integer) arguments[3];
+				List<CRResolvableBean> sorted = new ArrayList<CRResolvableBean>(objects);
+				Collections.sort(sorted, new Comparator<CRResolvableBean>() {
+					public int compare(final CRResolvableBean bean1, final CRResolvableBean bean2) {
+						return ((Integer) bean2.get("updatetimestamp")).compareTo((Integer) bean1.get("updatetimestamp"));
+					}
+				});
+				int end = count < 0 ? sorted.size() : Math.min(sorted.size(), start + count);
+				return new ArrayList<Resolvable>(sorted.subList(Math.min(start, end), end));
+			}
+		}).anyTimes();
+		EasyMock.replay(ds);
+		return ds;
+	}
+}
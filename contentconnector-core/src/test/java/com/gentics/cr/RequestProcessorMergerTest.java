@@ -0,0 +1,182 @@
+package com.gentics.cr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gentics.cr.configuration.SimpleCRConfig;
+import com.gentics.cr.exceptions.CRException;
+import com.gentics.cr.plink.PlinkProcessor;
+
+/**
+ * Test the {@link RequestProcessorMerger}.
+ */
+public class RequestProcessorMergerTest {
+
+	private static final int OBJECTS = 10000;
+
+	private static final Pattern ID_PATTERN = Pattern.compile("\"([^\"]*)\"");
+
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() {
+		executor = Executors.newFixedThreadPool(4);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testBatchFilters() {
+		List<Object> ids = Arrays.<Object> asList("1", "2", "3", "4", "5");
+		List<String> filters = RequestProcessorMerger.createBatchFilters("contentid", ids, 2);
+		assertEquals(3, filters.size());
+		assertEquals("object.contentid CONTAINSONEOF [\"1\",\"2\"]", filters.get(0));
+		assertEquals("object.contentid CONTAINSONEOF [\"5\"]", filters.get(2));
+		assertEquals(1, RequestProcessorMerger.createBatchFilters("contentid", ids, 0).size());
+		assertEquals(0, RequestProcessorMerger.createBatchFilters("contentid", new ArrayList<Object>(), 2).size());
+	}
+
+	@Test
+	public void testParallelMerge() throws CRException {
+		IdRequestProcessor primary = new IdRequestProcessor(OBJECTS, "name");
+		IdRequestProcessor secondary = new IdRequestProcessor(OBJECTS, "content");
+		CRRequest request = new CRRequest("object.obj_type == 10008");
+		request.setAttributeArray(new String[] { "content" });
+
+		Collection<CRResolvableBean> result = RequestProcessorMerger.merge("contentid", primary, secondary, request, 500,
+			executor);
+
+		assertEquals(OBJECTS, result.size());
+		assertEquals("Secondary objects were not requested in batches.", OBJECTS / 500, secondary.requests.get());
+		Iterator<CRResolvableBean> iterator = result.iterator();
+		for (int i = OBJECTS - 1; i >= 0; i--) {
+			CRResolvableBean bean = iterator.next();
+			assertEquals("Order of the primary request processor was not kept.", "10007." + i, bean.getContentid());
+			assertEquals("name" + i, bean.get("name"));
+			assertEquals("content" + i, bean.get("content"));
+		}
+	}
+
+	@Test
+	public void testSecondaryMerge() throws CRException {
+		IdRequestProcessor primary = new IdRequestProcessor(10, "name");
+		IdRequestProcessor secondary = new IdRequestProcessor(5, "content");
+		CRRequest request = new CRRequest("object.obj_type == 10008");
+		request.setAttributeArray(new String[] { "name" });
+		request.set(RequestProcessorMerger.USE_SECONDARY_KEY, "true");
+
+		List<CRResolvableBean> result = new ArrayList<CRResolvableBean>(RequestProcessorMerger.merge("contentid",
+			primary, secondary, request, 2, executor));
+
+		assertEquals(10, result.size());
+		assertEquals("10007.9", result.get(0).getContentid());
+		assertNull("Object without secondary bean was merged.", result.get(0).get("content"));
+		CRResolvableBean merged = result.get(9);
+		assertEquals("10007.0", merged.getContentid());
+		assertEquals("content0", merged.get("content"));
+		assertEquals("name0", merged.get("name"));
+	}
+
+	@Test(expected = CRException.class)
+	public void testSecondaryError() throws CRException {
+		IdRequestProcessor primary = new IdRequestProcessor(10, "name");
+		IdRequestProcessor secondary = new IdRequestProcessor(10, "content");
+		secondary.fail = true;
+		RequestProcessorMerger.merge("contentid", primary, secondary, new CRRequest("object.obj_type == 10008"), 2,
+			executor);
+	}
+
+	@Test
+	public void testSequentialMerge() throws CRException {
+		IdRequestProcessor primary = new IdRequestProcessor(100, "name");
+		IdRequestProcessor secondary = new IdRequestProcessor(100, "content");
+		CRRequest request = new CRRequest("object.obj_type == 10008");
+		request.setAttributeArray(new String[] { "content" });
+
+		Collection<CRResolvableBean> result = RequestProcessorMerger.merge("contentid", primary, secondary, request);
+		assertEquals(100, result.size());
+		assertEquals(1, secondary.requests.get());
+		assertSame(primary.beans.get(0), result.iterator().next());
+	}
+
+	/**
+	 * Request processor returning generated objects in descending content id
+	 * order. Requests filtering by content ids only return the requested
+	 * objects.
+	 */
+	private static class IdRequestProcessor extends RequestProcessor {
+
+		private final List<CRResolvableBean> beans = new ArrayList<CRResolvableBean>();
+
+		private final AtomicInteger requests = new AtomicInteger();
+
+		private volatile boolean fail = false;
+
+		IdRequestProcessor(final int objects, final String attribute)
+				throws CRException {
+			super(createConfig());
+			for (int i = objects - 1; i >= 0; i--) {
+				CRResolvableBean bean = new CRResolvableBean("10007." + i);
+				bean.set(attribute, attribute + i);
+				beans.add(bean);
+			}
+		}
+
+		private static CRConfig createConfig() {
+			CRConfig config = new SimpleCRConfig();
+			config.set(CONTENTCACHE_KEY, "false");
+			config.set(PlinkProcessor.PLINK_CACHE_ACTIVATION_KEY, "false");
+			return config;
+		}
+
+		@Override
+		public Collection<CRResolvableBean> getObjects(final CRRequest request, final boolean doNavigation)
+				throws CRException {
+			requests.incrementAndGet();
+			if (fail) {
+				throw new CRException("Request failed.");
+			}
+			String filter = request.getRequestFilter();
+			if (!filter.contains("CONTAINSONEOF")) {
+				return new ArrayList<CRResolvableBean>(beans);
+			}
+			Set<String> ids = new HashSet<String>();
+			Matcher matcher = ID_PATTERN.matcher(filter);
+			while (matcher.find()) {
+				ids.add(matcher.group(1));
+			}
+			Collection<CRResolvableBean> result = new ArrayList<CRResolvableBean>();
+			for (CRResolvableBean bean : beans) {
+				if (ids.contains(bean.getContentid())) {
+					result.add(bean);
+				}
+			}
+			return result;
+		}
+
+		@Override
+		public void finalize() {
+		}
+	}
+}
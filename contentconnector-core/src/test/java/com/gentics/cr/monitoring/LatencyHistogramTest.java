@@ -0,0 +1,74 @@
+package com.gentics.cr.monitoring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testBuckets() {
+		for (long value : new long[] { 0, 1, 31, 32, 33, 63, 64, 1000, 123456789L, Long.MAX_VALUE }) {
+			int bucket = LatencyHistogram.getBucket(value);
+			assertTrue("value " + value + " above its bucket", value <= LatencyHistogram.getUpperBound(bucket));
+			if (bucket > 0) {
+				assertTrue("value " + value + " below its bucket", value > LatencyHistogram.getUpperBound(bucket - 1));
+			}
+		}
+		assertEquals(LatencyHistogram.getBucket(32), LatencyHistogram.getBucket(33));
+		assertTrue(LatencyHistogram.getBucket(33) < LatencyHistogram.getBucket(34));
+	}
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(500500, histogram.getSum());
+		assertEquals(1000, histogram.getMax());
+		assertEquals(500.5, histogram.getMean(), 0.001);
+		assertWithin(500, histogram.getValueAtPercentile(50));
+		assertWithin(990, histogram.getValueAtPercentile(99));
+		assertEquals(1000, histogram.getValueAtPercentile(100));
+	}
+
+	@Test
+	public void testEmpty() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getValueAtPercentile(99));
+		assertEquals(0, histogram.getMean(), 0);
+	}
+
+	@Test
+	public void testConcurrentRecording() throws InterruptedException {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				public void run() {
+					for (int i = 0; i < 10000; i++) {
+						histogram.record(i % 100);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(40000, histogram.getCount());
+		assertEquals(99, histogram.getMax());
+	}
+
+	/**
+	 * Assert that a percentile is at most one bucket (1/16) above the
+	 * expected value.
+	 */
+	private void assertWithin(final long expected, final long actual) {
+		assertTrue("expected about " + expected + " but was " + actual, actual >= expected
+				&& actual <= expected + expected / 16);
+	}
+}
@@ -0,0 +1,64 @@
+package com.gentics.cr.monitoring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.gentics.cr.configuration.GenericConfiguration;
+
+public class MetricRegistryTest {
+
+	@After
+	public void tearDown() {
+		setMonitoring(false);
+	}
+
+	@Test
+	public void testSameHandle() {
+		assertSame(MetricRegistry.timer("MetricRegistryTest.same"), MetricRegistry.timer("MetricRegistryTest.same"));
+		assertSame(MetricRegistry.counter("MetricRegistryTest.sameCounter"),
+			MetricRegistry.counter("MetricRegistryTest.sameCounter"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTypeMismatch() {
+		MetricRegistry.counter("MetricRegistryTest.mismatch");
+		MetricRegistry.timer("MetricRegistryTest.mismatch");
+	}
+
+	@Test
+	public void testDisabled() {
+		setMonitoring(false);
+		Timer timer = MetricRegistry.timer("MetricRegistryTest.disabled");
+		timer.stop(timer.start());
+		Counter counter = MetricRegistry.counter("MetricRegistryTest.disabledCounter");
+		counter.inc();
+		assertEquals(0, timer.getHistogram().getCount());
+		assertEquals(0, counter.get());
+	}
+
+	@Test
+	public void testWriteText() throws IOException {
+		setMonitoring(true);
+		Timer timer = MetricRegistry.timer("MetricRegistryTest.text.timer");
+		timer.stop(timer.start());
+		MetricRegistry.counter("MetricRegistryTest.text.counter").add(3);
+		StringBuilder text = new StringBuilder();
+		MetricRegistry.writeText(text, "MetricRegistryTest.text.");
+		assertTrue(text.toString(), text.indexOf("MetricRegistryTest.text.counter 3\n") >= 0);
+		assertTrue(text.toString(), text.indexOf("MetricRegistryTest.text.timer.count 1\n") >= 0);
+		assertTrue(text.toString(), text.indexOf("MetricRegistryTest.text.timer.p99 ") >= 0);
+		assertEquals(-1, text.indexOf("MetricRegistryTest.same"));
+	}
+
+	private void setMonitoring(final boolean enabled) {
+		GenericConfiguration config = new GenericConfiguration();
+		config.set("monitoring", Boolean.toString(enabled));
+		MonitorFactory.init(config);
+	}
+}
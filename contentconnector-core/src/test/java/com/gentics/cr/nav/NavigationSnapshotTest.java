@@ -0,0 +1,206 @@
+package com.gentics.cr.nav;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gentics.api.lib.datasource.Datasource;
+import com.gentics.api.lib.datasource.Datasource.Sorting;
+import com.gentics.cr.CRResolvableBean;
+
+/**
+ * Test the {@link NavigationSnapshot}.
+ */
+public class NavigationSnapshotTest {
+
+	private static final String[] ATTRIBUTES = { "name", "folder_id" };
+
+	private static final Sorting[] SORTING = { new Sorting("name", Datasource.SORTORDER_ASC) };
+
+	private NavigationSnapshot snapshot;
+
+	@Before
+	public void setUp() {
+		List<CRResolvableBean> beans = new ArrayList<CRResolvableBean>();
+		beans.add(createFolder("10002.2", "b", "10002.1"));
+		beans.add(createFolder("10002.3", "a", "10002.1"));
+		beans.add(createFolder("10002.4", "c", "10002.2"));
+		beans.add(createFolder("10002.5", "d", "10002.4"));
+		snapshot = new NavigationSnapshot("1", 100, beans, ATTRIBUTES, "folder_id", SORTING, 10);
+	}
+
+	@Test
+	public void testChildren() {
+		Collection<CRResolvableBean> children = snapshot.getChildren("10002.1", -1);
+		assertEquals("10002.3,10002.2", getContentids(children));
+		CRResolvableBean b = children.toArray(new CRResolvableBean[0])[1];
+		assertEquals("b", b.get("name"));
+		assertEquals("10002.4", getContentids(b.getChildRepository()));
+		assertEquals("10002.5", getContentids(b.getChildRepository().iterator().next().getChildRepository()));
+		assertEquals(4, snapshot.size());
+		assertTrue(snapshot.contains("10002.5"));
+		assertFalse("Start folder was added to the snapshot.", snapshot.contains("10002.1"));
+	}
+
+	@Test
+	public void testDepth() {
+		Collection<CRResolvableBean> children = snapshot.getChildren("10002.2", 1);
+		assertEquals("10002.4", getContentids(children));
+		assertTrue("Children below the depth were returned.", children.iterator().next().getChildRepository().isEmpty());
+		assertTrue(snapshot.getChildren("10002.2", 0).isEmpty());
+		assertTrue(snapshot.getChildren("10002.5", -1).isEmpty());
+	}
+
+	@Test
+	public void testNodeIds() {
+		List<CRResolvableBean> beans = new ArrayList<CRResolvableBean>();
+		beans.add(createFolder("10002.2", "a", "10002.1", 1));
+		beans.add(createFolder("10002.3", "b", "10002.1", 2));
+		beans.add(createFolder("10002.4", "c", "10002.2", 1));
+		beans.add(createFolder("10002.5", "d", "10002.2", 2));
+		beans.add(createFolder("10002.6", "e", "10002.3", 2));
+		NavigationSnapshot nodes = new NavigationSnapshot("1", 100, beans, new String[] { "name", "folder_id",
+				"node_id" }, "folder_id", SORTING, 10);
+		Collection<CRResolvableBean> children = nodes.getChildren("10002.1", -1, "node_id", matching("1"));
+		assertEquals("10002.2", getContentids(children));
+		assertEquals("10002.4", getContentids(children.iterator().next().getChildRepository()));
+		assertEquals("Objects of other nodes were filtered without node ids.", "10002.2,10002.3",
+			getContentids(nodes.getChildren("10002.1", 1, "node_id", new HashSet<String>())));
+		assertEquals("10002.2,10002.3", getContentids(nodes.getChildren("10002.1", 1, "node_id", matching("1", "2"))));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNodeIdsNotStored() {
+		snapshot.getChildren("10002.1", -1, "node_id", matching("1"));
+	}
+
+	@Test
+	public void testCopies() {
+		CRResolvableBean first = snapshot.getChildren("10002.1", -1).iterator().next();
+		first.set("name", "changed");
+		first.getChildRepository().clear();
+		CRResolvableBean second = snapshot.getChildren("10002.1", -1).iterator().next();
+		assertEquals("Requests share the beans.", "a", second.get("name"));
+	}
+
+	@Test
+	public void testInterning() {
+		List<CRResolvableBean> beans = new ArrayList<CRResolvableBean>();
+		beans.add(createFolder("10002.2", new String("same"), "10002.1"));
+		beans.add(createFolder("10002.3", new String("same"), "10002.1"));
+		NavigationSnapshot interned = new NavigationSnapshot("1", 100, beans, ATTRIBUTES, "folder_id", SORTING, 10);
+		Iterator<CRResolvableBean> children = interned.getChildren("10002.1", -1).iterator();
+		assertSame(children.next().get("name"), children.next().get("name"));
+	}
+
+	@Test
+	public void testUpdate() {
+		List<CRResolvableBean> changed = new ArrayList<CRResolvableBean>();
+		// moved
+		changed.add(createFolder("10002.4", "c", "10002.3"));
+		// added
+		changed.add(createFolder("10002.6", "0", "10002.1"));
+		NavigationSnapshot updated = snapshot.update("2", 200, changed, matching("10002.2", "10002.3", "10002.4",
+			"10002.5", "10002.6"), SORTING);
+		assertEquals("2", updated.getVersion());
+		assertEquals(200, updated.getMaxUpdatetimestamp());
+		assertEquals(5, updated.size());
+		assertEquals("10002.6,10002.3,10002.2", getContentids(updated.getChildren("10002.1", 1)));
+		assertEquals("10002.4", getContentids(updated.getChildren("10002.3", 1)));
+		assertEquals("", getContentids(updated.getChildren("10002.2", 1)));
+		assertEquals("10002.5", getContentids(updated.getChildren("10002.4", 1)));
+		// the old snapshot is not changed
+		assertEquals("10002.4", getContentids(snapshot.getChildren("10002.2", 1)));
+	}
+
+	@Test
+	public void testUpdateRemoved() {
+		List<CRResolvableBean> changed = new ArrayList<CRResolvableBean>();
+		// joined the child filter
+		changed.add(createFolder("10002.6", "0", "10002.1"));
+		// 10002.3 left the child filter, the count of objects did not change
+		NavigationSnapshot updated = snapshot.update("2", 200, changed, matching("10002.2", "10002.4", "10002.5",
+			"10002.6"), SORTING);
+		assertEquals(4, updated.size());
+		assertFalse("Object that left the child filter was kept.", updated.contains("10002.3"));
+		assertEquals("10002.6,10002.2", getContentids(updated.getChildren("10002.1", 1)));
+	}
+
+	@Test
+	public void testRootsLimit() {
+		for (int i = 0; i < 10; i++) {
+			snapshot.putRoots("filter" + i, new ArrayList<CRResolvableBean>());
+		}
+		assertTrue(snapshot.getRoots("filter0").isEmpty());
+		snapshot.putRoots("filter10", new ArrayList<CRResolvableBean>());
+		assertNull("Least recently used roots were not dropped.", snapshot.getRoots("filter1"));
+		assertTrue("Recently used roots were dropped.", snapshot.getRoots("filter0").isEmpty());
+		assertTrue(snapshot.getRoots("filter10").isEmpty());
+	}
+
+	@Test
+	public void testRoots() {
+		assertNull(snapshot.getRoots("filter"));
+		List<CRResolvableBean> roots = new ArrayList<CRResolvableBean>();
+		roots.add(createFolder("10002.1", "root", "10002.0"));
+		snapshot.putRoots("filter", roots);
+		roots.get(0).set("name", "changed");
+		List<CRResolvableBean> cached = snapshot.getRoots("filter");
+		assertEquals("10002.1", getContentids(cached));
+		assertEquals("root", cached.get(0).get("name"));
+		cached.get(0).getChildRepository().addAll(snapshot.getChildren("10002.1", -1));
+		assertTrue("Cached roots share the children.", snapshot.getRoots("filter").get(0).getChildRepository().isEmpty());
+	}
+
+	@Test
+	public void testFoldersContainingEachOther() {
+		List<CRResolvableBean> beans = new ArrayList<CRResolvableBean>();
+		beans.add(createFolder("10002.2", "a", "10002.3"));
+		beans.add(createFolder("10002.3", "b", "10002.2"));
+		NavigationSnapshot cyclic = new NavigationSnapshot("1", 100, beans, ATTRIBUTES, "folder_id", SORTING, 10);
+		Collection<CRResolvableBean> children = cyclic.getChildren("10002.2", -1);
+		assertEquals("10002.3", getContentids(children));
+		assertEquals("10002.2", getContentids(children.iterator().next().getChildRepository()));
+		assertTrue(children.iterator().next().getChildRepository().iterator().next().getChildRepository().isEmpty());
+	}
+
+	private static CRResolvableBean createFolder(final String contentid, final String name, final String folderId) {
+		CRResolvableBean bean = new CRResolvableBean(contentid);
+		bean.set("name", name);
+		bean.set("folder_id", folderId);
+		return bean;
+	}
+
+	private static CRResolvableBean createFolder(final String contentid, final String name, final String folderId,
+			final int nodeId) {
+		CRResolvableBean bean = createFolder(contentid, name, folderId);
+		bean.set("node_id", nodeId);
+		return bean;
+	}
+
+	private static Set<String> matching(final String... contentids) {
+		return new HashSet<String>(Arrays.asList(contentids));
+	}
+
+	private static String getContentids(final Collection<CRResolvableBean> beans) {
+		List<String> contentids = new ArrayList<String>();
+		for (CRResolvableBean bean : beans) {
+			contentids.add(bean.getContentid());
+		}
+		String joined = Arrays.toString(contentids.toArray());
+		return joined.substring(1, joined.length() - 1).replace(", ", ",");
+	}
+}
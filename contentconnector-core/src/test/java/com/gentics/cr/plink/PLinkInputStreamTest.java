@@ -5,6 +5,7 @@ import static org.junit.Assert.assertEquals;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.Charset;
 
 import org.junit.Test;
 
@@ -52,6 +53,40 @@ public class PLinkInputStreamTest {
 			testString("test abc blah <plink id=\"10007.1\" test lkjasdf sdfjlkj> test"));
 	}
 
+	@Test
+	public void testTemplateRestart() throws IOException {
+		assertEquals("test <10007.1 test", testString("test <<plink id=\"10007.1\"> test"));
+		assertEquals("test <plinx test", testString("test <plinx test"));
+		assertEquals("Started plink at the end was lost.", "test <pli", testString("test <pli"));
+	}
+
+	@Test
+	public void testSingleBytes() throws IOException {
+		byte[] input = new byte[] { 'a', (byte) 0xFF, '<', 'p', 'l', 'i', 'n', 'k', ' ', 'i', 'd', '=', '"', '1', '"',
+			'>', (byte) 0xFE };
+		PLinkInputStream plis = new PLinkInputStream(new ByteArrayInputStream(input), new PLinkReplacer() {
+			public String replacePLink(PLinkInformation info) {
+				return info.getContentId();
+			}
+		}, Charset.forName("UTF-8"));
+		assertEquals('a', plis.read());
+		assertEquals("Byte 0xFF was returned as end of stream.", 0xFF, plis.read());
+		assertEquals('1', plis.read());
+		assertEquals(0xFE, plis.read());
+		assertEquals(-1, plis.read());
+	}
+
+	@Test
+	public void testBlockBoundaries() throws IOException {
+		StringBuilder input = new StringBuilder();
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			input.append("text ").append(i).append(" <plink id=\"10007.").append(i).append("\"> ");
+			expected.append("text ").append(i).append(" 10007.").append(i).append(' ');
+		}
+		assertEquals(expected.toString(), testString(input.toString()));
+	}
+
 	private String testString(String input) throws IOException {
 		InputStream is = new ByteArrayInputStream(input.getBytes("UTF-8"));
 
@@ -5,6 +5,8 @@ import static org.junit.Assert.assertEquals;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
 
 import org.junit.Test;
 
@@ -51,6 +53,63 @@ public class PLinkOutputStreamTest {
 			testString("test abc blah <plink id=\"10007.1\" test lkjasdf sdfjlkj> test"));
 	}
 
+	@Test
+	public void testTemplateRestart() throws IOException {
+		assertEquals("test <10007.1 test", testString("test <<plink id=\"10007.1\"> test"));
+		assertEquals("test <plinx test", testString("test <plinx test"));
+		assertEquals("Started plink at the end was lost.", "test <pli", testString("test <pli"));
+	}
+
+	@Test
+	public void testSplitWrites() throws IOException {
+		String input = "a <plink id=\"10007.1\"> b <plink id='10007.2'> c <pl";
+		byte[] bytes = input.getBytes("UTF-8");
+		for (int split = 0; split <= bytes.length; split++) {
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			PLinkOutputStream plOs = new PLinkOutputStream(os, new IdReplacer(), Charset.forName("UTF-8"));
+			plOs.write(bytes, 0, split);
+			plOs.write(bytes, split, bytes.length - split);
+			plOs.close();
+			assertEquals("Writes split at " + split + " were not replaced.", "a 10007.1 b 10007.2 c <pl",
+				os.toString("UTF-8"));
+		}
+	}
+
+	@Test
+	public void testCharset() throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		PLinkOutputStream plOs = new PLinkOutputStream(os, new PLinkReplacer() {
+			public String replacePLink(PLinkInformation info) {
+				return "/gr\u00fc\u00dfe/" + info.getContentId();
+			}
+		}, Charset.forName("UTF-8"));
+		Writer w = new OutputStreamWriter(plOs, "UTF-8");
+		w.write("\u00e4 <plink id=\"10007.1\"> \u00f6");
+		w.close();
+		assertEquals("\u00e4 /gr\u00fc\u00dfe/10007.1 \u00f6", os.toString("UTF-8"));
+	}
+
+	@Test
+	public void testLargePage() throws IOException {
+		StringBuilder page = new StringBuilder();
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			String text = "<p class=\"text\">" + i + " lorem ipsum dolor sit amet, consectetur adipisici elit, sed "
+					+ "eiusmod tempor incidunt ut labore et dolore magna aliqua. Ut enim ad minim veniam, quis nostrud "
+					+ "exercitation ullamco laboris nisi ut aliquid ex ea commodi consequat. Quis aute iure "
+					+ "reprehenderit in voluptate velit esse cillum dolore eu fugiat nulla pariatur.</p> <a href=\"";
+			page.append(text).append("<plink id=\"10007.").append(i).append("\" />\">link</a>\n");
+			expected.append(text).append("10007.").append(i).append("\">link</a>\n");
+		}
+		assertEquals(expected.toString(), testString(page.toString()));
+	}
+
+	private static class IdReplacer implements PLinkReplacer {
+		public String replacePLink(PLinkInformation info) {
+			return info.getContentId();
+		}
+	}
+
 	private String testString(String input) throws IOException {
 		ByteArrayOutputStream os = new ByteArrayOutputStream();
 
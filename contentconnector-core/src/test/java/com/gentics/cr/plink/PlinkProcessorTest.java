@@ -0,0 +1,132 @@
+package com.gentics.cr.plink;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.easymock.EasyMock;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.gentics.api.lib.datasource.Datasource;
+import com.gentics.api.lib.expressionparser.filtergenerator.DatasourceFilter;
+import com.gentics.api.lib.resolving.Resolvable;
+import com.gentics.cr.CRConfigUtil;
+import com.gentics.cr.CRRequest;
+import com.gentics.cr.CRResolvableBean;
+import com.gentics.cr.configuration.GenericConfiguration;
+
+public class PlinkProcessorTest {
+
+	private static PlinkProcessor plinkProcessor;
+
+	/**
+	 * Objects of the datasource.
+	 */
+	private static final List<Resolvable> OBJECTS = new ArrayList<Resolvable>();
+
+	/**
+	 * Number of times the plink processor got the datasource, once per batch
+	 * or per link resolved on its own.
+	 */
+	private static final AtomicInteger DATASOURCE_REQUESTS = new AtomicInteger();
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		CRConfigUtil config = new CRConfigUtil();
+		config.setName(PlinkProcessorTest.class.getName());
+		config.setPlinkTemplate("/$plink.filename");
+		config.set(PlinkProcessor.PLINK_BATCH_KEY, "true");
+		config.set(PlinkProcessor.PLINK_PREFILL_KEY, "filename");
+		OBJECTS.add(createBean("10007.1", "index.html"));
+		OBJECTS.add(createBean("10007.2", "contact.html"));
+		OBJECTS.add(createBean("10008.1", "logo.png"));
+		plinkProcessor = new PlinkProcessor(new CountingConfig(config, config.getName(), createDatasource()));
+	}
+
+	@Test
+	public void testGetLinks() {
+		int requests = DATASOURCE_REQUESTS.get();
+		Map<String, String> links = plinkProcessor.getLinks(
+			Arrays.asList("10007.1", "10007.2", "10008.1", "10007.1"), new CRRequest());
+		assertEquals(3, links.size());
+		assertEquals("/index.html", links.get("10007.1"));
+		assertEquals("/contact.html", links.get("10007.2"));
+		assertEquals("/logo.png", links.get("10008.1"));
+		assertTrue("The links were not resolved in one batch.", DATASOURCE_REQUESTS.get() - requests <= 1);
+
+		requests = DATASOURCE_REQUESTS.get();
+		plinkProcessor.getLinks(Arrays.asList("10007.1", "10007.2", "10008.1"), new CRRequest());
+		assertEquals("The cached links were resolved again.", requests, DATASOURCE_REQUESTS.get());
+	}
+
+	@Test
+	public void testMissingObject() {
+		int requests = DATASOURCE_REQUESTS.get();
+		Map<String, String> links = plinkProcessor.getLinks(Arrays.asList("10007.98", "10007.1"), new CRRequest());
+		assertEquals("/index.html", links.get("10007.1"));
+		assertFalse("The missing object got a link in the batch.", links.containsKey("10007.98"));
+		assertEquals(requests + 1, DATASOURCE_REQUESTS.get());
+
+		requests = DATASOURCE_REQUESTS.get();
+		links = plinkProcessor.getLinks(Arrays.asList("10007.98"), new CRRequest());
+		assertFalse(links.containsKey("10007.98"));
+		assertEquals("The fallback of the missing object was cached.", requests + 1, DATASOURCE_REQUESTS.get());
+	}
+
+	@Test
+	public void testInvalidContentid() {
+		Map<String, String> links = plinkProcessor.getLinks(Arrays.asList("10007.1", "10007.1\" OR \"1"), new CRRequest());
+		assertEquals("/index.html", links.get("10007.1"));
+		assertFalse(links.containsKey("10007.1\" OR \"1"));
+	}
+
+	@Test
+	public void testReplacePlinks() {
+		String content = "<a href=\"<plink id=\"10007.1\" />\">Home</a> <a href=\"<plink id=\"10008.1\" />\">Logo</a>";
+		assertEquals("<a href=\"/index.html\">Home</a> <a href=\"/logo.png\">Logo</a>",
+			plinkProcessor.replacePlinks(content, new CRRequest()));
+	}
+
+	/**
+	 * Configuration counting the requests of the datasource.
+	 */
+	private static class CountingConfig extends CRConfigUtil {
+		private final Datasource ds;
+
+		CountingConfig(final GenericConfiguration conf, final String name, final Datasource ds) {
+			super(conf, name);
+			this.ds = ds;
+		}
+
+		@Override
+		public Datasource getDatasource() {
+			DATASOURCE_REQUESTS.incrementAndGet();
+			return ds;
+		}
+	}
+
+	/**
+	 * Create a datasource returning all objects for every filter, the plink
+	 * processor only uses the objects it asked for.
+	 */
+	private static Datasource createDatasource() throws Exception {
+		Datasource ds = EasyMock.createNiceMock(Datasource.class);
+		EasyMock.expect(ds.getResult(EasyMock.<DatasourceFilter> anyObject(), EasyMock.<String[]> anyObject()))
+				.andReturn(OBJECTS).anyTimes();
+		EasyMock.replay(ds);
+		return ds;
+	}
+
+	private static CRResolvableBean createBean(final String contentid, final String filename) {
+		CRResolvableBean bean = new CRResolvableBean(contentid);
+		bean.set("filename", filename);
+		return bean;
+	}
+}
@@ -0,0 +1,120 @@
+package com.gentics.cr.rest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gentics.cr.CRResolvableBean;
+
+public class BinarySpillCacheTest {
+
+	private static final int SIZE = 10000;
+
+	private File cacheDir;
+
+	@Before
+	public void setUp() throws IOException {
+		cacheDir = File.createTempFile("binaryspillcache", "");
+		cacheDir.delete();
+	}
+
+	@Test
+	public void testWrite() throws IOException {
+		BinarySpillCache cache = new BinarySpillCache(cacheDir, 3 * SIZE);
+		File file = cache.getFile(createBean("10008.1", 1), 1);
+		assertArrayEquals(createBinary(1), read(file));
+		assertEquals(SIZE, cache.getSize());
+		assertEquals(1, cacheDir.list().length);
+	}
+
+	@Test
+	public void testNewVersion() throws IOException {
+		BinarySpillCache cache = new BinarySpillCache(cacheDir, 3 * SIZE);
+		File old = cache.getFile(createBean("10008.1", 1), 1);
+		File file = cache.getFile(createBean("10008.1", 2), 2);
+		assertFalse("Old version was not removed.", old.exists());
+		assertArrayEquals(createBinary(2), read(file));
+		assertEquals(SIZE, cache.getSize());
+	}
+
+	@Test
+	public void testEvictLeastRecentlyUsed() throws IOException {
+		BinarySpillCache cache = new BinarySpillCache(cacheDir, 2 * SIZE);
+		File first = cache.getFile(createBean("10008.1", 1), 1);
+		File second = cache.getFile(createBean("10008.2", 2), 1);
+		cache.getFile(createBean("10008.1", 1), 1);
+		File third = cache.getFile(createBean("10008.3", 3), 1);
+		assertTrue(first.exists());
+		assertFalse("Least recently used binary was not removed.", second.exists());
+		assertTrue(third.exists());
+		assertEquals(2 * SIZE, cache.getSize());
+	}
+
+	@Test
+	public void testKeepLargeBinary() throws IOException {
+		BinarySpillCache cache = new BinarySpillCache(cacheDir, SIZE / 2);
+		File file = cache.getFile(createBean("10008.1", 1), 1);
+		assertArrayEquals(createBinary(1), read(file));
+		cache.getFile(createBean("10008.2", 2), 1);
+		assertFalse(file.exists());
+		assertEquals(1, cacheDir.list().length);
+	}
+
+	@Test
+	public void testReuseDirectory() throws IOException {
+		new BinarySpillCache(cacheDir, 3 * SIZE).getFile(createBean("10008.1", 1), 1);
+		assertTrue(new File(cacheDir, "leftover.tmp").createNewFile());
+		BinarySpillCache cache = new BinarySpillCache(cacheDir, 3 * SIZE);
+		assertEquals(SIZE, cache.getSize());
+		assertEquals(1, cacheDir.list().length);
+		cache.getFile(createBean("10008.1", 2), 2);
+		assertEquals(SIZE, cache.getSize());
+		assertEquals(1, cacheDir.list().length);
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : cacheDir.listFiles()) {
+			file.delete();
+		}
+		cacheDir.delete();
+	}
+
+	private static CRResolvableBean createBean(final String contentid, final int seed) {
+		CRResolvableBean bean = new CRResolvableBean(contentid);
+		bean.set("binarycontent", createBinary(seed));
+		return bean;
+	}
+
+	private static byte[] createBinary(final int seed) {
+		byte[] binary = new byte[SIZE];
+		for (int i = 0; i < binary.length; i++) {
+			binary[i] = (byte) (i * seed);
+		}
+		return binary;
+	}
+
+	private static byte[] read(final File file) throws IOException {
+		byte[] content = new byte[(int) file.length()];
+		InputStream in = new FileInputStream(file);
+		try {
+			int pos = 0;
+			for (int read = 0; read != -1 && pos < content.length; pos += read) {
+				read = in.read(content, pos, content.length - pos);
+			}
+		} finally {
+			in.close();
+		}
+		return content;
+	}
+}
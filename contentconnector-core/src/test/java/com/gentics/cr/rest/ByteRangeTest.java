@@ -0,0 +1,57 @@
+package com.gentics.cr.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class ByteRangeTest {
+
+	@Test
+	public void testRange() {
+		ByteRange range = ByteRange.parse("bytes=10-19", 100);
+		assertEquals(10, range.getFirst());
+		assertEquals(19, range.getLast());
+		assertEquals(10, range.getLength());
+		assertEquals("bytes 10-19/100", range.toContentRange(100));
+	}
+
+	@Test
+	public void testOpenRange() {
+		ByteRange range = ByteRange.parse("bytes=90-", 100);
+		assertEquals(90, range.getFirst());
+		assertEquals(99, range.getLast());
+	}
+
+	@Test
+	public void testSuffixRange() {
+		ByteRange range = ByteRange.parse("bytes=-10", 100);
+		assertEquals(90, range.getFirst());
+		assertEquals(99, range.getLast());
+		assertEquals(0, ByteRange.parse("bytes=-500", 100).getFirst());
+	}
+
+	@Test
+	public void testEndAfterLength() {
+		assertEquals(99, ByteRange.parse("bytes=50-1000", 100).getLast());
+	}
+
+	@Test
+	public void testUnsatisfiable() {
+		assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=100-", 100));
+		assertSame("Range after the end with an explicit end was ignored.", ByteRange.UNSATISFIABLE,
+			ByteRange.parse("bytes=200-300", 100));
+		assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=100-100", 100));
+		assertEquals("bytes */100", ByteRange.UNSATISFIABLE.toContentRange(100));
+	}
+
+	@Test
+	public void testIgnored() {
+		assertNull(ByteRange.parse(null, 100));
+		assertNull(ByteRange.parse("items=1-2", 100));
+		assertNull(ByteRange.parse("bytes=1-2,5-6", 100));
+		assertNull(ByteRange.parse("bytes=5-1", 100));
+		assertNull(ByteRange.parse("bytes=a-b", 100));
+	}
+}
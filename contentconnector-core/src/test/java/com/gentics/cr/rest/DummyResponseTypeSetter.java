@@ -1,5 +1,8 @@
 package com.gentics.cr.rest;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import com.gentics.cr.util.response.IResponseTypeSetter;
 
 public class DummyResponseTypeSetter implements IResponseTypeSetter {
@@ -7,6 +10,8 @@ public class DummyResponseTypeSetter implements IResponseTypeSetter {
 	String type = "";
 	
 	int responseCode = 0;
+
+	Map<String, String> headers = new HashMap<String, String>();
 	
 	@Override
 	public void setContentType(String type) {
@@ -26,4 +31,13 @@ public class DummyResponseTypeSetter implements IResponseTypeSetter {
 		return this.responseCode;
 	}
 
+	@Override
+	public void setHeader(String name, String value) {
+		headers.put(name, value);
+	}
+
+	public String getHeader(String name) {
+		return headers.get(name);
+	}
+
 }
@@ -0,0 +1,170 @@
+package com.gentics.cr.rest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.httpclient.HttpStatus;
+import org.easymock.EasyMock;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.gentics.api.lib.resolving.Resolvable;
+import com.gentics.cr.CRConfigUtil;
+import com.gentics.cr.CRResolvableBean;
+import com.gentics.cr.RequestProcessor;
+import com.gentics.cr.plink.PlinkProcessor;
+import com.gentics.cr.util.CRBinaryRequestBuilder;
+
+public class RESTBinaryStreamingContainerTest {
+
+	private static final String CONTENTID = "10008.77";
+
+	private static final String ETAG = "\"" + CONTENTID + "-1300000000\"";
+
+	private static byte[] binary;
+
+	private static RESTBinaryStreamingContainer container;
+
+	private static RESTBinaryStreamingContainer cachingContainer;
+
+	private static File cacheDir;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		binary = new byte[20000];
+		for (int i = 0; i < binary.length; i++) {
+			binary[i] = (byte) i;
+		}
+		CRResolvableBean bean = new CRResolvableBean(CONTENTID);
+		bean.set("binarycontent", binary);
+		bean.set("mimetype", "application/octet-stream");
+		bean.set("updatetimestamp", 1300000000);
+		DummyRequestProcessor.addBean(bean);
+
+		container = new RESTBinaryStreamingContainer(createConfig());
+
+		cacheDir = File.createTempFile("binarycache", "");
+		cacheDir.delete();
+		CRConfigUtil cachingConfig = createConfig();
+		cachingConfig.set(RESTBinaryStreamingContainer.BINARY_CACHE_DIR_KEY, cacheDir.getAbsolutePath());
+		cachingContainer = new RESTBinaryStreamingContainer(cachingConfig);
+	}
+
+	@Test
+	public void testFullBinary() {
+		DummyResponseTypeSetter rts = new DummyResponseTypeSetter();
+		ByteArrayOutputStream stream = process(container, createRequest(null, null, null), rts);
+		assertArrayEquals(binary, stream.toByteArray());
+		assertEquals(ETAG, rts.getHeader("ETag"));
+		assertEquals("20000", rts.getHeader("Content-Length"));
+		assertEquals("bytes", rts.getHeader("Accept-Ranges"));
+	}
+
+	@Test
+	public void testNotModified() {
+		DummyResponseTypeSetter rts = new DummyResponseTypeSetter();
+		ByteArrayOutputStream stream = process(container, createRequest(ETAG, null, null), rts);
+		assertEquals(HttpStatus.SC_NOT_MODIFIED, rts.getResponseCode());
+		assertEquals(0, stream.size());
+	}
+
+	@Test
+	public void testModified() {
+		DummyResponseTypeSetter rts = new DummyResponseTypeSetter();
+		ByteArrayOutputStream stream = process(container, createRequest("\"" + CONTENTID + "-1\"", null, null), rts);
+		assertEquals(binary.length, stream.size());
+	}
+
+	@Test
+	public void testRange() {
+		DummyResponseTypeSetter rts = new DummyResponseTypeSetter();
+		ByteArrayOutputStream stream = process(container, createRequest(null, "bytes=100-10099", null), rts);
+		assertRange(rts, stream, 100, 10000);
+	}
+
+	@Test
+	public void testOutdatedIfRange() {
+		DummyResponseTypeSetter rts = new DummyResponseTypeSetter();
+		ByteArrayOutputStream stream = process(container, createRequest(null, "bytes=100-199", "\"old\""), rts);
+		assertEquals(0, rts.getResponseCode());
+		assertEquals(binary.length, stream.size());
+	}
+
+	@Test
+	public void testUnsatisfiableRange() {
+		DummyResponseTypeSetter rts = new DummyResponseTypeSetter();
+		process(container, createRequest(null, "bytes=30000-", null), rts);
+		assertEquals(HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE, rts.getResponseCode());
+		assertEquals("bytes */20000", rts.getHeader("Content-Range"));
+	}
+
+	@Test
+	public void testCachedBinary() {
+		DummyResponseTypeSetter rts = new DummyResponseTypeSetter();
+		ByteArrayOutputStream stream = process(cachingContainer, createRequest(null, null, null), rts);
+		assertArrayEquals(binary, stream.toByteArray());
+		assertEquals(1, cacheDir.list().length);
+
+		rts = new DummyResponseTypeSetter();
+		stream = process(cachingContainer, createRequest(null, "bytes=-500", ETAG), rts);
+		assertRange(rts, stream, 19500, 500);
+		assertNull(rts.getHeader("Content-Type"));
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		container.finalize();
+		cachingContainer.finalize();
+		for (File file : cacheDir.listFiles()) {
+			file.delete();
+		}
+		cacheDir.delete();
+	}
+
+	private void assertRange(final DummyResponseTypeSetter rts, final ByteArrayOutputStream stream, final int first,
+			final int length) {
+		assertEquals(HttpStatus.SC_PARTIAL_CONTENT, rts.getResponseCode());
+		assertEquals("bytes " + first + "-" + (first + length - 1) + "/" + binary.length, rts.getHeader("Content-Range"));
+		assertEquals(Integer.toString(length), rts.getHeader("Content-Length"));
+		byte[] expected = new byte[length];
+		System.arraycopy(binary, first, expected, 0, length);
+		assertArrayEquals(expected, stream.toByteArray());
+	}
+
+	private ByteArrayOutputStream process(final RESTBinaryStreamingContainer binaryContainer,
+			final HttpServletRequest request, final DummyResponseTypeSetter rts) {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		Map<String, Resolvable> objects = new HashMap<String, Resolvable>();
+		binaryContainer.processService(new CRBinaryRequestBuilder(request), objects, stream, rts);
+		return stream;
+	}
+
+	private static HttpServletRequest createRequest(final String ifNoneMatch, final String range, final String ifRange) {
+		HttpServletRequest request = EasyMock.createNiceMock(HttpServletRequest.class);
+		EasyMock.expect(request.getParameter("contentid")).andReturn(CONTENTID).anyTimes();
+		EasyMock.expect(request.getHeader("If-None-Match")).andReturn(ifNoneMatch).anyTimes();
+		EasyMock.expect(request.getHeader("Range")).andReturn(range).anyTimes();
+		EasyMock.expect(request.getHeader("If-Range")).andReturn(ifRange).anyTimes();
+		EasyMock.expect(request.getDateHeader(EasyMock.<String> anyObject())).andReturn(-1L).anyTimes();
+		EasyMock.replay(request);
+		return request;
+	}
+
+	private static CRConfigUtil createConfig() {
+		CRConfigUtil config = new CRConfigUtil();
+		config.setName(RESTBinaryStreamingContainerTest.class.getName());
+		config.set("rp.1.rpClass", DummyRequestProcessor.class.getName());
+		config.set("rp.1." + RequestProcessor.CONTENTCACHE_KEY, "false");
+		config.set("rp.1." + PlinkProcessor.PLINK_CACHE_ACTIVATION_KEY, "false");
+		return config;
+	}
+}
@@ -0,0 +1,205 @@
+package com.gentics.cr.rest.bin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gentics.cr.CRResolvableBean;
+import com.gentics.cr.exceptions.CRException;
+import com.gentics.cr.rest.ContentRepository;
+import com.gentics.cr.rest.javabin.JavaBinContentRepository;
+
+public class BinContentRepositoryTest {
+
+	private static final String[] ATTRIBUTES = { "name", "content" };
+
+	private Collection<CRResolvableBean> beans;
+
+	@Before
+	public void setUp() {
+		beans = new Vector<CRResolvableBean>();
+		CRResolvableBean folder = new CRResolvableBean("10002.1");
+		folder.setMother_id("0");
+		folder.set("name", "Home ä");
+		folder.set("updatetimestamp", 1300000000);
+		folder.set("size", -5000000000L);
+		folder.set("score", 0.5f);
+		folder.set("ratio", 2.5d);
+		folder.set("online", Boolean.TRUE);
+		folder.set("binarycontent", new byte[] { 0, 1, -1 });
+		folder.set("edited", new Date(1300000000000L));
+		folder.set("permissions", new String[] { "mar", null });
+		folder.set("list", Arrays.asList("a", 1));
+		Map<String, String[]> suggestions = new HashMap<String, String[]>();
+		suggestions.put("tst", new String[] { "test", "tess" });
+		folder.set("suggestions", suggestions);
+		Collection<CRResolvableBean> children = new Vector<CRResolvableBean>();
+		CRResolvableBean child = new CRResolvableBean("10007.2");
+		child.set("name", "News");
+		children.add(child);
+		folder.setChildRepository(children);
+		beans.add(folder);
+		for (int i = 3; i < 100; i++) {
+			CRResolvableBean page = new CRResolvableBean("10007." + i);
+			page.set("name", "Page " + i);
+			page.set("content", "Content of page " + i);
+			beans.add(page);
+		}
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		Iterator<CRResolvableBean> result = read(write(new BinContentRepository(ATTRIBUTES))).iterator();
+
+		CRResolvableBean folder = result.next();
+		assertEquals("10002.1", folder.getContentid());
+		assertEquals("1", folder.getObj_id());
+		assertEquals("10002", folder.getObj_type());
+		assertEquals("0", folder.getMother_id());
+		assertNull(folder.getMother_type());
+		assertEquals("Home ä", folder.get("name"));
+		assertEquals(1300000000, folder.get("updatetimestamp"));
+		assertEquals(-5000000000L, folder.get("size"));
+		assertEquals(0.5f, folder.get("score"));
+		assertEquals(2.5d, folder.get("ratio"));
+		assertEquals(Boolean.TRUE, folder.get("online"));
+		assertArrayEquals(new byte[] { 0, 1, -1 }, (byte[]) folder.get("binarycontent"));
+		assertEquals(new Date(1300000000000L), folder.get("edited"));
+		assertArrayEquals(new String[] { "mar", null }, (String[]) folder.get("permissions"));
+		assertEquals(Arrays.asList("a", 1), folder.get("list"));
+		assertArrayEquals(new String[] { "test", "tess" }, (String[]) ((Map<?, ?>) folder.get("suggestions")).get("tst"));
+		CRResolvableBean child = folder.getChildRepository().iterator().next();
+		assertEquals("10007.2", child.getContentid());
+		assertEquals("News", child.get("name"));
+
+		for (int i = 3; i < 100; i++) {
+			CRResolvableBean page = result.next();
+			assertEquals("10007." + i, page.getContentid());
+			assertEquals("Page " + i, page.get("name"));
+			assertNull(page.getChildRepository());
+		}
+		assertTrue(!result.hasNext());
+	}
+
+	@Test
+	public void testDeflate() throws Exception {
+		byte[] plain = write(new BinContentRepository(ATTRIBUTES));
+		byte[] deflated = write(new DeflateBinContentRepository(ATTRIBUTES));
+		assertTrue(deflated.length < plain.length);
+		Collection<CRResolvableBean> result = read(deflated);
+		assertEquals(beans.size(), result.size());
+		assertEquals("Content of page 99", ((List<CRResolvableBean>) result).get(97).get("content"));
+	}
+
+	/**
+	 * The names of the attributes are written once, so the response has to be
+	 * considerably smaller than the serialized beans.
+	 */
+	@Test
+	public void testSmallerThanJavaBin() throws Exception {
+		byte[] bin = write(new BinContentRepository(ATTRIBUTES));
+		byte[] javaBin = write(new JavaBinContentRepository(ATTRIBUTES));
+		assertTrue(bin.length + " >= " + javaBin.length, bin.length * 2 < javaBin.length);
+	}
+
+	@Test
+	public void testError() throws Exception {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		new BinContentRepository(ATTRIBUTES).respondWithError(stream, new CRException("NoDataFound",
+				"Data could not be found.", CRException.ERRORTYPE.NO_DATA_FOUND), false);
+		try {
+			read(stream.toByteArray());
+			fail("The error was not read");
+		} catch (CRException e) {
+			assertEquals("NoDataFound", e.getType());
+			assertEquals("Data could not be found.", e.getMessage());
+			assertEquals(CRException.ERRORTYPE.NO_DATA_FOUND, e.getErrorType());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testUnsupportedVersion() throws Exception {
+		byte[] response = write(new BinContentRepository(ATTRIBUTES));
+		response[BinaryFormat.MAGIC.length] = BinaryFormat.VERSION + 1;
+		read(response);
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncated() throws Exception {
+		byte[] response = write(new BinContentRepository(ATTRIBUTES));
+		read(Arrays.copyOf(response, response.length / 2));
+	}
+
+	@Test
+	public void testOversizedValue() throws Exception {
+		ByteArrayOutputStream response = new ByteArrayOutputStream();
+		response.write(BinaryFormat.MAGIC);
+		response.write(BinaryFormat.VERSION);
+		response.write(0);
+		response.write(BinaryFormat.RECORD_OBJECT);
+		// content id with a length of about 2 GB
+		response.write(new byte[] { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07 });
+		try {
+			read(response.toByteArray());
+			fail("The length of the value was trusted.");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("exceeds the maximum"));
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncatedLargeValue() throws Exception {
+		ByteArrayOutputStream response = new ByteArrayOutputStream();
+		response.write(BinaryFormat.MAGIC);
+		response.write(BinaryFormat.VERSION);
+		response.write(0);
+		response.write(BinaryFormat.RECORD_OBJECT);
+		// content id with a length of 100 MB but only a few bytes
+		response.write(new byte[] { (byte) 0x81, (byte) 0x80, (byte) 0x80, 0x32, 'a', 'b', 'c' });
+		read(response.toByteArray());
+	}
+
+	@Test(expected = IOException.class)
+	public void testMaxValueLength() throws Exception {
+		BinaryResponseReader reader = new BinaryResponseReader(new ByteArrayInputStream(
+				write(new BinContentRepository(ATTRIBUTES))), 4);
+		try {
+			reader.readObjects();
+		} finally {
+			reader.close();
+		}
+	}
+
+	private byte[] write(final ContentRepository cr) throws CRException {
+		cr.addObjects(beans);
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		cr.toStream(stream);
+		return stream.toByteArray();
+	}
+
+	private Collection<CRResolvableBean> read(final byte[] response) throws CRException, IOException {
+		BinaryResponseReader reader = new BinaryResponseReader(new ByteArrayInputStream(response));
+		try {
+			return reader.readObjects();
+		} finally {
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package com.gentics.cr.rest.xml;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Collection;
+import java.util.Vector;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import com.gentics.cr.CRResolvableBean;
+import com.gentics.cr.exceptions.CRException;
+
+public class XmlContentRepositoryTest {
+
+	private Collection<CRResolvableBean> beans;
+
+	@Before
+	public void setUp() {
+		beans = new Vector<CRResolvableBean>();
+		CRResolvableBean folder = new CRResolvableBean("10002.1");
+		folder.set("name", "Home");
+		folder.set("content", "a ]]> b <c> & ä");
+		folder.set("permissions", new String[] { "mar", "sal" });
+		Collection<CRResolvableBean> children = new Vector<CRResolvableBean>();
+		CRResolvableBean child = new CRResolvableBean("10002.2");
+		child.set("name", "News");
+		children.add(child);
+		folder.setChildRepository(children);
+		beans.add(folder);
+	}
+
+	@Test
+	public void testToStream() throws Exception {
+		XmlContentRepository cr = new XmlContentRepository(new String[] { "name" });
+		cr.addObjects(beans);
+		Element root = write(cr);
+
+		assertEquals("Contentrepository", root.getTagName());
+		assertEquals("ok", root.getAttribute("status"));
+		Element object = (Element) root.getElementsByTagName("Object").item(0);
+		assertEquals("10002.1", object.getAttribute("contentid"));
+		assertEquals("1", object.getAttribute("obj_id"));
+		assertEquals("10002", object.getAttribute("obj_type"));
+		assertEquals("", object.getAttribute("mother_id"));
+		assertEquals("Home", object.getElementsByTagName("name").item(0).getTextContent());
+		assertEquals("a ]]> b <c> & ä", object.getElementsByTagName("content").item(0).getTextContent());
+		NodeList permissions = object.getElementsByTagName("permissions");
+		assertEquals(2, permissions.getLength());
+		assertEquals("sal", permissions.item(1).getTextContent());
+		Element children = (Element) object.getElementsByTagName("children").item(0);
+		assertEquals("10002.2", ((Element) children.getElementsByTagName("Object").item(0)).getAttribute("contentid"));
+	}
+
+	@Test
+	public void testRespondWithError() throws Exception {
+		XmlContentRepository cr = new XmlContentRepository(new String[] { "name" }, "ISO-8859-1");
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		cr.respondWithError(stream, new CRException("NoDataFound", "Data could not be found."), true);
+		Element root = parse(stream);
+
+		assertEquals("error", root.getAttribute("status"));
+		Element error = (Element) root.getElementsByTagName("Error").item(0);
+		assertEquals("NoDataFound", error.getAttribute("type"));
+		assertEquals("Data could not be found.", error.getAttribute("message"));
+		assertEquals(1, error.getElementsByTagName("StackTrace").getLength());
+	}
+
+	@Test(expected = CRException.class)
+	public void testNoData() throws CRException {
+		new XmlContentRepository(new String[] { "name" }).toStream(new ByteArrayOutputStream());
+	}
+
+	@Test
+	public void testSitemap() throws Exception {
+		CSSitemapContentRepository cr = new CSSitemapContentRepository(new String[] { "name" });
+		cr.addObjects(beans);
+		Element root = write(cr);
+
+		assertEquals("folder", root.getTagName());
+		assertEquals("1", root.getAttribute("id"));
+		assertEquals("Home", root.getAttribute("name"));
+		Element subfolders = (Element) root.getElementsByTagName("subfolders").item(0);
+		Element child = (Element) subfolders.getElementsByTagName("folder").item(0);
+		assertEquals("2", child.getAttribute("id"));
+		assertEquals("News", child.getAttribute("name"));
+	}
+
+	@Test
+	public void testMnogosearch() throws Exception {
+		MnogosearchXmlContentRepository cr = new MnogosearchXmlContentRepository(new String[] { "name" });
+		cr.addObjects(beans);
+		Element root = write(cr);
+
+		assertEquals("Contentrepository", root.getTagName());
+		assertEquals("found", root.getElementsByTagName("status").item(0).getTextContent());
+		assertEquals("1", root.getElementsByTagName("total").item(0).getTextContent());
+		Element res = (Element) root.getElementsByTagName("res").item(0);
+		assertEquals("Home", res.getElementsByTagName("name").item(0).getTextContent());
+	}
+
+	@Test
+	public void testMnogosearchNotFound() throws Exception {
+		MnogosearchXmlContentRepository cr = new MnogosearchXmlContentRepository(new String[] { "name" });
+		Element root = write(cr);
+
+		assertEquals("notfound", root.getElementsByTagName("status").item(0).getTextContent());
+		assertEquals(0, root.getElementsByTagName("res").getLength());
+	}
+
+	private Element write(final XmlContentRepository cr) throws Exception {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		cr.toStream(stream);
+		return parse(stream);
+	}
+
+	private Element parse(final ByteArrayOutputStream stream) throws Exception {
+		Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+				.parse(new ByteArrayInputStream(stream.toByteArray()));
+		return doc.getDocumentElement();
+	}
+}
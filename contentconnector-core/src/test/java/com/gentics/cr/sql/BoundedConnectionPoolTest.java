@@ -0,0 +1,123 @@
+package com.gentics.cr.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the {@link BoundedConnectionPool} with an embedded HSQL database.
+ */
+public class BoundedConnectionPoolTest {
+
+	private static final String URL = "jdbc:hsqldb:mem:BoundedConnectionPoolTest;user=sa";
+
+	private BoundedConnectionPool pool;
+
+	@Before
+	public void setUp() throws ClassNotFoundException {
+		Class.forName("org.hsqldb.jdbcDriver");
+	}
+
+	@After
+	public void tearDown() {
+		if (pool != null) {
+			pool.close();
+		}
+	}
+
+	@Test
+	public void testReuse() throws SQLException {
+		pool = createPool(0, 2, 100, 0);
+		Connection connection = pool.getConnection();
+		assertEquals(1, pool.getActiveCount());
+		connection.close();
+		assertTrue(connection.isClosed());
+		assertEquals(0, pool.getActiveCount());
+		assertEquals(1, pool.getIdleCount());
+
+		pool.getConnection().close();
+		assertEquals("Idle connection was not reused.", 1, pool.getCreatedCount());
+		connection.close();
+		assertEquals("Closing a handle twice returned the connection twice.", 1, pool.getIdleCount());
+	}
+
+	@Test
+	public void testAcquireTimeout() throws SQLException {
+		pool = createPool(1, 2, 50, 0);
+		assertEquals(1, pool.getIdleCount());
+		Connection first = pool.getConnection();
+		Connection second = pool.getConnection();
+		try {
+			pool.getConnection();
+			fail("Pool handed out more connections than allowed.");
+		} catch (SQLException e) {
+			assertEquals(1, pool.getTimeoutCount());
+		}
+		assertTrue(pool.getWaitTime() >= 50);
+		first.close();
+		pool.getConnection().close();
+		second.close();
+		assertEquals(2, pool.getCreatedCount());
+	}
+
+	@Test
+	public void testStatementCache() throws SQLException {
+		pool = createPool(0, 1, 100, 0);
+		Connection connection = pool.getConnection();
+		PreparedStatement statement = connection.prepareStatement("VALUES (?)");
+		PreparedStatement physical = statement.unwrap(PreparedStatement.class);
+		assertSame(connection, statement.getConnection());
+		PreparedStatement concurrent = connection.prepareStatement("VALUES (?)");
+		assertNotSame("Open statement was used twice.", physical, concurrent.unwrap(PreparedStatement.class));
+		concurrent.close();
+		statement.setString(1, "value");
+		ResultSet resultSet = statement.executeQuery();
+		assertTrue(resultSet.next());
+		assertEquals("value", resultSet.getString(1));
+		resultSet.close();
+		statement.close();
+		connection.close();
+
+		connection = pool.getConnection();
+		statement = connection.prepareStatement("VALUES (?)");
+		assertSame("Statement was not cached.", physical, statement.unwrap(PreparedStatement.class));
+		statement.close();
+		connection.close();
+	}
+
+	@Test
+	public void testIdleEviction() throws SQLException, InterruptedException {
+		pool = createPool(1, 3, 100, 10);
+		Connection first = pool.getConnection();
+		Connection second = pool.getConnection();
+		Connection third = pool.getConnection();
+		first.close();
+		second.close();
+		third.close();
+		Thread.sleep(20);
+		pool.evictIdleConnections();
+		assertEquals("Idle connections were not closed down to the minimum.", 1, pool.getIdleCount());
+	}
+
+	private static BoundedConnectionPool createPool(final int min, final int max, final long acquireTimeout,
+			final long idleTimeout) {
+		Properties props = new Properties();
+		props.setProperty(BoundedConnectionPool.MIN_KEY, Integer.toString(min));
+		props.setProperty(BoundedConnectionPool.MAX_KEY, Integer.toString(max));
+		props.setProperty(BoundedConnectionPool.ACQUIRE_TIMEOUT_KEY, Long.toString(acquireTimeout));
+		props.setProperty(BoundedConnectionPool.IDLE_TIMEOUT_KEY, Long.toString(idleTimeout));
+		return new BoundedConnectionPool("test", URL, props);
+	}
+}
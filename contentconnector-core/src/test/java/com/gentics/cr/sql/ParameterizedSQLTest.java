@@ -0,0 +1,127 @@
+package com.gentics.cr.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gentics.cr.CRResolvableBean;
+
+/**
+ * Test the {@link ParameterizedSQL} and the {@link ResultSetBeanIterator}.
+ */
+public class ParameterizedSQLTest {
+
+	private Connection connection;
+
+	@Before
+	public void setUp() throws Exception {
+		Class.forName("org.hsqldb.jdbcDriver");
+		connection = DriverManager.getConnection("jdbc:hsqldb:mem:ParameterizedSQLTest", "sa", "");
+		Statement statement = connection.createStatement();
+		statement.execute("CREATE TABLE files (contentid VARCHAR(256), filename VARCHAR(256), size INTEGER)");
+		statement.execute("INSERT INTO files VALUES ('10008.1', 'a.txt', 10)");
+		statement.execute("INSERT INTO files VALUES ('10008.2', 'it''s.txt', 20)");
+		statement.execute("INSERT INTO files VALUES ('10008.3', 'c.txt', 30)");
+		statement.close();
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		if (connection.isClosed()) {
+			connection = DriverManager.getConnection("jdbc:hsqldb:mem:ParameterizedSQLTest", "sa", "");
+		}
+		Statement statement = connection.createStatement();
+		statement.execute("DROP TABLE files");
+		statement.close();
+		connection.close();
+	}
+
+	@Test
+	public void testTranslateFilter() {
+		ParameterizedSQL condition = ParameterizedSQL.translateFilter("filename == 'a.txt' && size == 10");
+		assertEquals("filename = ? && size = 10", condition.getSql());
+		assertEquals(Arrays.<Object> asList("a.txt"), condition.getParameters());
+
+		condition = ParameterizedSQL.translateFilter("object.contentid CONTAINSONEOF [\"10008.1\", \"10008.3\"]");
+		assertEquals("contentid IN (?, ?)", condition.getSql());
+		assertEquals(Arrays.<Object> asList("10008.1", "10008.3"), condition.getParameters());
+	}
+
+	@Test
+	public void testParameterize() {
+		ParameterizedSQL first = ParameterizedSQL.parameterize("filename == 'a.txt' && size == 10");
+		ParameterizedSQL second = ParameterizedSQL.parameterize("filename == \"c.txt\" && size == 10");
+		assertEquals("Filters with different literals have a different structure.", first.getSql(), second.getSql());
+		assertEquals(Arrays.<Object> asList("c.txt"), second.getParameters());
+		assertEquals("filename = ? && size = 10", ParameterizedSQL.translateCondition(first.getSql()));
+	}
+
+	@Test
+	public void testLiteralsAreNotParsed() {
+		ParameterizedSQL condition = ParameterizedSQL.translateFilter("filename == \"==]' OR 1 == 1\"");
+		assertEquals("filename = ?", condition.getSql());
+		assertEquals(Arrays.<Object> asList("==]' OR 1 == 1"), condition.getParameters());
+
+		condition = ParameterizedSQL.translateFilter("filename == 'it''s.txt'");
+		assertEquals(Arrays.<Object> asList("it's.txt"), condition.getParameters());
+	}
+
+	/**
+	 * The literals keep the meaning they had when the filter was inserted into
+	 * the SQL: doubled quotes are quotes, backslashes are no escapes.
+	 */
+	@Test
+	public void testLiteralRules() {
+		ParameterizedSQL condition = ParameterizedSQL.translateFilter("filename == \"say \"\"hi\"\"\"");
+		assertEquals(Arrays.<Object> asList("say \"hi\""), condition.getParameters());
+
+		condition = ParameterizedSQL.translateFilter("pub_dir == 'C:\\files\\' && filename == 'a.txt'");
+		assertEquals("pub_dir = ? && filename = ?", condition.getSql());
+		assertEquals(Arrays.<Object> asList("C:\\files\\", "a.txt"), condition.getParameters());
+
+		condition = ParameterizedSQL.translateFilter("filename == ''");
+		assertEquals("filename = ?", condition.getSql());
+		assertEquals(Arrays.<Object> asList(""), condition.getParameters());
+	}
+
+	@Test
+	public void testDoubledQuoteQuery() throws SQLException {
+		ParameterizedSQL condition = ParameterizedSQL.translateFilter("filename == 'it''s.txt'");
+		PreparedStatement statement = connection.prepareStatement("SELECT * FROM files WHERE " + condition.getSql());
+		condition.bind(statement);
+		ResultSetBeanIterator iterator = new ResultSetBeanIterator(connection, statement, statement.executeQuery(),
+				"contentid");
+		assertEquals("10008.2", iterator.next().getContentid());
+		assertFalse(iterator.hasNext());
+	}
+
+	@Test
+	public void testIterator() throws SQLException {
+		ParameterizedSQL condition = ParameterizedSQL
+				.translateFilter("object.contentid CONTAINSONEOF ['10008.2', '10008.3'] OR filename == 'a.txt'");
+		PreparedStatement statement = connection.prepareStatement("SELECT * FROM files WHERE " + condition.getSql()
+				+ " ORDER BY contentid");
+		condition.bind(statement);
+		ResultSetBeanIterator iterator = new ResultSetBeanIterator(connection, statement, statement.executeQuery(),
+				"contentid");
+		CRResolvableBean bean = iterator.next();
+		assertEquals("10008.1", bean.getContentid());
+		assertEquals("a.txt", bean.get("FILENAME"));
+		assertTrue(iterator.hasNext());
+		assertEquals("it's.txt", iterator.next().get("FILENAME"));
+		assertEquals("10008.3", iterator.next().getContentid());
+		assertFalse(iterator.hasNext());
+		assertTrue("Connection was not closed after the last row.", connection.isClosed());
+	}
+}
@@ -1,19 +1,34 @@
 package com.gentics.cr.http;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.ObjectInputStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
 
 import org.apache.commons.httpclient.DefaultHttpMethodRetryHandler;
+import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpException;
 import org.apache.commons.httpclient.HttpStatus;
 import org.apache.commons.httpclient.HttpVersion;
-import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.ProtocolException;
 import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 import org.apache.commons.httpclient.params.HttpMethodParams;
 import org.apache.log4j.Logger;
 
@@ -23,6 +38,12 @@ import com.gentics.cr.CRRequest;
 import com.gentics.cr.CRResolvableBean;
 import com.gentics.cr.RequestProcessor;
 import com.gentics.cr.exceptions.CRException;
+import com.gentics.cr.http.BackendBalancer.Backend;
+import com.gentics.cr.monitoring.Counter;
+import com.gentics.cr.monitoring.MetricRegistry;
+import com.gentics.cr.monitoring.Timer;
+import com.gentics.cr.rest.bin.BinContentRepository;
+import com.gentics.cr.rest.bin.BinaryResponseReader;
 
 /**
  * based on com.gentics.cr.http.HTTPClientRequestProcessor.
@@ -32,15 +53,100 @@ public abstract class AbstractHTTPClientRequestProcessor extends RequestProcesso
 	private static Logger log = Logger.getLogger(AbstractHTTPClientRequestProcessor.class);
 	protected String name = null;
 
+	/**
+	 * Key to configure the url of the remote connector. Several urls can be
+	 * separated by comma, the requests are balanced to the backend with the
+	 * least outstanding requests.
+	 */
 	private static final String URL_KEY = "URL";
 	/**
-	 * Key to configure the used http version. Defaults to HTTP/1.0
+	 * Key to configure the used http version. Defaults to HTTP/1.1, which
+	 * keeps the pooled connections open between the requests.
 	 *
 	 * Can be configured in the following manner: HTTP/<major>.<minor>
 	 */
 	private static final String HTTP_VERSION_KEY = "HTTPVERSION";
+	/**
+	 * Key to configure the type of the responses requested from the remote
+	 * connector: JavaBIN (java serialization), BIN (compact binary format) or
+	 * BINDEFLATE (compressed compact binary format). Defaults to JavaBIN.
+	 */
+	private static final String TYPE_KEY = "TYPE";
+	/**
+	 * Key to configure the maximum number of pooled connections per host.
+	 * Defaults to 20.
+	 */
+	private static final String MAX_CONNECTIONS_PER_HOST_KEY = "MAXCONNECTIONSPERHOST";
+	/**
+	 * Key to configure the maximum number of pooled connections to all hosts.
+	 * Defaults to 100.
+	 */
+	private static final String MAX_TOTAL_CONNECTIONS_KEY = "MAXTOTALCONNECTIONS";
+	/**
+	 * Key to configure the timeout in milliseconds for opening a connection.
+	 * Defaults to 5000, 0 waits forever.
+	 */
+	private static final String CONNECTION_TIMEOUT_KEY = "CONNECTIONTIMEOUT";
+	/**
+	 * Key to configure the timeout in milliseconds for waiting on data of the
+	 * response. Defaults to 30000, 0 waits forever.
+	 */
+	private static final String SOCKET_TIMEOUT_KEY = "SOCKETTIMEOUT";
+	/**
+	 * Key to configure the timeout in milliseconds for waiting on a pooled
+	 * connection if all connections are in use. Defaults to 5000, 0 waits
+	 * forever.
+	 */
+	private static final String POOL_TIMEOUT_KEY = "POOLTIMEOUT";
+	/**
+	 * Key to configure if gzip compressed responses are accepted. Defaults to
+	 * true.
+	 */
+	private static final String GZIP_KEY = "GZIP";
+	/**
+	 * Key to configure after how many failed requests in a row a backend is
+	 * ejected. Defaults to 3.
+	 */
+	private static final String MAX_FAILURES_KEY = "MAXFAILURES";
+	/**
+	 * Key to configure how long in milliseconds an ejected backend gets no
+	 * requests. Defaults to 30000.
+	 */
+	private static final String EJECT_TIME_KEY = "EJECTTIME";
+	/**
+	 * Key to enable hedged requests: if a backend did not answer after the
+	 * hedge delay, the request is also sent to another backend and the first
+	 * answer is taken. Defaults to false.
+	 */
+	private static final String HEDGE_KEY = "HEDGE";
+	/**
+	 * Key to configure the percentile of the request latencies used as hedge
+	 * delay. Defaults to 95.
+	 */
+	private static final String HEDGE_PERCENTILE_KEY = "HEDGEPERCENTILE";
+	/**
+	 * Key to configure the minimum hedge delay in milliseconds, it is used
+	 * alone until enough requests were answered. Defaults to 50.
+	 */
+	private static final String HEDGE_DELAY_KEY = "HEDGEDELAY";
 	private String path = "";
-	private HttpVersion httpVersion = HttpVersion.HTTP_1_0;
+	private BackendBalancer balancer;
+	/**
+	 * Executor of the hedged requests, <code>null</code> if requests are not
+	 * hedged.
+	 */
+	private ExecutorService hedgeExecutor;
+	private int hedgePercentile;
+	private long hedgeDelay;
+	private Counter hedges;
+	private HttpVersion httpVersion = HttpVersion.HTTP_1_1;
+	private String type = "JavaBIN";
+	private boolean gzip;
+	private MonitoredHttpConnectionManager connectionManager;
+	/**
+	 * Timer of the requests to the remote connector.
+	 */
+	private Timer requestTimer;
 	protected HttpClient client;
 
 	/**
@@ -52,10 +158,38 @@ public abstract class AbstractHTTPClientRequestProcessor extends RequestProcesso
 		super(config);
 		this.name = config.getName();
 		//LOAD ADDITIONAL CONFIG
-		client = new HttpClient(new MultiThreadedHttpConnectionManager());
+		connectionManager = new MonitoredHttpConnectionManager(name);
+		HttpConnectionManagerParams params = connectionManager.getParams();
+		params.setDefaultMaxConnectionsPerHost(config.getInteger(MAX_CONNECTIONS_PER_HOST_KEY, 20));
+		params.setMaxTotalConnections(config.getInteger(MAX_TOTAL_CONNECTIONS_KEY, 100));
+		params.setConnectionTimeout(config.getInteger(CONNECTION_TIMEOUT_KEY, 5000));
+		params.setSoTimeout(config.getInteger(SOCKET_TIMEOUT_KEY, 30000));
+		client = new HttpClient(connectionManager);
+		client.getParams().setConnectionManagerTimeout(config.getInteger(POOL_TIMEOUT_KEY, 5000));
+		gzip = config.getBoolean(GZIP_KEY, true);
+		requestTimer = MetricRegistry.timer("HTTPClientRequestProcessor(" + name + ")");
 		this.path = (String) config.get(URL_KEY);
+		List<String> urls = new ArrayList<String>();
 		if (this.path == null) {
 			log.error("COULD NOT GET URL FROM CONFIG (add RP.<rpnumber>.url=<url> to config). OVERTHINK YOUR CONFIG!");
+		} else {
+			for (String url : this.path.split(",")) {
+				if (url.trim().length() > 0) {
+					urls.add(url.trim());
+				}
+			}
+			this.path = urls.isEmpty() ? null : urls.get(0);
+		}
+		if (urls.isEmpty()) {
+			urls.add("");
+		}
+		balancer = new BackendBalancer(urls, config.getInteger(MAX_FAILURES_KEY, 3), config.getInteger(EJECT_TIME_KEY,
+			30000), MetricRegistry.counter("HTTPClientRequestProcessor(" + name + ").ejections"));
+		if (config.getBoolean(HEDGE_KEY, false) && urls.size() > 1) {
+			hedgeExecutor = Executors.newCachedThreadPool(new HedgeThreadFactory(name));
+			hedgePercentile = config.getInteger(HEDGE_PERCENTILE_KEY, 95);
+			hedgeDelay = config.getInteger(HEDGE_DELAY_KEY, 50);
+			hedges = MetricRegistry.counter("HTTPClientRequestProcessor(" + name + ").hedges");
 		}
 		String httpVersionString = config.getString(HTTP_VERSION_KEY);
 		if (httpVersionString != null) {
@@ -65,10 +199,15 @@ public abstract class AbstractHTTPClientRequestProcessor extends RequestProcesso
 				throw new CRException(e);
 			}
 		}
+		String typeString = config.getString(TYPE_KEY);
+		if (typeString != null) {
+			this.type = typeString;
+		}
 	}
 
 	/**
 	 * Requests Objects from a remote ContentConnector Servlet using type JavaXML.
+	 * A request that failed is sent once more to another backend.
 	 * @param request
 	 * @param doNavigation
 	 * @return Collection of CRResolvableBean
@@ -77,69 +216,300 @@ public abstract class AbstractHTTPClientRequestProcessor extends RequestProcesso
 	public Collection<CRResolvableBean> getObjects(CRRequest request, boolean doNavigation) throws CRException {
 		ArrayList<CRResolvableBean> resultlist = new ArrayList<CRResolvableBean>();
 
-		String reqUrl = buildGetUrlString(request);
-
-		GetMethod method = new GetMethod(reqUrl);
+		String query = buildQueryString(request);
+		Collection<CRResolvableBean> result;
+		if (hedgeExecutor != null) {
+			result = getHedgedObjects(query);
+		} else {
+			Backend backend = balancer.choose(null);
+			try {
+				result = new BackendRequest(backend, query).call();
+			} catch (IOException e) {
+				Backend other = balancer.choose(backend);
+				if (other == null) {
+					throw transportError(e);
+				}
+				log.warn("Request to " + backend.getUrl() + " failed, sending it to " + other.getUrl(), e);
+				try {
+					result = new BackendRequest(other, query).call();
+				} catch (IOException ex) {
+					throw transportError(ex);
+				}
+			}
+		}
 
-		method.getParams().setVersion(httpVersion);
+		if (result != null) {
+			for (CRResolvableBean crBean : result) {
+				resultlist.add(crBean);
+			}
+		}
 
-		//Set request charset
-		method.setRequestHeader("Content-type", "text/xml; charset=UTF-8");
-		// Provide custom retry handler is necessary
-		method.getParams().setParameter(HttpMethodParams.RETRY_HANDLER, new DefaultHttpMethodRetryHandler(3, false));
+		return resultlist;
+	}
 
+	/**
+	 * Send the request to a backend and to a second backend if the first one
+	 * did not answer within the hedge delay, the first answer is taken and the
+	 * other request is aborted. A request that failed before it was hedged is
+	 * sent once more to another backend.
+	 * @param query query string of the request
+	 * @return objects of the first answer
+	 * @throws CRException if the answer contains an error or both requests
+	 * failed
+	 */
+	private Collection<CRResolvableBean> getHedgedObjects(String query) throws CRException {
+		CompletionService<Collection<CRResolvableBean>> completion = new ExecutorCompletionService<Collection<CRResolvableBean>>(
+				hedgeExecutor);
+		Backend backend = balancer.choose(null);
+		BackendRequest first = new BackendRequest(backend, query);
+		BackendRequest second = null;
+		completion.submit(first);
+		int running = 1;
 		try {
-			// Execute the method.
-			int statusCode = client.executeMethod(method);
-			log.info("Request: " + reqUrl + " Status: " + statusCode);
-			if (statusCode != HttpStatus.SC_OK) {
-				log.error("Request failed: " + method.getStatusLine());
+			Future<Collection<CRResolvableBean>> done = completion.poll(
+				balancer.getHedgeDelay(hedgePercentile, hedgeDelay), TimeUnit.MILLISECONDS);
+			if (done == null) {
+				Backend other = balancer.choose(backend);
+				if (other != null) {
+					second = new BackendRequest(other, query);
+					completion.submit(second);
+					running++;
+					hedges.inc();
+				}
+				done = completion.take();
+			}
+			while (true) {
+				try {
+					return done.get();
+				} catch (ExecutionException e) {
+					running--;
+					if (e.getCause() instanceof CRException) {
+						throw (CRException) e.getCause();
+					}
+					if (second == null) {
+						// failed before it was hedged, send it once to another backend like without hedging
+						Backend other = balancer.choose(backend);
+						if (other != null) {
+							log.warn("Request to " + backend.getUrl() + " failed, sending it to " + other.getUrl(),
+								e.getCause());
+							second = new BackendRequest(other, query);
+							completion.submit(second);
+							running++;
+						}
+					}
+					if (running == 0) {
+						throw transportError((Exception) e.getCause());
+					}
+					done = completion.take();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CRException(e);
+		} finally {
+			first.abort();
+			if (second != null) {
+				second.abort();
 			}
+		}
+	}
 
-			Collection<CRResolvableBean> result = new Vector<CRResolvableBean>();
-			ObjectInputStream objstream = new ObjectInputStream(method.getResponseBodyAsStream());
-			Object responseObject;
-			try {
-				responseObject = objstream.readObject();
+	/**
+	 * Log a failed request.
+	 * @param e error of the request
+	 * @return exception to throw
+	 */
+	private CRException transportError(Exception e) {
+		if (e instanceof HttpException) {
+			log.error("Fatal protocol violation", e);
+		} else {
+			log.error("Fatal transport error", e);
+		}
+		return new CRException(e);
+	}
+
+	/**
+	 * Request to one backend. The result of the request is recorded for the
+	 * balancing: an answer, even one containing an error, marks the backend as
+	 * healthy, a transport error as failed.
+	 */
+	private class BackendRequest implements Callable<Collection<CRResolvableBean>> {
+
+		private final Backend backend;
+
+		private final GetMethod method;
+
+		private boolean aborted = false;
 
-				objstream.close();
+		private boolean finished = false;
+
+		/**
+		 * Create a new request.
+		 * @param backend backend to send the request to
+		 * @param query query string of the request
+		 */
+		BackendRequest(Backend backend, String query) {
+			this.backend = backend;
+			method = new GetMethod(backend.getUrl() + query);
+
+			method.getParams().setVersion(httpVersion);
+
+			//Set request charset
+			method.setRequestHeader("Content-type", "text/xml; charset=UTF-8");
+			if (gzip) {
+				method.setRequestHeader("Accept-Encoding", "gzip");
+			}
+			// Provide custom retry handler is necessary
+			method.getParams().setParameter(HttpMethodParams.RETRY_HANDLER, new DefaultHttpMethodRetryHandler(3, false));
+		}
+
+		/**
+		 * Send the request and read the answer.
+		 * @return objects of the answer
+		 * @throws CRException if the answer contains an error
+		 * @throws IOException if the request failed or was aborted
+		 */
+		public Collection<CRResolvableBean> call() throws CRException, IOException {
+			synchronized (this) {
+				if (aborted) {
+					throw new InterruptedIOException("Request to " + backend.getUrl() + " was aborted.");
+				}
+			}
+			balancer.started(backend);
+			boolean answered = false;
+			long start = requestTimer.start();
+			long nanos = System.nanoTime();
+			try {
+				// Execute the method.
+				int statusCode = client.executeMethod(method);
+				log.info("Request: " + method.getURI() + " Status: " + statusCode);
+				if (statusCode != HttpStatus.SC_OK) {
+					log.error("Request failed: " + method.getStatusLine());
+				}
 
-				if (responseObject instanceof Collection<?>) {
-					result = this.toCRResolvableBeanCollection(responseObject);
-				} else if (responseObject instanceof CRError) {
-					CRError ex = (CRError) responseObject;
-					throw new CRException(ex);
+				Collection<CRResolvableBean> result;
+				InputStream body = method.getResponseBodyAsStream();
+				Header contentEncoding = method.getResponseHeader("Content-Encoding");
+				if (contentEncoding != null && contentEncoding.getValue().toLowerCase().contains("gzip")) {
+					body = new GZIPInputStream(body);
+				}
+				Header contentType = method.getResponseHeader("Content-Type");
+				if (contentType != null && contentType.getValue().startsWith(BinContentRepository.CONTENT_TYPE)) {
+					BinaryResponseReader reader = new BinaryResponseReader(body);
+					try {
+						result = reader.readObjects();
+					} finally {
+						reader.close();
+					}
 				} else {
-					log.error("COULD NOT CAST RESULT. Perhaps remote agent does not work properly");
+					result = readSerializedObjects(body);
 				}
+				answered = true;
+				return result;
+			} catch (CRException e) {
+				answered = true;
+				throw e;
+			} finally {
+				synchronized (this) {
+					finished = true;
+				}
+				// Release the connection.
+				method.releaseConnection();
+				requestTimer.stop(start);
+				if (answered) {
+					balancer.succeeded(backend, (System.nanoTime() - nanos) / 1000);
+				} else if (aborted) {
+					balancer.aborted(backend);
+				} else {
+					balancer.failed(backend);
+				}
+			}
+		}
 
-			} catch (ClassNotFoundException e) {
-				log.error("Coult not load object from http response", e);
-				throw new CRException(e);
+		/**
+		 * Abort the request if it is not finished yet.
+		 */
+		synchronized void abort() {
+			if (!finished) {
+				aborted = true;
+				method.abort();
 			}
+		}
+	}
 
-			if (result != null) {
-				for (CRResolvableBean crBean : result) {
-					resultlist.add(crBean);
-				}
+	/**
+	 * Creates the daemon threads of the hedged requests.
+	 */
+	private static class HedgeThreadFactory implements ThreadFactory {
+
+		private final String prefix;
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		/**
+		 * Create a new factory.
+		 * @param name name of the request processor
+		 */
+		HedgeThreadFactory(String name) {
+			prefix = "HTTPClientRequestProcessor(" + name + ")-";
+		}
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, prefix + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	/**
+	 * Read the objects of a JavaBIN response.
+	 * @param body body of the response
+	 * @return objects of the response
+	 * @throws CRException if the response contains an error
+	 * @throws IOException in case of error reading the response
+	 */
+	private Collection<CRResolvableBean> readSerializedObjects(InputStream body) throws CRException, IOException {
+		Collection<CRResolvableBean> result = new Vector<CRResolvableBean>();
+		ObjectInputStream objstream = new ObjectInputStream(body);
+		Object responseObject;
+		try {
+			responseObject = objstream.readObject();
+
+			objstream.close();
+
+			if (responseObject instanceof Collection<?>) {
+				result = this.toCRResolvableBeanCollection(responseObject);
+			} else if (responseObject instanceof CRError) {
+				CRError ex = (CRError) responseObject;
+				throw new CRException(ex);
+			} else {
+				log.error("COULD NOT CAST RESULT. Perhaps remote agent does not work properly");
 			}
 
-		} catch (HttpException e) {
-			log.error("Fatal protocol violation", e);
+		} catch (ClassNotFoundException e) {
+			log.error("Coult not load object from http response", e);
 			throw new CRException(e);
-		} catch (IOException e) {
-			log.error("Fatal transport error", e);
-			throw new CRException(e);
-		} finally {
-			// Release the connection.
-			method.releaseConnection();
 		}
-
-		return resultlist;
+		return result;
 	}
 
+	/**
+	 * Build the url of the request to the first backend.
+	 * @param request request
+	 * @return url of the request
+	 */
 	protected String buildGetUrlString(CRRequest request) {
-		GetUrlBuilder urlBuilder = new GetUrlBuilder(this.path);
+		return (this.path == null ? "" : this.path) + buildQueryString(request);
+	}
+
+	/**
+	 * Build the query string of the request, which is appended to the url of
+	 * the backend.
+	 * @param request request
+	 * @return query string starting with ?
+	 */
+	protected String buildQueryString(CRRequest request) {
+		GetUrlBuilder urlBuilder = new GetUrlBuilder();
 
 		urlBuilder.append("filter", request.getRequestFilter());
 		urlBuilder.appendArray("attributes", request.getAttributeArray());
@@ -148,7 +518,7 @@ public abstract class AbstractHTTPClientRequestProcessor extends RequestProcesso
 		urlBuilder.appendArray("sorting", request.getSortArray());
 		urlBuilder.appendSkipFalse(request, RequestProcessor.META_RESOLVABLE_KEY);
 		urlBuilder.appendSkipNull(request, RequestProcessor.HIGHLIGHT_QUERY_KEY);
-		urlBuilder.append("type", "JavaBIN");
+		urlBuilder.append("type", type);
 
 		appendCustomGetParam(urlBuilder, request);
 
@@ -157,8 +527,14 @@ public abstract class AbstractHTTPClientRequestProcessor extends RequestProcesso
 
 	protected abstract void appendCustomGetParam(GetUrlBuilder urlBuilder, CRRequest request);
 
+	/**
+	 * Close the pooled connections.
+	 */
 	@Override
 	public void finalize() {
-
+		if (hedgeExecutor != null) {
+			hedgeExecutor.shutdownNow();
+		}
+		connectionManager.shutdown();
 	}
 }
@@ -0,0 +1,207 @@
+package com.gentics.cr.http;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import com.gentics.cr.monitoring.Counter;
+import com.gentics.cr.monitoring.LatencyHistogram;
+
+/**
+ * Chooses the backend for a request, the available backend with the least
+ * outstanding requests is chosen. Backends that failed several times in a row
+ * are ejected for a while, after that time they get requests again and are
+ * ejected again with the next failure series.
+ */
+class BackendBalancer {
+
+	private static Logger log = Logger.getLogger(BackendBalancer.class);
+
+	/**
+	 * Number of answered requests needed before the latency percentiles are
+	 * used for the hedge delay.
+	 */
+	static final int MIN_SAMPLES = 20;
+
+	private final Backend[] backends;
+
+	/**
+	 * Number of failures in a row ejecting a backend.
+	 */
+	private final int maxFailures;
+
+	/**
+	 * Time in milliseconds a backend stays ejected.
+	 */
+	private final long ejectTime;
+
+	/**
+	 * Counter of the ejections.
+	 */
+	private final Counter ejections;
+
+	/**
+	 * Latency in microseconds of the answered requests of all backends.
+	 */
+	private final LatencyHistogram latencies = new LatencyHistogram();
+
+	/**
+	 * Rotates the first backend checked, so backends with the same number of
+	 * outstanding requests get the same share of requests. Only the choices of
+	 * new requests advance the rotation, hedged and failed over requests don't.
+	 */
+	private final AtomicInteger next = new AtomicInteger();
+
+	/**
+	 * Create a new balancer.
+	 * @param urls urls of the backends
+	 * @param maxFailures number of failures in a row ejecting a backend
+	 * @param ejectTime time in milliseconds a backend stays ejected
+	 * @param ejections counter of the ejections
+	 */
+	BackendBalancer(final List<String> urls, final int maxFailures, final long ejectTime, final Counter ejections) {
+		backends = new Backend[urls.size()];
+		for (int i = 0; i < backends.length; i++) {
+			backends[i] = new Backend(urls.get(i));
+		}
+		this.maxFailures = maxFailures;
+		this.ejectTime = ejectTime;
+		this.ejections = ejections;
+	}
+
+	/**
+	 * Choose the backend for a request. If all backends are ejected the
+	 * backend whose ejection ends first is chosen.
+	 * @param exclude backend not to choose, e.g. the backend of the request
+	 * that is hedged or failed, may be <code>null</code>
+	 * @return backend or <code>null</code> if there is no other backend than
+	 * the excluded one
+	 */
+	Backend choose(final Backend exclude) {
+		long now = System.currentTimeMillis();
+		int rotation = exclude == null ? next.getAndIncrement() : next.get();
+		int offset = (rotation & Integer.MAX_VALUE) % backends.length;
+		Backend best = null;
+		Backend ejected = null;
+		for (int i = 0; i < backends.length; i++) {
+			Backend backend = backends[(offset + i) % backends.length];
+			if (backend == exclude) {
+				continue;
+			}
+			if (!backend.isEjected(now)) {
+				if (best == null || backend.getOutstanding() < best.getOutstanding()) {
+					best = backend;
+				}
+			} else if (ejected == null || backend.ejectedUntil < ejected.ejectedUntil) {
+				ejected = backend;
+			}
+		}
+		return best != null ? best : ejected;
+	}
+
+	/**
+	 * Record the start of a request to a backend.
+	 * @param backend backend
+	 */
+	void started(final Backend backend) {
+		backend.outstanding.incrementAndGet();
+	}
+
+	/**
+	 * Record an answered request.
+	 * @param backend backend that answered
+	 * @param micros latency of the request in microseconds
+	 */
+	void succeeded(final Backend backend, final long micros) {
+		backend.outstanding.decrementAndGet();
+		backend.failures.set(0);
+		latencies.record(micros);
+	}
+
+	/**
+	 * Record a failed request, the backend is ejected if it failed too often
+	 * in a row.
+	 * @param backend backend that failed
+	 */
+	void failed(final Backend backend) {
+		backend.outstanding.decrementAndGet();
+		if (backend.failures.incrementAndGet() >= maxFailures) {
+			backend.failures.set(0);
+			backend.ejectedUntil = System.currentTimeMillis() + ejectTime;
+			ejections.inc();
+			log.warn("Backend " + backend.getUrl() + " failed " + maxFailures + " times in a row, it is ejected for "
+					+ ejectTime + "ms.");
+		}
+	}
+
+	/**
+	 * Record an aborted request, e.g. the slower request of a hedged pair.
+	 * This is no failure of the backend.
+	 * @param backend backend of the request
+	 */
+	void aborted(final Backend backend) {
+		backend.outstanding.decrementAndGet();
+	}
+
+	/**
+	 * Get the delay after which a request is hedged.
+	 * @param percentile percentile of the latencies to wait for
+	 * @param minDelay minimum delay in milliseconds, used alone until enough
+	 * requests were answered
+	 * @return delay in milliseconds
+	 */
+	long getHedgeDelay(final double percentile, final long minDelay) {
+		if (latencies.getCount() < MIN_SAMPLES) {
+			return minDelay;
+		}
+		return Math.max(minDelay, latencies.getValueAtPercentile(percentile) / 1000);
+	}
+
+	/**
+	 * A backend the requests are balanced to.
+	 */
+	static final class Backend {
+
+		private final String url;
+
+		private final AtomicInteger outstanding = new AtomicInteger();
+
+		private final AtomicInteger failures = new AtomicInteger();
+
+		/**
+		 * End of the ejection in milliseconds.
+		 */
+		private volatile long ejectedUntil = 0;
+
+		/**
+		 * Create a new backend.
+		 * @param url url of the backend
+		 */
+		Backend(final String url) {
+			this.url = url;
+		}
+
+		/**
+		 * @return url of the backend
+		 */
+		String getUrl() {
+			return url;
+		}
+
+		/**
+		 * @return number of requests sent to the backend that are not answered
+		 */
+		int getOutstanding() {
+			return outstanding.get();
+		}
+
+		/**
+		 * @param now current time in milliseconds
+		 * @return <code>true</code> if the backend is ejected
+		 */
+		boolean isEjected(final long now) {
+			return ejectedUntil > now;
+		}
+	}
+}
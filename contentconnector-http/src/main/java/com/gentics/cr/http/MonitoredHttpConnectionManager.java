@@ -0,0 +1,46 @@
+package com.gentics.cr.http;
+
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+
+import com.gentics.cr.monitoring.Counter;
+import com.gentics.cr.monitoring.MetricRegistry;
+import com.gentics.cr.monitoring.Timer;
+
+/**
+ * Pooling connection manager measuring how long the requests wait for a
+ * connection. The wait time is recorded in the timer
+ * HTTPConnectionPool(&lt;name&gt;).wait, requests that got no connection in
+ * time are counted in HTTPConnectionPool(&lt;name&gt;).timeouts.
+ */
+class MonitoredHttpConnectionManager extends MultiThreadedHttpConnectionManager {
+
+	private final Timer waitTimer;
+
+	private final Counter timeouts;
+
+	/**
+	 * Create a new connection manager.
+	 * @param name name of the pool used for the metrics
+	 */
+	MonitoredHttpConnectionManager(final String name) {
+		waitTimer = MetricRegistry.timer("HTTPConnectionPool(" + name + ").wait");
+		timeouts = MetricRegistry.counter("HTTPConnectionPool(" + name + ").timeouts");
+	}
+
+	@Override
+	public HttpConnection getConnectionWithTimeout(final HostConfiguration hostConfiguration, final long timeout)
+			throws ConnectionPoolTimeoutException {
+		long start = waitTimer.start();
+		try {
+			return super.getConnectionWithTimeout(hostConfiguration, timeout);
+		} catch (ConnectionPoolTimeoutException e) {
+			timeouts.inc();
+			throw e;
+		} finally {
+			waitTimer.stop(start);
+		}
+	}
+}
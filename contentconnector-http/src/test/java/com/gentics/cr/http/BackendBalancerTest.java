@@ -0,0 +1,121 @@
+package com.gentics.cr.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gentics.cr.configuration.GenericConfiguration;
+import com.gentics.cr.http.BackendBalancer.Backend;
+import com.gentics.cr.monitoring.Counter;
+import com.gentics.cr.monitoring.MetricRegistry;
+import com.gentics.cr.monitoring.MonitorFactory;
+
+public class BackendBalancerTest {
+
+	private Counter ejections;
+
+	@Before
+	public void setUp() {
+		setMonitoring(true);
+		ejections = MetricRegistry.counter("BackendBalancerTest.ejections");
+	}
+
+	@After
+	public void tearDown() {
+		setMonitoring(false);
+	}
+
+	@Test
+	public void testLeastOutstanding() {
+		BackendBalancer balancer = new BackendBalancer(Arrays.asList("a", "b", "c"), 3, 1000, ejections);
+		Backend a = balancer.choose(null);
+		balancer.started(a);
+		Backend b = balancer.choose(null);
+		balancer.started(b);
+		Backend c = balancer.choose(null);
+		assertTrue(a != b && b != c && a != c);
+		balancer.succeeded(b, 1000);
+		assertSame(b, balancer.choose(null));
+	}
+
+	@Test
+	public void testExclude() {
+		BackendBalancer balancer = new BackendBalancer(Arrays.asList("a", "b"), 3, 1000, ejections);
+		Backend a = balancer.choose(null);
+		for (int i = 0; i < 10; i++) {
+			Backend other = balancer.choose(a);
+			assertTrue(other != a);
+		}
+		BackendBalancer single = new BackendBalancer(Collections.singletonList("a"), 3, 1000, ejections);
+		assertNull(single.choose(single.choose(null)));
+	}
+
+	@Test
+	public void testExcludeKeepsRotation() {
+		BackendBalancer balancer = new BackendBalancer(Arrays.asList("a", "b"), 3, 1000, ejections);
+		Backend a = balancer.choose(null);
+		balancer.choose(a);
+		assertTrue("hedged choices must not advance the rotation", balancer.choose(null) != a);
+	}
+
+	@Test
+	public void testEjection() throws InterruptedException {
+		long before = ejections.get();
+		BackendBalancer balancer = new BackendBalancer(Arrays.asList("a", "b"), 2, 100, ejections);
+		Backend a = balancer.choose(null);
+		Backend b = balancer.choose(a);
+		fail(balancer, a);
+		balancer.started(b);
+		balancer.started(b);
+		assertSame("a failure below the threshold must not eject", a, balancer.choose(null));
+		fail(balancer, a);
+		assertEquals(before + 1, ejections.get());
+		assertTrue(a.isEjected(System.currentTimeMillis()));
+		for (int i = 0; i < 10; i++) {
+			assertSame(b, balancer.choose(null));
+		}
+		fail(balancer, b);
+		fail(balancer, b);
+		assertSame("the backend ejected first has to be chosen if all are ejected", a, balancer.choose(null));
+		Thread.sleep(150);
+		assertTrue(!a.isEjected(System.currentTimeMillis()));
+		balancer.started(a);
+		balancer.succeeded(a, 1000);
+		balancer.started(a);
+		balancer.failed(a);
+		assertTrue("the success has to reset the failures", !a.isEjected(System.currentTimeMillis()));
+	}
+
+	@Test
+	public void testHedgeDelay() {
+		BackendBalancer balancer = new BackendBalancer(Collections.singletonList("a"), 3, 1000, ejections);
+		Backend a = balancer.choose(null);
+		assertEquals(50, balancer.getHedgeDelay(95, 50));
+		for (int i = 0; i < BackendBalancer.MIN_SAMPLES; i++) {
+			balancer.started(a);
+			balancer.succeeded(a, 200000);
+		}
+		long delay = balancer.getHedgeDelay(95, 50);
+		assertTrue(String.valueOf(delay), delay >= 190 && delay <= 210);
+		assertEquals(500, balancer.getHedgeDelay(95, 500));
+	}
+
+	private void fail(final BackendBalancer balancer, final Backend backend) {
+		balancer.started(backend);
+		balancer.failed(backend);
+	}
+
+	private void setMonitoring(final boolean enabled) {
+		GenericConfiguration config = new GenericConfiguration();
+		config.set("monitoring", Boolean.toString(enabled));
+		MonitorFactory.init(config);
+	}
+}
@@ -0,0 +1,205 @@
+package com.gentics.cr.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gentics.cr.CRConfigUtil;
+import com.gentics.cr.CRRequest;
+import com.gentics.cr.CRResolvableBean;
+import com.gentics.cr.RequestProcessor;
+import com.gentics.cr.configuration.GenericConfiguration;
+import com.gentics.cr.exceptions.CRException;
+import com.gentics.cr.monitoring.MetricRegistry;
+import com.gentics.cr.monitoring.MonitorFactory;
+import com.gentics.cr.plink.PlinkProcessor;
+import com.gentics.cr.rest.bin.BinContentRepository;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+@SuppressWarnings("restriction")
+public class HTTPClientRequestProcessorTest {
+
+	private HttpServer server;
+
+	/**
+	 * Ports of the client connections, one port per connection.
+	 */
+	private Set<Integer> clientPorts = new HashSet<Integer>();
+
+	private int gzipRequests = 0;
+
+	private RequestProcessor processor;
+
+	@Before
+	public void setUp() throws IOException {
+		setMonitoring(true);
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/rest", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				respond(exchange);
+			}
+		});
+		server.createContext("/slow", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				try {
+					Thread.sleep(1000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				respond(exchange);
+			}
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+	}
+
+	@After
+	public void tearDown() {
+		if (processor != null) {
+			processor.finalize();
+		}
+		server.stop(0);
+		setMonitoring(false);
+	}
+
+	@Test
+	public void testPersistentGzipConnection() throws CRException {
+		processor = createProcessor("testPersistentGzipConnection", "/rest");
+		for (int i = 0; i < 3; i++) {
+			Collection<CRResolvableBean> result = processor.getObjects(new CRRequest());
+			assertEquals(1, result.size());
+			assertEquals("Home", result.iterator().next().get("name"));
+		}
+		assertEquals(3, gzipRequests);
+		assertEquals("all requests have to use the same connection", 1, clientPorts.size());
+		assertEquals(3, MetricRegistry.timer("HTTPConnectionPool(testPersistentGzipConnection).wait").getHistogram()
+				.getCount());
+		assertEquals(3, MetricRegistry.timer("HTTPClientRequestProcessor(testPersistentGzipConnection)").getHistogram()
+				.getCount());
+	}
+
+	@Test
+	public void testSocketTimeout() throws CRException {
+		processor = createProcessor("testSocketTimeout", "/slow");
+		long start = System.currentTimeMillis();
+		try {
+			processor.getObjects(new CRRequest());
+			assertTrue("the request has to time out", false);
+		} catch (CRException e) {
+			assertTrue(System.currentTimeMillis() - start < 1000);
+		}
+	}
+
+	@Test
+	public void testFailover() throws CRException, IOException {
+		ServerSocket socket = new ServerSocket(0);
+		String deadUrl = "http://localhost:" + socket.getLocalPort() + "/rest";
+		socket.close();
+		CRConfigUtil config = createConfig("testFailover", deadUrl + "," + getUrl("/rest"));
+		config.set("MAXFAILURES", "1");
+		processor = new HTTPClientRequestProcessor(config);
+		for (int i = 0; i < 3; i++) {
+			assertEquals(1, processor.getObjects(new CRRequest()).size());
+		}
+		assertEquals("the dead backend has to be ejected after the first failure", 1,
+			MetricRegistry.counter("HTTPClientRequestProcessor(testFailover).ejections").get());
+	}
+
+	@Test
+	public void testHedgedFailover() throws CRException, IOException {
+		ServerSocket socket = new ServerSocket(0);
+		String deadUrl = "http://localhost:" + socket.getLocalPort() + "/rest";
+		socket.close();
+		CRConfigUtil config = createConfig("testHedgedFailover", deadUrl + "," + getUrl("/rest"));
+		config.set("HEDGE", "true");
+		config.set("HEDGEDELAY", "5000");
+		// the request to the dead backend fails long before the hedge delay
+		long start = System.currentTimeMillis();
+		processor = new HTTPClientRequestProcessor(config);
+		assertEquals(1, processor.getObjects(new CRRequest()).size());
+		assertTrue(System.currentTimeMillis() - start < 5000);
+		assertEquals(0, MetricRegistry.counter("HTTPClientRequestProcessor(testHedgedFailover).hedges").get());
+	}
+
+	@Test
+	public void testHedge() throws CRException {
+		CRConfigUtil config = createConfig("testHedge", getUrl("/slow") + "," + getUrl("/rest"));
+		config.set("HEDGE", "true");
+		config.set("HEDGEDELAY", "50");
+		config.set("SOCKETTIMEOUT", "5000");
+		processor = new HTTPClientRequestProcessor(config);
+		// the first request goes to the first backend, which is the slow one
+		long start = System.currentTimeMillis();
+		assertEquals(1, processor.getObjects(new CRRequest()).size());
+		assertTrue(System.currentTimeMillis() - start < 800);
+		assertEquals(1, MetricRegistry.counter("HTTPClientRequestProcessor(testHedge).hedges").get());
+	}
+
+	private RequestProcessor createProcessor(final String name, final String path) throws CRException {
+		return new HTTPClientRequestProcessor(createConfig(name, getUrl(path)));
+	}
+
+	private CRConfigUtil createConfig(final String name, final String url) {
+		CRConfigUtil config = new CRConfigUtil();
+		config.setName(name);
+		config.set(RequestProcessor.CONTENTCACHE_KEY, "false");
+		config.set(PlinkProcessor.PLINK_CACHE_ACTIVATION_KEY, "false");
+		config.set("URL", url);
+		config.set("TYPE", "BIN");
+		config.set("SOCKETTIMEOUT", "200");
+		return config;
+	}
+
+	private String getUrl(final String path) {
+		return "http://localhost:" + server.getAddress().getPort() + path;
+	}
+
+	private synchronized void respond(final HttpExchange exchange) throws IOException {
+		clientPorts.add(exchange.getRemoteAddress().getPort());
+		String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+		boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+		exchange.getResponseHeaders().set("Content-Type", BinContentRepository.CONTENT_TYPE);
+		if (gzip) {
+			gzipRequests++;
+			exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+		}
+		exchange.sendResponseHeaders(200, 0);
+		OutputStream body = exchange.getResponseBody();
+		if (gzip) {
+			body = new GZIPOutputStream(body);
+		}
+		BinContentRepository cr = new BinContentRepository(new String[] { "name" });
+		CRResolvableBean bean = new CRResolvableBean("10002.1");
+		bean.set("name", "Home");
+		cr.addObject(bean);
+		try {
+			cr.toStream(body);
+		} catch (CRException e) {
+			throw new IOException(e);
+		}
+		body.close();
+	}
+
+	private void setMonitoring(final boolean enabled) {
+		GenericConfiguration config = new GenericConfiguration();
+		config.set("monitoring", Boolean.toString(enabled));
+		MonitorFactory.init(config);
+	}
+}
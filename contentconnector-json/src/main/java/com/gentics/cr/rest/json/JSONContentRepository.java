@@ -228,7 +228,7 @@ public class JSONContentRepository extends ContentRepository {
 	 * @param bValue
 	 * @return
 	 */
-	private String convertToString(Object bValue) {
+	protected String convertToString(Object bValue) {
 		String value;
 		if (bValue instanceof String) {
 			value = (String) bValue;
@@ -0,0 +1,267 @@
+package com.gentics.cr.rest.json;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import net.sf.json.util.JSONUtils;
+
+import org.apache.log4j.Logger;
+
+import com.gentics.cr.CRResolvableBean;
+import com.gentics.cr.exceptions.CRException;
+import com.gentics.cr.exceptions.CRException.ERRORTYPE;
+
+/**
+ * JSON representation for a REST contentrepository that writes the objects
+ * directly to the stream instead of building a {@link JSONObject} tree of the
+ * whole result first. The output is the same as the output of
+ * {@link JSONContentRepository}: plain strings are quoted by json-lib, values
+ * json-lib would interpret (e.g. "null" or strings looking like JSON) are
+ * converted by a {@link JSONObject} of their own.
+ */
+public class StreamingJSONContentRepository extends JSONContentRepository {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Log4j logger for error messages.
+	 */
+	private static final Logger LOGGER = Logger.getLogger(StreamingJSONContentRepository.class);
+
+	/**
+	 * Create instance Set response encoding to UTF-8.
+	 * @param attr
+	 */
+	public StreamingJSONContentRepository(String[] attr) {
+		super(attr);
+	}
+
+	/**
+	 * Create instance.
+	 * @param attr
+	 * @param encoding
+	 */
+	public StreamingJSONContentRepository(String[] attr, String encoding) {
+		super(attr, encoding);
+	}
+
+	/**
+	 * Create instance.
+	 * @param attr
+	 * @param encoding
+	 * @param options
+	 */
+	public StreamingJSONContentRepository(String[] attr, String encoding, String[] options) {
+		super(attr, encoding, options);
+	}
+
+	/**
+	 * Writes the objects as JSON Stream, one object after the other.
+	 * @param stream
+	 * @throws CRException
+	 */
+	@Override
+	public void toStream(OutputStream stream) throws CRException {
+		if (this.resolvableColl.isEmpty()) {
+			// No Data Found
+			throw new CRException("NoDataFound", "Data could not be found.", ERRORTYPE.NO_DATA_FOUND);
+		}
+		try {
+			Writer wr = new BufferedWriter(new OutputStreamWriter(stream, this.getResponseEncoding()));
+			wr.write("{\"status\":\"ok\",\"Objects\":[");
+			boolean separate = false;
+			for (CRResolvableBean crBean : this.resolvableColl) {
+				if (separate) {
+					wr.write(',');
+				}
+				writeElement(wr, crBean);
+				separate = true;
+			}
+			wr.write("]}");
+			wr.flush();
+			wr.close();
+		} catch (IOException ioex) {
+			LOGGER.error("Cannot write the JSON response.", ioex);
+		}
+	}
+
+	/**
+	 * Write a bean and its children.
+	 * @param wr writer
+	 * @param crBean bean
+	 * @throws IOException in case of error writing
+	 */
+	@SuppressWarnings("unchecked")
+	private void writeElement(final Writer wr, final CRResolvableBean crBean) throws IOException {
+		wr.write('{');
+		boolean separate = writeMember(wr, false, "contentid", "" + crBean.getContentid());
+		separate = writeMember(wr, separate, "obj_id", "" + crBean.getObj_id());
+		separate = writeMember(wr, separate, "obj_type", "" + crBean.getObj_type());
+		separate = writeMember(wr, separate, "mother_id", ((crBean.getMother_id() == null) ? "" : ""
+				+ crBean.getMother_id()));
+		separate = writeMember(wr, separate, "mother_type", ((crBean.getMother_type() == null) ? "" : ""
+				+ crBean.getMother_type()));
+
+		Map<String, Object> attrMap = crBean.getAttrMap();
+		if (attrMap != null && !attrMap.isEmpty()) {
+			if (separate) {
+				wr.write(',');
+			}
+			wr.write(JSONUtils.quote("attributes"));
+			wr.write(":{");
+			boolean separateAttribute = false;
+			for (Map.Entry<String, Object> entry : attrMap.entrySet()) {
+				Object bValue = entry.getValue();
+				if (bValue == null) {
+					continue;
+				}
+				if ((bValue.getClass().isArray() && !(bValue instanceof byte[])) || bValue instanceof List) {
+					Collection<Object> values;
+					if (bValue instanceof List) {
+						values = (List<Object>) bValue;
+					} else {
+						values = Arrays.asList((Object[]) bValue);
+					}
+					List<String> arr = new ArrayList<String>(values.size());
+					for (Object obj : values) {
+						arr.add(convertToString(obj));
+					}
+					separateAttribute = writeArrayMember(wr, separateAttribute, entry.getKey(), arr);
+				} else if (bValue instanceof Map<?, ?>) {
+					separateAttribute = writeConvertedMember(wr, separateAttribute, entry.getKey(), bValue);
+				} else {
+					separateAttribute = writeMember(wr, separateAttribute, entry.getKey(), convertToString(bValue));
+				}
+			}
+			wr.write('}');
+			separate = true;
+		}
+		Collection<CRResolvableBean> children = crBean.getChildRepository();
+		if (children != null && children.size() > 0) {
+			if (separate) {
+				wr.write(',');
+			}
+			wr.write(JSONUtils.quote("children"));
+			wr.write(":[");
+			boolean separateChild = false;
+			for (CRResolvableBean chBean : children) {
+				if (separateChild) {
+					wr.write(',');
+				}
+				writeElement(wr, chBean);
+				separateChild = true;
+			}
+			wr.write(']');
+		}
+		wr.write('}');
+	}
+
+	/**
+	 * Write a member with a string value.
+	 * @param wr writer
+	 * @param separate true if a member was written before
+	 * @param key name of the member
+	 * @param value value of the member
+	 * @return true if a member was written now or before
+	 * @throws IOException in case of error writing
+	 */
+	private boolean writeMember(final Writer wr, final boolean separate, final String key, final String value)
+			throws IOException {
+		if (!isPlain(value)) {
+			return writeConvertedMember(wr, separate, key, value);
+		}
+		if (separate) {
+			wr.write(',');
+		}
+		wr.write(JSONUtils.quote(key));
+		wr.write(':');
+		wr.write(JSONUtils.quote(value));
+		return true;
+	}
+
+	/**
+	 * Write a member with an array of strings.
+	 * @param wr writer
+	 * @param separate true if a member was written before
+	 * @param key name of the member
+	 * @param values values of the array
+	 * @return true if a member was written now or before
+	 * @throws IOException in case of error writing
+	 */
+	private boolean writeArrayMember(final Writer wr, final boolean separate, final String key,
+			final List<String> values) throws IOException {
+		for (String value : values) {
+			if (!isPlain(value)) {
+				JSONArray array = new JSONArray();
+				array.addAll(values);
+				return writeConvertedMember(wr, separate, key, array);
+			}
+		}
+		if (separate) {
+			wr.write(',');
+		}
+		wr.write(JSONUtils.quote(key));
+		wr.write(":[");
+		for (int i = 0; i < values.size(); i++) {
+			if (i > 0) {
+				wr.write(',');
+			}
+			wr.write(JSONUtils.quote(values.get(i)));
+		}
+		wr.write(']');
+		return true;
+	}
+
+	/**
+	 * Write a member converted by json-lib.
+	 * @param wr writer
+	 * @param separate true if a member was written before
+	 * @param key name of the member
+	 * @param value value of the member
+	 * @return true if a member was written now or before
+	 * @throws IOException in case of error writing
+	 */
+	private boolean writeConvertedMember(final Writer wr, final boolean separate, final String key, final Object value)
+			throws IOException {
+		JSONObject member = new JSONObject();
+		member.element(key, value);
+		if (member.isEmpty()) {
+			return separate;
+		}
+		if (separate) {
+			wr.write(',');
+		}
+		String json = member.toString();
+		// strip the braces of the object
+		wr.write(json, 1, json.length() - 2);
+		return true;
+	}
+
+	/**
+	 * Check if json-lib writes a string as it is (quoted and escaped). Strings
+	 * that are keywords, quoted, functions or look like JSON are interpreted
+	 * by json-lib.
+	 * @param value string
+	 * @return true if the string can be quoted
+	 */
+	static boolean isPlain(final String value) {
+		if (value.length() == 0) {
+			return true;
+		}
+		char first = value.charAt(0);
+		if (first == '"' || first == '\'' || first == '[' || first == '{' || value.startsWith("function")) {
+			return false;
+		}
+		return !("null".equals(value) || "true".equals(value) || "false".equals(value) || "undefined".equals(value));
+	}
+}
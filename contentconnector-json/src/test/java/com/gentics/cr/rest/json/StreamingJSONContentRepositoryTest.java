@@ -0,0 +1,100 @@
+package com.gentics.cr.rest.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.gentics.cr.CRResolvableBean;
+import com.gentics.cr.exceptions.CRException;
+
+public class StreamingJSONContentRepositoryTest {
+
+	private static final String[] ATTRIBUTES = new String[] { "name" };
+
+	@Test
+	public void testPlainValues() throws CRException {
+		CRResolvableBean bean = new CRResolvableBean("10007.1");
+		bean.set("name", "index.html");
+		bean.set("number", 42);
+		bean.set("date", new Date(1300000000000L));
+		bean.set("binary", "binary".getBytes());
+		bean.set("escaped", "quote \" backslash \\ </script> tab\t newline\n control\u0001 umlaut ä");
+		bean.set("empty", "");
+		bean.set("list", Arrays.asList("a", "b", 3));
+		bean.set("array", new String[] { "x", "y" });
+		assertSameOutput(bean);
+	}
+
+	@Test
+	public void testInterpretedValues() throws CRException {
+		CRResolvableBean bean = new CRResolvableBean("10007.2");
+		bean.set("null", "null");
+		bean.set("true", "true");
+		bean.set("json", "{\"a\":1}");
+		bean.set("jsonarray", "[1,2]");
+		bean.set("quoted", "\"quoted\"");
+		bean.set("single", "'single'");
+		bean.set("function", "function(a) { return a; }");
+		bean.set("list", Arrays.asList("a", "null", "[1]"));
+		Map<String, Object> map = new HashMap<String, Object>();
+		map.put("key", "value");
+		bean.set("map", map);
+		assertSameOutput(bean);
+	}
+
+	@Test
+	public void testChildren() throws CRException {
+		CRResolvableBean parent = new CRResolvableBean("10002.1");
+		parent.set("name", "folder");
+		CRResolvableBean child = new CRResolvableBean("10007.3");
+		child.set("name", "child");
+		CRResolvableBean empty = new CRResolvableBean("10007.4");
+		parent.setChildRepository(Arrays.asList(child, empty));
+		assertSameOutput(parent, new CRResolvableBean("10007.5"));
+	}
+
+	@Test
+	public void testNotFound() {
+		StreamingJSONContentRepository cr = new StreamingJSONContentRepository(ATTRIBUTES, "UTF-8");
+		cr.addObjects(Collections.<CRResolvableBean> emptyList());
+		try {
+			cr.toStream(new ByteArrayOutputStream());
+			assertFalse("Expected a NoDataFound exception", true);
+		} catch (CRException e) {
+			assertEquals("NoDataFound", e.getType());
+		}
+	}
+
+	@Test
+	public void testIsPlain() {
+		assertTrue(StreamingJSONContentRepository.isPlain("text"));
+		assertTrue(StreamingJSONContentRepository.isPlain("nullable"));
+		assertFalse(StreamingJSONContentRepository.isPlain("null"));
+		assertFalse(StreamingJSONContentRepository.isPlain("[x]"));
+		assertFalse(StreamingJSONContentRepository.isPlain("function f() {}"));
+	}
+
+	private void assertSameOutput(final CRResolvableBean... beans) throws CRException {
+		JSONContentRepository treeCr = new JSONContentRepository(ATTRIBUTES, "UTF-8");
+		StreamingJSONContentRepository streamingCr = new StreamingJSONContentRepository(ATTRIBUTES, "UTF-8");
+		for (CRResolvableBean bean : beans) {
+			treeCr.addObject(bean);
+			streamingCr.addObject(bean);
+		}
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		treeCr.toStream(expected);
+		ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		streamingCr.toStream(actual);
+		assertEquals(new String(expected.toByteArray()), new String(actual.toByteArray()));
+		assertTrue(Arrays.equals(expected.toByteArray(), actual.toByteArray()));
+	}
+}
@@ -19,14 +19,20 @@ package com.gentics.cr.lucene.indexaccessor;
  * limitations under the License.
  */
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 import org.apache.lucene.analysis.Analyzer;
@@ -44,9 +50,96 @@ import com.gentics.cr.lucene.LuceneVersion;
 
 /**
  * Provides a default implementation for {@link IndexAccessor}.
+ * Searchers and reading readers are handed out without locking the accessor:
+ * the cache holds one reference of each cached reader and every user acquires
+ * an additional reference that is dropped when the searcher or reader is
+ * released. Reopening the index replaces the cached reader and only drops the
+ * reference of the cache, so searches are never blocked by a reopen and the
+ * old reader is closed as soon as the last search using it released it.
  */
 class DefaultIndexAccessor implements IndexAccessor {
 
+	/**
+	 * Use count of a reading reader. The reader is referenced once per use.
+	 */
+	private static final class ReaderUsage {
+
+		/**
+		 * The reader.
+		 */
+		private final DirectoryReader reader;
+
+		/**
+		 * Number of uses, -1 once the usage was retired.
+		 */
+		private final AtomicInteger uses = new AtomicInteger();
+
+		/**
+		 * Create a new usage.
+		 * @param reader the reader
+		 */
+		private ReaderUsage(final DirectoryReader reader) {
+			this.reader = reader;
+		}
+
+		/**
+		 * Acquire a reference of the reader.
+		 * @return <code>false</code> if the usage was retired or the reader
+		 * was closed
+		 */
+		private boolean acquire() {
+			int count;
+			do {
+				count = uses.get();
+				if (count < 0) {
+					return false;
+				}
+			} while (!uses.compareAndSet(count, count + 1));
+			if (reader.tryIncRef()) {
+				return true;
+			}
+			uses.decrementAndGet();
+			return false;
+		}
+
+		/**
+		 * Release a reference of the reader. Releasing more often than
+		 * acquiring has no effect.
+		 * @return <code>true</code> if a reference was released
+		 */
+		private boolean release() {
+			int count;
+			do {
+				count = uses.get();
+				if (count <= 0) {
+					return false;
+				}
+			} while (!uses.compareAndSet(count, count - 1));
+			try {
+				reader.decRef();
+			} catch (IOException e) {
+				LOGGER.error("error closing reading Reader", e);
+			}
+			return true;
+		}
+
+		/**
+		 * Retire the usage if the reader is not used anymore, it cannot be
+		 * acquired afterwards.
+		 * @return <code>true</code> if the usage was retired
+		 */
+		private boolean retire() {
+			return uses.compareAndSet(0, -1);
+		}
+
+		/**
+		 * @return number of uses
+		 */
+		private int getUses() {
+			return Math.max(0, uses.get());
+		}
+	}
+
 	/**
 	 * Creates Threads starting with a certain name
 	 * @author bigbear3001
@@ -98,12 +191,20 @@ class DefaultIndexAccessor implements IndexAccessor {
 
 	private Analyzer analyzer;
 
-	private DirectoryReader cachedReadingReader = null;
-	
-	private final Map<DirectoryReader, Integer> oldReadingReaders = new HashMap<DirectoryReader, Integer>();
+	/**
+	 * Usage of the cached reading reader.
+	 */
+	private volatile ReaderUsage cachedReadingReader = null;
+
+	/**
+	 * Usages of the cached reading reader and of the replaced reading readers
+	 * that are still in use.
+	 */
+	private final Map<DirectoryReader, ReaderUsage> readingReaders = new ConcurrentHashMap<DirectoryReader, ReaderUsage>();
 
 	/**
-	 * cache for searchers.
+	 * cache for searchers. The cache holds one reference of the reader of each
+	 * searcher.
 	 */
 	protected final Map<Similarity, IndexSearcher> cachedSearchers;
 
@@ -111,22 +212,38 @@ class DefaultIndexAccessor implements IndexAccessor {
 
 	private DirectoryReader cachedWritingReader = null;
 
-	protected boolean closed = true;
+	protected volatile boolean closed = true;
 
 	private Directory directory;
 
-	protected int readingReaderUseCount = 0;
-
 	protected ExecutorService pool = Executors.newFixedThreadPool(POOL_SIZE, new NamedThreadFactory(DefaultIndexAccessor.class.getSimpleName()));
 
-	protected int numReopening = 0;
+	/**
+	 * Reopens the searchers and readers from the open writer, <code>null</code>
+	 * if near real time search is disabled.
+	 */
+	private ScheduledExecutorService nearRealTimeReopener = null;
+
+	/**
+	 * Maximum time in milliseconds until a change of the writer is searchable,
+	 * 0 if near real time search is disabled.
+	 */
+	private long nearRealTimeMaxStaleness = 0;
+
+	/**
+	 * Readers opened from a writer. They cannot be reopened from their writer
+	 * once it is closed.
+	 */
+	private final Set<IndexReader> nearRealTimeReaders = Collections.newSetFromMap(new WeakHashMap<IndexReader, Boolean>());
+
+	protected volatile int numReopening = 0;
 
 	protected boolean isReopening = false;
 
 	/**
 	 * use count for cached searcher.
 	 */
-	protected int searcherUseCount = 0;
+	protected final AtomicInteger searcherUseCount = new AtomicInteger();
 
 	protected int writerUseCount = 0;
 
@@ -135,11 +252,9 @@ class DefaultIndexAccessor implements IndexAccessor {
 	protected int writingReaderUseCount = 0;
 
 	/**
-	 * marker for closing searchers currently in use. this is used when the
-	 * index should be reopened.
-	 * @see #reopen()
+	 * Listeners notified when a searcher on a new reader was opened.
 	 */
-	private boolean closeAllReleasedSearchers = true;
+	protected final List<SearcherWarmupListener> warmupListeners = new CopyOnWriteArrayList<SearcherWarmupListener>();
 
 	/**
 	 * Creates a new instance with the given {@link Directory} and
@@ -153,12 +268,11 @@ class DefaultIndexAccessor implements IndexAccessor {
 	public DefaultIndexAccessor(final Directory dir, final Analyzer indexAnalyzer) {
 		directory = dir;
 		analyzer = indexAnalyzer;
-		cachedSearchers = new HashMap<Similarity, IndexSearcher>();
+		cachedSearchers = new ConcurrentHashMap<Similarity, IndexSearcher>();
 	}
 
 	/**
-	 * Throws an Exception if IndexAccessor is closed. This method assumes it is
-	 * invoked in a synchronized context.
+	 * Throws an Exception if IndexAccessor is closed.
 	 */
 	private void checkClosed() {
 		if (closed) {
@@ -176,10 +290,10 @@ class DefaultIndexAccessor implements IndexAccessor {
 			return;
 		}
 		closed = true;
-		LOGGER.debug("Waiting to close index accessor: "+readingReaderUseCount+","+searcherUseCount+","+writingReaderUseCount+","+writerUseCount+","+numReopening + " - " + this.directory);
-		while (readingReaderUseCount > 0 || searcherUseCount > 0 || writingReaderUseCount > 0 || writerUseCount > 0 || numReopening > 0) {
+		LOGGER.debug("Waiting to close index accessor: "+readingReadersOut()+","+searcherUseCount()+","+writingReaderUseCount+","+writerUseCount+","+numReopening + " - " + this.directory);
+		while (readingReadersOut() > 0 || searcherUseCount() > 0 || writingReaderUseCount > 0 || writerUseCount > 0 || numReopening > 0) {
 			try {
-				LOGGER.debug("Waiting to close index accessor: "+readingReaderUseCount+","+searcherUseCount+","+writingReaderUseCount+","+writerUseCount+","+numReopening + " - " + this.directory);
+				LOGGER.debug("Waiting to close index accessor: "+readingReadersOut()+","+searcherUseCount()+","+writingReaderUseCount+","+writerUseCount+","+numReopening + " - " + this.directory);
 				wait();
 			} catch (InterruptedException e) {
 			}
@@ -188,34 +302,29 @@ class DefaultIndexAccessor implements IndexAccessor {
 		closeCachedSearchers();
 		closeCachedWritingReader();
 		closeCachedWriter();
+		stopNearRealTimeReopener();
 		shutdownAndAwaitTermination(pool);
 	}
 
 	/**
-	 * Closes the cached reading Reader if it has been created. This method
-	 * assumes it is invoked in a synchronized context.
+	 * Closes the cached reading Reader if it has been created. Readers that are
+	 * still in use are closed when they are released. This method assumes it
+	 * is invoked in a synchronized context.
 	 */
 	protected void closeCachedReadingReader() {
-		if (cachedReadingReader == null) {
+		ReaderUsage usage = cachedReadingReader;
+		if (usage == null) {
 			return;
 		}
 		LOGGER.debug("closing cached reading reader");
 
-		try {
-			cachedReadingReader.close();
-			for (Entry<DirectoryReader, Integer> entry: oldReadingReaders.entrySet()) {
-				entry.getKey().close();
-			}
-		} catch (IOException e) {
-			LOGGER.error("error closing reading Reader", e);
-		} finally {
-			cachedReadingReader = null;
-			oldReadingReaders.clear();
-		}
+		cachedReadingReader = null;
+		retireReadingReader(usage);
 	}
 
 	/**
-	 * Closes all of the Searchers in the Searcher cache. This method is invoked
+	 * Closes all of the Searchers in the Searcher cache. Searchers that are
+	 * still in use are closed when they are released. This method is invoked
 	 * in a synchronized context.
 	 */
 	protected void closeCachedSearchers() {
@@ -223,6 +332,7 @@ class DefaultIndexAccessor implements IndexAccessor {
 
 		for (IndexSearcher searcher : cachedSearchers.values()) {
 			try {
+				// drops the reference of the cache
 				searcher.getIndexReader().close();
 			} catch (IOException e) {
 				LOGGER.error("error closing cached Searcher", e);
@@ -275,22 +385,68 @@ class DefaultIndexAccessor implements IndexAccessor {
 	 * Return the reader that was opened for read-only operations, or a new one if
 	 * it hasn't been opened already.
 	 */
-	private synchronized DirectoryReader getReadingReader() throws IOException {
+	private DirectoryReader getReadingReader() throws IOException {
 
 		checkClosed();
 
-		if (cachedReadingReader != null) {
-			LOGGER.debug("returning cached reading reader");
-			readingReaderUseCount++;
-		} else {
+		while (true) {
+			ReaderUsage usage = cachedReadingReader;
+			if (usage == null) {
+				usage = openReadingReader();
+			} else {
+				LOGGER.debug("returning cached reading reader");
+			}
+			if (usage.acquire()) {
+				return usage.reader;
+			}
+			// the reader was closed from outside, open a new one
+			removeReadingReader(usage);
+		}
+	}
+
+	/**
+	 * Open the reading reader if it was not opened in the meantime.
+	 * @return usage of the reading reader
+	 * @throws IOException in case of low level IO error
+	 */
+	private synchronized ReaderUsage openReadingReader() throws IOException {
+		checkClosed();
+		if (cachedReadingReader == null) {
 			LOGGER.debug("opening new reading reader and caching it");
+			ReaderUsage usage = new ReaderUsage(openReader());
+			readingReaders.put(usage.reader, usage);
+			cachedReadingReader = usage;
+		}
+		return cachedReadingReader;
+	}
 
-			cachedReadingReader = DirectoryReader.open(directory);
-			readingReaderUseCount = 1;
+	/**
+	 * Remove the usage of a reading reader that cannot be acquired anymore.
+	 * @param usage usage of the reader
+	 */
+	private synchronized void removeReadingReader(final ReaderUsage usage) {
+		if (cachedReadingReader == usage) {
+			cachedReadingReader = null;
 		}
+		if (usage.getUses() == 0) {
+			readingReaders.remove(usage.reader);
+		}
+	}
 
-		notifyAll();
-		return cachedReadingReader;
+	/**
+	 * Drop the reference of the cache of a replaced reading reader. The usage
+	 * is kept until the reader is released if it is still in use.
+	 * @param usage usage of the replaced reader
+	 */
+	private void retireReadingReader(final ReaderUsage usage) {
+		try {
+			usage.reader.close();
+		} catch (IOException e) {
+			LOGGER.error("error closing reading Reader", e);
+		}
+		if (usage.retire()) {
+			readingReaders.remove(usage.reader);
+		}
 	}
 
 	/**
@@ -306,20 +462,14 @@ class DefaultIndexAccessor implements IndexAccessor {
 
 		if (reopened) {
 			//REOPEN SEARCHER AS IT WAS PRIORITIZED
+			boolean changed;
 			synchronized (DefaultIndexAccessor.this) {
-				DirectoryReader reader = (DirectoryReader) searcher.getIndexReader();
-				IndexSearcher oldSearcher = searcher;
-				DirectoryReader newReader = DirectoryReader.openIfChanged(reader);
-				if (newReader != null && newReader != reader) {
-					searcher = new IndexSearcher(newReader);
-					searcher.setSimilarity(oldSearcher.getSimilarity());
-					oldSearcher.getIndexReader().close();
-					for (Map.Entry<Similarity, IndexSearcher> e : cachedSearchers.entrySet()) {
-						if (e.getValue() == oldSearcher) {
-							cachedSearchers.put(e.getKey(), searcher);
-						}
-					}
-				}
+				Similarity key = searcher.getSimilarity();
+				changed = cachedSearchers.get(key) != searcher || reopenCachedSearcher(key, searcher);
+			}
+			if (changed) {
+				release(searcher);
+				searcher = getSearcher(searcher.getSimilarity());
 			}
 		}
 
@@ -350,24 +500,66 @@ class DefaultIndexAccessor implements IndexAccessor {
 	 * (non-Javadoc)
 	 * @see com.mhs.indexaccessor.IndexAccessor#getSearcher(org.apache.lucene.search.Similarity, org.apache.lucene.index.IndexReader)
 	 */
-	public synchronized IndexSearcher getSearcher(Similarity similarity, IndexReader indexReader) throws IOException {
+	public IndexSearcher getSearcher(Similarity similarity, IndexReader indexReader) throws IOException {
 
 		checkClosed();
 
+		while (true) {
+			IndexSearcher searcher = cachedSearchers.get(similarity);
+			if (searcher == null) {
+				searcher = openSearcher(similarity, indexReader);
+			} else {
+				LOGGER.debug("returning cached searcher");
+			}
+			if (searcher.getIndexReader().tryIncRef()) {
+				searcherUseCount.incrementAndGet();
+				return searcher;
+			}
+			// the reader was closed by a reopen in the meantime or from outside, try again
+			removeClosedSearcher(similarity, searcher);
+		}
+	}
+
+	/**
+	 * Open the searcher for the similarity if it was not opened in the
+	 * meantime.
+	 * @param similarity similarity of the searcher
+	 * @param indexReader reader to open the searcher on, <code>null</code> to
+	 * open a new reader
+	 * @return cached searcher
+	 * @throws IOException in case of low level IO error
+	 */
+	private synchronized IndexSearcher openSearcher(final Similarity similarity, final IndexReader indexReader)
+			throws IOException {
+		checkClosed();
 		IndexSearcher searcher = cachedSearchers.get(similarity);
-		if (searcher != null) {
-			LOGGER.debug("returning cached searcher");
-		} else {
+		if (searcher == null) {
 			LOGGER.debug("opening new searcher and caching it");
-			searcher = indexReader != null ? new IndexSearcher(indexReader) : new IndexSearcher(DirectoryReader.open(directory));
+			if (indexReader != null) {
+				// reference of the cache
+				indexReader.incRef();
+				searcher = new IndexSearcher(indexReader);
+			} else {
+				searcher = new IndexSearcher(openReader());
+			}
 			searcher.setSimilarity(similarity);
 			cachedSearchers.put(similarity, searcher);
+			warmupAsync(searcher);
 		}
-		searcherUseCount++;
-		notifyAll();
 		return searcher;
 	}
 
+	/**
+	 * Remove a searcher whose reader was closed from the cache.
+	 * @param similarity similarity of the searcher
+	 * @param searcher searcher
+	 */
+	private synchronized void removeClosedSearcher(final Similarity similarity, final IndexSearcher searcher) {
+		if (cachedSearchers.get(similarity) == searcher && searcher.getIndexReader().getRefCount() <= 0) {
+			cachedSearchers.remove(similarity);
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see org.apache.lucene.indexaccessor.IndexAccessor#getWriter()
@@ -459,6 +651,9 @@ class DefaultIndexAccessor implements IndexAccessor {
 	 */
 	public synchronized void open() {
 		closed = false;
+		if (nearRealTimeMaxStaleness > 0 && nearRealTimeReopener == null) {
+			startNearRealTimeReopener();
+		}
 	}
 
 	/*
@@ -466,7 +661,11 @@ class DefaultIndexAccessor implements IndexAccessor {
 	 * @see com.mhs.indexaccessor.IndexAccessor#readingReadersOut()
 	 */
 	public int readingReadersOut() {
-		return readingReaderUseCount;
+		ReaderUsage usage = cachedReadingReader;
+		if (usage == null) {
+			return 0;
+		}
+		return usage.getUses();
 	}
 
 	/*
@@ -517,7 +716,7 @@ class DefaultIndexAccessor implements IndexAccessor {
 								numReopening--;
 								return;
 							}
-							waitForReadersAndReopenCached();
+							reopenCached();
 							numReopening--;
 						
 						DefaultIndexAccessor.this.notifyAll();
@@ -533,41 +732,45 @@ class DefaultIndexAccessor implements IndexAccessor {
 	 * (non-Javadoc)
 	 * @see com.mhs.indexaccessor.IndexAccessor#release(org.apache.lucene.search.Searcher)
 	 */
-	public synchronized void release(IndexSearcher searcher) {
-		searcherUseCount--;
-		if (searcherUseCount == 0 && closeAllReleasedSearchers) {
-			closeCachedSearchers();
-			closeAllReleasedSearchers = false;
+	public void release(IndexSearcher searcher) {
+		if (searcher == null) {
+			return;
 		}
-		notifyAll();
+		decRef(searcher.getIndexReader());
+		searcherUseCount.decrementAndGet();
+		notifyIfClosed();
 	}
 
 	/** Release the reader that was opened for read-only operations. */
-	private synchronized void releaseReadingReader(DirectoryReader reader) {
-		// do nothing if no reader was passed to the method or the reader was already released
-		if (reader == null || readingReaderUseCount == 0) {
+	private void releaseReadingReader(DirectoryReader reader) {
+		// do nothing if no reader was passed to the method
+		if (reader == null) {
 			return;
 		}
-		// check if reader is one of the old reading readers
-		if (reader != cachedReadingReader && oldReadingReaders.get(reader) != null) {
-			Integer oldReaderUseCount = oldReadingReaders.get(reader) - 1;
-			if (oldReaderUseCount > 0) {
-				oldReadingReaders.put(reader, oldReaderUseCount);
-			} else {
-				oldReadingReaders.remove(reader);
-				// close unused old reader
-				try {
-					reader.close();
-				} catch (IOException e) {
-					LOGGER.error("error closing reading Reader", e);
-				}	
+		ReaderUsage usage = readingReaders.get(reader);
+		if (usage == null) {
+			// the reader was already released
+			LOGGER.debug("reading reader was already released or not opened by this index accessor");
+			return;
+		}
+		// releasing an already released reader does not change the use count
+		if (usage.release() && usage != cachedReadingReader && usage.retire()) {
+			// last use of a replaced reader
+			readingReaders.remove(reader);
+		}
+		notifyIfClosed();
+	}
+
+	/**
+	 * Wake up a thread waiting in {@link #close()} for the searchers and
+	 * readers to be released.
+	 */
+	private void notifyIfClosed() {
+		if (closed) {
+			synchronized (this) {
+				notifyAll();
 			}
-		} else if (reader != cachedReadingReader) {
-			throw new IllegalArgumentException("reading reader not opened by this index accessor");
-		} else {
-			readingReaderUseCount--;
 		}
-		notifyAll();
 	}
 
 	/** Release the reader that was opened for read-write operations. */
@@ -606,7 +809,7 @@ class DefaultIndexAccessor implements IndexAccessor {
 						if (numReopening > 5) {
 							LOGGER.warn("Too many reopens");
 						}
-						waitForReadersAndReopenCached();
+						reopenCached();
 						numReopening--;
 						DefaultIndexAccessor.this.notifyAll();
 					}
@@ -625,19 +828,7 @@ class DefaultIndexAccessor implements IndexAccessor {
 		for (Similarity key : keys) {
 			IndexSearcher searcher = cachedSearchers.get(key);
 			try {
-				DirectoryReader oldReader = (DirectoryReader) searcher.getIndexReader();
-				IndexSearcher oldSearcher = searcher;
-				DirectoryReader newReader = DirectoryReader.openIfChanged(oldReader);
-
-				if (newReader!= null && newReader != oldReader) {
-
-					cachedSearchers.remove(key);
-					searcher = new IndexSearcher(newReader);
-					searcher.setSimilarity(oldSearcher.getSimilarity());
-					oldSearcher.getIndexReader().close();
-					cachedSearchers.put(key, searcher);
-				}
-
+				reopenCachedSearcher(key, searcher);
 			} catch (IOException e) {
 				LOGGER.error("error reopening cached Searcher", e);
 			}
@@ -645,39 +836,216 @@ class DefaultIndexAccessor implements IndexAccessor {
 
 	}
 
+	/**
+	 * Replace a cached searcher by a searcher on the reopened reader if the
+	 * index changed. Searches still using the old searcher keep their
+	 * reference, the old reader is closed when the last of them released it.
+	 * This method is invoked in a synchronized context.
+	 * @param key similarity the searcher is cached for
+	 * @param oldSearcher cached searcher
+	 * @return <code>true</code> if the searcher was replaced
+	 * @throws IOException in case of low level IO error
+	 */
+	private boolean reopenCachedSearcher(final Similarity key, final IndexSearcher oldSearcher) throws IOException {
+		DirectoryReader oldReader = (DirectoryReader) oldSearcher.getIndexReader();
+		if (oldReader.getRefCount() <= 0) {
+			// closed from outside, a new searcher is opened on the next request
+			cachedSearchers.remove(key);
+			return true;
+		}
+		DirectoryReader newReader = openIfChanged(oldReader);
+		if (newReader == null || newReader == oldReader) {
+			return false;
+		}
+		IndexSearcher searcher = new IndexSearcher(newReader);
+		searcher.setSimilarity(oldSearcher.getSimilarity());
+		cachedSearchers.put(key, searcher);
+		// drops the reference of the cache
+		oldReader.close();
+		warmupAsync(searcher);
+		return true;
+	}
+
 	/**
 	 * Reopens the cached reading Reader. This method assumes it is invoked in a
 	 * synchronized context.
 	 */
 	private void reopenReadingReader() {
-		if (cachedReadingReader == null) {
+		ReaderUsage oldUsage = cachedReadingReader;
+		if (oldUsage == null) {
 			return;
 		}
 		
 		LOGGER.debug("reopening cached reading reader");
-		DirectoryReader oldReader = cachedReadingReader;
-		if(readingReaderUseCount > 0) {
-			// if the reading reader is currently in use, save it with use count in Map
-			oldReadingReaders.put(oldReader, readingReaderUseCount);
-		}		
 		try {
-			DirectoryReader newReader = DirectoryReader.openIfChanged(oldReader);
+			DirectoryReader newReader = openIfChanged(oldUsage.reader);
+			if (newReader != null && newReader != oldUsage.reader) {
+				ReaderUsage usage = new ReaderUsage(newReader);
+				readingReaders.put(newReader, usage);
+				cachedReadingReader = usage;
+				// the old reader is closed when it is released the last time
+				retireReadingReader(oldUsage);
+			}
+		} catch (IOException e) {
+			LOGGER.error("error reopening reading Reader", e);
+		}
+
+	}
+
+	/**
+	 * Open a new reader on the index. While near real time search is enabled
+	 * and a writer is open, the reader is opened from the writer and contains
+	 * its uncommitted changes. This method is invoked in a synchronized
+	 * context.
+	 * @return new reader
+	 * @throws IOException in case of low level IO error
+	 */
+	private DirectoryReader openReader() throws IOException {
+		if (nearRealTimeReopener != null && cachedWriter != null) {
+			DirectoryReader reader = DirectoryReader.open(cachedWriter, true);
+			nearRealTimeReaders.add(reader);
+			return reader;
+		}
+		return DirectoryReader.open(directory);
+	}
+
+	/**
+	 * Reopen a reader if the index changed, from the open writer while near
+	 * real time search is enabled. This method is invoked in a synchronized
+	 * context.
+	 * @param oldReader reader to reopen
+	 * @return new reader or <code>null</code> if the index did not change
+	 * @throws IOException in case of low level IO error
+	 */
+	private DirectoryReader openIfChanged(final DirectoryReader oldReader) throws IOException {
+		if (nearRealTimeReopener != null && cachedWriter != null) {
+			DirectoryReader newReader = DirectoryReader.openIfChanged(oldReader, cachedWriter, true);
 			if (newReader != null) {
-				cachedReadingReader = newReader;
+				nearRealTimeReaders.add(newReader);
 			}
-			if (oldReader != cachedReadingReader) {
-				// if the old reader was not used close it 
-				if(readingReaderUseCount == 0) {
-					oldReader.close();
-				} else {
-					// set use count to 0 for the new reader
-					readingReaderUseCount = 0;
+			return newReader;
+		} else if (nearRealTimeReaders.contains(oldReader)) {
+			// the writer of the reader is closed, its changes are committed
+			return DirectoryReader.open(directory);
+		}
+		return DirectoryReader.openIfChanged(oldReader);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.gentics.cr.lucene.indexaccessor.IndexAccessor#setNearRealTimeMaxStaleness(long)
+	 */
+	public synchronized void setNearRealTimeMaxStaleness(final long maxStaleness) {
+		stopNearRealTimeReopener();
+		nearRealTimeMaxStaleness = maxStaleness;
+		if (maxStaleness > 0 && !closed) {
+			startNearRealTimeReopener();
+		}
+	}
+
+	/**
+	 * Start reopening the searchers and readers from the open writer. This
+	 * method is invoked in a synchronized context.
+	 */
+	private void startNearRealTimeReopener() {
+		LOGGER.debug("reopening from the writer every " + nearRealTimeMaxStaleness + "ms - " + this.directory);
+		nearRealTimeReopener = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory(
+				DefaultIndexAccessor.class.getSimpleName() + ".nrt"));
+		nearRealTimeReopener.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				synchronized (DefaultIndexAccessor.this) {
+					if (!closed && cachedWriter != null) {
+						reopenReadingReader();
+						reopenCachedSearchers();
+					}
 				}
 			}
-		} catch (IOException e) {
-			LOGGER.error("error reopening reading Reader", e);
+		}, nearRealTimeMaxStaleness, nearRealTimeMaxStaleness, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop reopening from the writer. This method is invoked in a
+	 * synchronized context.
+	 */
+	private void stopNearRealTimeReopener() {
+		if (nearRealTimeReopener != null) {
+			nearRealTimeReopener.shutdownNow();
+			nearRealTimeReopener = null;
 		}
+	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see com.gentics.cr.lucene.indexaccessor.IndexAccessor#addWarmupListener(SearcherWarmupListener)
+	 */
+	public void addWarmupListener(final SearcherWarmupListener listener) {
+		warmupListeners.add(listener);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.gentics.cr.lucene.indexaccessor.IndexAccessor#removeWarmupListener(SearcherWarmupListener)
+	 */
+	public void removeWarmupListener(final SearcherWarmupListener listener) {
+		warmupListeners.remove(listener);
+	}
+
+	/**
+	 * Notify the warmup listeners about the new searcher in the calling thread.
+	 * @param searcher searcher on the new reader
+	 */
+	protected void notifyWarmupListeners(final IndexSearcher searcher) {
+		for (SearcherWarmupListener listener : warmupListeners) {
+			try {
+				listener.warmup(searcher);
+			} catch (RuntimeException e) {
+				LOGGER.error("error warming up searcher", e);
+			}
+		}
+	}
+
+	/**
+	 * Notify the warmup listeners about the new searcher in the thread pool,
+	 * so the thread that opened the searcher is not blocked. The reader is
+	 * referenced until the listeners are done, so it cannot be closed by a
+	 * reopen in the meantime. This method is invoked in a synchronized
+	 * context.
+	 * @param searcher searcher on the new reader
+	 */
+	private void warmupAsync(final IndexSearcher searcher) {
+		if (warmupListeners.isEmpty()) {
+			return;
+		}
+		final IndexReader reader = searcher.getIndexReader();
+		if (!reader.tryIncRef()) {
+			return;
+		}
+		try {
+			pool.execute(new Runnable() {
+				public void run() {
+					try {
+						notifyWarmupListeners(searcher);
+					} finally {
+						decRef(reader);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			LOGGER.debug("accessor is closing, skipping warmup", e);
+			decRef(reader);
+		}
+	}
+
+	/**
+	 * Decrement the reference count of a reader.
+	 * @param reader reader
+	 */
+	private void decRef(final IndexReader reader) {
+		try {
+			reader.decRef();
+		} catch (IOException e) {
+			LOGGER.error("error closing released reader", e);
+		}
 	}
 
 	/*
@@ -685,7 +1053,7 @@ class DefaultIndexAccessor implements IndexAccessor {
 	 * @see com.mhs.indexaccessor.IndexAccessor#activeSearchers()
 	 */
 	public int searcherUseCount() {
-		return searcherUseCount;
+		return searcherUseCount.get();
 	}
 
 	protected void shutdownAndAwaitTermination(ExecutorService pool) {
@@ -714,14 +1082,13 @@ class DefaultIndexAccessor implements IndexAccessor {
 		super.finalize();
 	}
 
-	/** This method assumes it is invoked in a synchronized context. */
-	private void waitForReadersAndReopenCached() {
-		while (readingReaderUseCount > 0 || searcherUseCount > 0) {
-			try {
-				wait();
-			} catch (InterruptedException e) {
-			}
-		}
+	/**
+	 * Reopen the cached reading reader and searchers. Readers and searchers
+	 * that are in use do not have to be released for this, they keep their
+	 * reference on the old reader. This method assumes it is invoked in a
+	 * synchronized context.
+	 */
+	private void reopenCached() {
 		if (numReopening > 1) {
 			// there are other calls to reopen pending, so we can bail
 			return;
@@ -764,16 +1131,14 @@ class DefaultIndexAccessor implements IndexAccessor {
 	}
 
 	/**
-	 * release all searchers to reopen the index.
+	 * release all searchers to reopen the index. Searchers in use stay open
+	 * until they are released, the next request gets a searcher on a new
+	 * reader.
 	 * @see #reopen()
 	 */
 	private synchronized void releaseAllSearchers() {
 		LOGGER.debug("release all cached searchers");
-		if (searcherUseCount() == 0 && cachedSearchers.size() > 0) {
-			closeCachedSearchers();
-		} else {
-			closeAllReleasedSearchers = true;
-		}
+		closeCachedSearchers();
 	}
 
 	@Override
@@ -258,4 +258,27 @@ public class DefaultMultiIndexAccessor implements IndexAccessor {
 		}
 	}
 
+	/**
+	 * The searchers of the multi accessor are created for each request from
+	 * the readers of the single accessors, so there is no new reader
+	 * generation to warm up. Listeners are not notified.
+	 * @param listener ignored
+	 */
+	public void addWarmupListener(final SearcherWarmupListener listener) {
+	}
+
+	/**
+	 * @param listener ignored
+	 */
+	public void removeWarmupListener(final SearcherWarmupListener listener) {
+	}
+
+	public void setNearRealTimeMaxStaleness(final long maxStaleness) {
+		IndexAccessorFactory factory = IndexAccessorFactory.getInstance();
+		for (Directory index : this.dirs) {
+			IndexAccessor indexAccessor = factory.getAccessor(index);
+			indexAccessor.setNearRealTimeMaxStaleness(maxStaleness);
+		}
+	}
+
 }
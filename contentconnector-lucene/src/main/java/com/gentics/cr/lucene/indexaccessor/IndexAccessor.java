@@ -144,4 +144,26 @@ public interface IndexAccessor {
 
 	int writingReadersUseCount();
 
+	/**
+	 * Register a listener that is notified when a searcher on a new reader is
+	 * opened.
+	 * @param listener listener to add
+	 */
+	void addWarmupListener(SearcherWarmupListener listener);
+
+	/**
+	 * Remove a registered warmup listener.
+	 * @param listener listener to remove
+	 */
+	void removeWarmupListener(SearcherWarmupListener listener);
+
+	/**
+	 * Make the changes of the open writer searchable without committing them.
+	 * Searchers and readers are reopened from the writer at least every
+	 * maxStaleness milliseconds while a writer is open.
+	 * @param maxStaleness maximum time in milliseconds until a change of the
+	 * writer is searchable, 0 to only search committed changes
+	 */
+	void setNearRealTimeMaxStaleness(long maxStaleness);
+
 }
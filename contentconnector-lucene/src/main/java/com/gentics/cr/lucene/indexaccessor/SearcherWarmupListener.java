@@ -0,0 +1,19 @@
+package com.gentics.cr.lucene.indexaccessor;
+
+import org.apache.lucene.search.IndexSearcher;
+
+/**
+ * Listener that is notified by an {@link IndexAccessor} when a searcher on a
+ * new reader generation has been opened. Implementations can use this hook to
+ * precompute data that only changes with the reader (e.g. term listings), so
+ * it does not have to be computed on the query path.
+ */
+public interface SearcherWarmupListener {
+
+	/**
+	 * Warm up the searcher. The searcher must not be released or closed by the
+	 * listener and must not be used after the method returned.
+	 * @param searcher searcher on the new reader
+	 */
+	void warmup(IndexSearcher searcher);
+}
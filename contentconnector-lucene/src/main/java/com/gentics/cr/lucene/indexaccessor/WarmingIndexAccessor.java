@@ -52,7 +52,7 @@ class WarmingIndexAccessor extends DefaultIndexAccessor {
 			return;
 		}
 		closed = true;
-		while (readingReaderUseCount > 0 || searcherUseCount > 0 || writingReaderUseCount > 0 || writerUseCount > 0 || numReopening > 0) {
+		while (readingReadersOut() > 0 || searcherUseCount() > 0 || writingReaderUseCount > 0 || writerUseCount > 0 || numReopening > 0) {
 			try {
 				wait();
 			} catch (InterruptedException e) {
@@ -200,6 +200,8 @@ class WarmingIndexAccessor extends DefaultIndexAccessor {
 				throw new RuntimeException(e);
 			}
 
+			notifyWarmupListeners(searcher);
+
 			LOGGER.debug("warming done");
 
 			synchronized (WarmingIndexAccessor.this) {
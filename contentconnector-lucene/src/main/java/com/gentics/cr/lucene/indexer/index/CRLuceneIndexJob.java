@@ -10,13 +10,21 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Vector;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.Field.Store;
 import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.facet.taxonomy.CategoryPath;
 import org.apache.lucene.facet.taxonomy.TaxonomyWriter;
@@ -29,6 +37,7 @@ import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.util.BytesRef;
 
 import com.gentics.api.lib.resolving.Resolvable;
 import com.gentics.cr.CRConfig;
@@ -52,6 +61,7 @@ import com.gentics.cr.monitoring.MonitorFactory;
 import com.gentics.cr.monitoring.UseCase;
 import com.gentics.cr.util.indexing.AbstractUpdateCheckerJob;
 import com.gentics.cr.util.indexing.IndexLocation;
+import com.gentics.cr.util.indexing.IndexUpdateChecker;
 
 /**
  * CRLuceneIndexJob handles the indexing of a Gentics ContentRepository into
@@ -122,6 +132,8 @@ public class CRLuceneIndexJob extends AbstractUpdateCheckerJob {
 		}
 
 		boostingAttribute = config.getString(BOOST_ATTRIBUTE_KEY, DEFAULT_BOOST_ATTRIBUTE);
+		docValuesUpdateCheck = config.getBoolean(DOCVALUES_UPDATE_CHECK_KEY, false);
+		indexThreads = Math.max(1, config.getInteger(INDEX_THREADS_KEY, indexThreads));
 	}
 
 	/**
@@ -202,6 +214,21 @@ public class CRLuceneIndexJob extends AbstractUpdateCheckerJob {
 	 * TRUE = commit after each slice, otherwise commit at the end.
 	 */
 	private static final String SLICE_COMMIT_KEY = "slicecommit";
+
+	/**
+	 * Key to configure if the id and update timestamp should also be written
+	 * as DocValues and the update check should read them instead of the
+	 * stored documents. See {@link LuceneDocValuesIndexUpdateChecker}.
+	 */
+	public static final String DOCVALUES_UPDATE_CHECK_KEY = "docvaluesupdatecheck";
+
+	/**
+	 * Key to configure the number of threads running the transformers and
+	 * writing the documents. If more than one thread is configured, the
+	 * attributes of the next slice are prefilled while the current slice is
+	 * transformed. DEFAULT is 1 (index sequentially in the job thread).
+	 */
+	public static final String INDEX_THREADS_KEY = "indexthreads";
 	/**
 	 * Constant for 1000.
 	 */
@@ -226,6 +253,18 @@ public class CRLuceneIndexJob extends AbstractUpdateCheckerJob {
 	 */
 	private boolean storeVectors = true;
 
+	/**
+	 * Flag if the update check uses DocValues.
+	 * @see #DOCVALUES_UPDATE_CHECK_KEY
+	 */
+	private boolean docValuesUpdateCheck = false;
+
+	/**
+	 * Number of threads transforming and writing the documents.
+	 * @see #INDEX_THREADS_KEY
+	 */
+	private int indexThreads = 1;
+
 	/**
 	 * Boostingmap.
 	 */
@@ -271,9 +310,10 @@ public class CRLuceneIndexJob extends AbstractUpdateCheckerJob {
 		IndexSearcher indexSearcher = null;
 		
 		TaxonomyDocumentBuilder taxoDocBuilder = null;
-		LuceneIndexUpdateChecker luceneIndexUpdateChecker = null;
+		IndexUpdateChecker luceneIndexUpdateChecker = null;
 		boolean finishedIndexJobSuccessfull = false;
 		boolean finishedIndexJobWithError = false;
+		boolean finishedIndexJobInterrupted = false;
 
 		try {
 			indexLocation.checkLock();
@@ -309,15 +349,16 @@ public class CRLuceneIndexJob extends AbstractUpdateCheckerJob {
 					rule = "(" + rule + ")";
 				}
 
-				List<ContentTransformer> transformerlist = ContentTransformer.getTransformerList(config);
-
 				boolean create = true;
 
 				if (indexLocation.isContainingIndex()) {
 					create = false;
 					log.debug("Index already exists.");
 				}
-				if (indexLocation instanceof LuceneIndexLocation) {
+				if (indexLocation instanceof LuceneIndexLocation && docValuesUpdateCheck) {
+					luceneIndexUpdateChecker = new LuceneDocValuesIndexUpdateChecker((LuceneIndexLocation) indexLocation, CR_FIELD_KEY,
+							crid, idAttribute, timestampattribute);
+				} else if (indexLocation instanceof LuceneIndexLocation) {
 					luceneIndexUpdateChecker = new LuceneIndexUpdateChecker((LuceneIndexLocation) indexLocation, CR_FIELD_KEY, crid,
 							idAttribute);
 				} else {
@@ -384,19 +425,62 @@ public class CRLuceneIndexJob extends AbstractUpdateCheckerJob {
 				int sliceCounter = 0;
 
 				status.setCurrentStatusString("Starting to index slices.");
-				boolean interrupted = Thread.currentThread().isInterrupted();
-				for (Iterator<CRResolvableBean> iterator = objectsToIndex.iterator(); iterator.hasNext();) {
-					CRResolvableBean obj = iterator.next();
-					slice.add(obj);
-					iterator.remove();
-					sliceCounter++;
-					if (Thread.currentThread().isInterrupted()) {
-						interrupted = true;
-						break;
+				if (indexThreads > 1) {
+					finishedIndexJobInterrupted = !indexSlicesPipelined(
+						crid,
+						indexLocation,
+						indexWriter,
+						indexSearcher,
+						objectsToIndex,
+						crBatchSize,
+						attributes,
+						create,
+						config,
+						reverseAttributes,
+						taxoDocBuilder);
+				} else {
+					// the pipelined workers create a transformer list per thread
+					List<ContentTransformer> transformerlist = ContentTransformer.getTransformerList(config);
+					boolean interrupted = Thread.currentThread().isInterrupted();
+					for (Iterator<CRResolvableBean> iterator = objectsToIndex.iterator(); iterator.hasNext();) {
+						CRResolvableBean obj = iterator.next();
+						slice.add(obj);
+						iterator.remove();
+						sliceCounter++;
+						if (Thread.currentThread().isInterrupted()) {
+							interrupted = true;
+							break;
+						}
+						if (sliceCounter == crBatchSize) {
+							// index the current slice
+							log.debug("Indexing slice with " + slice.size() + " objects.");
+							indexSlice(
+								crid,
+								indexWriter,
+								indexReader,
+								indexSearcher,
+								slice,
+								attributes,
+								rp,
+								create,
+								config,
+								transformerlist,
+								reverseAttributes,
+								taxoDocBuilder);
+							// clear the slice and reset the counter
+							slice.clear();
+							sliceCounter = 0;
+						}
+						if (config.getBoolean(SLICE_COMMIT_KEY, false)) {
+							//If configured we will commit on each slice in order to keep the index updated
+							//NOTE: Indexing will take longer
+							indexWriter.commit();
+							indexLocation.createReopenFile();
+						}
 					}
-					if (sliceCounter == crBatchSize) {
-						// index the current slice
-						log.debug("Indexing slice with " + slice.size() + " objects.");
+
+					if (!slice.isEmpty()) {
+						// index the last slice
 						indexSlice(
 							crid,
 							indexWriter,
@@ -410,35 +494,15 @@ public class CRLuceneIndexJob extends AbstractUpdateCheckerJob {
 							transformerlist,
 							reverseAttributes,
 							taxoDocBuilder);
-						// clear the slice and reset the counter
-						slice.clear();
-						sliceCounter = 0;
-					}
-					if (config.getBoolean(SLICE_COMMIT_KEY, false)) {
-						//If configured we will commit on each slice in order to keep the index updated
-						//NOTE: Indexing will take longer
-						indexWriter.commit();
-						indexLocation.createReopenFile();
 					}
+					finishedIndexJobInterrupted = interrupted;
 				}
-
-				if (!slice.isEmpty()) {
-					// index the last slice
-					indexSlice(
-						crid,
-						indexWriter,
-						indexReader,
-						indexSearcher,
-						slice,
-						attributes,
-						rp,
-						create,
-						config,
-						transformerlist,
-						reverseAttributes,
-						taxoDocBuilder);
+				if (finishedIndexJobInterrupted) {
+					// keep the interrupt flag, the job was stopped
+					log.debug("Index job was interrupted after " + status.getObjectsDone() + " objects.");
+				} else {
+					finishedIndexJobSuccessfull = true;
 				}
-				finishedIndexJobSuccessfull = true;
 			} catch (Exception ex) {
 				log.error("Could not complete index run... indexed Objects: " + status.getObjectsDone()
 						+ ", trying to close index and remove lock.", ex);
@@ -446,11 +510,15 @@ public class CRLuceneIndexJob extends AbstractUpdateCheckerJob {
 				status.setError("Could not complete index run... indexed " + "Objects: " + status.getObjectsDone()
 						+ ", trying to close index and remove lock.");
 			} finally {
-				if (!finishedIndexJobSuccessfull && !finishedIndexJobWithError) {
+				if (!finishedIndexJobSuccessfull && !finishedIndexJobWithError && !finishedIndexJobInterrupted) {
 					log.fatal("There seems to be a run time exception from this" + " index job.\nLast slice was: " + slice);
 				}
 				//Set status for job if it was not locked
-				status.setCurrentStatusString("Finished job.");
+				if (finishedIndexJobInterrupted) {
+					status.setCurrentStatusString("Job was interrupted.");
+				} else {
+					status.setCurrentStatusString("Finished job.");
+				}
 				int objectCount = status.getObjectsDone();
 				log.debug("Indexed " + objectCount + " objects...");
 
@@ -521,58 +589,229 @@ public class CRLuceneIndexJob extends AbstractUpdateCheckerJob {
 			prefillCase.stop();
 			for (Resolvable objectToIndex : slice) {
 				CRResolvableBean bean = new CRResolvableBean(objectToIndex, prefillAttributes);
-				UseCase bcase = MonitorFactory.startUseCase("indexSlice(" + crid + ").indexBean");
-				try {
-					//CALL PRE INDEX PROCESSORS/TRANSFORMERS
-					//TODO This could be optimized for multicore servers with 
-					//a map/reduce algorithm
-					if (transformerlist != null) {
-						for (ContentTransformer transformer : transformerlist) {
-							try {
-
-								if (transformer.match(bean)) {
-									String msg = "TRANSFORMER: " + transformer.getTransformerKey() + "; BEAN: " + bean.get(idAttribute);
-									status.setCurrentStatusString(msg);
-									ContentTransformer.getLogger().debug(msg);
-									if (transformer instanceof AbstractLuceneMonitoringTransformer) {
-										((AbstractLuceneMonitoringTransformer) transformer).processBeanWithMonitoring(bean, indexWriter);
-									} else {
-										transformer.processBeanWithMonitoring(bean);
-									}
-								}
-							} catch (Exception e) {
-								//TODO Remember broken files
-								log.error("Error while Transforming Contentbean" + "with id: " + bean.get(idAttribute) + " Transformer: "
-										+ transformer.getTransformerKey() + " " + transformer.getClass().getName(), e);
+				indexBean(crid, indexWriter, indexSearcher, bean, attributes, create, config, transformerlist, reverseattributes,
+					taxoDocBuilder);
+				//Stop Indexing when thread has been interrupted
+				if (Thread.currentThread().isInterrupted()) {
+					break;
+				}
+				this.status.incrementObjectsDone();
+			}
+		} catch (Exception e) {
+			throw new CRException(e);
+		} finally {
+			uc.stop();
+		}
+	}
+
+	/**
+	 * Run the transformers on a single bean and write it to the index.
+	 * @param crid id of the content repository
+	 * @param indexWriter writer to add/update the document with
+	 * @param indexSearcher searcher to find an existing document for the bean
+	 * @param bean bean with prefilled attributes
+	 * @param attributes map of indexed (false) and stored (true) attributes
+	 * @param create true if the index was newly created
+	 * @param config configuration of the content repository
+	 * @param transformerlist transformers to run on the bean
+	 * @param reverseattributes attributes to index in reverse order
+	 * @param taxoDocBuilder builder for the taxonomy fields
+	 * @throws IOException in case the document could not be written
+	 */
+	private void indexBean(final String crid, final IndexWriter indexWriter, final IndexSearcher indexSearcher,
+			final CRResolvableBean bean, final Map<String, Boolean> attributes, final boolean create, final CRConfigUtil config,
+			final List<ContentTransformer> transformerlist, final List<String> reverseattributes,
+			final TaxonomyDocumentBuilder taxoDocBuilder) throws IOException {
+		UseCase bcase = MonitorFactory.startUseCase("indexSlice(" + crid + ").indexBean");
+		try {
+			//CALL PRE INDEX PROCESSORS/TRANSFORMERS
+			if (transformerlist != null) {
+				for (ContentTransformer transformer : transformerlist) {
+					try {
+
+						if (transformer.match(bean)) {
+							String msg = "TRANSFORMER: " + transformer.getTransformerKey() + "; BEAN: " + bean.get(idAttribute);
+							status.setCurrentStatusString(msg);
+							ContentTransformer.getLogger().debug(msg);
+							if (transformer instanceof AbstractLuceneMonitoringTransformer) {
+								((AbstractLuceneMonitoringTransformer) transformer).processBeanWithMonitoring(bean, indexWriter);
+							} else {
+								transformer.processBeanWithMonitoring(bean);
 							}
 						}
+					} catch (Exception e) {
+						//TODO Remember broken files
+						log.error("Error while Transforming Contentbean" + "with id: " + bean.get(idAttribute) + " Transformer: "
+								+ transformer.getTransformerKey() + " " + transformer.getClass().getName(), e);
 					}
-					Term idTerm = new Term(idAttribute, bean.getString(idAttribute));
-					Document docToUpdate = getUniqueDocument(indexSearcher, idTerm, crid);
-
-					if (!create && docToUpdate != null) {
-						Document doc = getDocument(docToUpdate, bean, attributes, config, reverseattributes, taxoDocBuilder);
-						indexWriter.updateDocument(idTerm, doc);
-					} else {
-						Document doc = getDocument(null, bean, attributes, config, reverseattributes, taxoDocBuilder);
-						indexWriter.addDocument(doc);
+				}
+			}
+			Term idTerm = new Term(idAttribute, bean.getString(idAttribute));
+			Document docToUpdate = getUniqueDocument(indexSearcher, idTerm, crid);
+
+			if (!create && docToUpdate != null) {
+				Document doc = getDocument(docToUpdate, bean, attributes, config, reverseattributes, taxoDocBuilder);
+				indexWriter.updateDocument(idTerm, doc);
+			} else {
+				Document doc = getDocument(null, bean, attributes, config, reverseattributes, taxoDocBuilder);
+				indexWriter.addDocument(doc);
+			}
+		} finally {
+			bcase.stop();
+		}
+	}
+
+	/**
+	 * Index all objects with a pipeline: while the beans of one slice are
+	 * transformed and written by {@link #indexThreads} worker threads, the
+	 * attributes of the next slice are prefilled in a separate thread. At most
+	 * one slice is prefetched ahead, so memory usage stays bounded by two
+	 * slices. Each worker thread uses its own transformer instances, as
+	 * transformers are not required to be thread safe.
+	 * If the job thread is interrupted, the remaining beans are cancelled and
+	 * the interrupt flag is restored.
+	 * @param crid id of the content repository
+	 * @param indexLocation index location, used to write the reopen file
+	 * @param indexWriter writer to add/update the documents with
+	 * @param indexSearcher searcher to find existing documents
+	 * @param objectsToIndex all objects to index
+	 * @param crBatchSize number of objects in a slice
+	 * @param attributes map of indexed (false) and stored (true) attributes
+	 * @param create true if the index was newly created
+	 * @param config configuration of the content repository
+	 * @param reverseattributes attributes to index in reverse order
+	 * @param taxoDocBuilder builder for the taxonomy fields
+	 * @return true if all objects were indexed, false if the job was
+	 * interrupted
+	 * @throws CRException in case a slice could not properly be indexed.
+	 */
+	private boolean indexSlicesPipelined(final String crid, final IndexLocation indexLocation, final IndexWriter indexWriter,
+			final IndexSearcher indexSearcher, final Collection<CRResolvableBean> objectsToIndex, final int crBatchSize,
+			final Map<String, Boolean> attributes, final boolean create, final CRConfigUtil config,
+			final List<String> reverseattributes, final TaxonomyDocumentBuilder taxoDocBuilder) throws CRException {
+		final String[] prefillAttributes = attributes.keySet().toArray(new String[0]);
+		final ThreadLocal<List<ContentTransformer>> transformers = new ThreadLocal<List<ContentTransformer>>() {
+			@Override
+			protected List<ContentTransformer> initialValue() {
+				return ContentTransformer.getTransformerList(config);
+			}
+		};
+		ExecutorService prefetcher = Executors.newSingleThreadExecutor();
+		ExecutorService workers = Executors.newFixedThreadPool(indexThreads);
+		List<Future<?>> pending = new ArrayList<Future<?>>(crBatchSize);
+		try {
+			Iterator<CRResolvableBean> iterator = objectsToIndex.iterator();
+			Future<Collection<CRResolvableBean>> nextSlice = prefetchSlice(prefetcher, crid, iterator, crBatchSize, prefillAttributes);
+			while (nextSlice != null) {
+				checkInterrupted();
+				Collection<CRResolvableBean> slice = nextSlice.get();
+				nextSlice = prefetchSlice(prefetcher, crid, iterator, crBatchSize, prefillAttributes);
+				log.debug("Indexing slice with " + slice.size() + " objects.");
+				UseCase uc = MonitorFactory.startUseCase("indexSlice(" + crid + ")");
+				try {
+					for (Resolvable objectToIndex : slice) {
+						// like the sequential path, stop before every object if the job was stopped
+						checkInterrupted();
+						final CRResolvableBean bean = new CRResolvableBean(objectToIndex, prefillAttributes);
+						pending.add(workers.submit(new Callable<Void>() {
+							public Void call() throws IOException {
+								indexBean(crid, indexWriter, indexSearcher, bean, attributes, create, config, transformers.get(),
+									reverseattributes, taxoDocBuilder);
+								status.incrementObjectsDone();
+								return null;
+							}
+						}));
 					}
+					for (Future<?> future : pending) {
+						future.get();
+					}
+					pending.clear();
 				} finally {
-					bcase.stop();
+					uc.stop();
 				}
-				//Stop Indexing when thread has been interrupted
-				if (Thread.currentThread().isInterrupted()) {
-					break;
+				if (config.getBoolean(SLICE_COMMIT_KEY, false)) {
+					//If configured we will commit on each slice in order to keep the index updated
+					indexWriter.commit();
+					indexLocation.createReopenFile();
 				}
-				this.status.setObjectsDone(this.status.getObjectsDone() + 1);
 			}
-		} catch (Exception e) {
+			return true;
+		} catch (InterruptedException e) {
+			log.debug("Index job was interrupted, cancelling the remaining objects.");
+			for (Future<?> future : pending) {
+				future.cancel(true);
+			}
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (ExecutionException e) {
+			throw new CRException(e);
+		} catch (IOException e) {
 			throw new CRException(e);
 		} finally {
-			uc.stop();
+			prefetcher.shutdownNow();
+			workers.shutdownNow();
+			// wait for running transformers, the writer is released afterwards,
+			// an interrupted job has to wait as well
+			boolean interrupted = Thread.interrupted();
+			try {
+				workers.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Check if the job thread was interrupted (e.g. the job was stopped).
+	 * @throws InterruptedException if the thread was interrupted, the interrupt
+	 * flag stays set
+	 */
+	private static void checkInterrupted() throws InterruptedException {
+		if (Thread.currentThread().isInterrupted()) {
+			throw new InterruptedException();
 		}
 	}
 
+	/**
+	 * Take the next slice from the iterator and prefill its attributes in the
+	 * prefetch thread.
+	 * @param prefetcher executor for the prefetch thread
+	 * @param crid id of the content repository
+	 * @param iterator iterator over the objects to index, the taken objects are
+	 * removed from the underlying collection
+	 * @param crBatchSize number of objects in a slice
+	 * @param prefillAttributes attributes to prefill
+	 * @return future of the prefilled slice or <code>null</code> if there are
+	 * no more objects to index.
+	 */
+	private Future<Collection<CRResolvableBean>> prefetchSlice(final ExecutorService prefetcher, final String crid,
+			final Iterator<CRResolvableBean> iterator, final int crBatchSize, final String[] prefillAttributes) {
+		if (!iterator.hasNext()) {
+			return null;
+		}
+		final Collection<CRResolvableBean> slice = new ArrayList<CRResolvableBean>(crBatchSize);
+		while (iterator.hasNext() && slice.size() < crBatchSize) {
+			slice.add(iterator.next());
+			iterator.remove();
+		}
+		return prefetcher.submit(new Callable<Collection<CRResolvableBean>>() {
+			public Collection<CRResolvableBean> call() throws CRException {
+				CRRequest req = new CRRequest();
+				req.setAttributeArray(prefillAttributes);
+				UseCase prefillCase = MonitorFactory.startUseCase("indexSlice(" + crid + ").prefillAttributes");
+				try {
+					rp.fillAttributes(slice, req, idAttribute);
+				} finally {
+					prefillCase.stop();
+				}
+				return slice;
+			}
+		});
+	}
+
 	/**
 	 * Fetch an unique document from the index.
 	 * @param indexSearcher searcher to find the document.
@@ -714,6 +953,9 @@ public class CRLuceneIndexJob extends AbstractUpdateCheckerJob {
 				}
 			}
 		}
+		if (docValuesUpdateCheck) {
+			addUpdateCheckDocValues(newDoc, resolvable);
+		}
 		if (taxoDocBuilder.useFacets()) {
 			try {
 				return taxoDocBuilder.buildDocument(newDoc);
@@ -724,7 +966,32 @@ public class CRLuceneIndexJob extends AbstractUpdateCheckerJob {
 		return newDoc;
 	}
 
-	
+	/**
+	 * Add the id and the update timestamp of the resolvable as DocValues, so
+	 * the {@link LuceneDocValuesIndexUpdateChecker} can read them without
+	 * loading the stored document.
+	 * @param doc document to add the DocValues to
+	 * @param resolvable resolvable to index
+	 */
+	private void addUpdateCheckDocValues(final Document doc, final Resolvable resolvable) {
+		Object id = resolvable.get(idAttribute);
+		if (id != null) {
+			doc.add(new SortedDocValuesField(idAttribute + LuceneDocValuesIndexUpdateChecker.DOCVALUES_FIELD_SUFFIX, new BytesRef(id
+					.toString())));
+		}
+		if (!"".equals(timestampattribute)) {
+			Object updateTimestampObject = resolvable.get(timestampattribute);
+			Long updateTimestamp = null;
+			if (updateTimestampObject != null) {
+				updateTimestamp = LuceneDocValuesIndexUpdateChecker.parseTimestamp(updateTimestampObject.toString());
+			}
+			if (updateTimestamp != null) {
+				doc.add(new NumericDocValuesField(timestampattribute + LuceneDocValuesIndexUpdateChecker.DOCVALUES_FIELD_SUFFIX,
+						updateTimestamp));
+			}
+		}
+	}
+
 	private float getFloat(String string, float defaultvalue) {
 		float ret = defaultvalue;
 		try {
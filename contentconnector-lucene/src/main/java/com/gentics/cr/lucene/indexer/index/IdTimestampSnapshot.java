@@ -0,0 +1,309 @@
+package com.gentics.cr.lucene.indexer.index;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.InPlaceMergeSorter;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * Compact, sorted snapshot of identifier/timestamp pairs of an index.
+ * The identifiers are stored as UTF-8 bytes in one shared array, sorted in
+ * {@link BytesRef} order, so a snapshot of several hundred thousand documents
+ * only needs a handful of primitive arrays instead of one map entry per
+ * document.
+ * Instances are not thread safe, they are meant to be used by a single
+ * {@link LuceneDocValuesIndexUpdateChecker} run.
+ */
+public final class IdTimestampSnapshot {
+
+	/**
+	 * UTF-8 bytes of all identifiers in sorted order.
+	 */
+	private final byte[] idBytes;
+
+	/**
+	 * Start offsets of the identifiers in {@link #idBytes}. Contains one more
+	 * element than the snapshot has entries, the last one marks the end.
+	 */
+	private final int[] idOffsets;
+
+	/**
+	 * Timestamps of the entries.
+	 */
+	private final long[] timestamps;
+
+	/**
+	 * Entries that have a timestamp.
+	 */
+	private final BitSet hasTimestamp;
+
+	/**
+	 * Entries that have been checked.
+	 */
+	private final BitSet checked;
+
+	/**
+	 * Number of entries.
+	 */
+	private final int size;
+
+	/**
+	 * Position of the last found entry. As the objects are usually checked in
+	 * ascending order, the next lookup is tried right after it before falling
+	 * back to a binary search.
+	 */
+	private int cursor = -1;
+
+	/**
+	 * Create a new snapshot, use {@link Builder} to create instances.
+	 * @param idBytes sorted identifier bytes
+	 * @param idOffsets identifier offsets
+	 * @param timestamps timestamps
+	 * @param hasTimestamp entries with a timestamp
+	 * @param size number of entries
+	 */
+	private IdTimestampSnapshot(final byte[] idBytes, final int[] idOffsets, final long[] timestamps, final BitSet hasTimestamp,
+			final int size) {
+		this.idBytes = idBytes;
+		this.idOffsets = idOffsets;
+		this.timestamps = timestamps;
+		this.hasTimestamp = hasTimestamp;
+		this.size = size;
+		this.checked = new BitSet(size);
+	}
+
+	/**
+	 * @return number of entries in the snapshot.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Find the position of the given identifier.
+	 * @param id identifier as UTF-8 bytes
+	 * @return position of the identifier or a negative value if the snapshot
+	 * does not contain the identifier.
+	 */
+	public int find(final BytesRef id) {
+		int next = cursor + 1;
+		if (next < size && compare(next, id) == 0) {
+			cursor = next;
+			return next;
+		}
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = compare(mid, id);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				cursor = mid;
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param position position of the entry
+	 * @return <code>true</code> if the entry has a timestamp
+	 */
+	public boolean hasTimestamp(final int position) {
+		return hasTimestamp.get(position);
+	}
+
+	/**
+	 * @param position position of the entry
+	 * @return timestamp of the entry
+	 */
+	public long getTimestamp(final int position) {
+		return timestamps[position];
+	}
+
+	/**
+	 * Mark the entry as checked.
+	 * @param position position of the entry
+	 */
+	public void setChecked(final int position) {
+		checked.set(position);
+	}
+
+	/**
+	 * @return number of checked entries.
+	 */
+	public int getCheckedCount() {
+		return checked.cardinality();
+	}
+
+	/**
+	 * @param position position of the entry
+	 * @return <code>true</code> if the entry was checked
+	 */
+	public boolean isChecked(final int position) {
+		return checked.get(position);
+	}
+
+	/**
+	 * Get the identifier at the given position.
+	 * @param position position of the entry
+	 * @return identifier as string
+	 */
+	public String getId(final int position) {
+		int start = idOffsets[position];
+		return new BytesRef(idBytes, start, idOffsets[position + 1] - start).utf8ToString();
+	}
+
+	/**
+	 * Reset the checked marks, so the snapshot can be used for another run.
+	 */
+	public void clearChecked() {
+		checked.clear();
+		cursor = -1;
+	}
+
+	/**
+	 * Compare the entry at the given position with the identifier.
+	 * @param position position of the entry
+	 * @param id identifier
+	 * @return compare result as defined by {@link Comparable}
+	 */
+	private int compare(final int position, final BytesRef id) {
+		return compare(idBytes, idOffsets[position], idOffsets[position + 1] - idOffsets[position], id.bytes, id.offset, id.length);
+	}
+
+	/**
+	 * Compare two byte sequences as unsigned bytes, the same way
+	 * {@link BytesRef#compareTo(BytesRef)} does.
+	 */
+	private static int compare(final byte[] a, final int aOffset, final int aLength, final byte[] b, final int bOffset,
+			final int bLength) {
+		int end = aOffset + Math.min(aLength, bLength);
+		int j = bOffset;
+		for (int i = aOffset; i < end; i++, j++) {
+			int diff = (a[i] & 0xff) - (b[j] & 0xff);
+			if (diff != 0) {
+				return diff;
+			}
+		}
+		return aLength - bLength;
+	}
+
+	/**
+	 * Collects identifier/timestamp pairs in arbitrary order and creates a
+	 * sorted {@link IdTimestampSnapshot} from them. If an identifier is added
+	 * more than once, only the first one is kept.
+	 */
+	public static final class Builder {
+
+		/**
+		 * Initial capacity of the arrays.
+		 */
+		private static final int INITIAL_SIZE = 1024;
+
+		private byte[] bytes = new byte[INITIAL_SIZE * 8];
+		private int bytesUsed = 0;
+		private int[] starts = new int[INITIAL_SIZE];
+		private int[] lengths = new int[INITIAL_SIZE];
+		private long[] times = new long[INITIAL_SIZE];
+		private boolean[] timed = new boolean[INITIAL_SIZE];
+		private int count = 0;
+
+		/**
+		 * Add an identifier with its timestamp.
+		 * @param id identifier as UTF-8 bytes, the bytes are copied.
+		 * @param timestamp timestamp of the object
+		 * @param withTimestamp <code>false</code> if the object has no
+		 * timestamp, the timestamp parameter is ignored in this case.
+		 */
+		public void add(final BytesRef id, final long timestamp, final boolean withTimestamp) {
+			if (count == starts.length) {
+				// all arrays need the same capacity, ArrayUtil.grow would
+				// oversize them depending on their element size
+				int capacity = ArrayUtil.oversize(count + 1, RamUsageEstimator.NUM_BYTES_LONG);
+				starts = Arrays.copyOf(starts, capacity);
+				lengths = Arrays.copyOf(lengths, capacity);
+				times = Arrays.copyOf(times, capacity);
+				timed = Arrays.copyOf(timed, capacity);
+			}
+			bytes = ArrayUtil.grow(bytes, bytesUsed + id.length);
+			System.arraycopy(id.bytes, id.offset, bytes, bytesUsed, id.length);
+			starts[count] = bytesUsed;
+			lengths[count] = id.length;
+			times[count] = timestamp;
+			timed[count] = withTimestamp;
+			bytesUsed += id.length;
+			count++;
+		}
+
+		/**
+		 * Add an identifier with its timestamp.
+		 * @param id identifier
+		 * @param timestamp timestamp of the object
+		 * @param withTimestamp <code>false</code> if the object has no
+		 * timestamp
+		 */
+		public void add(final String id, final long timestamp, final boolean withTimestamp) {
+			add(new BytesRef(id), timestamp, withTimestamp);
+		}
+
+		/**
+		 * Sort the collected entries and create the snapshot.
+		 * @return snapshot
+		 */
+		public IdTimestampSnapshot build() {
+			new InPlaceMergeSorter() {
+				@Override
+				protected int compare(final int i, final int j) {
+					return IdTimestampSnapshot.compare(bytes, starts[i], lengths[i], bytes, starts[j], lengths[j]);
+				}
+
+				@Override
+				protected void swap(final int i, final int j) {
+					int start = starts[i];
+					starts[i] = starts[j];
+					starts[j] = start;
+					int length = lengths[i];
+					lengths[i] = lengths[j];
+					lengths[j] = length;
+					long time = times[i];
+					times[i] = times[j];
+					times[j] = time;
+					boolean t = timed[i];
+					timed[i] = timed[j];
+					timed[j] = t;
+				}
+			}.sort(0, count);
+
+			byte[] idBytes = new byte[bytesUsed];
+			int[] idOffsets = new int[count + 1];
+			long[] timestamps = new long[count];
+			BitSet hasTimestamp = new BitSet(count);
+			int size = 0;
+			int offset = 0;
+			for (int i = 0; i < count; i++) {
+				if (size > 0 && IdTimestampSnapshot.compare(bytes, starts[i], lengths[i], idBytes, idOffsets[size - 1],
+						offset - idOffsets[size - 1]) == 0) {
+					// merge sort is stable, so the first added entry wins
+					continue;
+				}
+				System.arraycopy(bytes, starts[i], idBytes, offset, lengths[i]);
+				idOffsets[size] = offset;
+				timestamps[size] = times[i];
+				if (timed[i]) {
+					hasTimestamp.set(size);
+				}
+				offset += lengths[i];
+				size++;
+			}
+			idOffsets[size] = offset;
+			return new IdTimestampSnapshot(idBytes, idOffsets, timestamps, hasTimestamp, size);
+		}
+	}
+}
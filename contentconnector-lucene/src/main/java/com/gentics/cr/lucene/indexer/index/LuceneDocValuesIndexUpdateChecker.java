@@ -0,0 +1,253 @@
+package com.gentics.cr.lucene.indexer.index;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.document.DocumentStoredFieldVisitor;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+
+import com.gentics.api.lib.resolving.Resolvable;
+import com.gentics.cr.lucene.indexaccessor.IndexAccessor;
+import com.gentics.cr.monitoring.MonitorFactory;
+import com.gentics.cr.monitoring.UseCase;
+import com.gentics.cr.util.indexing.IndexUpdateChecker;
+
+/**
+ * Lucene Implementation of IndexUpdateChecker using DocValues.
+ * Reads the Identifyer/Timestamp pairs of all documents of a CR once from the
+ * DocValues written by {@link CRLuceneIndexJob} (if
+ * {@link CRLuceneIndexJob#DOCVALUES_UPDATE_CHECK_KEY} is enabled) into an
+ * {@link IdTimestampSnapshot}. Checking the objects and deleting stale objects
+ * afterwards does not need to access the index anymore.
+ * The DocValues are written to separate fields (field name with
+ * {@link #DOCVALUES_FIELD_SUFFIX}), so sorting on the original fields is not
+ * affected. Documents indexed before DocValues were enabled fall back to
+ * loading the id and timestamp from the stored fields.
+ */
+public class LuceneDocValuesIndexUpdateChecker extends IndexUpdateChecker {
+
+	/**
+	 * Suffix of the DocValues fields holding the id and the timestamp.
+	 */
+	public static final String DOCVALUES_FIELD_SUFFIX = "_UPDATECHECK";
+
+	/**
+	 * Log4j logger for debug and error messages.
+	 */
+	private static final Logger LOG = Logger.getLogger(LuceneDocValuesIndexUpdateChecker.class);
+
+	/**
+	 * Index location to check.
+	 */
+	private LuceneIndexLocation indexLocation;
+
+	/**
+	 * Accessor of the index location.
+	 */
+	private IndexAccessor indexAccessor;
+
+	/**
+	 * Field containing the identifyer.
+	 */
+	private String idField;
+
+	/**
+	 * Snapshot of the objects in the index.
+	 */
+	private IdTimestampSnapshot snapshot;
+
+	/**
+	 * Initializes the DocValues implementation of {@link IndexUpdateChecker}.
+	 * @param indexLocation index location to check
+	 * @param termKey - Key under wich the termValue is stored in the Index e.g. CRID
+	 * @param termValue - Value wich to use for iteration e.g. CRID_1
+	 * @param idAttribute - ID-Attribute key that will be used for Identifyer
+	 * comparison.
+	 * @param timestampAttribute - attribute holding the update timestamp of
+	 * the objects in the index.
+	 */
+	public LuceneDocValuesIndexUpdateChecker(final LuceneIndexLocation indexLocation, final String termKey,
+			final String termValue, final String idAttribute, final String timestampAttribute) {
+		this.indexLocation = indexLocation;
+		this.idField = idAttribute;
+		indexAccessor = indexLocation.getAccessor();
+		IdTimestampSnapshot.Builder builder = new IdTimestampSnapshot.Builder();
+		IndexReader reader = null;
+		UseCase uc = MonitorFactory.startUseCase("LuceneDocValuesIndexUpdateChecker.snapshot(" + indexLocation.getName() + ")");
+		try {
+			reader = indexAccessor.getReader();
+			Term term = new Term(termKey, termValue);
+			for (AtomicReaderContext rc : reader.leaves()) {
+				fillSnapshot(rc.reader(), term, timestampAttribute, builder);
+			}
+		} catch (Throwable e) {
+			LOG.error("Error while reading the docvalues. Next step: close down connection in finally block", e);
+		} finally {
+			if (indexAccessor != null && reader != null) {
+				indexAccessor.release(reader);
+			}
+			uc.stop();
+		}
+		snapshot = builder.build();
+		LOG.debug("Fetched snapshot of " + snapshot.size() + " documents from index");
+	}
+
+	/**
+	 * Add the id/timestamp pairs of all documents matching the term in the
+	 * atomic reader to the snapshot.
+	 * @param reader atomic reader
+	 * @param term term to search documents by
+	 * @param timestampAttribute field containing the timestamp
+	 * @param builder builder for the snapshot
+	 * @throws IOException in case of low level IO error
+	 */
+	private void fillSnapshot(final AtomicReader reader, final Term term, final String timestampAttribute,
+			final IdTimestampSnapshot.Builder builder) throws IOException {
+		DocsEnum termDocs = reader.termDocsEnum(term);
+		if (termDocs == null) {
+			return;
+		}
+		SortedDocValues ids = reader.getSortedDocValues(idField + DOCVALUES_FIELD_SUFFIX);
+		NumericDocValues timestamps = null;
+		Bits docsWithTimestamp = null;
+		if (timestampAttribute != null && !"".equals(timestampAttribute)) {
+			timestamps = reader.getNumericDocValues(timestampAttribute + DOCVALUES_FIELD_SUFFIX);
+			docsWithTimestamp = reader.getDocsWithField(timestampAttribute + DOCVALUES_FIELD_SUFFIX);
+		}
+		int d;
+		while ((d = termDocs.nextDoc()) != DocsEnum.NO_MORE_DOCS) {
+			int ord = -1;
+			if (ids != null) {
+				ord = ids.getOrd(d);
+			}
+			if (ord >= 0) {
+				BytesRef id = ids.lookupOrd(ord);
+				if (timestamps != null && docsWithTimestamp != null && docsWithTimestamp.get(d)) {
+					builder.add(id, timestamps.get(d), true);
+				} else {
+					builder.add(id, 0, false);
+				}
+			} else {
+				addFromStoredFields(reader, d, timestampAttribute, builder);
+			}
+		}
+	}
+
+	/**
+	 * Add a document that has been indexed without DocValues to the snapshot.
+	 * Only the id and timestamp fields are loaded.
+	 * @param reader atomic reader
+	 * @param doc document number in the reader
+	 * @param timestampAttribute field containing the timestamp
+	 * @param builder builder for the snapshot
+	 * @throws IOException in case of low level IO error
+	 */
+	private void addFromStoredFields(final AtomicReader reader, final int doc, final String timestampAttribute,
+			final IdTimestampSnapshot.Builder builder) throws IOException {
+		Set<String> fields = new HashSet<String>(2);
+		fields.add(idField);
+		if (timestampAttribute != null) {
+			fields.add(timestampAttribute);
+		}
+		DocumentStoredFieldVisitor visitor = new DocumentStoredFieldVisitor(fields);
+		reader.document(doc, visitor);
+		String docID = visitor.getDocument().get(idField);
+		if (docID == null) {
+			return;
+		}
+		Long timestamp = null;
+		if (timestampAttribute != null) {
+			timestamp = parseTimestamp(visitor.getDocument().get(timestampAttribute));
+		}
+		if (timestamp != null) {
+			builder.add(docID, timestamp, true);
+		} else {
+			builder.add(docID, 0, false);
+		}
+	}
+
+	/**
+	 * Parse a timestamp.
+	 * @param timestamp timestamp as string
+	 * @return timestamp as long or <code>null</code> if the timestamp cannot be
+	 * parsed.
+	 */
+	static Long parseTimestamp(final String timestamp) {
+		if (timestamp == null || "".equals(timestamp)) {
+			return null;
+		}
+		try {
+			return Long.parseLong(timestamp);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	@Override
+	protected final boolean checkUpToDate(final String identifyer, final Object timestamp, final String timestampattribute,
+			final Resolvable object) {
+		if (timestamp == null) {
+			return false;
+		}
+		int position = snapshot.find(new BytesRef(identifyer));
+		if (position < 0) {
+			//object is not yet in the index => it is not up to date
+			return false;
+		}
+		snapshot.setChecked(position);
+		Long objectTimestamp = parseTimestamp(timestamp.toString());
+		if (objectTimestamp == null || !snapshot.hasTimestamp(position)
+				|| snapshot.getTimestamp(position) != objectTimestamp.longValue()) {
+			LOG.debug(identifyer + ": object is not up to date.");
+			return false;
+		}
+		LOG.debug(identifyer + ": object is up to date.");
+		return true;
+	}
+
+	@Override
+	public void deleteStaleObjects() {
+		LOG.debug(snapshot.getCheckedCount() + " objects checked, " + snapshot.size() + " objects already in the index.");
+		IndexWriter writer = null;
+		UseCase deleteStale = MonitorFactory.startUseCase("LuceneDocValuesIndexUpdateChecker.deleteStaleObjects("
+				+ indexLocation.getName() + ")");
+		try {
+			boolean objectsDeleted = false;
+			for (int i = 0; i < snapshot.size(); i++) {
+				if (!snapshot.isChecked(i)) {
+					String contentId = snapshot.getId(i);
+					LOG.debug("Object " + contentId + " wasn't checked in the last run. So i will delete it.");
+					if (writer == null) {
+						writer = indexAccessor.getWriter();
+					}
+					writer.deleteDocuments(new Term(idField, contentId));
+					objectsDeleted = true;
+				}
+			}
+			if (objectsDeleted) {
+				indexLocation.createReopenFile();
+			}
+		} catch (IOException e) {
+			LOG.error("Cannot delete objects from index.", e);
+		} finally {
+			//always release writer it blocks other threads if you don't
+			if (writer != null) {
+				indexAccessor.release(writer);
+			}
+			LOG.debug("Finished cleaning stale documents");
+			deleteStale.stop();
+		}
+		snapshot.clearChecked();
+	}
+}
@@ -41,6 +41,14 @@ public abstract class LuceneIndexLocation extends com.gentics.cr.util.indexing.I
 
 	protected boolean useFacets = false;
 
+	/**
+	 * Key to configure the maximum time in milliseconds until changes of a
+	 * running index job are searchable. The searchers are reopened from the
+	 * writer of the job without committing the changes. 0 (default) only
+	 * searches committed changes.
+	 */
+	protected static final String NRT_MAX_STALENESS_KEY = "nrtmaxstaleness";
+
 	protected Analyzer getConfiguredAnalyzer() {
 		return LuceneAnalyzerFactory.createAnalyzer((GenericConfiguration) config);
 	}
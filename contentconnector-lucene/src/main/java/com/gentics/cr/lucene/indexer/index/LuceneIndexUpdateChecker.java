@@ -3,9 +3,11 @@ package com.gentics.cr.lucene.indexer.index;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
 
 import org.apache.log4j.Logger;
@@ -38,7 +40,7 @@ public class LuceneIndexUpdateChecker extends IndexUpdateChecker {
 	IndexAccessor indexAccessor;
 	LinkedHashMap<String, Integer> docs;
 	Iterator<String> docIT;
-	Vector<String> checkedDocuments;
+	Set<String> checkedDocuments;
 	String idField;
 	private static final Logger log = Logger.getLogger(LuceneIndexUpdateChecker.class);
 
@@ -72,7 +74,7 @@ public class LuceneIndexUpdateChecker extends IndexUpdateChecker {
 			log.debug("Fetched sorted docs from index");
 			docIT = docs.keySet().iterator();
 
-			checkedDocuments = new Vector<String>(100);
+			checkedDocuments = new HashSet<String>(docs.size());
 
 			//TODO CONTINUE HERE PREPARE TO USE ITERATOR IN CHECK METHOD
 		} catch (Throwable e) {
@@ -70,6 +70,10 @@ public class LuceneMultiIndexLocation extends LuceneIndexLocation {
 		} else {
 			log.debug("Accessor already present. we will not create a new one.");
 		}
+		int nrtMaxStaleness = config.getInteger(NRT_MAX_STALENESS_KEY, 0);
+		if (nrtMaxStaleness > 0 && factory.hasAccessor(dir)) {
+			factory.getAccessor(dir).setNearRealTimeMaxStaleness(nrtMaxStaleness);
+		}
 		return dir;
 	}
 
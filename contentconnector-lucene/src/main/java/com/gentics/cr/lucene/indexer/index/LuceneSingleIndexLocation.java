@@ -60,6 +60,10 @@ public class LuceneSingleIndexLocation extends LuceneIndexLocation implements Ta
 		} else {
 			log.debug("Accessor already present.");
 		}
+		int nrtMaxStaleness = config.getInteger(NRT_MAX_STALENESS_KEY, 0);
+		if (nrtMaxStaleness > 0 && iAFactory.hasAccessor(dir)) {
+			iAFactory.getAccessor(dir).setNearRealTimeMaxStaleness(nrtMaxStaleness);
+		}
 
 		// check if facets are activated and create a TaxonomyAccessor if necessary
 		useFacets = config.getBoolean(FACET_FLAG_KEY, useFacets);
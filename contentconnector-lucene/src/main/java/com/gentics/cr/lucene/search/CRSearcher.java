@@ -20,14 +20,12 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.facet.FacetsCollector;
 import org.apache.lucene.facet.taxonomy.TaxonomyReader;
-import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.index.SlowCompositeReaderWrapper;
 import org.apache.lucene.index.Term;
-import org.apache.lucene.index.Terms;
-import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.queries.BooleanFilter;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.Explanation;
 import org.apache.lucene.search.Filter;
@@ -53,10 +51,10 @@ import com.gentics.cr.lucene.facets.search.FacetsSearch;
 import com.gentics.cr.lucene.facets.search.FacetsSearchConfigKeys;
 import com.gentics.cr.lucene.facets.taxonomy.taxonomyaccessor.TaxonomyAccessor;
 import com.gentics.cr.lucene.indexaccessor.IndexAccessor;
-import com.gentics.cr.lucene.indexer.index.LuceneAnalyzerFactory;
+import com.gentics.cr.lucene.indexer.IndexerUtil;
 import com.gentics.cr.lucene.indexer.index.LuceneIndexLocation;
 import com.gentics.cr.lucene.search.query.BooleanQueryRewriter;
-import com.gentics.cr.lucene.search.query.CRQueryParserFactory;
+import com.gentics.cr.lucene.search.query.QueryParserCache;
 import com.gentics.cr.util.StringUtils;
 import com.gentics.cr.util.generics.Instanciator;
 
@@ -84,6 +82,17 @@ public class CRSearcher {
 	
 	public static final String RETRIEVE_UNIQUE_MIMETYPES_KEY = "retrieveUniqueMimetypes";
 	public static final String RESULT_UNIQUE_MIMETYPES_KEY = "unique_mimetypes";
+
+	/**
+	 * Key to configure a comma separated list of fields the distinct values
+	 * of should be put into the result.
+	 */
+	public static final String RETRIEVE_UNIQUE_VALUES_KEY = "retrieveUniqueValues";
+
+	/**
+	 * Key to store the distinct values per field in the result.
+	 */
+	public static final String RESULT_UNIQUE_VALUES_KEY = "unique_values";
 	
 	private static final String LUCENE_INDEX_MIMETYPE = "mimetype";
 
@@ -100,6 +109,13 @@ public class CRSearcher {
 	 */
 	public static final String RESULT_RESULT_KEY = "result";
 
+	/**
+	 * Key to store the reader the result documents were loaded from in the
+	 * result. The document ids in the id field of the documents belong to this
+	 * reader.
+	 */
+	public static final String RESULT_READER_KEY = "reader";
+
 	/**
 	 * Key to store the maximum score of the result in the result.
 	 */
@@ -146,6 +162,58 @@ public class CRSearcher {
 	private static final String DIDYOUMEAN_SUGGEST_COUNT_KEY = "didyoumeansuggestions";
 	private static final String DIDYOUMEAN_MIN_SCORE = "didyoumeanminscore";
 
+	/**
+	 * Key to enable the cache for search results.
+	 */
+	public static final String RESULT_CACHE_KEY = "resultcache";
+
+	/**
+	 * Key to configure the maximum number of cached search results.
+	 */
+	public static final String RESULT_CACHE_SIZE_KEY = "resultcachesize";
+
+	/**
+	 * Key to configure the maximum memory of the cached search results in
+	 * kilobytes.
+	 */
+	public static final String RESULT_CACHE_MEMORY_KEY = "resultcachememory";
+
+	/**
+	 * Key to enable the cache for the filter queries of the requests.
+	 */
+	public static final String FILTER_CACHE_KEY = "filtercache";
+
+	/**
+	 * Key to configure the maximum number of cached filter queries.
+	 */
+	public static final String FILTER_CACHE_SIZE_KEY = "filtercachesize";
+
+	/**
+	 * Key to configure the maximum memory of the cached filter doc id sets in
+	 * kilobytes.
+	 */
+	public static final String FILTER_CACHE_MEMORY_KEY = "filtercachememory";
+
+	/**
+	 * Key to configure the index field containing the permission groups of the
+	 * documents. If set, the results are restricted to the documents of the
+	 * permission groups of the request.
+	 */
+	public static final String PERMISSION_FIELD_KEY = "permissionfield";
+
+	/**
+	 * Key to configure the comma separated permission groups used for
+	 * requests without permissions. If not set, these requests are not
+	 * restricted by the permission field.
+	 */
+	public static final String ANONYMOUS_PERMISSIONS_KEY = "anonymouspermissions";
+
+	/**
+	 * Key to pass the complete top docs from {@link #executeSearcher} to
+	 * {@link #search} for the result cache.
+	 */
+	private static final String RESULT_TOPDOCS_KEY = "topdocs";
+
 	protected CRConfig config;
 	private boolean computescores = true;
 	private boolean didyoumeanenabled = false;
@@ -160,6 +228,24 @@ public class CRSearcher {
 	 * retrieve unique mimetypes and put it in result.
 	 */
 	private boolean retrieveUniqueMimeTypes = false;
+
+	/**
+	 * fields to retrieve the distinct values of and put them in the result.
+	 */
+	private List<String> retrieveUniqueValues = null;
+
+	/**
+	 * distinct values of the mimetype field and the retrieveUniqueValues
+	 * fields per reader generation, <code>null</code> if no values are
+	 * retrieved.
+	 */
+	private UniqueValuesCache uniqueValuesCache = null;
+
+	/**
+	 * accessor the uniqueValuesCache and the filterCache are registered at as
+	 * warmup listeners.
+	 */
+	private IndexAccessor warmupAccessor = null;
 	
 	/**
 	 * put used collector in metadata.
@@ -173,6 +259,33 @@ public class CRSearcher {
 
 	private DidyoumeanIndexExtension didyoumeanprovider = null;
 
+	/**
+	 * Analyzer and query parsers of the config, shared between the searches.
+	 */
+	private QueryParserCache queryParserCache;
+
+	/**
+	 * Cache for search results, <code>null</code> if not enabled.
+	 */
+	private SearchResultCache resultCache = null;
+
+	/**
+	 * Cache for the filter queries of the requests and the permission filters,
+	 * <code>null</code> if neither is enabled.
+	 */
+	private FilterCache filterCache = null;
+
+	/**
+	 * Cache the filter queries of the requests in the filterCache.
+	 */
+	private boolean cacheFilterQueries = false;
+
+	/**
+	 * Creates the filters for the permissions of the requests,
+	 * <code>null</code> if no permission field is configured.
+	 */
+	private PermissionFilterFactory permissionFilterFactory = null;
+
 	/**
 	 * Create new instance of CRSearcher.
 	 * @param config
@@ -192,10 +305,48 @@ public class CRSearcher {
 		}
 
 		facetsSearch = new FacetsSearch(config);
+		queryParserCache = new QueryParserCache(config);
 		
 		retrieveUniqueMimeTypes = config.getBoolean(RETRIEVE_UNIQUE_MIMETYPES_KEY);
 		retrieveCollector = config.getBoolean(RETRIEVE_COLLECTOR_KEY);
 
+		String uniqueValuesFields = config.getString(RETRIEVE_UNIQUE_VALUES_KEY);
+		if (uniqueValuesFields != null && !"".equals(uniqueValuesFields)) {
+			retrieveUniqueValues = IndexerUtil.getListFromString(uniqueValuesFields, ",");
+		}
+		if (retrieveUniqueMimeTypes || retrieveUniqueValues != null) {
+			Set<String> uniqueFields = new HashSet<String>();
+			if (retrieveUniqueMimeTypes) {
+				uniqueFields.add(LUCENE_INDEX_MIMETYPE);
+			}
+			if (retrieveUniqueValues != null) {
+				uniqueFields.addAll(retrieveUniqueValues);
+			}
+			uniqueValuesCache = new UniqueValuesCache(uniqueFields);
+		}
+
+		if (config.getBoolean(RESULT_CACHE_KEY, false)) {
+			int resultCacheSize = config.getInteger(RESULT_CACHE_SIZE_KEY, 1000);
+			long resultCacheMemory = config.getInteger(RESULT_CACHE_MEMORY_KEY, 16384) * 1024L;
+			resultCache = new SearchResultCache(config.getName(), resultCacheSize, resultCacheMemory);
+		}
+		cacheFilterQueries = config.getBoolean(FILTER_CACHE_KEY, false);
+		String permissionField = config.getString(PERMISSION_FIELD_KEY);
+		if (cacheFilterQueries || (permissionField != null && !"".equals(permissionField))) {
+			int filterCacheSize = config.getInteger(FILTER_CACHE_SIZE_KEY, 100);
+			long filterCacheMemory = config.getInteger(FILTER_CACHE_MEMORY_KEY, 16384) * 1024L;
+			filterCache = new FilterCache(config.getName(), filterCacheSize, filterCacheMemory);
+		}
+		if (permissionField != null && !"".equals(permissionField)) {
+			String[] anonymousPermissions = null;
+			List<String> anonymousPermissionsList = IndexerUtil.getListFromString(
+				config.getString(ANONYMOUS_PERMISSIONS_KEY), ",");
+			if (anonymousPermissionsList != null) {
+				anonymousPermissions = anonymousPermissionsList.toArray(new String[anonymousPermissionsList.size()]);
+			}
+			permissionFilterFactory = new PermissionFilterFactory(permissionField, filterCache, anonymousPermissions);
+		}
+
 	}
 
 	/**
@@ -289,7 +440,7 @@ public class CRSearcher {
 	 */
 	private HashMap<String, Object> executeSearcher(final TopDocsCollector<?> collector, final IndexSearcher searcher, final Query parsedQuery,
 			final boolean explain, final int count, final int start) {
-		return executeSearcher(collector, searcher, parsedQuery, explain, count, start, null, null);
+		return executeSearcher(collector, searcher, parsedQuery, explain, count, start, null, null, false, null);
 	}
 
 	/**
@@ -302,10 +453,16 @@ public class CRSearcher {
 	 * @param explain
 	 * @param start
 	 * @param facetsCollector a {@link FacetsCollector} 
+	 * @param filter filter for the search, may be <code>null</code>
+	 * @param keepTopDocs if true the top docs from the first hit on are put into
+	 * the result for the result cache
+	 * @param fieldsToLoad stored fields to load, <code>null</code> to load all
+	 * stored fields
 	 * @return ArrayList of results
 	 */
 	private HashMap<String, Object> executeSearcher(final TopDocsCollector<?> ttcollector, final IndexSearcher searcher, final Query parsedQuery,
-			final boolean explain, final int count, final int start, final FacetsCollector facetsCollector, final Filter filter) {
+			final boolean explain, final int count, final int start, final FacetsCollector facetsCollector, final Filter filter,
+			final boolean keepTopDocs, final Set<String> fieldsToLoad) {
 		try {
 			
 			Collector collector = null;
@@ -322,43 +479,34 @@ public class CRSearcher {
 			} else {
 				searcher.search(parsedQuery, collector);
 			}
-			TopDocs tdocs = ttcollector.topDocs(start, count);
+			TopDocs tdocs;
+			TopDocs allTopDocs = null;
+			if (keepTopDocs) {
+				// the collector can only return its top docs once, so fetch all hits and page them here
+				allTopDocs = ttcollector.topDocs(0, start + count);
+				ScoreDoc[] all = allTopDocs.scoreDocs;
+				ScoreDoc[] page = Arrays.copyOfRange(all, Math.min(start, all.length), Math.min(start + count, all.length));
+				tdocs = new TopDocs(allTopDocs.totalHits, page, allTopDocs.getMaxScore());
+			} else {
+				tdocs = ttcollector.topDocs(start, count);
+			}
 
 			float maxScoreReturn = tdocs.getMaxScore();
 			log.debug("maxScoreReturn: " + maxScoreReturn);
 
 			ScoreDoc[] hits = tdocs.scoreDocs;
-			log.debug("hits (topdocs): \n" + StringUtils.getCollectionSummary(Arrays.asList(hits), "\n"));
-
-			LinkedHashMap<Document, Float> result = new LinkedHashMap<Document, Float>(hits.length);
-
-			// Calculate the number of documents to be fetched
-			int num = Math.min(hits.length, count);
-			for (int i = 0; i < num; i++) {
-				ScoreDoc currentDoc = hits[i];
-				if (currentDoc.doc != Integer.MAX_VALUE) {
-					log.debug("currentDoc id: " + currentDoc.doc + " ; score: " + currentDoc.score);
-					Document doc = searcher.doc(currentDoc.doc);
-					// add id field for AdvancedContentHighlighter
-					doc.add(new Field("id", hits[i].doc + "", Field.Store.YES, Field.Index.NO));
-					log.debug("adding contentid: " + doc.getField("contentid"));
-					log.debug("with hits[" + i + "].score = " + hits[i].score);
-					result.put(doc, hits[i].score);
-					if (explain) {
-						Explanation ex = searcher.explain(parsedQuery, hits[i].doc);
-						log_explain.debug("Explanation for " + doc.toString() + " - " + ex.toString());
-					}
-				} else {
-					log.error("Loading search documents failed partly (document has MAX_INTEGER as document id");
-				}
-			}
-			log.debug("Fetched Document " + start + " to " + (start + num) + " of " + ttcollector.getTotalHits() + " found Documents");
+			LinkedHashMap<Document, Float> result = loadDocuments(searcher, parsedQuery, hits, explain, count, fieldsToLoad);
+			log.debug("Fetched Document " + start + " to " + (start + result.size()) + " of " + ttcollector.getTotalHits()
+					+ " found Documents");
 
 			HashMap<String, Object> ret = new HashMap<String, Object>(3);
 			
 			if (retrieveCollector) {
 				ret.put(RESULT_COLLECTOR_KEY, collector);
 			}
+			if (allTopDocs != null) {
+				ret.put(RESULT_TOPDOCS_KEY, allTopDocs);
+			}
 			ret.put(RESULT_RESULT_KEY, result);
 			ret.put(RESULT_MAXSCORE_KEY, maxScoreReturn);
 			return ret;
@@ -369,6 +517,53 @@ public class CRSearcher {
 		return null;
 	}
 
+	/**
+	 * Load the stored fields of the hits.
+	 * @param searcher searcher to load the documents from
+	 * @param parsedQuery query used for the explanation
+	 * @param hits hits to load
+	 * @param explain if true an explanation for each hit is logged
+	 * @param count maximum number of documents to load
+	 * @param fieldsToLoad stored fields to load, <code>null</code> to load all
+	 * stored fields
+	 * @return documents with their score
+	 * @throws IOException in case of low level IO error
+	 */
+	private LinkedHashMap<Document, Float> loadDocuments(final IndexSearcher searcher, final Query parsedQuery, final ScoreDoc[] hits,
+			final boolean explain, final int count, final Set<String> fieldsToLoad) throws IOException {
+		log.debug("hits (topdocs): \n" + StringUtils.getCollectionSummary(Arrays.asList(hits), "\n"));
+
+		LinkedHashMap<Document, Float> result = new LinkedHashMap<Document, Float>(hits.length);
+
+		// Calculate the number of documents to be fetched
+		int num = Math.min(hits.length, count);
+		for (int i = 0; i < num; i++) {
+			ScoreDoc currentDoc = hits[i];
+			if (currentDoc.doc != Integer.MAX_VALUE) {
+				log.debug("currentDoc id: " + currentDoc.doc + " ; score: " + currentDoc.score);
+				Document doc;
+				if (fieldsToLoad != null) {
+					// skip the stored fields that are not needed, e.g. large content fields
+					doc = searcher.doc(currentDoc.doc, fieldsToLoad);
+				} else {
+					doc = searcher.doc(currentDoc.doc);
+				}
+				// add id field for AdvancedContentHighlighter
+				doc.add(new Field("id", hits[i].doc + "", Field.Store.YES, Field.Index.NO));
+				log.debug("adding contentid: " + doc.getField("contentid"));
+				log.debug("with hits[" + i + "].score = " + hits[i].score);
+				result.put(doc, hits[i].score);
+				if (explain) {
+					Explanation ex = searcher.explain(parsedQuery, hits[i].doc);
+					log_explain.debug("Explanation for " + doc.toString() + " - " + ex.toString());
+				}
+			} else {
+				log.error("Loading search documents failed partly (document has MAX_INTEGER as document id");
+			}
+		}
+		return result;
+	}
+
 	public HashMap<String, Object> search(final String query, final String[] searchedAttributes, final int count, final int start,
 			final boolean explain) throws IOException, CRException {
 		return search(query, searchedAttributes, count, start, explain, null);
@@ -379,6 +574,11 @@ public class CRSearcher {
 		return search(query, searchedAttributes, count, start, explain, sorting, new CRRequest());
 	}
 
+	public final HashMap<String, Object> search(final String query, final String[] searchedAttributes, final int count, final int start,
+			final boolean explain, final String[] sorting, final CRRequest request) throws IOException, CRException {
+		return search(query, searchedAttributes, count, start, explain, sorting, request, null);
+	}
+
 	/**
 	 * Search in lucene index (executes executeSearcher).
 	 * 
@@ -390,6 +590,8 @@ public class CRSearcher {
 	 *						com.gentics.cr.lucene.searchCRSearcher.explain
 	 * @param sorting - this argument takes the sorting array that can look like this: ["contentid:asc","name:desc"]
 	 * @param request TODO javadoc
+	 * @param fieldsToLoad stored fields to load for the result documents,
+	 *			<code>null</code> to load all stored fields
 	 * @return HashMap&lt;String,Object&gt; with two entries. Entry "query" contains the parsed query and entry "result"
 	 *			contains a Collection of result documents.
 	 * @throws IOException TODO javadoc
@@ -397,10 +599,10 @@ public class CRSearcher {
 	 */
 	@SuppressWarnings("unchecked")
 	public final HashMap<String, Object> search(final String query, final String[] searchedAttributes, final int count, final int start,
-			final boolean explain, final String[] sorting, final CRRequest request) throws IOException, CRException {
+			final boolean explain, final String[] sorting, final CRRequest request, final Set<String> fieldsToLoad)
+			throws IOException, CRException {
 
 		IndexSearcher searcher;
-		Analyzer analyzer;
 		// Collect count + start hits
 		int hits = count + start;	// we want to retreive the startcount (start) to endcount (hits)
 
@@ -417,19 +619,8 @@ public class CRSearcher {
 		// Resource needed for faceted search
 		TaxonomyAccessor taAccessor = null;
 		
-		IndexReader uniqueMimeTypesIndexReader = null;
-		
-		List<String> uniqueMimeTypes = null;
-		if (retrieveUniqueMimeTypes) {
-			// retrieve all possible file types
-			uniqueMimeTypesIndexReader = indexAccessor.getReader();
-			AtomicReader aReader = SlowCompositeReaderWrapper.wrap(uniqueMimeTypesIndexReader);
-			final Terms terms = aReader.fields().terms(LUCENE_INDEX_MIMETYPE);
-			TermsEnum termEnum = terms.iterator(null);
-			uniqueMimeTypes = new ArrayList<String>();
-			while (termEnum.next() != null) {
-				uniqueMimeTypes.add(termEnum.term().utf8ToString());
-			}
+		if (uniqueValuesCache != null || filterCache != null) {
+			registerWarmupListeners(indexAccessor);
 		}
 
 		// get accessors and reader only if facets are activated 
@@ -437,21 +628,25 @@ public class CRSearcher {
 			taAccessor = idsLocation.getTaxonomyAccessor();
 		}
 
-		searcher = indexAccessor.getPrioritizedSearcher();
 		Object userPermissionsObject = request.get(CRRequest.PERMISSIONS_KEY);
 		String[] userPermissions = new String[0];
 		if (userPermissionsObject instanceof String[]) {
 			userPermissions = (String[]) userPermissionsObject;
 		}
-		TopDocsCollector<?> collector = createCollector(searcher, hits, sorting, computescores, userPermissions);
-		
 		String filterQuery = ObjectTransformer.getString(request.get(CRRequest.FILTER_QUERY_KEY), null);
 		HashMap<String, Object> result = null;
+
+		searcher = indexAccessor.getPrioritizedSearcher();
 		try {
-			analyzer = LuceneAnalyzerFactory.createAnalyzer(config);
+			Map<String, List<String>> uniqueValues = null;
+			if (uniqueValuesCache != null) {
+				// distinct values are read once per reader generation
+				uniqueValues = uniqueValuesCache.getValues(searcher.getIndexReader());
+			}
+			TopDocsCollector<?> collector = createCollector(searcher, hits, sorting, computescores, userPermissions);
 
 			if (searchedAttributes != null && searchedAttributes.length > 0 && query != null && !query.equals("")) {
-				QueryParser parser = CRQueryParserFactory.getConfiguredParser(searchedAttributes, analyzer, request, config);
+				QueryParser parser = queryParserCache.getParser(searchedAttributes, request);
 
 				Query parsedQuery = parser.parse(query);
 				// GENERATE A NATIVE QUERY
@@ -461,20 +656,59 @@ public class CRSearcher {
 				result = new HashMap<String, Object>(3);
 				result.put(RESULT_QUERY_KEY, parsedQuery);
 				Filter filter = null;
-				if (filterQuery != null) {
+				Query parsedFilterQuery = null;
+				if (filterQuery != null && cacheFilterQueries) {
+					FilterCache.CachedFilter cachedFilter = getCachedFilter(filterQuery, searchedAttributes, parser, request);
+					parsedFilterQuery = ((QueryWrapperFilter) cachedFilter.getFilter()).getQuery();
+					filter = cachedFilter;
+				} else if (filterQuery != null) {
 					log.debug("Using filter query: " + filterQuery);
-					Query parsedFilterQuery = parser.parse(filterQuery);
+					parsedFilterQuery = parser.parse(filterQuery);
 					parsedFilterQuery = searcher.rewrite(parsedFilterQuery);
 					filter = new QueryWrapperFilter(parsedFilterQuery);
 				}
+				if (permissionFilterFactory != null) {
+					// the cached doc id sets of the permission groups are intersected with the query
+					Filter permissionFilter = permissionFilterFactory.getFilter(userPermissions);
+					if (permissionFilter == null) {
+						log.debug("Searching without permission restriction.");
+					} else if (filter == null) {
+						filter = permissionFilter;
+					} else {
+						BooleanFilter booleanFilter = new BooleanFilter();
+						booleanFilter.add(filter, Occur.MUST);
+						booleanFilter.add(permissionFilter, Occur.MUST);
+						filter = booleanFilter;
+					}
+				}
+
+				// explain output and the collector in the result need a real search
+				SearchResultCache.Key cacheKey = null;
+				SearchResultCache.CachedResult cachedResult = null;
+				if (resultCache != null && !explain && !retrieveCollector) {
+					cacheKey = new SearchResultCache.Key(parsedQuery, parsedFilterQuery, sorting, userPermissions);
+					cachedResult = resultCache.get(searcher.getIndexReader(), cacheKey, hits);
+				}
 
 				// when facets are active create a FacetsCollector
 				FacetsCollector facetsCollector = null;
-				if (facetsSearch.useFacets()) {
+				if (facetsSearch.useFacets() && cachedResult == null) {
 					facetsCollector = facetsSearch.createFacetsCollector();
 				}
 
-				Map<String, Object> ret = executeSearcher(collector, searcher, parsedQuery, explain, count, start, facetsCollector, filter);
+				Map<String, Object> ret;
+				int totalhits;
+				if (cachedResult != null) {
+					ret = new HashMap<String, Object>(2);
+					ret.put(RESULT_RESULT_KEY, loadDocuments(searcher, parsedQuery, cachedResult.getScoreDocs(start, count), false, count,
+						fieldsToLoad));
+					ret.put(RESULT_MAXSCORE_KEY, cachedResult.getMaxScore());
+					totalhits = cachedResult.getTotalHits();
+				} else {
+					ret = executeSearcher(collector, searcher, parsedQuery, explain, count, start, facetsCollector, filter,
+						cacheKey != null, fieldsToLoad);
+					totalhits = collector.getTotalHits();
+				}
 				if (log.isDebugEnabled()) {
 					for (Object res : ret.values()) {
 						if (res instanceof LinkedHashMap) {
@@ -494,14 +728,21 @@ public class CRSearcher {
 					LinkedHashMap<Document, Float> coll = (LinkedHashMap<Document, Float>) ret.get(RESULT_RESULT_KEY);
 					float maxScore = (Float) ret.get(RESULT_MAXSCORE_KEY);
 					result.put(RESULT_RESULT_KEY, coll);
-					int totalhits = collector.getTotalHits();
+					result.put(RESULT_READER_KEY, searcher.getIndexReader());
 
 					result.put(RESULT_HITS_KEY, totalhits);
 					result.put(RESULT_MAXSCORE_KEY, maxScore);
 
 					if (retrieveUniqueMimeTypes) {
 						// add unique extensions
-						result.put(RESULT_UNIQUE_MIMETYPES_KEY, uniqueMimeTypes);
+						result.put(RESULT_UNIQUE_MIMETYPES_KEY, uniqueValues.get(LUCENE_INDEX_MIMETYPE));
+					}
+					if (retrieveUniqueValues != null) {
+						Map<String, List<String>> fieldValues = new HashMap<String, List<String>>(retrieveUniqueValues.size());
+						for (String field : retrieveUniqueValues) {
+							fieldValues.put(field, uniqueValues.get(field));
+						}
+						result.put(RESULT_UNIQUE_VALUES_KEY, fieldValues);
 					}
 					if (retrieveCollector) {
 						result.put(RESULT_COLLECTOR_KEY, ret.get(RESULT_COLLECTOR_KEY));
@@ -526,8 +767,20 @@ public class CRSearcher {
 					// PLUG IN DIDYOUMEAN END
 
 					// if a facetsCollector was created, store the faceted search results in the meta resolveable
-					if (facetsCollector != null) {
-						result.put(FacetsSearchConfigKeys.RESULT_FACETS_LIST_KEY, facetsSearch.getFacetsResults(facetsCollector, taAccessor));
+					Object facetsResults = null;
+					if (cachedResult != null) {
+						facetsResults = cachedResult.getFacetsResults();
+					} else if (facetsCollector != null) {
+						facetsResults = facetsSearch.getFacetsResults(facetsCollector, taAccessor);
+					}
+					if (facetsResults != null) {
+						result.put(FacetsSearchConfigKeys.RESULT_FACETS_LIST_KEY, facetsResults);
+					}
+
+					TopDocs allTopDocs = (TopDocs) ret.get(RESULT_TOPDOCS_KEY);
+					if (allTopDocs != null) {
+						resultCache.put(searcher.getIndexReader(), cacheKey, new SearchResultCache.CachedResult(allTopDocs, totalhits,
+								facetsResults));
 					}
 
 					int size = 0;
@@ -556,15 +809,74 @@ public class CRSearcher {
 			  * Always cleanup/release the taxonomy Reader/Writer 
 			  * before the Reader/Writers of the main index!
 			  */
-			
-			if (uniqueMimeTypesIndexReader != null) {
-				indexAccessor.release(uniqueMimeTypesIndexReader);
-			}
 			indexAccessor.release(searcher);
 		}
 		return result;
 	}
 
+	/**
+	 * Get the filter for the filter query from the filter cache. The filter
+	 * query is only parsed if it is not cached yet. It is not rewritten, the
+	 * {@link QueryWrapperFilter} rewrites it per segment if it is executed.
+	 * @param filterQuery filter query
+	 * @param searchedAttributes searched attributes, used as default fields by
+	 * the parser
+	 * @param parser parser for the filter query
+	 * @param request request, the wordmatch setting changes the parsed query
+	 * @return cached filter
+	 * @throws ParseException if the filter query cannot be parsed
+	 */
+	private FilterCache.CachedFilter getCachedFilter(final String filterQuery, final String[] searchedAttributes,
+			final QueryParser parser, final CRRequest request) throws ParseException {
+		StringBuilder key = new StringBuilder(filterQuery);
+		for (String attribute : searchedAttributes) {
+			key.append('\u0000').append(attribute);
+		}
+		key.append('\u0000').append(request.get(CRRequest.WORDMATCH_KEY));
+		String filterKey = key.toString();
+		FilterCache.CachedFilter filter = filterCache.get(filterKey);
+		if (filter == null) {
+			log.debug("Using filter query: " + filterQuery);
+			filter = filterCache.put(filterKey, new QueryWrapperFilter(parser.parse(filterQuery)));
+		}
+		return filter;
+	}
+
+	/**
+	 * Register the unique values cache and the filter cache as warmup
+	 * listeners at the accessor, so the values and the filters of new segments
+	 * are read when a new reader is opened. The accessor may change if the
+	 * index accessor factory was closed and reopened.
+	 * @param indexAccessor accessor used for the search
+	 */
+	private synchronized void registerWarmupListeners(final IndexAccessor indexAccessor) {
+		if (warmupAccessor != indexAccessor) {
+			removeWarmupListeners();
+			if (uniqueValuesCache != null) {
+				indexAccessor.addWarmupListener(uniqueValuesCache);
+			}
+			if (filterCache != null) {
+				indexAccessor.addWarmupListener(filterCache);
+			}
+			warmupAccessor = indexAccessor;
+		}
+	}
+
+	/**
+	 * Remove the warmup listeners from the accessor they were registered at.
+	 */
+	private synchronized void removeWarmupListeners() {
+		if (warmupAccessor != null) {
+			if (uniqueValuesCache != null) {
+				warmupAccessor.removeWarmupListener(uniqueValuesCache);
+			}
+			if (filterCache != null) {
+				warmupAccessor.removeWarmupListener(filterCache);
+			}
+			warmupAccessor = null;
+		}
+	}
+
 	/**
 	 * get Result for didyoumean.
 	 * 
@@ -671,6 +983,32 @@ public class CRSearcher {
 		return null;
 	}
 	
+	/**
+	 * Get the analyzer used for parsing the queries. The analyzer is created
+	 * once per config and shared between threads.
+	 * @return analyzer
+	 */
+	public Analyzer getAnalyzer() {
+		return queryParserCache.getAnalyzer();
+	}
+
+	/**
+	 * Get the search result cache.
+	 * @return result cache or <code>null</code> if the cache is not enabled.
+	 */
+	public SearchResultCache getResultCache() {
+		return resultCache;
+	}
+
+	/**
+	 * Get the cache of the filter queries and permission filters.
+	 * @return filter cache or <code>null</code> if neither the filter query
+	 * cache nor the permission filter is enabled.
+	 */
+	public FilterCache getFilterCache() {
+		return filterCache;
+	}
+
 	/**
 	 * Get the DYM provider. May be null if none is used.
 	 * @return DYM provider.
@@ -681,6 +1019,7 @@ public class CRSearcher {
 
 	@Override
 	public void finalize() {
+		removeWarmupListeners();
 		if (didyoumeanprovider != null) {
 			didyoumeanprovider.stop();
 		}
@@ -0,0 +1,447 @@
+package com.gentics.cr.lucene.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.BitsFilteredDocIdSet;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.WAH8DocIdSet;
+
+import com.gentics.cr.lucene.indexaccessor.SearcherWarmupListener;
+import com.gentics.cr.monitoring.Counter;
+import com.gentics.cr.monitoring.MetricRegistry;
+import com.gentics.cr.monitoring.Timer;
+
+/**
+ * Cache for filters that are used over and over again, e.g. the filter
+ * queries of the requests.
+ * Like lucenes CachingWrapperFilter the doc id sets are cached per segment
+ * (keyed by the segment core), so they survive reopening the index as long as
+ * the segment is not merged away. In contrast to CachingWrapperFilter the
+ * cache is shared by all filters and has a limited size: the doc id sets are
+ * evicted in least recently used order as soon as the estimated memory of all
+ * sets exceeds the configured budget. The sets are stored compressed
+ * ({@link WAH8DocIdSet}) if the filter does not provide a cacheable set
+ * itself.
+ * Deleted documents are applied when the cached set is used, so deletions do
+ * not invalidate the cache.
+ * Registered as {@link SearcherWarmupListener} the sets of all cached filters
+ * are created for the new segments when the index is reopened.
+ */
+public class FilterCache implements SearcherWarmupListener {
+
+	/**
+	 * Log4j logger for debug messages.
+	 */
+	private static final Logger LOGGER = Logger.getLogger(FilterCache.class);
+
+	/**
+	 * Estimated overhead of a cached doc id set (key and map entry).
+	 */
+	private static final int ENTRY_OVERHEAD = 96;
+
+	/**
+	 * Name used in log messages and the metrics.
+	 */
+	private final String name;
+
+	/**
+	 * Timer of the warmups.
+	 */
+	private final Timer warmupTimer;
+
+	/**
+	 * Counter of the segments answered from the cache.
+	 */
+	private final Counter hitCounter;
+
+	/**
+	 * Counter of the segments the filter had to be executed for.
+	 */
+	private final Counter missCounter;
+
+	/**
+	 * Maximum number of filters.
+	 */
+	private final int maxFilters;
+
+	/**
+	 * Maximum estimated memory of the cached doc id sets in bytes.
+	 */
+	private final long maxBytes;
+
+	/**
+	 * Cached filters per key in access order.
+	 */
+	private final LinkedHashMap<String, CachedFilter> filters = new LinkedHashMap<String, CachedFilter>(16, 0.75f, true);
+
+	/**
+	 * Cached doc id sets per filter key and segment core in access order.
+	 */
+	private final LinkedHashMap<SegmentKey, DocIdSet> segments = new LinkedHashMap<SegmentKey, DocIdSet>(16, 0.75f, true);
+
+	/**
+	 * Segment cores a close listener was added to.
+	 */
+	private final Set<Object> listenedCores = new HashSet<Object>();
+
+	/**
+	 * Removes the doc id sets of closed segments.
+	 */
+	private final AtomicReader.CoreClosedListener coreClosedListener = new AtomicReader.CoreClosedListener() {
+		public void onClose(final Object ownerCoreCacheKey) {
+			removeCore(ownerCoreCacheKey);
+		}
+	};
+
+	/**
+	 * Estimated memory of the cached doc id sets.
+	 */
+	private long bytes = 0;
+
+	/**
+	 * Number of segments answered from the cache.
+	 */
+	private long hits = 0;
+
+	/**
+	 * Number of segments the filter had to be executed for.
+	 */
+	private long misses = 0;
+
+	/**
+	 * Create a new filter cache.
+	 * @param name name of the cache, used for the metrics
+	 * @param maxFilters maximum number of cached filters
+	 * @param maxBytes maximum estimated memory of the cached doc id sets
+	 */
+	public FilterCache(final String name, final int maxFilters, final long maxBytes) {
+		this.name = name;
+		warmupTimer = MetricRegistry.timer("FilterCache.warmup(" + name + ")");
+		hitCounter = MetricRegistry.counter("FilterCache.hit(" + name + ")");
+		missCounter = MetricRegistry.counter("FilterCache.miss(" + name + ")");
+		this.maxFilters = maxFilters;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Get a cached filter.
+	 * @param key key of the filter
+	 * @return the cached filter or <code>null</code> if no filter was cached
+	 * for the key.
+	 */
+	public synchronized CachedFilter get(final String key) {
+		return filters.get(key);
+	}
+
+	/**
+	 * Add a filter to the cache. If a filter is already cached for the key,
+	 * the cached filter is returned.
+	 * @param key key of the filter, filters with the same key must match the
+	 * same documents.
+	 * @param filter filter to cache
+	 * @return the cached filter
+	 */
+	public synchronized CachedFilter put(final String key, final Filter filter) {
+		CachedFilter cached = filters.get(key);
+		if (cached == null) {
+			cached = new CachedFilter(key, filter);
+			filters.put(key, cached);
+			Iterator<String> it = filters.keySet().iterator();
+			while (filters.size() > maxFilters && it.hasNext()) {
+				String eldest = it.next();
+				it.remove();
+				removeFilter(eldest);
+			}
+		}
+		return cached;
+	}
+
+	/**
+	 * Create the doc id sets of all cached filters for the segments of the new
+	 * reader that are not cached yet.
+	 * @param searcher searcher on the new reader
+	 */
+	public void warmup(final IndexSearcher searcher) {
+		List<CachedFilter> cachedFilters;
+		synchronized (this) {
+			cachedFilters = new ArrayList<CachedFilter>(filters.values());
+		}
+		long start = warmupTimer.start();
+		try {
+			for (AtomicReaderContext context : searcher.getIndexReader().leaves()) {
+				for (CachedFilter filter : cachedFilters) {
+					filter.getDocIdSet(context, null);
+				}
+			}
+		} catch (IOException e) {
+			LOGGER.error("Error warming up the filters of " + name, e);
+		} finally {
+			warmupTimer.stop(start);
+		}
+	}
+
+	/**
+	 * Drop all cached filters and doc id sets.
+	 */
+	public synchronized void clear() {
+		filters.clear();
+		segments.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * @return number of cached filters.
+	 */
+	public synchronized int size() {
+		return filters.size();
+	}
+
+	/**
+	 * @return number of cached doc id sets.
+	 */
+	public synchronized int segmentCount() {
+		return segments.size();
+	}
+
+	/**
+	 * @return estimated memory of the cached doc id sets in bytes.
+	 */
+	public synchronized long ramBytesUsed() {
+		return bytes;
+	}
+
+	/**
+	 * @return number of segments answered from the cache.
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return number of segments the filter had to be executed for.
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Get a cached doc id set.
+	 * @param key key of the set
+	 * @return doc id set or <code>null</code> if not cached
+	 */
+	private synchronized DocIdSet getDocIdSet(final SegmentKey key) {
+		DocIdSet set = segments.get(key);
+		if (set != null) {
+			hits++;
+			hitCounter.inc();
+		} else {
+			misses++;
+			missCounter.inc();
+		}
+		return set;
+	}
+
+	/**
+	 * Cache a doc id set and evict the least recently used sets if the memory
+	 * budget is exceeded.
+	 * @param key key of the set
+	 * @param set doc id set
+	 * @param reader reader of the segment, used to get notified when the
+	 * segment is closed
+	 */
+	private synchronized void putDocIdSet(final SegmentKey key, final DocIdSet set, final AtomicReader reader) {
+		long size = ramBytesUsed(set);
+		if (size > maxBytes || !filters.containsKey(key.filterKey)) {
+			return;
+		}
+		if (listenedCores.add(key.coreKey)) {
+			reader.addCoreClosedListener(coreClosedListener);
+		}
+		DocIdSet old = segments.put(key, set);
+		if (old != null) {
+			bytes -= ramBytesUsed(old);
+		}
+		bytes += size;
+		Iterator<Map.Entry<SegmentKey, DocIdSet>> it = segments.entrySet().iterator();
+		while (bytes > maxBytes && it.hasNext()) {
+			Map.Entry<SegmentKey, DocIdSet> eldest = it.next();
+			bytes -= ramBytesUsed(eldest.getValue());
+			it.remove();
+		}
+	}
+
+	/**
+	 * Remove the doc id sets of a filter. This method assumes it is invoked
+	 * in a synchronized context.
+	 * @param filterKey key of the filter
+	 */
+	private void removeFilter(final String filterKey) {
+		Iterator<Map.Entry<SegmentKey, DocIdSet>> it = segments.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<SegmentKey, DocIdSet> entry = it.next();
+			if (entry.getKey().filterKey.equals(filterKey)) {
+				bytes -= ramBytesUsed(entry.getValue());
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Remove the doc id sets of a closed segment.
+	 * @param coreKey core key of the segment
+	 */
+	private synchronized void removeCore(final Object coreKey) {
+		listenedCores.remove(coreKey);
+		Iterator<Map.Entry<SegmentKey, DocIdSet>> it = segments.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<SegmentKey, DocIdSet> entry = it.next();
+			if (entry.getKey().coreKey == coreKey) {
+				bytes -= ramBytesUsed(entry.getValue());
+				it.remove();
+			}
+		}
+		LOGGER.debug("Removed cached filters of closed segment from " + name);
+	}
+
+	/**
+	 * @param set doc id set
+	 * @return estimated memory of the cached set
+	 */
+	private static long ramBytesUsed(final DocIdSet set) {
+		return ENTRY_OVERHEAD + set.ramBytesUsed();
+	}
+
+	/**
+	 * Convert the doc id set of a filter into a set that can be cached.
+	 * @param docIdSet doc id set returned by the filter
+	 * @return cacheable doc id set
+	 * @throws IOException in case of low level IO error
+	 */
+	private static DocIdSet toCacheable(final DocIdSet docIdSet) throws IOException {
+		if (docIdSet == null) {
+			return DocIdSet.EMPTY;
+		} else if (docIdSet.isCacheable()) {
+			return docIdSet;
+		}
+		DocIdSetIterator it = docIdSet.iterator();
+		if (it == null) {
+			return DocIdSet.EMPTY;
+		}
+		return new WAH8DocIdSet.Builder().add(it).build();
+	}
+
+	/**
+	 * Filter that caches its doc id sets per segment in the {@link FilterCache}.
+	 */
+	public final class CachedFilter extends Filter {
+
+		/**
+		 * Key of the filter.
+		 */
+		private final String key;
+
+		/**
+		 * Wrapped filter.
+		 */
+		private final Filter filter;
+
+		/**
+		 * Create a new cached filter.
+		 * @param key key of the filter
+		 * @param filter wrapped filter
+		 */
+		private CachedFilter(final String key, final Filter filter) {
+			this.key = key;
+			this.filter = filter;
+		}
+
+		/**
+		 * @return the wrapped filter.
+		 */
+		public Filter getFilter() {
+			return filter;
+		}
+
+		@Override
+		public DocIdSet getDocIdSet(final AtomicReaderContext context, final Bits acceptDocs) throws IOException {
+			AtomicReader reader = context.reader();
+			SegmentKey segmentKey = new SegmentKey(key, reader.getCoreCacheKey());
+			DocIdSet set = FilterCache.this.getDocIdSet(segmentKey);
+			if (set == null) {
+				// deleted documents are applied below, so the set stays valid after deletions
+				set = toCacheable(filter.getDocIdSet(context, null));
+				putDocIdSet(segmentKey, set, reader);
+			}
+			if (set == DocIdSet.EMPTY) {
+				return null;
+			}
+			return BitsFilteredDocIdSet.wrap(set, acceptDocs);
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof CachedFilter)) {
+				return false;
+			}
+			return key.equals(((CachedFilter) obj).key);
+		}
+
+		@Override
+		public int hashCode() {
+			return key.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return "CachedFilter(" + filter + ")";
+		}
+	}
+
+	/**
+	 * Key of a doc id set.
+	 */
+	private static final class SegmentKey {
+
+		private final String filterKey;
+
+		private final Object coreKey;
+
+		/**
+		 * Create a new key.
+		 * @param filterKey key of the filter
+		 * @param coreKey core key of the segment
+		 */
+		private SegmentKey(final String filterKey, final Object coreKey) {
+			this.filterKey = filterKey;
+			this.coreKey = coreKey;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * filterKey.hashCode() + System.identityHashCode(coreKey);
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof SegmentKey)) {
+				return false;
+			}
+			SegmentKey other = (SegmentKey) obj;
+			return coreKey == other.coreKey && filterKey.equals(other.filterKey);
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package com.gentics.cr.lucene.search;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.FieldInfo.DocValuesType;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+
+import com.gentics.cr.lucene.indexaccessor.IndexAccessor;
+import com.gentics.cr.monitoring.MetricRegistry;
+import com.gentics.cr.monitoring.Timer;
+import com.gentics.cr.util.ResolvableWrapper;
+
+/**
+ * Lightweight handle of a search hit. Only the fields loaded by the search
+ * (e.g. the id attribute) are available right away, all other stored fields
+ * are loaded on the first access of an attribute that was not loaded.
+ * The stored fields are loaded from the reader the hit was found in as long as
+ * that reader is open. If the index was reopened and the reader is closed in
+ * the meantime, the document is looked up by its id attribute in the current
+ * reader of the index accessor.
+ */
+public class LazyDocumentResolvable extends ResolvableWrapper {
+
+	/**
+	 * Log4j logger for error and debug messages.
+	 */
+	private static final Logger LOGGER = Logger.getLogger(LazyDocumentResolvable.class);
+
+	/**
+	 * Timer of loading the stored fields.
+	 */
+	private static final Timer LOAD_TIMER = MetricRegistry.timer("LazyDocumentResolvable.load()");
+
+	/**
+	 * Fields loaded by the search.
+	 */
+	private final Document document;
+
+	/**
+	 * Reader the hit was found in. Weakly referenced, so handles do not keep
+	 * closed readers in memory.
+	 */
+	private final WeakReference<IndexReader> readerReference;
+
+	/**
+	 * Document id of the hit in the reader.
+	 */
+	private final int docId;
+
+	/**
+	 * Attribute containing the unique id of the document.
+	 */
+	private final String idAttribute;
+
+	/**
+	 * Accessor to look up the document if the reader was closed.
+	 */
+	private final IndexAccessor indexAccessor;
+
+	/**
+	 * All stored fields of the document, <code>null</code> until an attribute
+	 * that was not loaded by the search is requested.
+	 */
+	private Map<String, Object> attributes = null;
+
+	/**
+	 * Create a new handle.
+	 * @param document fields loaded by the search, has to contain the id
+	 * attribute
+	 * @param reader reader the hit was found in
+	 * @param docId document id of the hit in the reader
+	 * @param idAttribute attribute containing the unique id of the document
+	 * @param indexAccessor accessor to look up the document if the reader was
+	 * closed
+	 */
+	public LazyDocumentResolvable(final Document document, final IndexReader reader, final int docId,
+			final String idAttribute, final IndexAccessor indexAccessor) {
+		this.document = document;
+		this.readerReference = new WeakReference<IndexReader>(reader);
+		this.docId = docId;
+		this.idAttribute = idAttribute;
+		this.indexAccessor = indexAccessor;
+	}
+
+	/**
+	 * Get an attribute of the document, loads the stored fields of the
+	 * document on the first access of a field that was not loaded by the
+	 * search.
+	 * @param key name of the attribute
+	 * @return value of the attribute or <code>null</code> if the document has
+	 * no such stored field.
+	 */
+	@Override
+	public Object get(final String key) {
+		IndexableField field = document.getField(key);
+		if (field != null) {
+			return getValue(field);
+		}
+		return getAttributes().get(key);
+	}
+
+	/**
+	 * @return <code>true</code> if the stored fields of the document were
+	 * loaded.
+	 */
+	public synchronized boolean isLoaded() {
+		return attributes != null;
+	}
+
+	/**
+	 * Get all stored fields of the document, load them on the first call.
+	 * @return stored fields
+	 */
+	private synchronized Map<String, Object> getAttributes() {
+		if (attributes == null) {
+			long start = LOAD_TIMER.start();
+			try {
+				Document loaded = loadDocument();
+				attributes = new HashMap<String, Object>();
+				if (loaded != null) {
+					for (IndexableField field : loaded.getFields()) {
+						attributes.put(field.name(), getValue(field));
+					}
+				}
+			} catch (IOException e) {
+				LOGGER.error("Cannot load the stored fields of " + document.get(idAttribute), e);
+				attributes = new HashMap<String, Object>();
+			} finally {
+				LOAD_TIMER.stop(start);
+			}
+		}
+		return attributes;
+	}
+
+	/**
+	 * Load all stored fields of the document.
+	 * @return document or <code>null</code> if the document is not in the
+	 * index anymore.
+	 * @throws IOException in case of low level IO error
+	 */
+	private Document loadDocument() throws IOException {
+		IndexReader reader = readerReference.get();
+		if (reader != null && reader.tryIncRef()) {
+			// the document id is valid as long as the reader is open
+			try {
+				return reader.document(docId);
+			} finally {
+				reader.decRef();
+			}
+		}
+		String id = document.get(idAttribute);
+		LOGGER.debug("Reader of " + id + " was closed, looking up the document by " + idAttribute);
+		IndexSearcher searcher = indexAccessor.getPrioritizedSearcher();
+		try {
+			TopDocs topDocs = searcher.search(new TermQuery(new Term(idAttribute, id)), 1);
+			if (topDocs.scoreDocs.length == 0) {
+				return null;
+			}
+			return searcher.doc(topDocs.scoreDocs[0].doc);
+		} finally {
+			indexAccessor.release(searcher);
+		}
+	}
+
+	/**
+	 * @param field stored field
+	 * @return value of the field, converted the same way as
+	 * {@link LuceneRequestProcessor} converts the stored attributes.
+	 */
+	private static Object getValue(final IndexableField field) {
+		if (field.fieldType().docValueType() == DocValuesType.BINARY) {
+			return field.binaryValue();
+		}
+		return field.stringValue();
+	}
+}
@@ -2,11 +2,14 @@ package com.gentics.cr.lucene.search;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -30,13 +33,12 @@ import com.gentics.cr.RequestProcessor;
 import com.gentics.cr.configuration.GenericConfiguration;
 import com.gentics.cr.exceptions.CRException;
 import com.gentics.cr.lucene.indexaccessor.IndexAccessor;
-import com.gentics.cr.lucene.indexer.index.LuceneAnalyzerFactory;
 import com.gentics.cr.lucene.indexer.index.LuceneIndexLocation;
 import com.gentics.cr.lucene.search.highlight.AdvancedContentHighlighter;
 import com.gentics.cr.lucene.search.highlight.ContentHighlighter;
 import com.gentics.cr.lucene.search.query.CRQueryParserFactory;
-import com.gentics.cr.monitoring.MonitorFactory;
-import com.gentics.cr.monitoring.UseCase;
+import com.gentics.cr.monitoring.MetricRegistry;
+import com.gentics.cr.monitoring.Timer;
 import com.gentics.cr.util.generics.Lists;
 
 /**
@@ -88,6 +90,41 @@ public class LuceneRequestProcessor extends RequestProcessor {
 	 */
 	private boolean getStoredAttributes = false;
 
+	/**
+	 * Only load the stored attributes requested in the attribute array of the
+	 * request instead of all stored attributes.
+	 * Key: LOADREQUESTEDATTRIBUTES
+	 */
+	private static final String LOAD_REQUESTED_ATTRIBUTES_KEY = "LOADREQUESTEDATTRIBUTES";
+
+	/**
+	 * Load the requested attributes only.
+	 * Default value: false
+	 * Can be overwritten in config using key {@link LuceneRequestProcessor#LOAD_REQUESTED_ATTRIBUTES_KEY}.
+	 */
+	private boolean loadRequestedAttributes = false;
+
+	/**
+	 * Return the hits as lightweight handles that load the stored attributes
+	 * on the first access.
+	 * Key: LAZYATTRIBUTES
+	 */
+	private static final String LAZY_ATTRIBUTES_KEY = "LAZYATTRIBUTES";
+
+	/**
+	 * Load the stored attributes lazily.
+	 * Default value: false
+	 * Can be overwritten in config using key {@link LuceneRequestProcessor#LAZY_ATTRIBUTES_KEY}.
+	 */
+	private boolean lazyAttributes = false;
+
+	/**
+	 * Attributes that are loaded right away if the stored attributes are
+	 * loaded lazily. They are needed to initialize the resolvable beans.
+	 */
+	private static final String[] LAZY_IDENTITY_ATTRIBUTES = new String[] {"contentid", "obj_id", "obj_type", "mother_obj_id",
+			"mother_obj_type"};
+
 	/**
 	 * Define the maximum number of results to return.
 	 * Key: SEARCHCOUNT
@@ -163,6 +200,24 @@ public class LuceneRequestProcessor extends RequestProcessor {
 	 */
 	private static final String QUERY_HIGHTLIGHT_PARSER_CONFIG = "highlightqueryparser";
 
+	/**
+	 * Timers of the steps of {@link #getObjects(CRRequest, boolean)}, created
+	 * once for the name of the config.
+	 */
+	private final Timer getObjectsTimer;
+
+	private final Timer prepareSearchTimer;
+
+	private final Timer searchTimer;
+
+	private final Timer processSearchTimer;
+
+	private final Timer metaResolvablesTimer;
+
+	private final Timer resolvablesTimer;
+
+	private final Timer highlightTimer;
+
 	/**
 	 * Create new instance of LuceneRequestProcessor.
 	 * @param config CRConfig to use for initializing the searcher, highlighters and configuring this class.
@@ -173,8 +228,18 @@ public class LuceneRequestProcessor extends RequestProcessor {
 		name = config.getName();
 		searcher = new CRSearcher(config);
 		getStoredAttributes = Boolean.parseBoolean((String) config.get(GET_STORED_ATTRIBUTE_KEY));
+		loadRequestedAttributes = Boolean.parseBoolean((String) config.get(LOAD_REQUESTED_ATTRIBUTES_KEY));
+		lazyAttributes = Boolean.parseBoolean((String) config.get(LAZY_ATTRIBUTES_KEY));
 		highlighters = ContentHighlighter.getTransformerTable(config);
 		showParsedQuery = Boolean.parseBoolean((String) this.config.get(SHOW_PARSED_QUERY_KEY));
+		String timerName = "LuceneRequestProcessor.getObjects(" + name + ")";
+		getObjectsTimer = MetricRegistry.timer(timerName);
+		prepareSearchTimer = MetricRegistry.timer(timerName + "#prepareSearch");
+		searchTimer = MetricRegistry.timer(timerName + "#search");
+		processSearchTimer = MetricRegistry.timer(timerName + "#processSearch");
+		metaResolvablesTimer = MetricRegistry.timer(timerName + "#processSearch.Metaresolvables");
+		resolvablesTimer = MetricRegistry.timer(timerName + "#processSearch.Resolvables");
+		highlightTimer = MetricRegistry.timer(timerName + "#processSearch.Highlight");
 	}
 	
 	/**
@@ -213,23 +278,23 @@ public class LuceneRequestProcessor extends RequestProcessor {
 	@Override
 	public final Collection<CRResolvableBean> getObjects(final CRRequest request, final boolean doNavigation)
 			throws CRException {
-		UseCase ucGetObjects = startUseCase("LuceneRequestProcessor." + "getObjects(" + name + ")");
+		long getObjectsStart = getObjectsTimer.start();
 
 		/**
 		 * search preparations (instantiate/validate all needed variables)
 		 */
-		UseCase ucPrepareSearch = startUseCase("LuceneRequestProcessor.getObjects(" + name + ")#prepareSearch");
+		long prepareSearchStart = prepareSearchTimer.start();
 		ArrayList<CRResolvableBean> result = new ArrayList<CRResolvableBean>();
 		int count = getCount(request);
 		int start = getStart(request);
-		ucPrepareSearch.stop();
+		prepareSearchTimer.stop(prepareSearchStart);
 		/** * search preparations */
 
 		/**
 		 * Get results
 		 */
 		long indexSearchStartTime = System.currentTimeMillis();
-		UseCase ucSearch = startUseCase("LuceneRequestProcessor." + "getObjects(" + name + ")#search");
+		long searchStart = searchTimer.start();
 		HashMap<String, Object> searchResult = null;
 		try {
 			searchResult = searcher.search(
@@ -239,17 +304,18 @@ public class LuceneRequestProcessor extends RequestProcessor {
 				start,
 				doNavigation,
 				request.getSortArray(),
-				request);
+				request,
+				getFieldsToLoad(request));
 		} catch (IOException ex) {
 			LOGGER.error("Error while getting search results from index.");
 			throw new CRException(ex);
 		}
-		ucSearch.stop();
+		searchTimer.stop(searchStart);
 		LOGGER.debug("Search in Index took " + (System.currentTimeMillis() - indexSearchStartTime) + "ms");
 		/**
 		 * process search
 		 */
-		UseCase ucProcessSearch = startUseCase("LuceneRequestProcessor." + "getObjects(" + name + ")#processSearch");
+		long processSearchStart = processSearchTimer.start();
 		if (searchResult != null) {
 			Query parsedQuery = (Query) searchResult.get(CRSearcher.RESULT_QUERY_KEY);
 
@@ -259,22 +325,13 @@ public class LuceneRequestProcessor extends RequestProcessor {
 			// searchresult is null - we don't want to proceed - we want to throw an error
 			result = null;
 		}
-		ucProcessSearch.stop();
+		processSearchTimer.stop(processSearchStart);
 		/** * process search */
 
-		ucGetObjects.stop();
+		getObjectsTimer.stop(getObjectsStart);
 		return result;
 	}
 
-	/**
-	 * Start a usecase.
-	 * @param message Use the specified message as description.
-	 * @return Instantiated usecase
-	 */
-	private UseCase startUseCase(final String message) {
-		return MonitorFactory.startUseCase(message);
-	}
-
 	/**
 	 * Get count (number of items to return) from request and validate it. Fall back to config count if not set.
 	 * @param request Request to get the count of.
@@ -329,8 +386,7 @@ public class LuceneRequestProcessor extends RequestProcessor {
 	private ArrayList<CRResolvableBean> processMetaData(final ArrayList<CRResolvableBean> result,
 		final HashMap<String, Object> searchResult, final Query parsedQuery, final CRRequest request,
 		final int start, final int count) {
-		UseCase ucProcessSearchMeta = startUseCase("LuceneRequestProcessor.getObjects(" + name
-			+ ")#processSearch.Metaresolvables");
+		long metaResolvablesStart = metaResolvablesTimer.start();
 
 		Object metaKey = request.get(META_RESOLVABLE_KEY);
 		if (ObjectTransformer.getBoolean(metaKey, false)) {
@@ -343,7 +399,7 @@ public class LuceneRequestProcessor extends RequestProcessor {
 			result.add(metaBean);
 		}
 
-		ucProcessSearchMeta.stop();
+		metaResolvablesTimer.stop(metaResolvablesStart);
 		return result;
 	}
 
@@ -357,8 +413,7 @@ public class LuceneRequestProcessor extends RequestProcessor {
 	 */
 	private ArrayList<CRResolvableBean> processSearchResolvables(final ArrayList<CRResolvableBean> result,
 		final HashMap<String, Object> searchResult, Query parsedQuery, final CRRequest request) {
-		UseCase ucProcessSearchResolvables = startUseCase("LuceneRequestProcessor.getObjects(" + name
-			+ ")#processSearch.Resolvables");
+		long resolvablesStart = resolvablesTimer.start();
 
 		LinkedHashMap<Document, Float> docs = objectToLinkedHashMapDocuments(searchResult
 			.get(CRSearcher.RESULT_RESULT_KEY));
@@ -371,7 +426,8 @@ public class LuceneRequestProcessor extends RequestProcessor {
 
 			parsedQuery = parseHighlightQuery(request, reader, parsedQuery);
 
-			processDocuments(docs, result, reader, parsedQuery);
+			processDocuments(docs, result, reader, parsedQuery, (IndexReader) searchResult.get(CRSearcher.RESULT_READER_KEY),
+				indexAccessor);
 
 		} catch (IOException e) {
 			LOGGER.error("Cannot get Index reader for highlighting", e);
@@ -379,7 +435,7 @@ public class LuceneRequestProcessor extends RequestProcessor {
 			indexAccessor.release(reader);
 		}
 
-		ucProcessSearchResolvables.stop();
+		resolvablesTimer.stop(resolvablesStart);
 		return result;
 	}
 
@@ -409,7 +465,7 @@ public class LuceneRequestProcessor extends RequestProcessor {
 			logging += " HighlightQuery is set and overwrite parsedQuery ";
 			logging += "toString: " + highlightQuery.toString();
 
-			Analyzer analyzer = LuceneAnalyzerFactory.createAnalyzer(config);
+			Analyzer analyzer = searcher.getAnalyzer();
 			QueryParser parser = CRQueryParserFactory.getConfiguredParser(
 				getSearchedAttributes(), analyzer, request, config);
 			try {
@@ -424,7 +480,7 @@ public class LuceneRequestProcessor extends RequestProcessor {
 
 		if (subconfig != null) {
 			logging += "subconfig is not null! ";
-			Analyzer analyzer = LuceneAnalyzerFactory.createAnalyzer(config);
+			Analyzer analyzer = searcher.getAnalyzer();
 			QueryParser highlightParser = CRQueryParserFactory.getConfiguredHighlightParser(
 				getSearchedAttributes(), analyzer, request, config, subconfig);
 			try {
@@ -453,8 +509,7 @@ public class LuceneRequestProcessor extends RequestProcessor {
 
 		//IF HIGHLIGHTERS ARE CONFIGURED => DO HIGHLIGHTNING
 		if (highlighters != null) {
-			UseCase ucProcessSearchHighlight = MonitorFactory.startUseCase("LuceneRequestProcessor." + "getObjects("
-					+ name + ")#processSearch.Highlight");
+			long highlightStart = highlightTimer.start();
 			long s2 = System.currentTimeMillis();
 			for (Entry<String, ContentHighlighter> contentHighlighter : highlighters.entrySet()) {
 				ContentHighlighter highligther = contentHighlighter.getValue();
@@ -477,12 +532,52 @@ public class LuceneRequestProcessor extends RequestProcessor {
 				}
 			}
 			LOGGER.debug("Highlighters took " + (System.currentTimeMillis() - s2) + "ms");
-			ucProcessSearchHighlight.stop();
+			highlightTimer.stop(highlightStart);
+		}
+	}
+
+	/**
+	 * Get the stored fields CRSearcher has to load for the result documents.
+	 * @param request request containing the requested attributes
+	 * @return fields to load or <code>null</code> to load all stored fields
+	 */
+	private Set<String> getFieldsToLoad(final CRRequest request) {
+		String idAttribute = (String) config.get(ID_ATTRIBUTE_KEY);
+		Set<String> fields = new HashSet<String>();
+		if (lazyAttributes) {
+			// the other fields are loaded by the LazyDocumentResolvable
+			fields.addAll(Arrays.asList(LAZY_IDENTITY_ATTRIBUTES));
+		} else if (!getStoredAttributes) {
+			// only the id attribute and the highlighted attributes are used
+			addHighlightedAttributes(fields);
+		} else if (loadRequestedAttributes) {
+			fields.addAll(Arrays.asList(request.getAttributeArray(idAttribute)));
+			addHighlightedAttributes(fields);
+		} else {
+			return null;
+		}
+		if (idAttribute != null) {
+			fields.add(idAttribute);
+		}
+		return fields;
+	}
+
+	/**
+	 * Add the attributes the highlighters read from the resolvable beans.
+	 * @param fields set to add the attributes to
+	 */
+	private void addHighlightedAttributes(final Set<String> fields) {
+		if (highlighters != null) {
+			for (Entry<String, ContentHighlighter> contentHighlighter : highlighters.entrySet()) {
+				if (!(contentHighlighter.getValue() instanceof AdvancedContentHighlighter)) {
+					fields.add(contentHighlighter.getKey());
+				}
+			}
 		}
 	}
 
 	private void processDocuments(final LinkedHashMap<Document, Float> docs, final ArrayList<CRResolvableBean> result,
-			final IndexReader reader, final Query parsedQuery) {
+			final IndexReader reader, final Query parsedQuery, final IndexReader searchReader, final IndexAccessor indexAccessor) {
 		String scoreAttribute = (String) config.get(SCORE_ATTRIBUTE_KEY);
 
 		//PROCESS RESULT
@@ -491,7 +586,13 @@ public class LuceneRequestProcessor extends RequestProcessor {
 			for (Entry<Document, Float> entry : docs.entrySet()) {
 				Document doc = entry.getKey();
 				Float score = entry.getValue();
-				CRResolvableBean crBean = new CRResolvableBean(doc.get(idAttribute));
+				CRResolvableBean crBean;
+				if (lazyAttributes) {
+					crBean = new CRResolvableBean(new LazyDocumentResolvable(doc, searchReader, Integer.parseInt(doc.get("id")),
+						idAttribute, indexAccessor), null);
+				} else {
+					crBean = new CRResolvableBean(doc.get(idAttribute));
+				}
 				if (getStoredAttributes) {
 					for (IndexableField field : doc.getFields()) {
 						if (field.fieldType().stored()) {
@@ -0,0 +1,185 @@
+package com.gentics.cr.lucene.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BitsFilteredDocIdSet;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.WAH8DocIdSet;
+
+/**
+ * Creates filters that restrict a search to the documents the user is
+ * permitted to see.
+ * The permission groups a document is visible for are indexed in a
+ * configured field. The documents of each group are cached per segment in the
+ * {@link FilterCache}, as well as the union of the groups of each combination
+ * of groups that was requested. Restricting a search to the permissions of a
+ * user therefore only costs the intersection with an already cached doc id
+ * set, no matter in how many groups the user is.
+ * Requests without permissions are treated as anonymous: they are restricted
+ * to the configured anonymous groups, or not restricted at all if none are
+ * configured.
+ */
+public class PermissionFilterFactory {
+
+	/**
+	 * Prefix of the filter cache keys of single permission groups.
+	 */
+	private static final String GROUP_KEY_PREFIX = "\u0001permissiongroup\u0000";
+
+	/**
+	 * Prefix of the filter cache keys of permission group combinations.
+	 */
+	private static final String PERMISSIONS_KEY_PREFIX = "\u0001permissions";
+
+	/**
+	 * Field containing the permission groups of the documents.
+	 */
+	private final String permissionField;
+
+	/**
+	 * Cache for the doc id sets.
+	 */
+	private final FilterCache filterCache;
+
+	/**
+	 * Permission groups used for requests without permissions,
+	 * <code>null</code> if these requests are not restricted.
+	 */
+	private final String[] anonymousPermissions;
+
+	/**
+	 * Create a new factory.
+	 * @param permissionField field containing the permission groups
+	 * @param filterCache cache for the doc id sets
+	 * @param anonymousPermissions permission groups of requests without
+	 * permissions, <code>null</code> or empty to not restrict these requests
+	 */
+	public PermissionFilterFactory(final String permissionField, final FilterCache filterCache,
+			final String[] anonymousPermissions) {
+		this.permissionField = permissionField;
+		this.filterCache = filterCache;
+		if (anonymousPermissions == null || anonymousPermissions.length == 0) {
+			this.anonymousPermissions = null;
+		} else {
+			this.anonymousPermissions = anonymousPermissions.clone();
+		}
+	}
+
+	/**
+	 * Get the filter matching all documents visible for at least one of the
+	 * permission groups.
+	 * @param permissions permission groups of the user
+	 * @return filter, the filter of the anonymous groups if no permissions are
+	 * given or <code>null</code> if requests without permissions are not
+	 * restricted.
+	 */
+	public Filter getFilter(final String[] permissions) {
+		if (permissions == null || permissions.length == 0) {
+			if (anonymousPermissions == null) {
+				return null;
+			}
+			return getFilter(anonymousPermissions);
+		} else if (permissions.length == 1) {
+			return getGroupFilter(permissions[0]);
+		}
+		String[] sorted = permissions.clone();
+		Arrays.sort(sorted);
+		StringBuilder key = new StringBuilder(PERMISSIONS_KEY_PREFIX);
+		for (String permission : sorted) {
+			key.append('\u0000').append(permission);
+		}
+		String permissionsKey = key.toString();
+		Filter filter = filterCache.get(permissionsKey);
+		if (filter == null) {
+			List<Filter> groupFilters = new ArrayList<Filter>(sorted.length);
+			for (String permission : sorted) {
+				groupFilters.add(getGroupFilter(permission));
+			}
+			filter = filterCache.put(permissionsKey, new PermissionsFilter(groupFilters));
+		}
+		return filter;
+	}
+
+	/**
+	 * Get the filter for a single permission group.
+	 * @param permission permission group
+	 * @return filter
+	 */
+	private Filter getGroupFilter(final String permission) {
+		String groupKey = GROUP_KEY_PREFIX + permission;
+		Filter filter = filterCache.get(groupKey);
+		if (filter == null) {
+			filter = filterCache.put(groupKey, new QueryWrapperFilter(new TermQuery(new Term(permissionField, permission))));
+		}
+		return filter;
+	}
+
+	/**
+	 * Union of the filters of several permission groups.
+	 */
+	private static final class PermissionsFilter extends Filter {
+
+		/**
+		 * Filters of the permission groups.
+		 */
+		private final List<Filter> groupFilters;
+
+		/**
+		 * Create a new filter.
+		 * @param groupFilters filters of the permission groups
+		 */
+		private PermissionsFilter(final List<Filter> groupFilters) {
+			this.groupFilters = groupFilters;
+		}
+
+		@Override
+		public DocIdSet getDocIdSet(final AtomicReaderContext context, final Bits acceptDocs) throws IOException {
+			List<WAH8DocIdSet> compressedSets = new ArrayList<WAH8DocIdSet>(groupFilters.size());
+			FixedBitSet bits = null;
+			for (Filter groupFilter : groupFilters) {
+				DocIdSet set = groupFilter.getDocIdSet(context, null);
+				if (set instanceof WAH8DocIdSet) {
+					compressedSets.add((WAH8DocIdSet) set);
+				} else if (set != null) {
+					DocIdSetIterator it = set.iterator();
+					if (it != null) {
+						if (bits == null) {
+							bits = new FixedBitSet(context.reader().maxDoc());
+						}
+						bits.or(it);
+					}
+				}
+			}
+			DocIdSet union;
+			if (bits != null) {
+				for (WAH8DocIdSet set : compressedSets) {
+					bits.or(set.iterator());
+				}
+				union = bits;
+			} else if (compressedSets.isEmpty()) {
+				return null;
+			} else if (compressedSets.size() == 1) {
+				union = compressedSets.get(0);
+			} else {
+				union = WAH8DocIdSet.union(compressedSets);
+			}
+			return BitsFilteredDocIdSet.wrap(union, acceptDocs);
+		}
+
+		@Override
+		public String toString() {
+			return "PermissionsFilter(" + groupFilters + ")";
+		}
+	}
+}
@@ -0,0 +1,500 @@
+package com.gentics.cr.lucene.search;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+
+import com.gentics.cr.monitoring.MonitorFactory;
+
+/**
+ * Bounded cache for the results of {@link CRSearcher}.
+ * The cache stores the top document ids and scores, the total hits, the max
+ * score and the facet results of a search, keyed by the rewritten query, the
+ * rewritten filter query, the sorting and the permissions of the user.
+ * All entries belong to one set of segments: the entries stay valid as long
+ * as the searches are executed on readers with the same segments and
+ * deletions, even if the top level reader is a new instance (e.g. the
+ * MultiReader of a multi index accessor). As soon as a search is executed on
+ * other segments (e.g. after the index accessor reopened the index) all
+ * entries are dropped at once.
+ * Entries are evicted in least recently used order if either the maximum
+ * number of entries or the estimated memory usage is exceeded. Reading
+ * entries does not lock the cache.
+ */
+public class SearchResultCache {
+
+	/**
+	 * Log4j logger for debug messages.
+	 */
+	private static final Logger LOGGER = Logger.getLogger(SearchResultCache.class);
+
+	/**
+	 * Estimated overhead of an entry (key, value, map entry and arrays).
+	 */
+	private static final int ENTRY_OVERHEAD = 256;
+
+	/**
+	 * Name used for the monitoring use cases.
+	 */
+	private final String name;
+
+	/**
+	 * Monitoring use case of the cache hits.
+	 */
+	private final String hitUseCase;
+
+	/**
+	 * Monitoring use case of the cache misses.
+	 */
+	private final String missUseCase;
+
+	/**
+	 * Maximum number of cached results.
+	 */
+	private final int maxEntries;
+
+	/**
+	 * Maximum estimated memory of the cached results in bytes.
+	 */
+	private final long maxBytes;
+
+	/**
+	 * Entries of the current segments.
+	 */
+	private volatile Generation generation = new Generation(null);
+
+	/**
+	 * Clock for the access order of the entries.
+	 */
+	private final AtomicLong clock = new AtomicLong();
+
+	/**
+	 * Number of cache hits.
+	 */
+	private final AtomicLong hits = new AtomicLong();
+
+	/**
+	 * Number of cache misses.
+	 */
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Create a new result cache.
+	 * @param name name of the cache, used for the monitoring use cases.
+	 * @param maxEntries maximum number of cached results
+	 * @param maxBytes maximum estimated memory the cached results may use
+	 */
+	public SearchResultCache(final String name, final int maxEntries, final long maxBytes) {
+		this.name = name;
+		this.hitUseCase = "CRSearcher.resultcache.hit(" + name + ")";
+		this.missUseCase = "CRSearcher.resultcache.miss(" + name + ")";
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Get a cached result.
+	 * @param reader reader the search is executed on
+	 * @param key key of the search
+	 * @param numHits number of hits (start + count) the search needs
+	 * @return the cached result or <code>null</code> if the result is not
+	 * cached or was cached with less hits than needed.
+	 */
+	public CachedResult get(final IndexReader reader, final Key key, final int numHits) {
+		Entry entry = getGeneration(reader).entries.get(key);
+		CachedResult result = null;
+		if (entry != null && entry.result.covers(numHits)) {
+			entry.lastAccess = clock.incrementAndGet();
+			result = entry.result;
+		}
+		if (result != null) {
+			hits.incrementAndGet();
+			MonitorFactory.startUseCase(hitUseCase).stop();
+		} else {
+			misses.incrementAndGet();
+			MonitorFactory.startUseCase(missUseCase).stop();
+		}
+		return result;
+	}
+
+	/**
+	 * Put a result into the cache.
+	 * @param reader reader the search was executed on
+	 * @param key key of the search
+	 * @param result result of the search
+	 */
+	public void put(final IndexReader reader, final Key key, final CachedResult result) {
+		Entry entry = new Entry(key, result, clock.incrementAndGet());
+		if (entry.bytes > maxBytes) {
+			return;
+		}
+		Generation current = getGeneration(reader);
+		Entry old = current.entries.put(key, entry);
+		current.bytes.addAndGet(old != null ? entry.bytes - old.bytes : entry.bytes);
+		if (current.entries.size() > maxEntries || current.bytes.get() > maxBytes) {
+			current.evict(maxEntries, maxBytes);
+		}
+	}
+
+	/**
+	 * Drop all cached results.
+	 */
+	public void clear() {
+		generation = new Generation(null);
+	}
+
+	/**
+	 * @return number of cached results.
+	 */
+	public int size() {
+		return generation.entries.size();
+	}
+
+	/**
+	 * @return estimated memory used by the cached results in bytes.
+	 */
+	public long ramBytesUsed() {
+		return generation.bytes.get();
+	}
+
+	/**
+	 * @return number of cache hits.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return number of cache misses.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Get the entries of the segments of the given reader, drops the entries
+	 * of the previous segments if the segments changed.
+	 * @param reader reader
+	 * @return entries of the reader
+	 */
+	private Generation getGeneration(final IndexReader reader) {
+		Generation current = generation;
+		if (!current.matches(reader)) {
+			synchronized (this) {
+				current = generation;
+				if (!current.matches(reader)) {
+					if (LOGGER.isDebugEnabled() && current.entries.size() > 0) {
+						LOGGER.debug("Reader of " + name + " changed, dropping " + current.entries.size()
+								+ " cached results.");
+					}
+					current = new Generation(reader);
+					generation = current;
+				}
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Cached results of one set of segments.
+	 */
+	private static final class Generation {
+
+		/**
+		 * Keys of the segments and their deletions, weakly referenced so the
+		 * cache does not keep closed readers from being collected. The document
+		 * ids of the results are valid as long as the searched reader consists
+		 * of the same segments with the same deletions in the same order.
+		 */
+		private final List<WeakReference<Object>> segmentKeys;
+
+		/**
+		 * Entries of the generation.
+		 */
+		private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<Key, Entry>();
+
+		/**
+		 * Estimated memory of the entries.
+		 */
+		private final AtomicLong bytes = new AtomicLong();
+
+		/**
+		 * Create a new generation.
+		 * @param reader reader the entries belong to, <code>null</code> for
+		 * an empty generation matching no reader
+		 */
+		private Generation(final IndexReader reader) {
+			if (reader == null) {
+				segmentKeys = null;
+			} else {
+				List<AtomicReaderContext> leaves = reader.leaves();
+				segmentKeys = new ArrayList<WeakReference<Object>>(leaves.size());
+				for (AtomicReaderContext leaf : leaves) {
+					segmentKeys.add(new WeakReference<Object>(leaf.reader().getCombinedCoreAndDeletesKey()));
+				}
+			}
+		}
+
+		/**
+		 * Check if the generation belongs to the reader.
+		 * @param reader reader
+		 * @return <code>true</code> if the reader has the same segments and
+		 * deletions the generation was created for
+		 */
+		private boolean matches(final IndexReader reader) {
+			if (segmentKeys == null) {
+				return false;
+			}
+			List<AtomicReaderContext> leaves = reader.leaves();
+			if (leaves.size() != segmentKeys.size()) {
+				return false;
+			}
+			for (int i = 0; i < leaves.size(); i++) {
+				if (segmentKeys.get(i).get() != leaves.get(i).reader().getCombinedCoreAndDeletesKey()) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Evict the least recently used entries until the limits are met.
+		 * Eviction is only needed when a result is put, so it is synchronized
+		 * and scans the entries instead of keeping an access ordered list that
+		 * every read had to update under a lock.
+		 * @param maxEntries maximum number of entries
+		 * @param maxBytes maximum estimated memory of the entries
+		 */
+		private synchronized void evict(final int maxEntries, final long maxBytes) {
+			while (entries.size() > maxEntries || bytes.get() > maxBytes) {
+				Entry eldest = null;
+				for (Entry entry : entries.values()) {
+					if (eldest == null || entry.lastAccess < eldest.lastAccess) {
+						eldest = entry;
+					}
+				}
+				if (eldest == null) {
+					return;
+				}
+				if (entries.remove(eldest.key, eldest)) {
+					bytes.addAndGet(-eldest.bytes);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Entry of the cache.
+	 */
+	private static final class Entry {
+
+		private final Key key;
+
+		private final CachedResult result;
+
+		/**
+		 * Estimated memory of the key and the result.
+		 */
+		private final long bytes;
+
+		/**
+		 * Value of the clock at the last access.
+		 */
+		private volatile long lastAccess;
+
+		/**
+		 * Create a new entry.
+		 * @param key key
+		 * @param result result
+		 * @param lastAccess current value of the clock
+		 */
+		private Entry(final Key key, final CachedResult result, final long lastAccess) {
+			this.key = key;
+			this.result = result;
+			this.bytes = key.ramBytesUsed() + result.ramBytesUsed();
+			this.lastAccess = lastAccess;
+		}
+	}
+
+	/**
+	 * Key of a search.
+	 */
+	public static final class Key {
+
+		private final Query query;
+
+		private final Query filter;
+
+		private final String[] sorting;
+
+		private final String[] permissions;
+
+		private final int hashCode;
+
+		/**
+		 * Create a new key.
+		 * @param query rewritten query
+		 * @param filter rewritten filter query, may be <code>null</code>
+		 * @param sorting sorting, may be <code>null</code>
+		 * @param permissions permissions of the user, the order does not matter
+		 */
+		public Key(final Query query, final Query filter, final String[] sorting, final String[] permissions) {
+			this.query = query;
+			this.filter = filter;
+			this.sorting = sorting;
+			if (permissions != null) {
+				this.permissions = permissions.clone();
+				Arrays.sort(this.permissions);
+			} else {
+				this.permissions = null;
+			}
+			int h = query.hashCode();
+			h = 31 * h + (filter != null ? filter.hashCode() : 0);
+			h = 31 * h + Arrays.hashCode(sorting);
+			h = 31 * h + Arrays.hashCode(this.permissions);
+			hashCode = h;
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return hashCode == other.hashCode && query.equals(other.query)
+					&& (filter == null ? other.filter == null : filter.equals(other.filter))
+					&& Arrays.equals(sorting, other.sorting) && Arrays.equals(permissions, other.permissions);
+		}
+
+		/**
+		 * @return estimated memory used by the key in bytes.
+		 */
+		private long ramBytesUsed() {
+			// the string form is a rough estimate of the terms held by the queries
+			long size = 2 * query.toString().length();
+			if (filter != null) {
+				size += 2 * filter.toString().length();
+			}
+			if (sorting != null) {
+				for (String s : sorting) {
+					size += 2 * s.length();
+				}
+			}
+			if (permissions != null) {
+				for (String s : permissions) {
+					size += 2 * s.length();
+				}
+			}
+			return size;
+		}
+	}
+
+	/**
+	 * Cached result of a search.
+	 */
+	public static final class CachedResult {
+
+		private final int[] docs;
+
+		private final float[] scores;
+
+		private final int totalHits;
+
+		private final float maxScore;
+
+		private final Object facetsResults;
+
+		/**
+		 * Create a new cached result.
+		 * @param topDocs top documents of the search, starting with the first
+		 * hit
+		 * @param totalHits total number of hits
+		 * @param facetsResults facet results, may be <code>null</code>
+		 */
+		public CachedResult(final TopDocs topDocs, final int totalHits, final Object facetsResults) {
+			ScoreDoc[] scoreDocs = topDocs.scoreDocs;
+			docs = new int[scoreDocs.length];
+			scores = new float[scoreDocs.length];
+			for (int i = 0; i < scoreDocs.length; i++) {
+				docs[i] = scoreDocs[i].doc;
+				scores[i] = scoreDocs[i].score;
+			}
+			this.totalHits = totalHits;
+			this.maxScore = topDocs.getMaxScore();
+			this.facetsResults = facetsResults;
+		}
+
+		/**
+		 * Get the hits from start to start + count.
+		 * @param start index of the first hit
+		 * @param count number of hits
+		 * @return hits
+		 */
+		public ScoreDoc[] getScoreDocs(final int start, final int count) {
+			int from = Math.min(start, docs.length);
+			int to = Math.min(start + count, docs.length);
+			ScoreDoc[] result = new ScoreDoc[to - from];
+			for (int i = from; i < to; i++) {
+				result[i - from] = new ScoreDoc(docs[i], scores[i]);
+			}
+			return result;
+		}
+
+		/**
+		 * @return total number of hits.
+		 */
+		public int getTotalHits() {
+			return totalHits;
+		}
+
+		/**
+		 * @return max score of the search.
+		 */
+		public float getMaxScore() {
+			return maxScore;
+		}
+
+		/**
+		 * @return facet results or <code>null</code> if facets are not used.
+		 */
+		public Object getFacetsResults() {
+			return facetsResults;
+		}
+
+		/**
+		 * Check if the result contains enough hits.
+		 * @param numHits number of needed hits
+		 * @return <code>true</code> if the result contains at least numHits
+		 * hits or all hits of the search.
+		 */
+		private boolean covers(final int numHits) {
+			return docs.length >= numHits || docs.length >= totalHits;
+		}
+
+		/**
+		 * @return estimated memory used by the result in bytes.
+		 */
+		private long ramBytesUsed() {
+			return ENTRY_OVERHEAD + 8L * docs.length;
+		}
+	}
+}
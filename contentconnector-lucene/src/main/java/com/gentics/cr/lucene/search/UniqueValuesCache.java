@@ -0,0 +1,200 @@
+package com.gentics.cr.lucene.search;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.util.BytesRef;
+
+import com.gentics.cr.lucene.indexaccessor.SearcherWarmupListener;
+import com.gentics.cr.monitoring.MonitorFactory;
+import com.gentics.cr.monitoring.UseCase;
+
+/**
+ * Provides the distinct values (indexed terms) of some fields, e.g. all
+ * mimetypes in the index.
+ * The values are read once per reader generation into an immutable snapshot.
+ * The snapshot is valid as long as the reader consists of the same segments,
+ * so it is shared by all searches until the index is reopened. Registered as
+ * {@link SearcherWarmupListener} the snapshot is created right after the index
+ * accessor opened a new reader instead of on the first search.
+ */
+public class UniqueValuesCache implements SearcherWarmupListener {
+
+	/**
+	 * Log4j logger for error and debug messages.
+	 */
+	private static final Logger LOGGER = Logger.getLogger(UniqueValuesCache.class);
+
+	/**
+	 * Fields to list the values of.
+	 */
+	private final Set<String> fields;
+
+	/**
+	 * Snapshot of the last reader.
+	 */
+	private volatile Snapshot snapshot = null;
+
+	/**
+	 * Create a new cache.
+	 * @param fields fields to list the values of
+	 */
+	public UniqueValuesCache(final Collection<String> fields) {
+		this.fields = Collections.unmodifiableSet(new LinkedHashSet<String>(fields));
+	}
+
+	/**
+	 * Get the distinct values of a field.
+	 * @param reader reader to get the values from
+	 * @param field one of the fields of the cache
+	 * @return unmodifiable list of the values in term order
+	 * @throws IOException in case of low level IO error
+	 */
+	public List<String> getValues(final IndexReader reader, final String field) throws IOException {
+		List<String> values = getSnapshot(reader).values.get(field);
+		if (values == null) {
+			throw new IllegalArgumentException("Values of field " + field + " are not cached.");
+		}
+		return values;
+	}
+
+	/**
+	 * Get the distinct values of all fields of the cache.
+	 * @param reader reader to get the values from
+	 * @return unmodifiable map containing an unmodifiable list of values per
+	 * field
+	 * @throws IOException in case of low level IO error
+	 */
+	public Map<String, List<String>> getValues(final IndexReader reader) throws IOException {
+		return getSnapshot(reader).values;
+	}
+
+	/**
+	 * Create the snapshot for the new reader.
+	 * @param searcher searcher on the new reader
+	 */
+	public void warmup(final IndexSearcher searcher) {
+		try {
+			getSnapshot(searcher.getIndexReader());
+		} catch (IOException e) {
+			LOGGER.error("Cannot read unique values for " + fields, e);
+		}
+	}
+
+	/**
+	 * Get the snapshot for the reader, create it if the current snapshot
+	 * belongs to another reader generation.
+	 * @param reader reader
+	 * @return snapshot
+	 * @throws IOException in case of low level IO error
+	 */
+	private Snapshot getSnapshot(final IndexReader reader) throws IOException {
+		Snapshot current = snapshot;
+		if (current != null && current.matches(reader)) {
+			return current;
+		}
+		synchronized (this) {
+			current = snapshot;
+			if (current == null || !current.matches(reader)) {
+				current = createSnapshot(reader);
+				snapshot = current;
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Read the values of all fields from the reader.
+	 * @param reader reader
+	 * @return snapshot
+	 * @throws IOException in case of low level IO error
+	 */
+	private Snapshot createSnapshot(final IndexReader reader) throws IOException {
+		UseCase uc = MonitorFactory.startUseCase("UniqueValuesCache.createSnapshot()");
+		try {
+			Map<String, List<String>> values = new HashMap<String, List<String>>(fields.size());
+			for (String field : fields) {
+				List<String> fieldValues = new ArrayList<String>();
+				Terms terms = MultiFields.getTerms(reader, field);
+				if (terms != null) {
+					TermsEnum termsEnum = terms.iterator(null);
+					BytesRef term;
+					while ((term = termsEnum.next()) != null) {
+						fieldValues.add(term.utf8ToString());
+					}
+				}
+				values.put(field, Collections.unmodifiableList(fieldValues));
+			}
+			LOGGER.debug("Read unique values of " + fields + " from " + reader);
+			return new Snapshot(reader, Collections.unmodifiableMap(values));
+		} finally {
+			uc.stop();
+		}
+	}
+
+	/**
+	 * Immutable values of one reader generation.
+	 */
+	private static final class Snapshot {
+
+		/**
+		 * Core keys of the segments of the reader. The terms only depend on the
+		 * segment cores, deletions do not change them. The keys are weakly
+		 * referenced so the snapshot does not keep closed segments alive.
+		 */
+		private final List<WeakReference<Object>> coreKeys;
+
+		/**
+		 * Values per field.
+		 */
+		private final Map<String, List<String>> values;
+
+		/**
+		 * Create a new snapshot.
+		 * @param reader reader the values were read from
+		 * @param values values per field
+		 */
+		private Snapshot(final IndexReader reader, final Map<String, List<String>> values) {
+			List<AtomicReaderContext> leaves = reader.leaves();
+			coreKeys = new ArrayList<WeakReference<Object>>(leaves.size());
+			for (AtomicReaderContext leaf : leaves) {
+				coreKeys.add(new WeakReference<Object>(leaf.reader().getCoreCacheKey()));
+			}
+			this.values = values;
+		}
+
+		/**
+		 * Check if the snapshot belongs to the reader.
+		 * @param reader reader
+		 * @return <code>true</code> if the reader has the same segments the
+		 * snapshot was created from
+		 */
+		private boolean matches(final IndexReader reader) {
+			List<AtomicReaderContext> leaves = reader.leaves();
+			if (leaves.size() != coreKeys.size()) {
+				return false;
+			}
+			for (int i = 0; i < leaves.size(); i++) {
+				if (coreKeys.get(i).get() != leaves.get(i).reader().getCoreCacheKey()) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -16,8 +16,8 @@ import org.apache.lucene.search.highlight.TokenGroup;
 
 import com.gentics.cr.configuration.GenericConfiguration;
 import com.gentics.cr.lucene.indexer.index.LuceneAnalyzerFactory;
-import com.gentics.cr.monitoring.MonitorFactory;
-import com.gentics.cr.monitoring.UseCase;
+import com.gentics.cr.monitoring.MetricRegistry;
+import com.gentics.cr.monitoring.Timer;
 
 /**
  * PhraseBolder.
@@ -32,6 +32,13 @@ public class PhraseBolder extends ContentHighlighter implements Formatter {
 	  */
 	private static final Logger LOGGER = Logger.getLogger(PhraseBolder.class);
 
+	/**
+	 * Timers of the highlighting.
+	 */
+	private static final Timer HIGHLIGHT_TERM_TIMER = MetricRegistry.timer("Highlight.PhraseBolder.highlightTerm()");
+	private static final Timer HIGHLIGHT_TIMER = MetricRegistry.timer("Highlight.PhraseBolder.highlight()");
+	private static final Timer FRAGMENTS_TIMER = MetricRegistry.timer("Highlight.PhraseBolder.highlight()#getFragments");
+
 	/**
 	 * Default max fragments.
 	 */
@@ -61,12 +68,12 @@ public class PhraseBolder extends ContentHighlighter implements Formatter {
 	 * @return highlightedterm
 	 */
 	public final String highlightTerm(final String originalTermText, final TokenGroup tokenGroup) {
-		UseCase uc = MonitorFactory.startUseCase("Highlight.PhraseBolder.highlightTerm()");
+		long start = HIGHLIGHT_TERM_TIMER.start();
 		if (tokenGroup.getTotalScore() <= 0) {
-			uc.stop();
+			HIGHLIGHT_TERM_TIMER.stop(start);
 			return originalTermText;
 		}
-		uc.stop();
+		HIGHLIGHT_TERM_TIMER.stop(start);
 		return getHighlightPrefix() + originalTermText + getHighlightPostfix();
 
 	}
@@ -78,7 +85,7 @@ public class PhraseBolder extends ContentHighlighter implements Formatter {
 	 * 
 	 */
 	public final String highlight(final String attribute, final Query parsedQuery) {
-		UseCase uc = MonitorFactory.startUseCase("Highlight.PhraseBolder.highlight()");
+		long start = HIGHLIGHT_TIMER.start();
 		StringBuilder result = new StringBuilder();
 		if (attribute != null && parsedQuery != null) {
 			Highlighter highlighter = new Highlighter(this, new QueryScorer(parsedQuery));
@@ -86,9 +93,9 @@ public class PhraseBolder extends ContentHighlighter implements Formatter {
 
 			try {
 				TokenStream tokenStream = analyzer.tokenStream(this.getHighlightAttribute(), new StringReader(attribute));
-				UseCase ucFragments = MonitorFactory.startUseCase("Highlight.PhraseBolder.highlight()#getFragments");
+				long fragmentsStart = FRAGMENTS_TIMER.start();
 				TextFragment[] frags = highlighter.getBestTextFragments(tokenStream, attribute, true, getMaxFragments());
-				ucFragments.stop();
+				FRAGMENTS_TIMER.stop(fragmentsStart);
 				boolean first = true;
 				int startPosition = -1;
 				int endPosition = -1;
@@ -111,7 +118,7 @@ public class PhraseBolder extends ContentHighlighter implements Formatter {
 				LOGGER.error("Error getting fragments from highlighter.", e);
 			}
 		}
-		uc.stop();
+		HIGHLIGHT_TIMER.stop(start);
 		return result.toString();
 	}
 
@@ -11,8 +11,8 @@ import org.apache.lucene.search.vectorhighlight.ScoreOrderFragmentsBuilder;
 import org.apache.lucene.search.vectorhighlight.SimpleFragListBuilder;
 
 import com.gentics.cr.configuration.GenericConfiguration;
-import com.gentics.cr.monitoring.MonitorFactory;
-import com.gentics.cr.monitoring.UseCase;
+import com.gentics.cr.monitoring.MetricRegistry;
+import com.gentics.cr.monitoring.Timer;
 
 /**
  * VectorBolder.
@@ -26,6 +26,12 @@ public class VectorBolder extends AdvancedContentHighlighter {
 		 * Log4j logger for error and debug messages.
 		 */
 	private static final Logger LOGGER = Logger.getLogger(VectorBolder.class);
+
+	/**
+	 * Timers of the highlighting.
+	 */
+	private static final Timer HIGHLIGHT_TIMER = MetricRegistry.timer("Highlight.VectorBolder.highlight()");
+	private static final Timer FRAGMENTS_TIMER = MetricRegistry.timer("Highlight.VectorBolder.highlight()#getFragments");
 	/**
 	 * Default max fragments.
 	 */
@@ -65,7 +71,7 @@ public class VectorBolder extends AdvancedContentHighlighter {
 	 * 
 	 */
 	public final String highlight(final Query parsedQuery, final IndexReader reader, final int docId, final String fieldName) {
-		UseCase uc = MonitorFactory.startUseCase("Highlight.VectorBolder.highlight()");
+		long start = HIGHLIGHT_TIMER.start();
 		StringBuilder result = new StringBuilder();
 		if (fieldName != null && parsedQuery != null) {
 			FastVectorHighlighter highlighter = new FastVectorHighlighter(true, true, new SimpleFragListBuilder(),
@@ -76,11 +82,11 @@ public class VectorBolder extends AdvancedContentHighlighter {
 			//TokenStream tokenStream = analyzer.tokenStream(
 			//		this.getHighlightAttribute(), new StringReader(attribute));
 			try {
-				UseCase ucFragments = MonitorFactory.startUseCase("Highlight.VectorBolder.highlight()#getFragments");
+				long fragmentsStart = FRAGMENTS_TIMER.start();
 				//TextFragment[] frags = highlighter.getBestTextFragments(tokenStream,
 				//		attribute, true, numMaxFragments);
 				String[] frags = highlighter.getBestFragments(fieldQuery, reader, docId, fieldName, fragmentSize, numMaxFragments);
-				ucFragments.stop();
+				FRAGMENTS_TIMER.stop(fragmentsStart);
 				boolean first = true;
 				if (frags != null) {
 					for (String frag : frags) {
@@ -97,7 +103,7 @@ public class VectorBolder extends AdvancedContentHighlighter {
 				LOGGER.error("Error getting fragments from highlighter.", e);
 			}
 		}
-		uc.stop();
+		HIGHLIGHT_TIMER.stop(start);
 		return result.toString();
 	}
 
@@ -12,8 +12,8 @@ import org.apache.lucene.search.vectorhighlight.SimpleBoundaryScanner;
 import org.apache.lucene.search.vectorhighlight.SimpleFragListBuilder;
 
 import com.gentics.cr.configuration.GenericConfiguration;
-import com.gentics.cr.monitoring.MonitorFactory;
-import com.gentics.cr.monitoring.UseCase;
+import com.gentics.cr.monitoring.MetricRegistry;
+import com.gentics.cr.monitoring.Timer;
 
 /**
  * WhitespaceVectorBolder.
@@ -28,6 +28,12 @@ public class WhitespaceVectorBolder extends AdvancedContentHighlighter {
 		 * Log4j logger for error and debug messages.
 		 */
 	private static final Logger LOGGER = Logger.getLogger(WhitespaceVectorBolder.class);
+
+	/**
+	 * Timers of the highlighting.
+	 */
+	private static final Timer HIGHLIGHT_TIMER = MetricRegistry.timer("Highlight.WhitespaceVectorBolder.highlight()");
+	private static final Timer FRAGMENTS_TIMER = MetricRegistry.timer("Highlight.WhitespaceVectorBolder.highlight()#getFragments");
 	/**
 	 * default value for max frequents.
 	 */
@@ -54,7 +60,7 @@ public class WhitespaceVectorBolder extends AdvancedContentHighlighter {
 	 */
 	public final String highlight(final Query parsedQuery, final IndexReader reader, final int docId,
 			final String fieldName) {
-		UseCase uc = MonitorFactory.startUseCase("Highlight.WhitespaceVectorBolder.highlight()");
+		long start = HIGHLIGHT_TIMER.start();
 		StringBuilder result = new StringBuilder();
 		if (fieldName != null && parsedQuery != null) {
 			FastVectorHighlighter highlighter = new FastVectorHighlighter(true, true, new SimpleFragListBuilder(),
@@ -66,8 +72,7 @@ public class WhitespaceVectorBolder extends AdvancedContentHighlighter {
 			//TokenStream tokenStream = analyzer.tokenStream(
 			//		this.getHighlightAttribute(), new StringReader(attribute));
 			try {
-				UseCase ucFragments = MonitorFactory
-						.startUseCase("Highlight.WhitespaceVectorBolder.highlight()#getFragments");
+				long fragmentsStart = FRAGMENTS_TIMER.start();
 				//TextFragment[] frags = highlighter.getBestTextFragments(tokenStream,
 				//		attribute, true, numMaxFragments);
 				String[] frags = highlighter.getBestFragments(
@@ -77,7 +82,7 @@ public class WhitespaceVectorBolder extends AdvancedContentHighlighter {
 					fieldName,
 					getFragmentSize(),
 					getMaxFragments());
-				ucFragments.stop();
+				FRAGMENTS_TIMER.stop(fragmentsStart);
 				boolean first = true;
 				if (frags != null) {
 					for (String frag : frags) {
@@ -94,7 +99,7 @@ public class WhitespaceVectorBolder extends AdvancedContentHighlighter {
 				LOGGER.error("Error getting fragments from highlighter.", e);
 			}
 		}
-		uc.stop();
+		HIGHLIGHT_TIMER.stop(start);
 		return result.toString();
 	}
 
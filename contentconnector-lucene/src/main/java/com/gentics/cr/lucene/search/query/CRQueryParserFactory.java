@@ -110,9 +110,7 @@ public final class CRQueryParserFactory {
 		}
 
 		//CONFIGURE MAX CLAUSES
-		BooleanQuery.setMaxClauseCount(config.getInteger(
-			QUERY_PARSER_CONFIG + "." + MAX_CLAUSES_KEY,
-			BooleanQuery.getMaxClauseCount()));
+		configureMaxClauseCount(config);
 
 		//CONFIGURE LOWER CASE EXPANDED TERMS (useful for WhitespaceAnalyzer)
 		parser.setLowercaseExpandedTerms(config.getBoolean(
@@ -124,4 +122,26 @@ public final class CRQueryParserFactory {
 		parser.setMultiTermRewriteMethod(MultiTermQuery.SCORING_BOOLEAN_QUERY_REWRITE);
 		return parser;
 	}
+
+	/**
+	 * Check if the config uses a custom query parser class. Custom parsers can
+	 * depend on the request and therefore cannot be reused.
+	 * @param config config
+	 * @return <code>true</code> if a query parser class is configured
+	 */
+	static boolean hasConfiguredParserClass(final CRConfig config) {
+		Object subconfig = config.get(QUERY_PARSER_CONFIG);
+		return subconfig instanceof GenericConfiguration
+				&& ((GenericConfiguration) subconfig).getString(QUERY_PARSER_CLASS) != null;
+	}
+
+	/**
+	 * Set the max clause count of boolean queries from the config.
+	 * @param config config
+	 */
+	static void configureMaxClauseCount(final CRConfig config) {
+		BooleanQuery.setMaxClauseCount(config.getInteger(
+			QUERY_PARSER_CONFIG + "." + MAX_CLAUSES_KEY,
+			BooleanQuery.getMaxClauseCount()));
+	}
 }
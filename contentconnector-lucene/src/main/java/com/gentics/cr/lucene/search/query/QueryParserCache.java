@@ -0,0 +1,156 @@
+package com.gentics.cr.lucene.search.query;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.queryparser.classic.QueryParser;
+
+import com.gentics.cr.CRConfig;
+import com.gentics.cr.CRRequest;
+import com.gentics.cr.lucene.indexer.index.LuceneAnalyzerFactory;
+
+/**
+ * Caches the {@link Analyzer} and the {@link QueryParser} instances of a
+ * {@link CRConfig}, so they are not created from the configuration for each
+ * search request.
+ * The analyzer is created once and shared between all threads (lucene
+ * analyzers reuse their token streams per thread). Query parsers are not
+ * thread safe, therefore each thread gets its own parser per set of searched
+ * attributes. Parsers configured with a custom class get the request in their
+ * constructor and are still created per request, using the cached analyzer.
+ * {@link #invalidate()} drops the cached instances.
+ */
+public class QueryParserCache {
+
+	/**
+	 * Log4j logger for debug messages.
+	 */
+	private static final Logger LOGGER = Logger.getLogger(QueryParserCache.class);
+
+	/**
+	 * Configuration to create the analyzer and the parsers from.
+	 */
+	private final CRConfig config;
+
+	/**
+	 * Shared analyzer, <code>null</code> until first use or after the cache
+	 * was invalidated.
+	 */
+	private volatile Analyzer analyzer;
+
+	/**
+	 * Incremented on each invalidation, parsers of an older generation are
+	 * dropped by the threads holding them.
+	 */
+	private volatile int generation = 0;
+
+	/**
+	 * Parsers of the current thread per searched attributes.
+	 */
+	private final ThreadLocal<ThreadParsers> parsers = new ThreadLocal<ThreadParsers>();
+
+	/**
+	 * Create a new cache for the given configuration.
+	 * @param config configuration
+	 */
+	public QueryParserCache(final CRConfig config) {
+		this.config = config;
+	}
+
+	/**
+	 * Get the shared analyzer of the configuration.
+	 * @return analyzer created by {@link LuceneAnalyzerFactory}
+	 */
+	public Analyzer getAnalyzer() {
+		Analyzer a = analyzer;
+		if (a == null) {
+			synchronized (this) {
+				a = analyzer;
+				if (a == null) {
+					a = LuceneAnalyzerFactory.createAnalyzer(config);
+					analyzer = a;
+					LOGGER.debug("Created analyzer for " + config.getName());
+				}
+			}
+		}
+		return a;
+	}
+
+	/**
+	 * Get a configured query parser for the searched attributes. The returned
+	 * parser must only be used by the calling thread.
+	 * @param searchedAttributes attributes to search in
+	 * @param request request, passed to custom parser classes
+	 * @return query parser
+	 */
+	public QueryParser getParser(final String[] searchedAttributes, final CRRequest request) {
+		if (CRQueryParserFactory.hasConfiguredParserClass(config)) {
+			return CRQueryParserFactory.getConfiguredParser(searchedAttributes, getAnalyzer(), request, config);
+		}
+		int currentGeneration = generation;
+		ThreadParsers threadParsers = parsers.get();
+		if (threadParsers == null || threadParsers.generation != currentGeneration) {
+			threadParsers = new ThreadParsers(currentGeneration);
+			parsers.set(threadParsers);
+		}
+		String key = createKey(searchedAttributes);
+		QueryParser parser = threadParsers.parsers.get(key);
+		if (parser == null) {
+			parser = CRQueryParserFactory.getConfiguredParser(searchedAttributes, getAnalyzer(), request, config);
+			threadParsers.parsers.put(key, parser);
+		} else {
+			CRQueryParserFactory.configureMaxClauseCount(config);
+		}
+		return parser;
+	}
+
+	/**
+	 * Drop the cached analyzer and parsers, they are recreated on next use.
+	 */
+	public void invalidate() {
+		synchronized (this) {
+			analyzer = null;
+			generation++;
+		}
+		LOGGER.debug("Invalidated analyzer and query parsers of " + config.getName());
+	}
+
+	/**
+	 * Create the cache key for the searched attributes.
+	 * @param searchedAttributes searched attributes
+	 * @return key
+	 */
+	private static String createKey(final String[] searchedAttributes) {
+		StringBuilder key = new StringBuilder();
+		for (String attribute : searchedAttributes) {
+			key.append(attribute).append('\u0000');
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Parsers of one thread.
+	 */
+	private static final class ThreadParsers {
+
+		/**
+		 * Generation of the cache the parsers were created in.
+		 */
+		private final int generation;
+
+		/**
+		 * Parsers per searched attributes key.
+		 */
+		private final Map<String, QueryParser> parsers = new HashMap<String, QueryParser>();
+
+		/**
+		 * Create a new container for the given generation.
+		 * @param generation generation of the cache
+		 */
+		private ThreadParsers(final int generation) {
+			this.generation = generation;
+		}
+	}
+}
@@ -2,18 +2,26 @@ package com.gentics.cr.lucene.indexaccessor;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URISyntaxException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.RAMDirectory;
@@ -180,4 +188,114 @@ public class DefaultIndexAccessorTest {
 		assertEquals(accessor.readingReadersOut(), 0);
 	}
 
-}
+
+	@Test
+	public void testReopenWithSearcherInUse() throws IOException, InterruptedException {
+		factory.createAccessor(ramdir, analyzer);
+
+		IndexAccessor accessor = factory.getAccessor(ramdir);
+		IndexWriter writer = accessor.getWriter();
+		writer.addDocument(new Document());
+		accessor.release(writer);
+
+		IndexSearcher searcher = accessor.getSearcher();
+		IndexReader reader = searcher.getIndexReader();
+		writer = accessor.getWriter();
+		writer.addDocument(new Document());
+		// the reopen must not wait until the searcher is released
+		accessor.release(writer);
+
+		IndexSearcher newSearcher = accessor.getSearcher();
+		for (int i = 0; i < 100 && newSearcher == searcher; i++) {
+			accessor.release(newSearcher);
+			Thread.sleep(100);
+			newSearcher = accessor.getSearcher();
+		}
+		try {
+			assertNotSame("Searcher was not reopened while in use.", searcher, newSearcher);
+			assertEquals(2, newSearcher.getIndexReader().numDocs());
+			assertEquals("Reader in use was closed.", 1, searcher.search(new MatchAllDocsQuery(), 10).totalHits);
+		} finally {
+			accessor.release(newSearcher);
+			accessor.release(searcher);
+		}
+		assertEquals("Replaced reader was not closed after the release.", 0, reader.getRefCount());
+		assertEquals(0, accessor.searcherUseCount());
+	}
+
+	@Test
+	public void testNearRealTimeSearch() throws IOException, InterruptedException {
+		factory.createAccessor(ramdir, analyzer);
+
+		IndexAccessor accessor = factory.getAccessor(ramdir);
+		IndexWriter writer = accessor.getWriter();
+		writer.addDocument(new Document());
+		accessor.release(writer);
+
+		accessor.setNearRealTimeMaxStaleness(50);
+		writer = accessor.getWriter();
+		try {
+			writer.addDocument(new Document());
+			IndexSearcher searcher = accessor.getSearcher();
+			for (int i = 0; i < 100 && searcher.getIndexReader().numDocs() < 2; i++) {
+				accessor.release(searcher);
+				Thread.sleep(50);
+				searcher = accessor.getSearcher();
+			}
+			try {
+				assertEquals("Uncommitted document was not searchable.", 2, searcher.getIndexReader().numDocs());
+			} finally {
+				accessor.release(searcher);
+			}
+			DirectoryReader committed = DirectoryReader.open(ramdir);
+			try {
+				assertEquals("Document was committed.", 1, committed.numDocs());
+			} finally {
+				committed.close();
+			}
+		} finally {
+			accessor.release(writer);
+			accessor.setNearRealTimeMaxStaleness(0);
+		}
+
+		// the reader of the closed writer is replaced by one on the commit
+		writer = accessor.getWriter();
+		writer.addDocument(new Document());
+		accessor.release(writer);
+		IndexSearcher searcher = accessor.getSearcher();
+		for (int i = 0; i < 100 && searcher.getIndexReader().numDocs() < 3; i++) {
+			accessor.release(searcher);
+			Thread.sleep(50);
+			searcher = accessor.getSearcher();
+		}
+		try {
+			assertEquals(3, searcher.getIndexReader().numDocs());
+		} finally {
+			accessor.release(searcher);
+		}
+	}
+
+	@Test
+	public void testWarmupListener() throws IOException, InterruptedException {
+		factory.createAccessor(ramdir, analyzer);
+
+		IndexAccessor accessor = factory.getAccessor(ramdir);
+		final CountDownLatch warmed = new CountDownLatch(1);
+		final IndexReader[] warmedReader = new IndexReader[1];
+		accessor.addWarmupListener(new SearcherWarmupListener() {
+			public void warmup(final IndexSearcher searcher) {
+				warmedReader[0] = searcher.getIndexReader();
+				warmed.countDown();
+			}
+		});
+
+		IndexSearcher searcher = accessor.getSearcher();
+		try {
+			assertTrue("Warmup listener was not notified.", warmed.await(10, TimeUnit.SECONDS));
+			assertSame(searcher.getIndexReader(), warmedReader[0]);
+		} finally {
+			accessor.release(searcher);
+		}
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,62 @@
+package com.gentics.cr.lucene.indexer.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.lucene.util.BytesRef;
+import org.junit.Test;
+
+/**
+ * Test the sorted id/timestamp snapshot used by the
+ * {@link LuceneDocValuesIndexUpdateChecker}.
+ */
+public class IdTimestampSnapshotTest {
+
+	@Test
+	public void testFindAndChecked() {
+		IdTimestampSnapshot.Builder builder = new IdTimestampSnapshot.Builder();
+		builder.add("10007.3", 3L, true);
+		builder.add("10007.1", 1L, true);
+		builder.add("10007.2", 0L, false);
+		builder.add("10007.10", 10L, true);
+		IdTimestampSnapshot snapshot = builder.build();
+
+		assertEquals("Snapshot size did not match.", 4, snapshot.size());
+		assertEquals("Entries are not sorted.", "10007.1", snapshot.getId(0));
+		assertEquals("Entries are not sorted.", "10007.10", snapshot.getId(1));
+		assertEquals("Entries are not sorted.", "10007.2", snapshot.getId(2));
+		assertEquals("Entries are not sorted.", "10007.3", snapshot.getId(3));
+
+		int position = snapshot.find(new BytesRef("10007.10"));
+		assertEquals("Wrong position.", 1, position);
+		assertTrue(snapshot.hasTimestamp(position));
+		assertEquals("Timestamp did not match.", 10L, snapshot.getTimestamp(position));
+		assertFalse(snapshot.hasTimestamp(snapshot.find(new BytesRef("10007.2"))));
+		assertTrue("Unknown id was found.", snapshot.find(new BytesRef("10007.4")) < 0);
+
+		snapshot.setChecked(position);
+		assertTrue(snapshot.isChecked(position));
+		assertEquals("Checked count did not match.", 1, snapshot.getCheckedCount());
+		snapshot.clearChecked();
+		assertEquals("Checked count did not match.", 0, snapshot.getCheckedCount());
+	}
+
+	@Test
+	public void testDuplicatesAndGrowth() {
+		IdTimestampSnapshot.Builder builder = new IdTimestampSnapshot.Builder();
+		for (int i = 5000; i > 0; i--) {
+			builder.add("10007." + i, i, true);
+		}
+		builder.add("10007.42", 1L, true);
+		IdTimestampSnapshot snapshot = builder.build();
+
+		assertEquals("Duplicates were not removed.", 5000, snapshot.size());
+		assertEquals("First added duplicate should win.", 42L, snapshot.getTimestamp(snapshot.find(new BytesRef("10007.42"))));
+		for (int i = 1; i <= 5000; i++) {
+			int position = snapshot.find(new BytesRef("10007." + i));
+			assertTrue("Could not find 10007." + i, position >= 0);
+			assertEquals("Timestamp did not match.", i, snapshot.getTimestamp(position));
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package com.gentics.cr.lucene.indexer.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.BytesRef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gentics.cr.CRConfigUtil;
+import com.gentics.cr.configuration.GenericConfiguration;
+import com.gentics.cr.lucene.indexaccessor.IndexAccessor;
+import com.gentics.cr.util.indexing.IndexUpdateChecker;
+
+/**
+ * Test the {@link LuceneDocValuesIndexUpdateChecker} against a small index.
+ */
+public class LuceneDocValuesIndexUpdateCheckerTest {
+
+	private static final String CR_FIELD = "CRID";
+
+	private static final String CRID = "PAGES";
+
+	private static final String ID_FIELD = "contentid";
+
+	private static final String TIMESTAMP_FIELD = "updatetimestamp";
+
+	private LuceneIndexLocation location;
+
+	private IndexAccessor accessor;
+
+	@Before
+	public void setUp() throws IOException {
+		GenericConfiguration config = new GenericConfiguration();
+		config.set("indexLocations.1.path", "RAM_UPDATECHECK");
+		config.set("indexLocationClass", "com.gentics.cr.lucene.indexer.index.LuceneSingleIndexLocation");
+		location = LuceneIndexLocation.getIndexLocation(new CRConfigUtil(config, "updatecheck"));
+		accessor = location.getAccessor();
+
+		IndexWriter writer = accessor.getWriter();
+		try {
+			writer.deleteAll();
+			writer.addDocument(createDocument("10007.1", CRID, 100, true));
+			writer.addDocument(createDocument("10007.2", CRID, 200, true));
+			// indexed before the DocValues were enabled
+			writer.addDocument(createDocument("10007.3", CRID, 300, false));
+			writer.addDocument(createDocument("10007.4", CRID, 400, true));
+			// object of another content repository
+			writer.addDocument(createDocument("10007.5", "OTHER", 500, true));
+			writer.commit();
+		} finally {
+			accessor.release(writer);
+		}
+	}
+
+	@After
+	public void tearDown() {
+		location.finalize();
+	}
+
+	@Test
+	public void testUpdateCheck() throws Exception {
+		IndexUpdateChecker checker = new LuceneDocValuesIndexUpdateChecker(location, CR_FIELD, CRID, ID_FIELD,
+				TIMESTAMP_FIELD);
+
+		assertTrue("Unchanged object is not up to date.", checker.isUpToDate("10007.1", 100, TIMESTAMP_FIELD, null));
+		assertFalse("Changed object is up to date.", checker.isUpToDate("10007.2", 201, TIMESTAMP_FIELD, null));
+		assertTrue("Unchanged object without DocValues is not up to date.", checker.isUpToDate("10007.3", "300",
+			TIMESTAMP_FIELD, null));
+		assertFalse("Object of another content repository is up to date.", checker.isUpToDate("10007.5", 500,
+			TIMESTAMP_FIELD, null));
+		assertFalse("New object is up to date.", checker.isUpToDate("10007.6", 600, TIMESTAMP_FIELD, null));
+
+		// 10007.4 was not checked, it was deleted from the content repository
+		checker.deleteStaleObjects();
+
+		assertEquals(0, count("10007.4"));
+		assertEquals(1, count("10007.1"));
+		assertEquals(1, count("10007.2"));
+		assertEquals(1, count("10007.3"));
+		assertEquals("Object of another content repository was deleted.", 1, count("10007.5"));
+	}
+
+	/**
+	 * Count the documents with the contentid.
+	 * @param contentid contentid
+	 * @return number of not deleted documents
+	 * @throws IOException
+	 */
+	private int count(final String contentid) throws IOException {
+		IndexWriter writer = accessor.getWriter();
+		try {
+			writer.commit();
+		} finally {
+			accessor.release(writer);
+		}
+		IndexReader reader = accessor.getReader();
+		try {
+			return new IndexSearcher(reader).search(new TermQuery(new Term(ID_FIELD, contentid)), 1).totalHits;
+		} finally {
+			accessor.release(reader);
+		}
+	}
+
+	private static Document createDocument(final String contentid, final String crid, final long timestamp,
+			final boolean docValues) {
+		Document doc = new Document();
+		doc.add(new StringField(CR_FIELD, crid, Store.YES));
+		doc.add(new StringField(ID_FIELD, contentid, Store.YES));
+		doc.add(new StringField(TIMESTAMP_FIELD, Long.toString(timestamp), Store.YES));
+		if (docValues) {
+			doc.add(new SortedDocValuesField(ID_FIELD + LuceneDocValuesIndexUpdateChecker.DOCVALUES_FIELD_SUFFIX,
+					new BytesRef(contentid)));
+			doc.add(new NumericDocValuesField(TIMESTAMP_FIELD + LuceneDocValuesIndexUpdateChecker.DOCVALUES_FIELD_SUFFIX,
+					timestamp));
+		}
+		return doc;
+	}
+}
@@ -0,0 +1,60 @@
+package com.gentics.cr.lucene.indexer.index.pipelined;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+import com.gentics.cr.CRConfig;
+import com.gentics.cr.CRRequest;
+import com.gentics.cr.CRResolvableBean;
+import com.gentics.cr.exceptions.CRException;
+
+/**
+ * Dummy Request Processor that returns the objects of the
+ * {@link PipelinedIndexingRequestProcessor} and interrupts the index job
+ * thread when it copies an object in the middle.
+ * Is used by {@link PipelinedIndexingTest}
+ */
+public class InterruptingRequestProcessor extends PipelinedIndexingRequestProcessor {
+	/**
+	 * Contentid of the object interrupting the job.
+	 */
+	public static final String INTERRUPTING_CONTENTID = "10007.10";
+
+	/**
+	 * Thread running the index job.
+	 */
+	static volatile Thread jobThread;
+
+	/**
+	 * Create an instance
+	 * @param config config
+	 * @throws CRException
+	 */
+	public InterruptingRequestProcessor(CRConfig config) throws CRException {
+		super(config);
+	}
+
+	@Override
+	public Collection<CRResolvableBean> getObjects(CRRequest request, boolean doNavigation) throws CRException {
+		Collection<CRResolvableBean> result = new ArrayList<CRResolvableBean>();
+		for (CRResolvableBean bean : super.getObjects(request, doNavigation)) {
+			if (INTERRUPTING_CONTENTID.equals(bean.getContentid())) {
+				CRResolvableBean interrupting = new CRResolvableBean(bean.getContentid()) {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					public Object get(final String attribute) {
+						if ("obj_id".equals(attribute) && Thread.currentThread() == jobThread) {
+							jobThread.interrupt();
+						}
+						return super.get(attribute);
+					}
+				};
+				interrupting.setAttrMap(bean.getAttrMap());
+				bean = interrupting;
+			}
+			result.add(bean);
+		}
+		return result;
+	}
+}
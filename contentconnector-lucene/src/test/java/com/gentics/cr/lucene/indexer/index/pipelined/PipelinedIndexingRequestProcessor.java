@@ -0,0 +1,47 @@
+package com.gentics.cr.lucene.indexer.index.pipelined;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+import com.gentics.cr.CRConfig;
+import com.gentics.cr.CRRequest;
+import com.gentics.cr.CRResolvableBean;
+import com.gentics.cr.RequestProcessor;
+import com.gentics.cr.exceptions.CRException;
+
+/**
+ * Dummy Request Processor that will return a fixed list of objects.
+ * Is used by {@link PipelinedIndexingTest}
+ */
+public class PipelinedIndexingRequestProcessor extends RequestProcessor {
+	/**
+	 * Number of returned objects.
+	 */
+	public static final int OBJECT_COUNT = 40;
+
+	/**
+	 * Create an instance
+	 * @param config config
+	 * @throws CRException
+	 */
+	public PipelinedIndexingRequestProcessor(CRConfig config) throws CRException {
+		super(config);
+	}
+
+	@Override
+	public Collection<CRResolvableBean> getObjects(CRRequest request, boolean doNavigation) throws CRException {
+		Collection<CRResolvableBean> result = new ArrayList<CRResolvableBean>();
+		for (int i = 1; i <= OBJECT_COUNT; i++) {
+			CRResolvableBean bean = new CRResolvableBean("10007." + i);
+			bean.set("name", "Page " + i);
+			bean.set("content", "<p>content of <b>page " + i + "</b></p> test");
+			bean.set("updatetimestamp", 1000L + i);
+			result.add(bean);
+		}
+		return result;
+	}
+
+	@Override
+	public void finalize() {
+	}
+}
@@ -0,0 +1,163 @@
+package com.gentics.cr.lucene.indexer.index.pipelined;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.gentics.cr.CRConfigFileLoader;
+import com.gentics.cr.lucene.indexer.index.LuceneIndexLocation;
+import com.gentics.cr.util.CRUtil;
+import com.gentics.cr.util.indexing.AbstractUpdateCheckerJob;
+import com.gentics.cr.util.indexing.IndexController;
+
+/**
+ * Test that the pipelined indexing with several threads creates the same
+ * documents as the sequential indexing.
+ */
+public class PipelinedIndexingTest {
+	private static File temp;
+
+	private static IndexController ic;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		Path tempDir = Files.createTempDirectory("lucene");
+		temp = tempDir.toFile();
+		temp.mkdirs();
+		File restDir = new File(temp, "rest");
+		restDir.mkdirs();
+		copyFilesToTemp(restDir, new String[] { "indexer.properties", "analyzer.properties", "stopwords.list" });
+		copyFilesToTemp(temp, new String[] { "cache.ccf" });
+		System.setProperty(CRUtil.PORTALNODE_CONFPATH, temp.getAbsolutePath());
+		ic = new IndexController(new CRConfigFileLoader("indexer", null));
+	}
+
+	@AfterClass
+	public static void tearDown() throws IOException {
+		if (ic != null) {
+			ic.stop();
+			ic = null;
+		}
+		FileUtils.deleteDirectory(temp);
+	}
+
+	private static void copyFilesToTemp(File restDir, String[] filenames) throws IOException, URISyntaxException {
+		for (String name : filenames) {
+			URL uri = PipelinedIndexingTest.class.getResource(name);
+			Path target = new File(restDir, name).toPath();
+			Path source = new File(uri.toURI()).toPath();
+			Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Index the same objects sequentially and pipelined and compare the
+	 * documents.
+	 * @throws Exception
+	 */
+	@Test
+	public void testSameDocuments() throws Exception {
+		index("SEQUENTIAL");
+		index("PIPELINED");
+
+		Map<String, List<String>> sequential = readDocuments("sequential");
+		Map<String, List<String>> pipelined = readDocuments("pipelined");
+		assertEquals("Doc count did not match.", PipelinedIndexingRequestProcessor.OBJECT_COUNT, sequential.size());
+		assertEquals(sequential, pipelined);
+	}
+
+	/**
+	 * An interrupted pipelined job stops without reporting success and keeps
+	 * the interrupt flag.
+	 */
+	@Test
+	public void testInterrupted() {
+		InterruptingRequestProcessor.jobThread = Thread.currentThread();
+		AbstractUpdateCheckerJob job;
+		try {
+			job = index("INTERRUPTED");
+		} finally {
+			InterruptingRequestProcessor.jobThread = null;
+			assertTrue("Interrupt flag was not restored.", Thread.interrupted());
+		}
+		assertEquals("Job was interrupted.", job.getStatusString());
+	}
+
+	private AbstractUpdateCheckerJob index(final String name) {
+		LuceneIndexLocation indexLoc = (LuceneIndexLocation) ic.getIndexes().get(name);
+		indexLoc.createAllCRIndexJobs();
+		AbstractUpdateCheckerJob job = indexLoc.getQueue().getAndRemoveNextJob();
+		job.run();
+		return job;
+	}
+
+	/**
+	 * Read the stored fields of all documents of an index.
+	 * @param path path of the index in the index directory
+	 * @return sorted stored fields (name=value) and terms of the content per
+	 * contentid
+	 * @throws IOException
+	 */
+	private Map<String, List<String>> readDocuments(final String path) throws IOException {
+		Map<String, List<String>> documents = new TreeMap<String, List<String>>();
+		Directory directory = FSDirectory.open(new File(new File(temp, "index"), path));
+		DirectoryReader reader = DirectoryReader.open(directory);
+		try {
+			Bits liveDocs = MultiFields.getLiveDocs(reader);
+			for (int i = 0; i < reader.maxDoc(); i++) {
+				if (liveDocs != null && !liveDocs.get(i)) {
+					continue;
+				}
+				Document document = reader.document(i);
+				List<String> fields = new ArrayList<String>();
+				for (IndexableField field : document.getFields()) {
+					// the CRID contains the name of the index
+					if (!"CRID".equals(field.name())) {
+						fields.add(field.name() + "=" + field.stringValue());
+					}
+				}
+				Terms terms = reader.getTermVector(i, "content");
+				if (terms != null) {
+					TermsEnum termsEnum = terms.iterator(null);
+					BytesRef term;
+					while ((term = termsEnum.next()) != null) {
+						fields.add("content:" + term.utf8ToString());
+					}
+				}
+				Collections.sort(fields);
+				documents.put(document.get("contentid"), fields);
+			}
+		} finally {
+			reader.close();
+			directory.close();
+		}
+		return documents;
+	}
+}
@@ -0,0 +1,145 @@
+package com.gentics.cr.lucene.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gentics.cr.lucene.LuceneVersion;
+
+/**
+ * Test the {@link FilterCache}.
+ */
+public class FilterCacheTest {
+
+	private RAMDirectory directory;
+
+	private IndexWriter writer;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = new RAMDirectory();
+		writer = new IndexWriter(directory, new IndexWriterConfig(LuceneVersion.getVersion(), new WhitespaceAnalyzer(
+				LuceneVersion.getVersion())));
+		// two segments
+		addDocument("10007.1", "1");
+		addDocument("10007.2", "2");
+		writer.commit();
+		addDocument("10007.3", "1");
+		addDocument("10007.4", "1");
+		writer.commit();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		writer.close();
+		directory.close();
+	}
+
+	@Test
+	public void testCachedFilter() throws IOException {
+		FilterCache cache = new FilterCache("test", 10, 1024 * 1024);
+		assertNull(cache.get("node_id:1"));
+		FilterCache.CachedFilter filter = cache.put("node_id:1", nodeFilter("1"));
+		assertSame("Filter was not reused.", filter, cache.get("node_id:1"));
+		assertSame("Filter was replaced.", filter, cache.put("node_id:1", nodeFilter("1")));
+
+		DirectoryReader reader = DirectoryReader.open(directory);
+		try {
+			assertEquals(3, count(reader, filter));
+			assertEquals(0, cache.getHits());
+			assertEquals(2, cache.getMisses());
+			assertEquals(2, cache.segmentCount());
+			assertEquals(3, count(reader, filter));
+			assertEquals(2, cache.getHits());
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testDeletionsAndClosedSegments() throws IOException {
+		FilterCache cache = new FilterCache("test", 10, 1024 * 1024);
+		FilterCache.CachedFilter filter = cache.put("node_id:1", nodeFilter("1"));
+		DirectoryReader reader = DirectoryReader.open(directory);
+		assertEquals(3, count(reader, filter));
+
+		writer.deleteDocuments(new Term("contentid", "10007.3"));
+		writer.commit();
+		DirectoryReader newReader = DirectoryReader.openIfChanged(reader);
+		reader.close();
+		try {
+			long hits = cache.getHits();
+			assertEquals("Deleted document was returned.", 2, count(newReader, filter));
+			assertEquals("Cached sets were not used after deletion.", hits + 2, cache.getHits());
+
+			writer.forceMerge(1);
+			writer.commit();
+			DirectoryReader mergedReader = DirectoryReader.openIfChanged(newReader);
+			newReader.close();
+			newReader = mergedReader;
+			assertEquals("Sets of closed segments were not removed.", 0, cache.segmentCount());
+			assertEquals(2, count(newReader, filter));
+			assertEquals(1, cache.segmentCount());
+		} finally {
+			newReader.close();
+		}
+	}
+
+	@Test
+	public void testEviction() throws IOException {
+		FilterCache cache = new FilterCache("test", 1, 1024 * 1024);
+		FilterCache.CachedFilter filter1 = cache.put("node_id:1", nodeFilter("1"));
+		DirectoryReader reader = DirectoryReader.open(directory);
+		try {
+			count(reader, filter1);
+			FilterCache.CachedFilter filter2 = cache.put("node_id:2", nodeFilter("2"));
+			assertEquals(1, cache.size());
+			assertNull("Eldest filter was not evicted.", cache.get("node_id:1"));
+			assertEquals("Sets of evicted filter were not removed.", 0, cache.segmentCount());
+			assertEquals(1, count(reader, filter2));
+			assertTrue(cache.ramBytesUsed() > 0);
+
+			FilterCache small = new FilterCache("test", 10, 1);
+			assertEquals(1, count(reader, small.put("node_id:2", nodeFilter("2"))));
+			assertEquals("Sets exceeding the budget were cached.", 0, small.segmentCount());
+		} finally {
+			reader.close();
+		}
+	}
+
+	private void addDocument(final String contentid, final String nodeId) throws IOException {
+		Document doc = new Document();
+		doc.add(new StringField("contentid", contentid, Field.Store.YES));
+		doc.add(new StringField("node_id", nodeId, Field.Store.YES));
+		writer.addDocument(doc);
+	}
+
+	private static Filter nodeFilter(final String nodeId) {
+		return new QueryWrapperFilter(new TermQuery(new Term("node_id", nodeId)));
+	}
+
+	private static int count(final DirectoryReader reader, final Filter filter) throws IOException {
+		return new IndexSearcher(reader).search(new MatchAllDocsQuery(), filter, 10).totalHits;
+	}
+}
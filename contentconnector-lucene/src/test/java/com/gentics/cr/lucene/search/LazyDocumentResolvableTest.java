@@ -0,0 +1,103 @@
+package com.gentics.cr.lucene.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gentics.cr.lucene.LuceneVersion;
+import com.gentics.cr.lucene.indexaccessor.IndexAccessor;
+import com.gentics.cr.lucene.indexaccessor.IndexAccessorFactory;
+
+/**
+ * Test the {@link LazyDocumentResolvable}.
+ */
+public class LazyDocumentResolvableTest {
+
+	private RAMDirectory directory;
+
+	private IndexWriter writer;
+
+	private IndexAccessor accessor;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = new RAMDirectory();
+		WhitespaceAnalyzer analyzer = new WhitespaceAnalyzer(LuceneVersion.getVersion());
+		writer = new IndexWriter(directory, new IndexWriterConfig(LuceneVersion.getVersion(), analyzer));
+		addDocument("10007.1", "first content");
+		addDocument("10007.2", "second content");
+		writer.commit();
+		IndexAccessorFactory factory = IndexAccessorFactory.getInstance();
+		factory.createAccessor(directory, analyzer);
+		accessor = factory.getAccessor(directory);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		accessor.close();
+		writer.close();
+		directory.close();
+	}
+
+	@Test
+	public void testLazyLoading() throws IOException {
+		DirectoryReader reader = DirectoryReader.open(directory);
+		try {
+			LazyDocumentResolvable resolvable = createResolvable(reader, "10007.2");
+			assertEquals("10007.2", resolvable.get("contentid"));
+			assertFalse("Stored fields were loaded for the id attribute.", resolvable.isLoaded());
+			assertEquals("second content", resolvable.get("content"));
+			assertTrue(resolvable.isLoaded());
+			assertNull(resolvable.get("unknown"));
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testClosedReader() throws IOException {
+		DirectoryReader reader = DirectoryReader.open(directory);
+		LazyDocumentResolvable resolvable = createResolvable(reader, "10007.2");
+		reader.close();
+
+		// change the document ids of the index
+		writer.deleteDocuments(new Term("contentid", "10007.1"));
+		writer.forceMerge(1);
+		writer.commit();
+		assertEquals("Document was not looked up by its id.", "second content", resolvable.get("content"));
+	}
+
+	private LazyDocumentResolvable createResolvable(final DirectoryReader reader, final String contentid) throws IOException {
+		IndexSearcher searcher = new IndexSearcher(reader);
+		int docId = searcher.search(new TermQuery(new Term("contentid", contentid)), 1).scoreDocs[0].doc;
+		Document document = searcher.doc(docId, Collections.singleton("contentid"));
+		return new LazyDocumentResolvable(document, reader, docId, "contentid", accessor);
+	}
+
+	private void addDocument(final String contentid, final String content) throws IOException {
+		Document doc = new Document();
+		doc.add(new StringField("contentid", contentid, Field.Store.YES));
+		doc.add(new TextField("content", content, Field.Store.YES));
+		writer.addDocument(doc);
+	}
+}
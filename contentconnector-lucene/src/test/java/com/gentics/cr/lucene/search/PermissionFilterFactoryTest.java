@@ -0,0 +1,144 @@
+package com.gentics.cr.lucene.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gentics.cr.lucene.LuceneVersion;
+
+/**
+ * Test the {@link PermissionFilterFactory}.
+ */
+public class PermissionFilterFactoryTest {
+
+	private RAMDirectory directory;
+
+	private IndexWriter writer;
+
+	private FilterCache cache;
+
+	private PermissionFilterFactory factory;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = new RAMDirectory();
+		writer = new IndexWriter(directory, new IndexWriterConfig(LuceneVersion.getVersion(), new WhitespaceAnalyzer(
+				LuceneVersion.getVersion())));
+		// two segments
+		addDocument("10007.1", "editor", "admin");
+		addDocument("10007.2", "guest");
+		writer.commit();
+		addDocument("10007.3", "admin");
+		addDocument("10007.4");
+		writer.commit();
+		cache = new FilterCache("test", 10, 1024 * 1024);
+		factory = new PermissionFilterFactory("permissions", cache, null);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		writer.close();
+		directory.close();
+	}
+
+	@Test
+	public void testPermissions() throws IOException {
+		DirectoryReader reader = DirectoryReader.open(directory);
+		try {
+			assertEquals(2, count(reader, factory.getFilter(new String[] { "admin" })));
+			assertEquals(3, count(reader, factory.getFilter(new String[] { "guest", "admin" })));
+			assertEquals("Document in both groups was counted twice.", 2,
+				count(reader, factory.getFilter(new String[] { "editor", "admin" })));
+			assertEquals(0, count(reader, factory.getFilter(new String[] { "unknown" })));
+			assertNull("Requests without permissions were restricted.", factory.getFilter(new String[0]));
+			assertNull(factory.getFilter(null));
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testAnonymousPermissions() throws IOException {
+		PermissionFilterFactory anonymousFactory = new PermissionFilterFactory("permissions", cache,
+				new String[] { "guest" });
+		DirectoryReader reader = DirectoryReader.open(directory);
+		try {
+			assertEquals("Anonymous groups were not used.", 1, count(reader, anonymousFactory.getFilter(new String[0])));
+			assertEquals(1, count(reader, anonymousFactory.getFilter(null)));
+			assertEquals("Anonymous groups were added to the permissions.", 2,
+				count(reader, anonymousFactory.getFilter(new String[] { "admin" })));
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testCaching() throws IOException {
+		Filter filter = factory.getFilter(new String[] { "guest", "admin" });
+		assertSame("Group order should not matter.", filter, factory.getFilter(new String[] { "admin", "guest" }));
+		// the combination and its two groups
+		assertEquals(3, cache.size());
+
+		DirectoryReader reader = DirectoryReader.open(directory);
+		try {
+			assertEquals(3, count(reader, filter));
+			assertEquals("Sets were not cached per group and segment.", 6, cache.segmentCount());
+			long misses = cache.getMisses();
+			assertEquals(3, count(reader, factory.getFilter(new String[] { "admin", "guest" })));
+			assertEquals("Cached sets were not used.", misses, cache.getMisses());
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testWarmup() throws IOException {
+		Filter filter = factory.getFilter(new String[] { "guest", "admin" });
+		DirectoryReader reader = DirectoryReader.open(directory);
+		assertEquals(3, count(reader, filter));
+
+		addDocument("10007.5", "guest");
+		writer.commit();
+		DirectoryReader newReader = DirectoryReader.openIfChanged(reader);
+		reader.close();
+		try {
+			cache.warmup(new IndexSearcher(newReader));
+			assertEquals("Sets of the new segment were not created.", 9, cache.segmentCount());
+			long misses = cache.getMisses();
+			assertEquals(4, count(newReader, filter));
+			assertEquals("Sets were created during the search.", misses, cache.getMisses());
+		} finally {
+			newReader.close();
+		}
+	}
+
+	private void addDocument(final String contentid, final String... permissions) throws IOException {
+		Document doc = new Document();
+		doc.add(new StringField("contentid", contentid, Field.Store.YES));
+		for (String permission : permissions) {
+			doc.add(new StringField("permissions", permission, Field.Store.NO));
+		}
+		writer.addDocument(doc);
+	}
+
+	private static int count(final DirectoryReader reader, final Filter filter) throws IOException {
+		return new IndexSearcher(reader).search(new MatchAllDocsQuery(), filter, 10).totalHits;
+	}
+}
@@ -0,0 +1,172 @@
+package com.gentics.cr.lucene.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gentics.cr.lucene.LuceneVersion;
+
+/**
+ * Test the {@link SearchResultCache}.
+ */
+public class SearchResultCacheTest {
+
+	private RAMDirectory directory;
+
+	private IndexWriter writer;
+
+	private DirectoryReader reader;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = new RAMDirectory();
+		writer = new IndexWriter(directory, new IndexWriterConfig(LuceneVersion.getVersion(), new WhitespaceAnalyzer(
+				LuceneVersion.getVersion())));
+		addDocument("10007.1");
+		writer.commit();
+		reader = DirectoryReader.open(directory);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		reader.close();
+		writer.close();
+		directory.close();
+	}
+
+	@Test
+	public void testGetAndPut() {
+		SearchResultCache cache = new SearchResultCache("test", 10, 1024 * 1024);
+		SearchResultCache.Key key = createKey("a", "perm2", "perm1");
+		assertNull(cache.get(reader, key, 10));
+		cache.put(reader, key, createResult(3, 3));
+
+		SearchResultCache.CachedResult result = cache.get(reader, createKey("a", "perm1", "perm2"), 10);
+		assertNotNull("Permission order should not matter.", result);
+		assertEquals(3, result.getTotalHits());
+		ScoreDoc[] page = result.getScoreDocs(1, 10);
+		assertEquals(2, page.length);
+		assertEquals(1, page[0].doc);
+		assertNull("Other permissions must not share results.", cache.get(reader, createKey("a", "perm1"), 10));
+		assertEquals(1, cache.getHits());
+		assertEquals(2, cache.getMisses());
+	}
+
+	@Test
+	public void testNotEnoughHits() {
+		SearchResultCache cache = new SearchResultCache("test", 10, 1024 * 1024);
+		cache.put(reader, createKey("a"), createResult(5, 20));
+		assertNotNull(cache.get(reader, createKey("a"), 5));
+		assertNull("Result with less hits than needed was returned.", cache.get(reader, createKey("a"), 10));
+	}
+
+	@Test
+	public void testEviction() {
+		SearchResultCache cache = new SearchResultCache("test", 2, 1024 * 1024);
+		cache.put(reader, createKey("a"), createResult(1, 1));
+		cache.put(reader, createKey("b"), createResult(1, 1));
+		cache.get(reader, createKey("a"), 1);
+		cache.put(reader, createKey("c"), createResult(1, 1));
+		assertEquals(2, cache.size());
+		assertNotNull("Recently used entry was evicted.", cache.get(reader, createKey("a"), 1));
+		assertNull("Least recently used entry was not evicted.", cache.get(reader, createKey("b"), 1));
+
+		SearchResultCache small = new SearchResultCache("test", 100, 1024);
+		small.put(reader, createKey("a"), createResult(100, 100));
+		small.put(reader, createKey("b"), createResult(10, 10));
+		assertNull("Entry larger than the cache was cached.", small.get(reader, createKey("a"), 1));
+		assertNotNull(small.get(reader, createKey("b"), 1));
+	}
+
+	@Test
+	public void testReaderChange() throws IOException {
+		SearchResultCache cache = new SearchResultCache("test", 10, 1024 * 1024);
+		cache.put(reader, createKey("a"), createResult(1, 1));
+		addDocument("10007.2");
+		writer.commit();
+		DirectoryReader newReader = DirectoryReader.openIfChanged(reader);
+		assertNotNull(newReader);
+		try {
+			assertNull("Result of old reader was returned.", cache.get(newReader, createKey("a"), 1));
+			assertEquals(0, cache.size());
+		} finally {
+			newReader.close();
+		}
+	}
+
+	/**
+	 * Multi index accessors create a new MultiReader for every search, the
+	 * results stay valid as long as the segments are the same.
+	 */
+	@Test
+	public void testMultiReader() throws IOException {
+		SearchResultCache cache = new SearchResultCache("test", 10, 1024 * 1024);
+		cache.put(new MultiReader(new IndexReader[] { reader }, false), createKey("a"), createResult(1, 1));
+		assertNotNull("Result of the same segments was not returned.",
+			cache.get(new MultiReader(new IndexReader[] { reader }, false), createKey("a"), 1));
+
+		writer.deleteDocuments(new Term("contentid", "10007.1"));
+		writer.commit();
+		DirectoryReader newReader = DirectoryReader.openIfChanged(reader);
+		assertNotNull(newReader);
+		try {
+			assertNull("Result of the segments before the deletion was returned.",
+				cache.get(new MultiReader(new IndexReader[] { newReader }, false), createKey("a"), 1));
+		} finally {
+			newReader.close();
+		}
+	}
+
+	@Test
+	public void testQuerySize() {
+		SearchResultCache cache = new SearchResultCache("test", 10, 1024 * 1024);
+		cache.put(reader, createKey("a"), createResult(1, 1));
+		long small = cache.ramBytesUsed();
+		cache.clear();
+		StringBuilder term = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			term.append('a');
+		}
+		cache.put(reader, createKey(term.toString()), createResult(1, 1));
+		assertTrue("The size of the query was not estimated.", cache.ramBytesUsed() >= small + 1998);
+	}
+
+	private void addDocument(final String contentid) throws IOException {
+		Document doc = new Document();
+		doc.add(new StringField("contentid", contentid, Field.Store.YES));
+		writer.addDocument(doc);
+	}
+
+	private static SearchResultCache.Key createKey(final String term, final String... permissions) {
+		return new SearchResultCache.Key(new TermQuery(new Term("content", term)), null, null, permissions);
+	}
+
+	private static SearchResultCache.CachedResult createResult(final int size, final int totalHits) {
+		ScoreDoc[] docs = new ScoreDoc[size];
+		for (int i = 0; i < size; i++) {
+			docs[i] = new ScoreDoc(i, 1f / (i + 1));
+		}
+		return new SearchResultCache.CachedResult(new TopDocs(totalHits, docs, 1f), totalHits, null);
+	}
+}
@@ -0,0 +1,99 @@
+package com.gentics.cr.lucene.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gentics.cr.lucene.LuceneVersion;
+
+/**
+ * Test the {@link UniqueValuesCache}.
+ */
+public class UniqueValuesCacheTest {
+
+	private RAMDirectory directory;
+
+	private IndexWriter writer;
+
+	private UniqueValuesCache cache;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = new RAMDirectory();
+		writer = new IndexWriter(directory, new IndexWriterConfig(LuceneVersion.getVersion(), new WhitespaceAnalyzer(
+				LuceneVersion.getVersion())));
+		addDocument("10007.1", "text/html");
+		addDocument("10008.1", "application/pdf");
+		addDocument("10008.2", "text/html");
+		writer.commit();
+		cache = new UniqueValuesCache(Arrays.asList("mimetype", "category"));
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		writer.close();
+		directory.close();
+	}
+
+	@Test
+	public void testValues() throws IOException {
+		DirectoryReader reader = DirectoryReader.open(directory);
+		try {
+			List<String> mimetypes = cache.getValues(reader, "mimetype");
+			assertEquals(Arrays.asList("application/pdf", "text/html"), mimetypes);
+			assertEquals(0, cache.getValues(reader, "category").size());
+			assertSame("Values were not reused.", mimetypes, cache.getValues(reader, "mimetype"));
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testReaderGenerations() throws IOException {
+		DirectoryReader reader = DirectoryReader.open(directory);
+		List<String> mimetypes = cache.getValues(reader, "mimetype");
+
+		// deletions do not change the terms, the snapshot can still be used
+		writer.deleteDocuments(new Term("contentid", "10008.1"));
+		writer.commit();
+		DirectoryReader deletedReader = DirectoryReader.openIfChanged(reader);
+		reader.close();
+		assertSame("Values were read again after deletion.", mimetypes, cache.getValues(deletedReader, "mimetype"));
+
+		addDocument("10008.3", "image/png");
+		writer.commit();
+		DirectoryReader newReader = DirectoryReader.openIfChanged(deletedReader);
+		deletedReader.close();
+		try {
+			List<String> newMimetypes = cache.getValues(newReader, "mimetype");
+			assertNotSame("Values of old reader were returned.", mimetypes, newMimetypes);
+			assertEquals(Arrays.asList("application/pdf", "image/png", "text/html"), newMimetypes);
+		} finally {
+			newReader.close();
+		}
+	}
+
+	private void addDocument(final String contentid, final String mimetype) throws IOException {
+		Document doc = new Document();
+		doc.add(new StringField("contentid", contentid, Field.Store.YES));
+		doc.add(new StringField("mimetype", mimetype, Field.Store.YES));
+		writer.addDocument(doc);
+	}
+}
@@ -0,0 +1,65 @@
+package com.gentics.cr.lucene.search.query;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gentics.cr.CRConfigUtil;
+import com.gentics.cr.CRRequest;
+
+/**
+ * Test the reuse and invalidation of the {@link QueryParserCache}.
+ */
+public class QueryParserCacheTest {
+
+	private static final String[] SEARCHED_ATTRIBUTES = new String[] { "content", "name" };
+
+	private QueryParserCache cache;
+
+	@Before
+	public void setUp() {
+		CRConfigUtil config = new CRConfigUtil();
+		config.setName("QueryParserCacheTest");
+		cache = new QueryParserCache(config);
+	}
+
+	@Test
+	public void testReuse() {
+		Analyzer analyzer = cache.getAnalyzer();
+		assertSame("Analyzer was not reused.", analyzer, cache.getAnalyzer());
+
+		QueryParser parser = cache.getParser(SEARCHED_ATTRIBUTES, new CRRequest());
+		assertSame("Parser was not reused.", parser, cache.getParser(SEARCHED_ATTRIBUTES, new CRRequest()));
+		assertSame("Parser does not use the shared analyzer.", analyzer, parser.getAnalyzer());
+		assertNotSame("Parser for other attributes was reused.", parser,
+			cache.getParser(new String[] { "name" }, new CRRequest()));
+	}
+
+	@Test
+	public void testParserPerThread() throws InterruptedException {
+		QueryParser parser = cache.getParser(SEARCHED_ATTRIBUTES, new CRRequest());
+		final QueryParser[] otherParser = new QueryParser[1];
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				otherParser[0] = cache.getParser(SEARCHED_ATTRIBUTES, new CRRequest());
+			}
+		});
+		thread.start();
+		thread.join();
+		assertNotSame("Parser was shared between threads.", parser, otherParser[0]);
+		assertSame("Analyzer was not shared between threads.", parser.getAnalyzer(), otherParser[0].getAnalyzer());
+	}
+
+	@Test
+	public void testInvalidate() {
+		Analyzer analyzer = cache.getAnalyzer();
+		QueryParser parser = cache.getParser(SEARCHED_ATTRIBUTES, new CRRequest());
+		cache.invalidate();
+		assertNotSame("Analyzer was not recreated.", analyzer, cache.getAnalyzer());
+		assertNotSame("Parser was not recreated.", parser, cache.getParser(SEARCHED_ATTRIBUTES, new CRRequest()));
+	}
+}
@@ -17,8 +17,8 @@ import org.apache.log4j.Logger;
 
 import com.gentics.api.lib.resolving.Resolvable;
 import com.gentics.cr.CRServletConfig;
-import com.gentics.cr.monitoring.MonitorFactory;
-import com.gentics.cr.monitoring.UseCase;
+import com.gentics.cr.monitoring.MetricRegistry;
+import com.gentics.cr.monitoring.Timer;
 import com.gentics.cr.util.BeanWrapper;
 import com.gentics.cr.util.CRNavigationRequestBuilder;
 import com.gentics.cr.util.HttpSessionWrapper;
@@ -47,11 +47,17 @@ public class RESTNavigation extends HttpServlet {
 
 	private RESTNavigationContainer container;
 
+	/**
+	 * Timer of the requests, created once for the name of the servlet.
+	 */
+	private Timer requestTimer;
+
 	public void init(ServletConfig config) throws ServletException {
 
 		super.init(config);
 		crConf = new CRServletConfig(config);
 		container = new RESTNavigationContainer(crConf);
+		requestTimer = MetricRegistry.timer("RESTServlet(" + config.getServletName() + ")");
 	}
 
 	@Override
@@ -62,7 +68,7 @@ public class RESTNavigation extends HttpServlet {
 
 	public void doService(HttpServletRequest request, HttpServletResponse response) throws ServletException,
 			IOException {
-		UseCase uc = MonitorFactory.startUseCase("RESTServlet(" + request.getServletPath() + ")");
+		long start = requestTimer.start();
 		this.log.debug("Request:" + request.getQueryString());
 
 		// starttime
@@ -78,7 +84,7 @@ public class RESTNavigation extends HttpServlet {
 		// endtime
 		long e = new Date().getTime();
 		this.log.info("Executiontime for " + request.getQueryString() + ":" + (e - s));
-		uc.stop();
+		requestTimer.stop(start);
 	}
 
 	public void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
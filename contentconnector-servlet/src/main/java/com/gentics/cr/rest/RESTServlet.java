@@ -14,8 +14,8 @@ import org.apache.log4j.Logger;
 
 import com.gentics.api.lib.resolving.Resolvable;
 import com.gentics.cr.CRServletConfig;
-import com.gentics.cr.monitoring.MonitorFactory;
-import com.gentics.cr.monitoring.UseCase;
+import com.gentics.cr.monitoring.MetricRegistry;
+import com.gentics.cr.monitoring.Timer;
 import com.gentics.cr.util.CRRequestBuilder;
 import com.gentics.cr.util.HttpSessionWrapper;
 import com.gentics.cr.util.RequestBeanWrapper;
@@ -39,12 +39,17 @@ public class RESTServlet extends HttpServlet {
 	 */
 	private CRServletConfig crConf;
 	private RESTSimpleContainer container;
+	/**
+	 * Timer of the requests, created once for the name of the servlet.
+	 */
+	private Timer requestTimer;
 
 	public void init(ServletConfig config) throws ServletException {
 
 		super.init(config);
 		crConf = new CRServletConfig(config);
 		container = new RESTSimpleContainer(crConf);
+		requestTimer = MetricRegistry.timer("RESTServlet(" + config.getServletName() + ")");
 
 	}
 
@@ -79,8 +84,10 @@ public class RESTServlet extends HttpServlet {
 	 * @see #doService(HttpServletRequest, HttpServletResponse)
 	 */
 	public void doServiceSafe(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		UseCase uc = MonitorFactory.startUseCase("RESTServlet(" + request.getServletPath() + ")");
-		log.debug("Request:" + request.getQueryString());
+		long start = requestTimer.start();
+		if (log.isDebugEnabled()) {
+			log.debug("Request:" + request.getQueryString());
+		}
 		long starttime = new Date().getTime();
 		try {
 			doService(request, response);
@@ -98,7 +105,7 @@ public class RESTServlet extends HttpServlet {
 				}
 				log.info("Executiontime for " + requestID + ":" + (endtime - starttime));
 			}
-			uc.stop();
+			requestTimer.stop(start);
 		}
 	}
 
@@ -74,6 +74,11 @@ public class CRStreamingServlet extends HttpServlet {
 		// starttime
 		long s = new Date().getTime();
 
+		// the header has to be set before the binary is streamed
+		if (contentDisposition != null && contentDisposition != "") {
+			response.addHeader("Content-Disposition", "attachment; filename=\"" + contentDisposition + "\"");
+		}
+
 		HashMap<String, Resolvable> objects = new HashMap<String, Resolvable>();
 		objects.put("request", new BeanWrapper(request));
 		objects.put("session", new HttpSessionWrapper(request.getSession()));
@@ -83,10 +88,6 @@ public class CRStreamingServlet extends HttpServlet {
 			response.getOutputStream(),
 			new ServletResponseTypeSetter(response));
 
-		if (contentDisposition != null && contentDisposition != "") {
-			response.addHeader("Content-Disposition", "attachment; filename=\"" + contentDisposition + "\"");
-		}
-
 		response.getOutputStream().flush();
 		response.getOutputStream().close();
 
@@ -0,0 +1,54 @@
+package com.gentics.cr.servlet.system;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.gentics.cr.monitoring.MetricRegistry;
+
+/**
+ * This servlet exports the metrics of the {@link MetricRegistry} as plain
+ * text. The servlet does not change the monitoring settings, monitoring is
+ * enabled with <code>monitoring=true</code> in the indexer configuration.
+ * The metrics reveal internals of the installation, so access to the servlet
+ * should be restricted (see the sample web.xml).
+ * 
+ */
+public class MetricsServlet extends HttpServlet {
+
+	/**
+	 * Prefix parameter, only metrics starting with the prefix are exported.
+	 */
+	private static final String PREFIX_PARAMETER = "prefix";
+
+	/**
+	 * Serial version UID.
+	 */
+	private static final long serialVersionUID = -2937496418257403112L;
+
+	/**
+	 * doGet.
+	 * 
+	 * @param request
+	 *            request.
+	 * @param response
+	 *            response.
+	 * @throws ServletException
+	 *             in case of error
+	 * @throws IOException
+	 *             in case of error.
+	 */
+	public final void doGet(final HttpServletRequest request,
+			final HttpServletResponse response) throws ServletException,
+			IOException {
+		response.setContentType("text/plain; charset=UTF-8");
+		response.setHeader("Cache-Control", "no-cache");
+		Writer writer = response.getWriter();
+		MetricRegistry.writeText(writer, request.getParameter(PREFIX_PARAMETER));
+		writer.flush();
+	}
+}